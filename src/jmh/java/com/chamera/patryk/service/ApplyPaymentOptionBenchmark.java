@@ -0,0 +1,75 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link PaymentOptimizerService#applyPaymentOption}, cycling through the best option of every order.
+ * The limits are raised far above the order values and reset every iteration, so applying never runs out of limit.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class ApplyPaymentOptionBenchmark {
+
+    private static final BigDecimal UNLIMITED = new BigDecimal("1000000000000.00");
+
+    @Param({"1024"})
+    public int orderCount;
+
+    @Param({"3", "10", "30"})
+    public int methodCount;
+
+    @Param({"0", "1", "3"})
+    public int promotionsPerOrder;
+
+    private PaymentOptimizerService service;
+    private PaymentOption[] options;
+    private Map<String, BigDecimal> remainingLimits;
+    private Map<String, BigDecimal> totalSpentByMethod;
+    private int nextOption;
+
+
+    @Setup
+    public void setUp() {
+        service = new PaymentOptimizerService();
+        BenchmarkInstances.Instance instance = BenchmarkInstances.generate(orderCount, methodCount, promotionsPerOrder);
+        Map<String, PaymentMethod> paymentMethodMap = service.buildPaymentMethodMap(instance.paymentMethods());
+        Map<String, BigDecimal> initialLimits = service.buildInitialLimits(instance.paymentMethods());
+
+        options = new PaymentOption[orderCount];
+        int i = 0;
+        for (Order order : instance.orders()) {
+            options[i++] = service.generatePaymentOptions(order, paymentMethodMap, initialLimits).get(0);
+        }
+    }
+
+
+    @Setup(Level.Iteration)
+    public void resetLimits() {
+        remainingLimits = new HashMap<>();
+        for (PaymentOption option : options) {
+            for (String methodId : option.getAmountsToChargeByMethod().keySet()) {
+                remainingLimits.put(methodId, UNLIMITED);
+            }
+        }
+        totalSpentByMethod = new HashMap<>();
+    }
+
+
+    @Benchmark
+    public Map<String, BigDecimal> applyPaymentOption() {
+        service.applyPaymentOption(options[nextOption], remainingLimits, totalSpentByMethod);
+        nextOption = nextOption + 1 == options.length ? 0 : nextOption + 1;
+        return remainingLimits;
+    }
+}
@@ -0,0 +1,71 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Deterministic random instances for the benchmarks.
+ * Limits leave some slack over the total order value, so every generated instance is payable
+ * and the optimizer runs its full path instead of failing early.
+ */
+final class BenchmarkInstances {
+
+    static final long SEED = 42L;
+
+    /**
+     * A generated problem instance.
+     */
+    record Instance(List<Order> orders, List<PaymentMethod> paymentMethods) {
+    }
+
+
+    private BenchmarkInstances() {
+    }
+
+
+    /**
+     * Generates an instance.
+     *
+     * @param orderCount Number of orders.
+     * @param methodCount Number of payment methods, {@code PUNKTY} included.
+     * @param promotionsPerOrder Number of distinct promoted cards per order (capped at the number of cards).
+     * @return The instance; the same parameters always give the same instance.
+     */
+    static Instance generate(int orderCount, int methodCount, int promotionsPerOrder) {
+        Random random = new Random(SEED);
+        int cardCount = Math.max(methodCount - 1, 1);
+
+        List<Order> orders = new ArrayList<>(orderCount);
+        long totalValueCents = 0;
+        for (int i = 0; i < orderCount; i++) {
+            long valueCents = 1_000 + random.nextInt(49_000);
+            totalValueCents += valueCents;
+
+            List<String> promotions = null;
+            if (promotionsPerOrder > 0) {
+                Set<String> promoted = new LinkedHashSet<>();
+                while (promoted.size() < Math.min(promotionsPerOrder, cardCount)) {
+                    promoted.add(cardId(random.nextInt(cardCount)));
+                }
+                promotions = new ArrayList<>(promoted);
+            }
+            orders.add(new Order("ORDER" + i, BigDecimal.valueOf(valueCents, 2), promotions));
+        }
+
+        List<PaymentMethod> paymentMethods = new ArrayList<>(cardCount + 1);
+        paymentMethods.add(new PaymentMethod(PaymentOptimizerService.POINTS_ID_STRING, 15, BigDecimal.valueOf(totalValueCents / 5, 2)));
+        long cardLimitCents = totalValueCents * 3 / (2 * cardCount) + 50_000;
+        for (int i = 0; i < cardCount; i++) {
+            paymentMethods.add(new PaymentMethod(cardId(i), 5 + random.nextInt(11), BigDecimal.valueOf(cardLimitCents, 2)));
+        }
+        return new Instance(orders, paymentMethods);
+    }
+
+
+    private static String cardId(int index) {
+        return "CARD" + index;
+    }
+}
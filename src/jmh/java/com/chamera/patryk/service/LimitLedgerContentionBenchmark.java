@@ -0,0 +1,88 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contention between checkout threads: {@link ConcurrentLimitLedger} against a {@link LimitLedger} behind a global
+ * lock. Every thread reserves and releases a points + card split over its own card, so threads contend only on
+ * points. Runs on all processors by default; compare thread counts with {@code -t}, e.g.
+ * {@code java -jar target/benchmarks.jar LimitLedgerContention -t 4}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class LimitLedgerContentionBenchmark {
+
+    private static final BigDecimal LARGE_LIMIT = new BigDecimal("1000000000.00");
+    private static final BigDecimal POINTS_CHARGE = new BigDecimal("1.00");
+    private static final BigDecimal CARD_CHARGE = new BigDecimal("9.00");
+
+    @Param({"256"})
+    public int cardCount;
+
+    private final AtomicInteger nextThread = new AtomicInteger();
+    private ConcurrentLimitLedger concurrentLedger;
+    private LimitLedger lockedLedger;
+
+
+    /**
+     * Charges of one thread, over a card no other thread uses while there are no more threads than cards.
+     */
+    @State(Scope.Thread)
+    public static class ThreadCharges {
+
+        private Map<String, BigDecimal> charges;
+        private PaymentOption option;
+
+
+        @Setup
+        public void setUp(LimitLedgerContentionBenchmark benchmark) {
+            String cardId = "CARD_" + benchmark.nextThread.getAndIncrement() % benchmark.cardCount;
+            charges = Map.of(PaymentOptimizerService.POINTS_ID_STRING, POINTS_CHARGE, cardId, CARD_CHARGE);
+            option = new PaymentOption(BigDecimal.ZERO, POINTS_CHARGE, charges);
+        }
+    }
+
+
+    @Setup
+    public void setUp() {
+        List<PaymentMethod> paymentMethods = new ArrayList<>();
+        paymentMethods.add(new PaymentMethod(PaymentOptimizerService.POINTS_ID_STRING, 15, LARGE_LIMIT));
+        for (int i = 0; i < cardCount; i++) {
+            paymentMethods.add(new PaymentMethod("CARD_" + i, 0, LARGE_LIMIT));
+        }
+        concurrentLedger = new ConcurrentLimitLedger(paymentMethods);
+        lockedLedger = new LimitLedger(paymentMethods);
+    }
+
+
+    @Benchmark
+    public boolean concurrent(ThreadCharges thread) {
+        boolean reserved = concurrentLedger.tryReserve(thread.charges);
+        concurrentLedger.release(thread.charges);
+        return reserved;
+    }
+
+    @Benchmark
+    public LimitLedger locked(ThreadCharges thread) {
+        synchronized (lockedLedger) {
+            lockedLedger.apply(thread.option);
+            lockedLedger.release(thread.option);
+            lockedLedger.clearTrail();
+        }
+        return lockedLedger;
+    }
+}
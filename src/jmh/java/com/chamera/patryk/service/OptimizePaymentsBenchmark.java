@@ -0,0 +1,45 @@
+package com.chamera.patryk.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput of {@link PaymentOptimizerService#optimizePayments}.
+ * Run with {@code -prof gc} to also get the allocation per operation ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class OptimizePaymentsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int orderCount;
+
+    @Param({"3", "10", "30"})
+    public int methodCount;
+
+    @Param({"0", "1", "3"})
+    public int promotionsPerOrder;
+
+    private PaymentOptimizerService service;
+    private BenchmarkInstances.Instance instance;
+
+
+    @Setup
+    public void setUp() {
+        service = new PaymentOptimizerService();
+        instance = BenchmarkInstances.generate(orderCount, methodCount, promotionsPerOrder);
+    }
+
+
+    @Benchmark
+    public Map<String, BigDecimal> optimizePayments() {
+        return service.optimizePayments(instance.orders(), instance.paymentMethods());
+    }
+}
@@ -0,0 +1,99 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the per-order building blocks of {@link PaymentOptimizerService}: the sorting heuristic and every
+ * option generator, measured one order at a time against the full initial limits.
+ * Each invocation takes the next order of the instance, so the JIT cannot specialise on a single order.
+ * Run with {@code -prof gc} to also get the allocation per operation ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class OptionGeneratorsBenchmark {
+
+    @Param({"1024"})
+    public int orderCount;
+
+    @Param({"3", "10", "30"})
+    public int methodCount;
+
+    @Param({"0", "1", "3"})
+    public int promotionsPerOrder;
+
+    private PaymentOptimizerService service;
+    private Order[] orders;
+    private Map<String, PaymentMethod> paymentMethodMap;
+    private Map<String, BigDecimal> remainingLimits;
+    private final List<PaymentOption> possibleOptions = new ArrayList<>();
+    private int nextOrder;
+
+
+    @Setup
+    public void setUp() {
+        service = new PaymentOptimizerService();
+        BenchmarkInstances.Instance instance = BenchmarkInstances.generate(orderCount, methodCount, promotionsPerOrder);
+        orders = instance.orders().toArray(new Order[0]);
+        paymentMethodMap = service.buildPaymentMethodMap(instance.paymentMethods());
+        remainingLimits = service.buildInitialLimits(instance.paymentMethods());
+    }
+
+
+    private Order nextOrder() {
+        Order order = orders[nextOrder];
+        nextOrder = nextOrder + 1 == orders.length ? 0 : nextOrder + 1;
+        return order;
+    }
+
+
+    @Benchmark
+    public BigDecimal calculateMaxTheoreticalDiscount() {
+        return service.calculateMaxTheoreticalDiscount(nextOrder(), paymentMethodMap);
+    }
+
+    @Benchmark
+    public List<PaymentOption> generatePaymentOptions() {
+        return service.generatePaymentOptions(nextOrder(), paymentMethodMap, remainingLimits);
+    }
+
+    @Benchmark
+    public List<PaymentOption> addFullCardPaymentOptions() {
+        possibleOptions.clear();
+        service.addFullCardPaymentOptions(nextOrder(), paymentMethodMap, remainingLimits, possibleOptions);
+        return possibleOptions;
+    }
+
+    @Benchmark
+    public List<PaymentOption> addFullPointsOptions() {
+        possibleOptions.clear();
+        service.addFullPointsOptions(nextOrder(), paymentMethodMap, remainingLimits, possibleOptions);
+        return possibleOptions;
+    }
+
+    @Benchmark
+    public List<PaymentOption> addPartialPointsOption() {
+        possibleOptions.clear();
+        service.addPartialPointsOption(nextOrder(), paymentMethodMap, remainingLimits, possibleOptions);
+        return possibleOptions;
+    }
+
+    @Benchmark
+    public List<PaymentOption> addCardPaymentWithoutPromotionOption() {
+        possibleOptions.clear();
+        service.addCardPaymentWithoutPromotionOption(nextOrder(), paymentMethodMap, remainingLimits, possibleOptions);
+        return possibleOptions;
+    }
+}
@@ -0,0 +1,92 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.metrics.PhaseMetrics;
+import com.chamera.patryk.trace.DecisionTraceWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a {@link DecisionTraceWriter decision trace}: {@link PaymentOptimizerService#optimizePayments} untraced and
+ * traced into a discarding stream, with a fresh writer per run as in the application.
+ * Besides the wall time, the {@code solvingCpuNanos} counter sums the CPU time of the solving thread alone and
+ * {@code solves} the runs, so their ratio is the cost per run on the solving thread, without the background thread that
+ * drains the trace. On a single CPU the wall time also includes that thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class TracingOverheadBenchmark {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    @Param({"1000", "20000"})
+    public int orderCount;
+
+    @Param({"10"})
+    public int methodCount;
+
+    private PaymentOptimizerService service;
+    private BenchmarkInstances.Instance instance;
+
+
+    /**
+     * CPU time of the solving thread, reported next to the wall time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SolvingCpu {
+
+        public long solvingCpuNanos;
+        public long solves;
+
+        private long start;
+
+
+        long start() {
+            return start = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+        }
+
+        void stop() {
+            solvingCpuNanos += THREAD_MX_BEAN.getCurrentThreadCpuTime() - start;
+            solves++;
+        }
+    }
+
+
+    @Setup
+    public void setUp() {
+        service = new PaymentOptimizerService();
+        instance = BenchmarkInstances.generate(orderCount, methodCount, 2);
+    }
+
+
+    @Benchmark
+    public Map<String, BigDecimal> plain(SolvingCpu cpu) {
+        cpu.start();
+        Map<String, BigDecimal> totals = service.optimizePayments(instance.orders(), instance.paymentMethods());
+        cpu.stop();
+        return totals;
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> traced(SolvingCpu cpu) throws IOException {
+        cpu.start();
+        Map<String, BigDecimal> totals;
+        try (DecisionTraceWriter trace = new DecisionTraceWriter(OutputStream.nullOutputStream())) {
+            totals = new TracingPaymentOptimizer(PhaseMetrics.disabled(), trace, "benchmark")
+                    .optimizePayments(instance.orders(), instance.paymentMethods());
+        }
+        cpu.stop();
+        return totals;
+    }
+}
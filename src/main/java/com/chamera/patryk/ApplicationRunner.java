@@ -1,16 +1,28 @@
 package com.chamera.patryk;
 
+import com.chamera.patryk.batch.BatchManifest;
+import com.chamera.patryk.batch.BatchSolver;
 import com.chamera.patryk.config.InputValidator;
 import com.chamera.patryk.exception.ArgsValidationException;
 import com.chamera.patryk.exception.FileValidationException;
 import com.chamera.patryk.exception.ProcessingException;
+import com.chamera.patryk.metrics.PhaseMetrics;
 import com.chamera.patryk.model.Order;
 import com.chamera.patryk.model.PaymentMethod;
 import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.server.OptimizerHttpServer;
+import com.chamera.patryk.server.UnixSocketOptimizerServer;
+import com.chamera.patryk.service.InputFingerprint;
 import com.chamera.patryk.service.PaymentOptimizerService;
+import com.chamera.patryk.service.TracingPaymentOptimizer;
+import com.chamera.patryk.store.ResultStore;
+import com.chamera.patryk.trace.DecisionTraceWriter;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -21,6 +33,11 @@ import java.util.Map;
  */
 public class ApplicationRunner {
 
+    /**
+     * Solver configuration stored with every plan in the result store and in decision traces.
+     * Must be changed whenever a change to the algorithm can change its plans, so stale plans are not reused.
+     */
+    public static final String SOLVER_CONFIGURATION = "greedy-v1";
 
     /**
      * Executes the primary logic of the payment optimization application.
@@ -30,9 +47,20 @@ public class ApplicationRunner {
      * 3. Performing basic checks to ensure that data was loaded (e.g., orders list is not empty).
      * 4. Invoking the {@link PaymentOptimizerService} to determine the optimal payment distribution.
      * 5. Printing the resulting total amounts spent per payment method to standard output.
+     * With {@value InputValidator#SERVER_FLAG} as the first argument, the application instead runs as an HTTP server
+     * (see {@link #runServer(int)}), and with {@value InputValidator#SOCKET_FLAG} as a binary protocol server on a
+     * Unix domain socket (see {@link #runSocketServer(Path)}).
+     * With {@value InputValidator#BATCH_FLAG}, all instances listed in a manifest are solved in this one JVM
+     * (see {@link #runBatch(InputValidator.BatchArguments)}).
+     * With {@value InputValidator#STORE_FLAG} and a directory after the two files, a plan already solved for the same
+     * input is read from the persistent {@link ResultStore} instead of being solved again, and new plans are saved there.
+     * With {@value InputValidator#METRICS_FLAG} [text|json] as the last arguments, the wall time, CPU time and
+     * allocation of every phase and the per-order latency percentiles are printed to standard error (see {@link PhaseMetrics}).
+     * With {@value InputValidator#TRACE_FLAG} and a file right after the two files, every decision of the solver is
+     * written to a binary trace that {@code TraceReplay} can check and benchmark (see {@link TracingPaymentOptimizer}).
      *
      * @param args Command-line arguments: expected to be two strings representing
-     * the file path for orders and the file path for payment methods.
+     * the file path for orders and the file path for payment methods, or {@value InputValidator#SERVER_FLAG} [port].
      * @throws ArgsValidationException If command-line arguments are invalid.
      * @throws FileValidationException If input files are invalid or inaccessible.
      * @throws IOException If an I/O error occurs during file parsing.
@@ -40,10 +68,40 @@ public class ApplicationRunner {
      * such as empty orders or payment methods lists.
      */
     public void run(String[] args) throws ArgsValidationException, FileValidationException, IOException, ProcessingException {
+        if (InputValidator.isServerMode(args)) {
+            runServer(InputValidator.validateServerArgs(args));
+            return;
+        }
+        if (InputValidator.isSocketMode(args)) {
+            runSocketServer(InputValidator.validateSocketArgs(args));
+            return;
+        }
+        if (InputValidator.isBatchMode(args)) {
+            runBatch(InputValidator.validateBatchArgs(args));
+            return;
+        }
+        PhaseMetrics metrics = PhaseMetrics.disabled();
+        PhaseMetrics.Format metricsFormat = null;
+        if (InputValidator.hasMetricsOption(args)) {
+            metricsFormat = InputValidator.validateMetricsArgs(args);
+            args = InputValidator.withoutMetricsOption(args);
+            metrics = new PhaseMetrics();
+        }
+        Path traceFile = null;
+        if (InputValidator.hasTraceOption(args)) {
+            traceFile = InputValidator.validateTraceArgs(args);
+            args = InputValidator.withoutTraceOption(args);
+        }
+        Path storeDirectory = null;
+        if (InputValidator.hasStoreOption(args)) {
+            storeDirectory = InputValidator.validateStoreArgs(args);
+            args = Arrays.copyOf(args, InputValidator.EXPECTED_ARGS_COUNT);
+        }
         InputValidator.validateArgs(args);
 
         String ordersFilename = args[0];
         String paymentMethodFilename = args[1];
+        metrics.lap(PhaseMetrics.Phase.VALIDATE);
 
         JsonDataParser jsonDataParser = new JsonDataParser();
         List<Order> orders = jsonDataParser.parseOrders(ordersFilename);
@@ -56,19 +114,165 @@ public class ApplicationRunner {
         if (paymentMethods.isEmpty()) {
             throw new ProcessingException("No payment methods (including 'PUNKTY') were loaded from the file '" + paymentMethodFilename + "'. Cannot pay for orders.");
         }
+        metrics.lap(PhaseMetrics.Phase.PARSE);
 
-        PaymentOptimizerService paymentOptimizerService = new PaymentOptimizerService();
-        Map<String, BigDecimal> totalSpentByMethods = paymentOptimizerService.optimizePayments(orders, paymentMethods);
+        Map<String, BigDecimal> totalSpentByMethods;
+        if (traceFile == null) {
+            totalSpentByMethods = optimize(orders, paymentMethods, storeDirectory, new PaymentOptimizerService(metrics), metrics);
+        } else {
+            // odcisk liczony raz: naglowek sladu i klucz magazynu wynikow
+            InputFingerprint input = InputFingerprint.ofSequence(orders, paymentMethods);
+            try (DecisionTraceWriter trace = new DecisionTraceWriter(Files.newOutputStream(traceFile))) {
+                PaymentOptimizerService tracingService = new TracingPaymentOptimizer(metrics, trace, SOLVER_CONFIGURATION, input);
+                totalSpentByMethods = storeDirectory == null
+                        ? tracingService.optimizePayments(orders, paymentMethods)
+                        : optimizeWithStore(orders, paymentMethods, input, storeDirectory, tracingService, metrics);
+            }
+        }
 
         for (Map.Entry<String, BigDecimal> entry : totalSpentByMethods.entrySet()) {
             System.out.println(entry.getKey() + " " + entry.getValue());
         }
+        metrics.lap(PhaseMetrics.Phase.OUTPUT);
+
+        if (metricsFormat != null) {
+            System.err.print(metrics.summary(metricsFormat));
+        }
+
 
 
 
 
 
 
+    }
 
+
+    private Map<String, BigDecimal> optimize(List<Order> orders, List<PaymentMethod> paymentMethods, Path storeDirectory,
+                                             PaymentOptimizerService paymentOptimizerService, PhaseMetrics metrics) throws IOException {
+        return storeDirectory == null
+                ? paymentOptimizerService.optimizePayments(orders, paymentMethods)
+                : optimizeWithStore(orders, paymentMethods, storeDirectory, paymentOptimizerService, metrics);
+    }
+
+
+    /**
+     * Returns the plan stored for this input and solver configuration, solving and storing it if there is none.
+     *
+     * @param orders List of orders to process.
+     * @param paymentMethods Available payment methods.
+     * @param storeDirectory Directory of the result store.
+     * @param paymentOptimizerService Service solving the input if no plan is stored.
+     * @param metrics Metrics of the current run.
+     * @return Map of payment method ID to total amount spent with that method.
+     * @throws IOException If the store cannot be read or written.
+     */
+    Map<String, BigDecimal> optimizeWithStore(List<Order> orders, List<PaymentMethod> paymentMethods, Path storeDirectory,
+                                              PaymentOptimizerService paymentOptimizerService, PhaseMetrics metrics) throws IOException {
+        return optimizeWithStore(orders, paymentMethods, InputFingerprint.ofSequence(orders, paymentMethods), storeDirectory,
+                paymentOptimizerService, metrics);
+    }
+
+
+    private Map<String, BigDecimal> optimizeWithStore(List<Order> orders, List<PaymentMethod> paymentMethods, InputFingerprint input,
+                                                      Path storeDirectory, PaymentOptimizerService paymentOptimizerService,
+                                                      PhaseMetrics metrics) throws IOException {
+        InputFingerprint key = input.withConfiguration(SOLVER_CONFIGURATION);
+        try (ResultStore store = new ResultStore(storeDirectory)) {
+            Map<String, BigDecimal> totalSpentByMethods = store.get(key);
+            metrics.lap(PhaseMetrics.Phase.RESULT_STORE);
+            if (totalSpentByMethods == null) {
+                totalSpentByMethods = paymentOptimizerService.optimizePayments(orders, paymentMethods);
+                store.put(key, totalSpentByMethods);
+            }
+            return totalSpentByMethods;
+        } finally {
+            metrics.lap(PhaseMetrics.Phase.RESULT_STORE);
+        }
+    }
+
+
+    /**
+     * Solves all instances of a manifest with the {@link BatchSolver} and prints a summary.
+     *
+     * @param batchArguments Validated batch arguments.
+     * @throws IOException If the manifest, the output directory or the result store cannot be accessed.
+     * @throws FileValidationException If the manifest is malformed.
+     * @throws ProcessingException If any instance failed (its reason is in its {@code .error} file) or the batch was interrupted.
+     */
+    public void runBatch(InputValidator.BatchArguments batchArguments) throws IOException, FileValidationException, ProcessingException {
+        List<BatchManifest.Instance> instances = BatchManifest.parse(batchArguments.manifestFile());
+        if (instances.isEmpty()) {
+            throw new ProcessingException("No instances were listed in the manifest '" + batchArguments.manifestFile() + "'.");
+        }
+
+        int solverThreads = Runtime.getRuntime().availableProcessors();
+        BatchSolver.BatchSummary summary;
+        if (batchArguments.storeDirectory() == null) {
+            summary = new BatchSolver().solve(instances, batchArguments.outputDirectory());
+        } else {
+            try (ResultStore store = new ResultStore(batchArguments.storeDirectory())) {
+                summary = new BatchSolver(solverThreads, solverThreads * BatchSolver.DEFAULT_IN_FLIGHT_PER_SOLVER, store, SOLVER_CONFIGURATION)
+                        .solve(instances, batchArguments.outputDirectory());
+            }
+        }
+
+        System.out.println("Instances: " + summary.instances() + ", solved: " + summary.solved() + ", reused: " + summary.reused()
+                + ", failed: " + summary.failed().size() + ", time: " + summary.elapsedNanos() / 1_000_000 + " ms");
+        if (!summary.failed().isEmpty()) {
+            throw new ProcessingException(summary.failed().size() + " of " + summary.instances() + " instances failed: " + String.join(", ", summary.failed()) + ".");
+        }
+    }
+
+
+    /**
+     * Runs the {@link OptimizerHttpServer} until the JVM is shut down (e.g. with Ctrl+C).
+     * Turns on TCP_NODELAY for the JVM first (see {@link OptimizerHttpServer#enableTcpNoDelay()}).
+     *
+     * @param port Port to listen on.
+     * @throws IOException If the port cannot be bound.
+     * @throws ProcessingException If the server is interrupted while running.
+     */
+    public void runServer(int port) throws IOException, ProcessingException {
+        OptimizerHttpServer.enableTcpNoDelay();
+        OptimizerHttpServer server = new OptimizerHttpServer(port);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("Payment optimizer server listening on port " + server.getPort());
+        try {
+            server.awaitStop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.stop();
+            throw new ProcessingException("Server was interrupted.");
+        }
+    }
+
+
+    /**
+     * Runs the {@link UnixSocketOptimizerServer} until the JVM is shut down (e.g. with Ctrl+C).
+     *
+     * @param socketPath Path of the socket file.
+     * @throws IOException If the socket cannot be bound.
+     * @throws ProcessingException If the server is interrupted while running.
+     */
+    public void runSocketServer(Path socketPath) throws IOException, ProcessingException {
+        UnixSocketOptimizerServer server = new UnixSocketOptimizerServer(socketPath);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Error while closing the socket server: " + e.getMessage());
+            }
+        }));
+        System.out.println("Payment optimizer socket server listening on " + socketPath);
+        try {
+            server.awaitStop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.close();
+            throw new ProcessingException("Server was interrupted.");
+        }
     }
 }
@@ -16,6 +16,15 @@ public class Main {
 
     // Example command:
     // java -jar target/app.jar src/main/resources/orders.json src/main/resources/paymentmethods.json
+    // Reusing plans solved before for the same input:
+    // java -jar target/app.jar src/main/resources/orders.json src/main/resources/paymentmethods.json --store ~/.payment-plans
+    // Solving every instance listed in a manifest in one JVM:
+    // java -jar target/app.jar --batch instances.txt results/ [--store ~/.payment-plans]
+    // Printing per-phase timing and allocation metrics to standard error:
+    // java -jar target/app.jar src/main/resources/orders.json src/main/resources/paymentmethods.json --metrics json
+    // Server mode:
+    // java -jar target/app.jar --server 8080
+    // java -jar target/app.jar --socket /tmp/optimizer.sock
 
     /**
      * The main method that starts the application.
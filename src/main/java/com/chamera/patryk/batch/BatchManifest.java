@@ -0,0 +1,71 @@
+package com.chamera.patryk.batch;
+
+import com.chamera.patryk.exception.FileValidationException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Parses a batch manifest: a text file listing independent problem instances, one per line, as
+ * {@code <name> <orders file> <payment methods file>} separated by whitespace.
+ * Empty lines and lines starting with {@code #} are skipped. Relative file paths are resolved against the directory
+ * of the manifest. The name is used for the result files, so it must be unique and consist of letters, digits,
+ * dots, dashes and underscores only.
+ */
+public final class BatchManifest {
+
+    private static final Pattern INSTANCE_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final Pattern SEPARATOR = Pattern.compile("\\s+");
+
+    /**
+     * One instance of the batch.
+     *
+     * @param name Unique name of the instance.
+     * @param ordersFile Orders JSON file.
+     * @param paymentMethodsFile Payment methods JSON file.
+     */
+    public record Instance(String name, Path ordersFile, Path paymentMethodsFile) {
+    }
+
+
+    private BatchManifest() {
+    }
+
+
+    /**
+     * Reads the instances listed in a manifest file.
+     *
+     * @param manifestFile The manifest file.
+     * @return The instances, in manifest order.
+     * @throws IOException If the manifest cannot be read.
+     * @throws FileValidationException If a line is malformed or a name is repeated or invalid.
+     */
+    public static List<Instance> parse(Path manifestFile) throws IOException, FileValidationException {
+        Path baseDirectory = manifestFile.toAbsolutePath().getParent();
+        List<Instance> instances = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+
+        List<String> lines = Files.readAllLines(manifestFile);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = SEPARATOR.split(line);
+            if (columns.length != 3) {
+                throw new FileValidationException("Manifest line " + (i + 1) + " should contain <name> <orders file> <payment methods file>, got: " + line);
+            }
+            if (!INSTANCE_NAME.matcher(columns[0]).matches()) {
+                throw new FileValidationException("Manifest line " + (i + 1) + ": invalid instance name '" + columns[0] + "'.");
+            }
+            if (!names.add(columns[0])) {
+                throw new FileValidationException("Manifest line " + (i + 1) + ": duplicate instance name '" + columns[0] + "'.");
+            }
+            instances.add(new Instance(columns[0], baseDirectory.resolve(columns[1]), baseDirectory.resolve(columns[2])));
+        }
+        return instances;
+    }
+}
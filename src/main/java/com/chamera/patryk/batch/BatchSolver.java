@@ -0,0 +1,207 @@
+package com.chamera.patryk.batch;
+
+import com.chamera.patryk.config.InputValidator;
+import com.chamera.patryk.exception.ArgsValidationException;
+import com.chamera.patryk.exception.FileValidationException;
+import com.chamera.patryk.exception.ProcessingException;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.service.InputFingerprint;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import com.chamera.patryk.store.ResultStore;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves many independent instances in one JVM, so start-up and JIT warm-up are paid once per batch.
+ * <p>
+ * Every instance runs on its own virtual thread, which validates and parses the input files, writes the result and
+ * waits cheaply while blocked on I/O. The CPU-bound solve stage is handed to a fixed pool of {@code solverThreads}
+ * platform threads, so at most that many instances are solved at the same time. At most {@code maxInFlight} instances
+ * are parsed and held in memory at once, which bounds memory for very large batches.
+ * <p>
+ * For each instance {@code <name>.txt} is written to the output directory, with the same lines as the single-instance
+ * command ({@code <method id> <amount>}); an instance that fails gets {@code <name>.error} with the reason instead.
+ * A failed instance does not stop the others.
+ */
+public class BatchSolver {
+
+    /**
+     * Default number of instances parsed and held in memory at once, per solver thread.
+     */
+    public static final int DEFAULT_IN_FLIGHT_PER_SOLVER = 4;
+
+    static final String RESULT_SUFFIX = ".txt";
+    static final String ERROR_SUFFIX = ".error";
+
+    private final int solverThreads;
+    private final int maxInFlight;
+    private final ResultStore store;
+    private final String solverConfiguration;
+    private final JsonDataParser jsonDataParser = new JsonDataParser();
+
+
+    /**
+     * Outcome of a batch.
+     *
+     * @param instances Number of instances in the batch.
+     * @param solved Instances solved in this run.
+     * @param reused Instances whose plan was read from the result store.
+     * @param failed Names of the instances that failed, in manifest order.
+     * @param elapsedNanos Wall-clock time of the whole batch.
+     */
+    public record BatchSummary(int instances, int solved, int reused, List<String> failed, long elapsedNanos) {
+    }
+
+
+    /**
+     * Constructs a batch solver with one solver thread per available processor and no result store.
+     */
+    public BatchSolver() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * DEFAULT_IN_FLIGHT_PER_SOLVER, null, null);
+    }
+
+
+    /**
+     * Constructs a batch solver.
+     *
+     * @param solverThreads Number of instances solved at the same time.
+     * @param maxInFlight Number of instances parsed and held in memory at once; at least {@code solverThreads}.
+     * @param store Result store to reuse and save plans in, or {@code null}.
+     * @param solverConfiguration Solver configuration the stored plans are keyed by; required with a store.
+     * @throws IllegalArgumentException If the limits are out of range or a store is given without a configuration.
+     */
+    public BatchSolver(int solverThreads, int maxInFlight, ResultStore store, String solverConfiguration) {
+        if (solverThreads < 1) {
+            throw new IllegalArgumentException("Number of solver threads must be positive, got " + solverThreads + ".");
+        }
+        if (maxInFlight < solverThreads) {
+            throw new IllegalArgumentException("Number of instances in flight must be at least the number of solver threads (" + solverThreads + "), got " + maxInFlight + ".");
+        }
+        if (store != null && solverConfiguration == null) {
+            throw new IllegalArgumentException("A solver configuration is required with a result store.");
+        }
+        this.solverThreads = solverThreads;
+        this.maxInFlight = maxInFlight;
+        this.store = store;
+        this.solverConfiguration = solverConfiguration;
+    }
+
+
+    /**
+     * Solves all instances and writes their results.
+     *
+     * @param instances Instances to solve.
+     * @param outputDirectory Directory for the result files; created if it does not exist.
+     * @return Summary of the batch.
+     * @throws IOException If the output directory cannot be created.
+     * @throws ProcessingException If the batch is interrupted.
+     */
+    public BatchSummary solve(List<BatchManifest.Instance> instances, Path outputDirectory) throws IOException, ProcessingException {
+        Files.createDirectories(outputDirectory);
+        long start = System.nanoTime();
+        AtomicInteger solved = new AtomicInteger();
+        AtomicInteger reused = new AtomicInteger();
+        boolean[] failed = new boolean[instances.size()];
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        ExecutorService solverPool = Executors.newFixedThreadPool(solverThreads);
+        try (ExecutorService instanceExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < instances.size(); i++) {
+                inFlight.acquire();
+                int instanceIndex = i;
+                instanceExecutor.execute(() -> {
+                    BatchManifest.Instance instance = instances.get(instanceIndex);
+                    try {
+                        boolean wasReused = solveInstance(instance, outputDirectory, solverPool);
+                        (wasReused ? reused : solved).incrementAndGet();
+                    } catch (Exception e) {
+                        failed[instanceIndex] = true;
+                        writeError(instance, outputDirectory, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Batch was interrupted.");
+        } finally {
+            solverPool.shutdownNow();
+        }
+
+        List<String> failedNames = new ArrayList<>();
+        for (int i = 0; i < instances.size(); i++) {
+            if (failed[i]) {
+                failedNames.add(instances.get(i).name());
+            }
+        }
+        return new BatchSummary(instances.size(), solved.get(), reused.get(), failedNames, System.nanoTime() - start);
+    }
+
+
+    /**
+     * @return {@code true} if the plan was read from the result store.
+     */
+    private boolean solveInstance(BatchManifest.Instance instance, Path outputDirectory, ExecutorService solverPool) throws Exception {
+        String ordersFilename = instance.ordersFile().toString();
+        String paymentMethodFilename = instance.paymentMethodsFile().toString();
+        InputValidator.validateArgs(new String[]{ordersFilename, paymentMethodFilename});
+
+        List<Order> orders = jsonDataParser.parseOrders(ordersFilename);
+        List<PaymentMethod> paymentMethods = jsonDataParser.parsePaymentMethods(paymentMethodFilename);
+        if (orders.isEmpty()) {
+            throw new ProcessingException("No orders were loaded from the file '" + ordersFilename + "'.");
+        }
+        if (paymentMethods.isEmpty()) {
+            throw new ProcessingException("No payment methods were loaded from the file '" + paymentMethodFilename + "'.");
+        }
+
+        InputFingerprint key = store == null ? null : InputFingerprint.ofSequence(orders, paymentMethods).withConfiguration(solverConfiguration);
+        Map<String, BigDecimal> totalSpentByMethods = key == null ? null : store.get(key);
+        boolean wasReused = totalSpentByMethods != null;
+        if (!wasReused) {
+            Future<Map<String, BigDecimal>> solution = solverPool.submit(() -> new PaymentOptimizerService().optimizePayments(orders, paymentMethods));
+            try {
+                totalSpentByMethods = solution.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+            if (key != null) {
+                store.put(key, totalSpentByMethods);
+            }
+        }
+
+        List<String> lines = new ArrayList<>(totalSpentByMethods.size());
+        for (Map.Entry<String, BigDecimal> entry : totalSpentByMethods.entrySet()) {
+            lines.add(entry.getKey() + " " + entry.getValue());
+        }
+        Files.deleteIfExists(outputDirectory.resolve(instance.name() + ERROR_SUFFIX));
+        Files.write(outputDirectory.resolve(instance.name() + RESULT_SUFFIX), lines);
+        return wasReused;
+    }
+
+
+    private static void writeError(BatchManifest.Instance instance, Path outputDirectory, Exception e) {
+        String reason = switch (e) {
+            case ArgsValidationException validation -> "Configuration error: " + validation.getMessage();
+            case FileValidationException validation -> "Configuration error: " + validation.getMessage();
+            case IOException io -> "File access/parsing error: " + io.getMessage();
+            case ProcessingException processing -> "Processing exception: " + processing.getMessage();
+            default -> "Unexpected error occurred: " + e.getMessage();
+        };
+        try {
+            Files.deleteIfExists(outputDirectory.resolve(instance.name() + RESULT_SUFFIX));
+            Files.writeString(outputDirectory.resolve(instance.name() + ERROR_SUFFIX), reason + System.lineSeparator());
+        } catch (IOException writeError) {
+            System.err.println("Cannot write the error of instance " + instance.name() + ": " + writeError.getMessage());
+        }
+    }
+}
@@ -2,11 +2,13 @@ package com.chamera.patryk.config;
 
 import com.chamera.patryk.exception.ArgsValidationException;
 import com.chamera.patryk.exception.FileValidationException;
+import com.chamera.patryk.metrics.PhaseMetrics;
 
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Utility class for validating application startup arguments and input file paths.
@@ -21,6 +23,302 @@ public class InputValidator {
      */
     public final static int EXPECTED_ARGS_COUNT = 2;
 
+    /**
+     * The flag starting the application as a long-running HTTP server instead of solving two files.
+     */
+    public final static String SERVER_FLAG = "--server";
+
+    /**
+     * The port the server listens on when none is given.
+     */
+    public final static int DEFAULT_SERVER_PORT = 8080;
+
+    /**
+     * The flag starting the application as a binary protocol server on a Unix domain socket.
+     */
+    public final static String SOCKET_FLAG = "--socket";
+
+    /**
+     * The option, given after the two input files, naming the directory of the persistent result store.
+     */
+    public final static String STORE_FLAG = "--store";
+
+    /**
+     * The flag solving all instances listed in a manifest file in one run.
+     */
+    public final static String BATCH_FLAG = "--batch";
+
+    /**
+     * The option, given last, printing per-phase timing and allocation metrics to standard error,
+     * optionally followed by the format ({@code text} or {@code json}).
+     */
+    public final static String METRICS_FLAG = "--metrics";
+
+    /**
+     * The option, given right after the two input files, naming the file a binary decision trace is written to.
+     */
+    public final static String TRACE_FLAG = "--trace";
+
+
+    /**
+     * Validated batch mode arguments.
+     *
+     * @param manifestFile The manifest listing the instances.
+     * @param outputDirectory Directory for the per-instance results.
+     * @param storeDirectory Directory of the result store, or {@code null} if none was given.
+     */
+    public record BatchArguments(Path manifestFile, Path outputDirectory, Path storeDirectory) {
+    }
+
+
+    /**
+     * Checks whether the arguments request server mode.
+     *
+     * @param args Command-line arguments.
+     * @return {@code true} if the first argument is {@value #SERVER_FLAG}.
+     */
+    public static boolean isServerMode(String[] args) {
+        return args != null && args.length > 0 && SERVER_FLAG.equals(args[0]);
+    }
+
+
+    /**
+     * Checks whether the arguments request the Unix domain socket server.
+     *
+     * @param args Command-line arguments.
+     * @return {@code true} if the first argument is {@value #SOCKET_FLAG}.
+     */
+    public static boolean isSocketMode(String[] args) {
+        return args != null && args.length > 0 && SOCKET_FLAG.equals(args[0]);
+    }
+
+
+    /**
+     * Validates socket server arguments: {@value #SOCKET_FLAG} followed by the path of the socket file.
+     *
+     * @param args Command-line arguments.
+     * @return The socket file path.
+     * @throws ArgsValidationException If the path is missing or invalid.
+     */
+    public static Path validateSocketArgs(String[] args) throws ArgsValidationException {
+        if (args == null || args.length != 2 || !SOCKET_FLAG.equals(args[0])) {
+            throw new ArgsValidationException("Invalid socket server arguments. Expected " + SOCKET_FLAG + " <socket path>.");
+        }
+        try {
+            return Paths.get(args[1]);
+        } catch (InvalidPathException e) {
+            throw new ArgsValidationException("Socket path is invalid: '" + args[1] + "'. Reason: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Validates server mode arguments: {@value #SERVER_FLAG} optionally followed by a port number.
+     *
+     * @param args Command-line arguments.
+     * @return The port to listen on.
+     * @throws ArgsValidationException If there are too many arguments or the port is not a number between 0 and 65535.
+     */
+    public static int validateServerArgs(String[] args) throws ArgsValidationException {
+        if (args == null || args.length < 1 || args.length > 2 || !SERVER_FLAG.equals(args[0])) {
+            throw new ArgsValidationException("Invalid server arguments. Expected " + SERVER_FLAG + " [port].");
+        }
+        if (args.length == 1) {
+            return DEFAULT_SERVER_PORT;
+        }
+        try {
+            int port = Integer.parseInt(args[1]);
+            if (port < 0 || port > 65535) {
+                throw new ArgsValidationException("Server port must be between 0 and 65535, got " + port + ".");
+            }
+            return port;
+        } catch (NumberFormatException e) {
+            throw new ArgsValidationException("Server port is not a number: '" + args[1] + "'.");
+        }
+    }
+
+
+    /**
+     * Checks whether the arguments request batch mode.
+     *
+     * @param args Command-line arguments.
+     * @return {@code true} if the first argument is {@value #BATCH_FLAG}.
+     */
+    public static boolean isBatchMode(String[] args) {
+        return args != null && args.length > 0 && BATCH_FLAG.equals(args[0]);
+    }
+
+
+    /**
+     * Validates batch mode arguments: {@value #BATCH_FLAG}, the manifest file and the output directory,
+     * optionally followed by {@value #STORE_FLAG} and the result store directory.
+     *
+     * @param args Command-line arguments.
+     * @return The validated arguments.
+     * @throws ArgsValidationException If the arguments do not have this form.
+     * @throws FileValidationException If the manifest is not a readable file, or a directory path points to a file.
+     */
+    public static BatchArguments validateBatchArgs(String[] args) throws ArgsValidationException, FileValidationException {
+        boolean withStore = args != null && args.length == 5 && STORE_FLAG.equals(args[3]);
+        if (args == null || !BATCH_FLAG.equals(args[0]) || (args.length != 3 && !withStore)) {
+            throw new ArgsValidationException("Invalid batch arguments. Expected " + BATCH_FLAG + " <manifest file> <output directory> [" + STORE_FLAG + " <directory>].");
+        }
+        Path manifestFile = toPath(args[1], "Manifest file");
+        if (!Files.isRegularFile(manifestFile) || !Files.isReadable(manifestFile)) {
+            throw new FileValidationException("Manifest file not found or not readable: " + args[1]);
+        }
+        Path outputDirectory = toDirectoryPath(args[2], "Output directory");
+        Path storeDirectory = withStore ? toDirectoryPath(args[4], "Result store directory") : null;
+        return new BatchArguments(manifestFile, outputDirectory, storeDirectory);
+    }
+
+
+    /**
+     * Checks whether the arguments name a result store: the two input files followed by {@value #STORE_FLAG} and a directory.
+     *
+     * @param args Command-line arguments.
+     * @return {@code true} if the third argument is {@value #STORE_FLAG}.
+     */
+    public static boolean hasStoreOption(String[] args) {
+        return args != null && args.length == EXPECTED_ARGS_COUNT + 2 && STORE_FLAG.equals(args[EXPECTED_ARGS_COUNT]);
+    }
+
+
+    /**
+     * Validates the result store option and the input files before it.
+     *
+     * @param args Command-line arguments (orders file path, payment methods file path, {@value #STORE_FLAG}, store directory).
+     * @return The store directory.
+     * @throws ArgsValidationException If the arguments do not have this form.
+     * @throws FileValidationException If the input files are invalid, or the store path exists but is not a directory.
+     */
+    public static Path validateStoreArgs(String[] args) throws ArgsValidationException, FileValidationException {
+        if (!hasStoreOption(args)) {
+            throw new ArgsValidationException("Invalid result store arguments. Expected <orders file> <payment methods file> " + STORE_FLAG + " <directory>.");
+        }
+        validateArgs(Arrays.copyOf(args, EXPECTED_ARGS_COUNT));
+        return toDirectoryPath(args[EXPECTED_ARGS_COUNT + 1], "Result store directory");
+    }
+
+
+    /**
+     * Checks whether the arguments end with the metrics option: {@value #METRICS_FLAG}, optionally followed by a format.
+     *
+     * @param args Command-line arguments.
+     * @return {@code true} if {@value #METRICS_FLAG} is the last or the second to last argument, after the input files.
+     */
+    public static boolean hasMetricsOption(String[] args) {
+        return args != null && args.length > EXPECTED_ARGS_COUNT
+                && (METRICS_FLAG.equals(args[args.length - 1]) || (args.length > EXPECTED_ARGS_COUNT + 1 && METRICS_FLAG.equals(args[args.length - 2])));
+    }
+
+
+    /**
+     * Validates the metrics option.
+     *
+     * @param args Command-line arguments ending with {@value #METRICS_FLAG} and an optional format.
+     * @return The requested format; text if none was given.
+     * @throws ArgsValidationException If the option is missing or the format is unknown.
+     */
+    public static PhaseMetrics.Format validateMetricsArgs(String[] args) throws ArgsValidationException {
+        if (!hasMetricsOption(args)) {
+            throw new ArgsValidationException("Invalid metrics arguments. Expected " + METRICS_FLAG + " [text|json] as the last arguments.");
+        }
+        if (METRICS_FLAG.equals(args[args.length - 1])) {
+            return PhaseMetrics.Format.TEXT;
+        }
+        return switch (args[args.length - 1]) {
+            case "text" -> PhaseMetrics.Format.TEXT;
+            case "json" -> PhaseMetrics.Format.JSON;
+            default -> throw new ArgsValidationException("Unknown metrics format '" + args[args.length - 1] + "'. Expected text or json.");
+        };
+    }
+
+
+    /**
+     * Removes the metrics option from the end of the arguments.
+     *
+     * @param args Command-line arguments ending with {@value #METRICS_FLAG} and an optional format.
+     * @return The arguments before {@value #METRICS_FLAG}.
+     */
+    public static String[] withoutMetricsOption(String[] args) {
+        int metricsIndex = METRICS_FLAG.equals(args[args.length - 1]) ? args.length - 1 : args.length - 2;
+        return Arrays.copyOf(args, metricsIndex);
+    }
+
+
+    /**
+     * Checks whether the arguments request a decision trace: {@value #TRACE_FLAG} and a file right after the two input files.
+     *
+     * @param args Command-line arguments.
+     * @return {@code true} if the third argument is {@value #TRACE_FLAG}.
+     */
+    public static boolean hasTraceOption(String[] args) {
+        return args != null && args.length > EXPECTED_ARGS_COUNT && TRACE_FLAG.equals(args[EXPECTED_ARGS_COUNT]);
+    }
+
+
+    /**
+     * Validates the trace option.
+     *
+     * @param args Command-line arguments (orders file path, payment methods file path, {@value #TRACE_FLAG}, trace file, ...).
+     * @return Path of the trace file; it is created or overwritten.
+     * @throws ArgsValidationException If the option is missing or has no file.
+     * @throws FileValidationException If the path is empty, is a directory, or its parent directory does not exist.
+     */
+    public static Path validateTraceArgs(String[] args) throws ArgsValidationException, FileValidationException {
+        if (!hasTraceOption(args) || args.length < EXPECTED_ARGS_COUNT + 2) {
+            throw new ArgsValidationException("Invalid trace arguments. Expected <orders file> <payment methods file> " + TRACE_FLAG + " <file>.");
+        }
+        Path path = toPath(args[EXPECTED_ARGS_COUNT + 1], "Trace file");
+        if (Files.isDirectory(path)) {
+            throw new FileValidationException("Trace file path points to a directory: " + path);
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null && !Files.isDirectory(parent)) {
+            throw new FileValidationException("Directory of the trace file does not exist: " + parent);
+        }
+        return path;
+    }
+
+
+    /**
+     * Removes the trace option from the arguments.
+     *
+     * @param args Command-line arguments with {@value #TRACE_FLAG} and a file right after the two input files.
+     * @return The arguments without {@value #TRACE_FLAG} and its file.
+     */
+    public static String[] withoutTraceOption(String[] args) {
+        String[] remaining = new String[args.length - 2];
+        System.arraycopy(args, 0, remaining, 0, EXPECTED_ARGS_COUNT);
+        System.arraycopy(args, EXPECTED_ARGS_COUNT + 2, remaining, EXPECTED_ARGS_COUNT, args.length - EXPECTED_ARGS_COUNT - 2);
+        return remaining;
+    }
+
+
+    /**
+     * Converts a path that may not exist yet but, if it does, must be a directory.
+     */
+    private static Path toDirectoryPath(String directory, String description) throws FileValidationException {
+        Path path = toPath(directory, description);
+        if (Files.exists(path) && !Files.isDirectory(path)) {
+            throw new FileValidationException(description + " path does not point to a directory: " + directory);
+        }
+        return path;
+    }
+
+
+    private static Path toPath(String filePath, String description) throws FileValidationException {
+        if (filePath == null || filePath.trim().isEmpty()) {
+            throw new FileValidationException(description + " path cannot be null or empty.");
+        }
+        try {
+            return Paths.get(filePath);
+        } catch (InvalidPathException e) {
+            throw new FileValidationException(description + " path is invalid: '" + filePath + "'. Reason: " + e.getMessage());
+        }
+    }
+
 
     /**
      * Validates command-line arguments.
@@ -0,0 +1,17 @@
+package com.chamera.patryk.exception;
+
+
+/**
+ * Thrown by the optimizer when an order has no valid payment option left, so the orders cannot all be fully paid
+ * with the given payment methods. Unlike other runtime failures, this is an answer about valid input, not an error.
+ */
+public class NoPaymentOptionException extends RuntimeException {
+
+    /**
+     * Constructs a {@code NoPaymentOptionException} with the specified detail message.
+     * @param message the detail message.
+     */
+    public NoPaymentOptionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,149 @@
+package com.chamera.patryk.metrics;
+
+/**
+ * Fixed-size histogram of non-negative durations in nanoseconds, for percentiles without keeping every sample.
+ * <p>
+ * Buckets are log-linear: every power of two is split into {@value #SUB_BUCKETS} equal buckets, so a reported
+ * percentile is at most 12.5% above the true value, over the whole {@code long} range, in under 4 KB.
+ * Recording is a few arithmetic operations and one array increment. This class is not thread-safe.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long sum;
+    private long max;
+
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos Duration in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[bucketIndex(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+
+    /**
+     * Adds all durations recorded by another histogram.
+     *
+     * @param other The histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+
+    /**
+     * @return Number of recorded durations.
+     */
+    public long getCount() {
+        return count;
+    }
+
+
+    /**
+     * @return Sum of the recorded durations in nanoseconds.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+
+    /**
+     * @return Largest recorded duration in nanoseconds, or 0 if none was recorded.
+     */
+    public long getMax() {
+        return max;
+    }
+
+
+    /**
+     * @return Mean of the recorded durations in nanoseconds, or 0 if none was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+
+    /**
+     * Returns the duration at or below which the given share of the recorded durations fall.
+     *
+     * @param quantile Share between 0 and 1, e.g. 0.99.
+     * @return Upper bound of the bucket holding that rank (never above the maximum), or 0 if none was recorded.
+     * @throws IllegalArgumentException If the quantile is out of range.
+     */
+    public long getPercentile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1, got " + quantile + ".");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+
+    /**
+     * Returns the number of durations at or below a bound, as needed by cumulative exporters.
+     *
+     * @param nanos Upper bound in nanoseconds.
+     * @return Number of recorded durations in buckets that lie entirely at or below the bound.
+     */
+    public long getCountAtOrBelow(long nanos) {
+        long below = 0;
+        for (int i = 0; i < BUCKET_COUNT && bucketUpperBound(i) <= nanos; i++) {
+            below += counts[i];
+        }
+        return below;
+    }
+
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+
+    /**
+     * @return The largest value that falls into the bucket.
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowerBound = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + width - 1 < 0 ? Long.MAX_VALUE : lowerBound + width - 1;
+    }
+}
@@ -0,0 +1,236 @@
+package com.chamera.patryk.metrics;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of a long-lived optimizer, shared by all threads that solve and exported in the
+ * Prometheus text format.
+ * <p>
+ * Unlike {@link PhaseMetrics}, which describes one run, these metrics accumulate over the lifetime of a service.
+ * Counters are {@link LongAdder}s and latencies go to a {@link StripedHistogram}, so recording never locks and costs
+ * a few striped increments per order. Throughput is derived by the scraper, e.g.
+ * {@code rate(optimizer_orders_total[1m])} gives orders per second.
+ * <p>
+ * The remaining limit per payment method is a gauge of the most recent successful solve. To bound the number of
+ * series, at most {@value #MAX_TRACKED_METHODS} method IDs are tracked; later ones are not exported.
+ * This class is thread-safe.
+ */
+public final class OptimizerMetrics {
+
+    static final int MAX_TRACKED_METHODS = 1000;
+
+    private static final OptimizerMetrics DISABLED = new OptimizerMetrics(false);
+
+    /**
+     * Generators of payment options of the greedy optimizer.
+     */
+    public enum Generator {
+        FULL_CARD("full_card"),
+        FULL_POINTS("full_points"),
+        PARTIAL_POINTS("partial_points"),
+        CARD_WITHOUT_PROMOTION("card_without_promotion");
+
+        private final String label;
+
+        Generator(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return Value of the {@code generator} label.
+         */
+        public String label() {
+            return label;
+        }
+    }
+
+    private final boolean enabled;
+    private final StripedHistogram solveDuration = new StripedHistogram();
+    private final LongAdder solves = new LongAdder();
+    private final LongAdder orders = new LongAdder();
+    private final LongAdder infeasibleOrders = new LongAdder();
+    private final LongAdder[] candidatesGenerated = newAdders(Generator.values().length);
+    private final LongAdder[] candidatesPruned = newAdders(Generator.values().length);
+    private final Map<String, Double> remainingLimits = new ConcurrentHashMap<>();
+
+
+    /**
+     * Constructs empty metrics.
+     */
+    public OptimizerMetrics() {
+        this(true);
+    }
+
+
+    private OptimizerMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * @return Shared metrics that record nothing, for optimizers that are not monitored.
+     */
+    public static OptimizerMetrics disabled() {
+        return DISABLED;
+    }
+
+
+    /**
+     * @return {@code false} for {@link #disabled()} metrics, so callers can skip work needed only for recording.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Records the outcome of one generator for one order.
+     *
+     * @param generator The generator.
+     * @param considered Number of candidate options the generator looked at.
+     * @param generated Number of options it produced; the rest were pruned by missing methods or insufficient limits.
+     */
+    public void recordCandidates(Generator generator, int considered, int generated) {
+        if (!enabled) {
+            return;
+        }
+        candidatesGenerated[generator.ordinal()].add(generated);
+        candidatesPruned[generator.ordinal()].add(Math.max(considered - generated, 0));
+    }
+
+
+    /**
+     * Records a successful solve.
+     *
+     * @param nanos Duration of the solve in nanoseconds.
+     * @param orderCount Number of orders solved.
+     * @param remainingLimitsAfter Remaining limit of each payment method after the solve.
+     */
+    public void recordSolve(long nanos, int orderCount, Map<String, BigDecimal> remainingLimitsAfter) {
+        if (!enabled) {
+            return;
+        }
+        solveDuration.record(nanos);
+        solves.increment();
+        orders.add(orderCount);
+        for (Map.Entry<String, BigDecimal> limit : remainingLimitsAfter.entrySet()) {
+            if (remainingLimits.size() < MAX_TRACKED_METHODS || remainingLimits.containsKey(limit.getKey())) {
+                remainingLimits.put(limit.getKey(), limit.getValue().doubleValue());
+            }
+        }
+    }
+
+
+    /**
+     * Records an order for which no payment option was left, which fails its solve.
+     */
+    public void recordInfeasibleOrder() {
+        if (enabled) {
+            infeasibleOrders.increment();
+        }
+    }
+
+
+    /**
+     * @return Histogram of successful solve durations.
+     */
+    public StripedHistogram getSolveDuration() {
+        return solveDuration;
+    }
+
+
+    /**
+     * @return Number of successful solves.
+     */
+    public long getSolves() {
+        return solves.sum();
+    }
+
+
+    /**
+     * @return Number of orders in successful solves.
+     */
+    public long getOrders() {
+        return orders.sum();
+    }
+
+
+    /**
+     * @return Number of orders that could not be paid.
+     */
+    public long getInfeasibleOrders() {
+        return infeasibleOrders.sum();
+    }
+
+
+    /**
+     * @param generator A generator.
+     * @return Number of options the generator produced.
+     */
+    public long getCandidatesGenerated(Generator generator) {
+        return candidatesGenerated[generator.ordinal()].sum();
+    }
+
+
+    /**
+     * @param generator A generator.
+     * @return Number of candidates the generator looked at but did not produce.
+     */
+    public long getCandidatesPruned(Generator generator) {
+        return candidatesPruned[generator.ordinal()].sum();
+    }
+
+
+    /**
+     * @param methodId A payment method ID.
+     * @return Remaining limit of the method after the most recent solve that used it, or {@code null} if not tracked.
+     */
+    public Double getRemainingLimit(String methodId) {
+        return remainingLimits.get(methodId);
+    }
+
+
+    /**
+     * Writes all metrics, prefixed with {@code optimizer_}.
+     *
+     * @param writer The writer of the current scrape.
+     */
+    public void writeTo(PrometheusWriter writer) {
+        writer.histogram("optimizer_solve_duration_seconds", "Duration of successful optimizations.", solveDuration);
+
+        writer.family("optimizer_solves_total", "counter", "Successful optimizations.")
+                .sample("optimizer_solves_total", getSolves());
+        writer.family("optimizer_orders_total", "counter", "Orders paid by successful optimizations.")
+                .sample("optimizer_orders_total", getOrders());
+        writer.family("optimizer_infeasible_orders_total", "counter", "Orders left without any payment option.")
+                .sample("optimizer_infeasible_orders_total", getInfeasibleOrders());
+
+        writer.family("optimizer_candidates_generated_total", "counter", "Payment options produced, per generator.");
+        for (Generator generator : Generator.values()) {
+            writer.sample("optimizer_candidates_generated_total", "generator", generator.label(), getCandidatesGenerated(generator));
+        }
+        writer.family("optimizer_candidates_pruned_total", "counter",
+                "Candidate options rejected for a missing method or an insufficient limit, per generator.");
+        for (Generator generator : Generator.values()) {
+            writer.sample("optimizer_candidates_pruned_total", "generator", generator.label(), getCandidatesPruned(generator));
+        }
+
+        writer.family("optimizer_remaining_limit", "gauge", "Remaining limit per payment method after the most recent solve.");
+        for (Map.Entry<String, Double> limit : new TreeMap<>(remainingLimits).entrySet()) {
+            writer.sample("optimizer_remaining_limit", "method", limit.getKey(), limit.getValue());
+        }
+    }
+
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
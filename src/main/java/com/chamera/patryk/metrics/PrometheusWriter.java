@@ -0,0 +1,123 @@
+package com.chamera.patryk.metrics;
+
+import java.math.BigDecimal;
+
+/**
+ * Writes metric families in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * Each family starts with its {@code # HELP} and {@code # TYPE} lines, followed by its samples. Label values are
+ * escaped; names are written as given and must already be valid metric and label names.
+ * This class is not thread-safe; use one writer per scrape.
+ */
+public final class PrometheusWriter {
+
+    /**
+     * Content type of the text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder out = new StringBuilder(4096);
+
+
+    /**
+     * Starts a metric family.
+     *
+     * @param name Metric name.
+     * @param type {@code counter}, {@code gauge} or {@code histogram}.
+     * @param help Description of the metric.
+     * @return This writer.
+     */
+    public PrometheusWriter family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(escapeHelp(help)).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+
+    /**
+     * Writes a sample without labels.
+     *
+     * @param name Sample name.
+     * @param value Sample value.
+     * @return This writer.
+     */
+    public PrometheusWriter sample(String name, double value) {
+        out.append(name).append(' ').append(formatValue(value)).append('\n');
+        return this;
+    }
+
+
+    /**
+     * Writes a sample with one label.
+     *
+     * @param name Sample name.
+     * @param labelName Label name.
+     * @param labelValue Label value; escaped as needed.
+     * @param value Sample value.
+     * @return This writer.
+     */
+    public PrometheusWriter sample(String name, String labelName, String labelValue, double value) {
+        out.append(name).append('{').append(labelName).append("=\"").append(escapeLabelValue(labelValue)).append("\"} ")
+                .append(formatValue(value)).append('\n');
+        return this;
+    }
+
+
+    /**
+     * Writes a whole histogram family with durations in seconds: the cumulative {@code _bucket} series,
+     * {@code _sum} and {@code _count}.
+     *
+     * @param name Metric name, conventionally ending in {@code _seconds}.
+     * @param help Description of the metric.
+     * @param histogram The histogram to write.
+     * @return This writer.
+     */
+    public PrometheusWriter histogram(String name, String help, StripedHistogram histogram) {
+        family(name, "histogram", help);
+        long[] cumulative = histogram.getCumulativeCounts();
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            sample(name + "_bucket", "le", formatSeconds(histogram.getUpperBoundNanos(i)), cumulative[i]);
+        }
+        long total = cumulative[cumulative.length - 1];
+        sample(name + "_bucket", "le", "+Inf", total);
+        sample(name + "_sum", histogram.getSumNanos() / 1e9);
+        // _count musi byc rowny kubelkowi +Inf, nawet gdy pomiar trwa w trakcie odczytu
+        sample(name + "_count", total);
+        return this;
+    }
+
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+
+    static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+
+    static String formatSeconds(long nanos) {
+        return BigDecimal.valueOf(nanos).movePointLeft(9).stripTrailingZeros().toPlainString();
+    }
+
+
+    static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,127 @@
+package com.chamera.patryk.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of durations with fixed bucket bounds, as exported to Prometheus.
+ * <p>
+ * Every bucket, the sum and the count are {@link LongAdder}s, which spread concurrent increments over striped cells
+ * instead of contending on one value, so recording takes no lock and stays cheap under many request threads.
+ * Bucket counts are kept per bucket and made cumulative only when read. A reading taken while durations are
+ * recorded may be off by the durations in flight, which scrapers tolerate.
+ */
+public final class StripedHistogram {
+
+    /**
+     * Upper bounds of the default latency buckets in nanoseconds: 100 µs to 10 s in 1-2.5-5 steps.
+     */
+    static final long[] DEFAULT_LATENCY_BOUNDS_NANOS = {
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L,
+            10_000_000_000L
+    };
+
+    private final long[] upperBoundsNanos;
+    private final LongAdder[] bucketCounts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+
+    /**
+     * Constructs a histogram with the default latency buckets.
+     */
+    public StripedHistogram() {
+        this(DEFAULT_LATENCY_BOUNDS_NANOS);
+    }
+
+
+    /**
+     * Constructs a histogram with the given buckets; durations above the last bound fall into the {@code +Inf} bucket.
+     *
+     * @param upperBoundsNanos Inclusive upper bounds of the buckets in nanoseconds, strictly ascending.
+     * @throws IllegalArgumentException If the bounds are empty or not strictly ascending.
+     */
+    public StripedHistogram(long... upperBoundsNanos) {
+        if (upperBoundsNanos.length == 0) {
+            throw new IllegalArgumentException("A histogram needs at least one bucket bound.");
+        }
+        for (int i = 1; i < upperBoundsNanos.length; i++) {
+            if (upperBoundsNanos[i] <= upperBoundsNanos[i - 1]) {
+                throw new IllegalArgumentException("Bucket bounds must be strictly ascending: " + Arrays.toString(upperBoundsNanos));
+            }
+        }
+        this.upperBoundsNanos = upperBoundsNanos.clone();
+        this.bucketCounts = new LongAdder[upperBoundsNanos.length + 1];
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos Duration in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        int index = Arrays.binarySearch(upperBoundsNanos, value);
+        bucketCounts[index >= 0 ? index : -index - 1].increment();
+        count.increment();
+        sumNanos.add(value);
+    }
+
+
+    /**
+     * @return Number of buckets with a finite bound; the {@code +Inf} bucket comes after them.
+     */
+    public int getBucketCount() {
+        return upperBoundsNanos.length;
+    }
+
+
+    /**
+     * @param bucket Index of a finite bucket.
+     * @return Inclusive upper bound of the bucket in nanoseconds.
+     */
+    public long getUpperBoundNanos(int bucket) {
+        return upperBoundsNanos[bucket];
+    }
+
+
+    /**
+     * Returns the cumulative counts of all buckets, as the {@code le} series of a Prometheus histogram.
+     *
+     * @return Counts of durations at or below each bound, followed by the count of the {@code +Inf} bucket;
+     * non-decreasing.
+     */
+    public long[] getCumulativeCounts() {
+        long[] cumulative = new long[bucketCounts.length];
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i].sum();
+            cumulative[i] = seen;
+        }
+        return cumulative;
+    }
+
+
+    /**
+     * @return Number of recorded durations.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+
+    /**
+     * @return Sum of the recorded durations in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
@@ -0,0 +1,21 @@
+package com.chamera.patryk.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Represents a single optimization request: the orders to pay and the payment methods available for them.
+ * Used as the JSON body of requests sent to the optimizer server.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OptimizationRequest {
+
+    private List<Order> orders;
+    private List<PaymentMethod> paymentMethods;
+
+}
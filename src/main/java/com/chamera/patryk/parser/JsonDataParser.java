@@ -1,5 +1,6 @@
 package com.chamera.patryk.parser;
 
+import com.chamera.patryk.model.OptimizationRequest;
 import com.chamera.patryk.model.Order;
 import com.chamera.patryk.model.PaymentMethod;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -7,11 +8,13 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
  * Parses JSON input files into corresponding Java objects.
  * Uses Jackson ObjectMapper for deserialization of orders and payment methods.
+ * The ObjectMapper is thread-safe once configured, so a single parser can be shared by concurrent requests.
  */
 public class JsonDataParser {
 
@@ -54,4 +57,28 @@ public class JsonDataParser {
         return objectMapper.readValue(paymentMethodFile, new TypeReference<List<PaymentMethod>>() {});
     }
 
+
+    /**
+     * Parses an optimization request (orders and payment methods together) from a stream.
+     *
+     * @param inputStream The stream with the request JSON; not closed by this method.
+     * @return The parsed {@link OptimizationRequest}.
+     * @throws IOException If an I/O error occurs during reading or parsing.
+     */
+    public OptimizationRequest parseOptimizationRequest(InputStream inputStream) throws IOException {
+        return objectMapper.readValue(inputStream, OptimizationRequest.class);
+    }
+
+
+    /**
+     * Serializes a value, e.g. a map of totals spent per payment method, to JSON.
+     *
+     * @param value The value to serialize.
+     * @return UTF-8 encoded JSON.
+     * @throws IOException If the value cannot be serialized.
+     */
+    public byte[] toJsonBytes(Object value) throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
 }
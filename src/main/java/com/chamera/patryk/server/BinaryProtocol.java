@@ -0,0 +1,284 @@
+package com.chamera.patryk.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Compact binary protocol used by {@link UnixSocketOptimizerServer} and {@link UnixSocketOptimizerClient}.
+ * <p>
+ * Every message is a frame: a 4-byte big-endian payload length followed by the payload. Counts use unsigned
+ * variable-length integers (7 bits per byte), amounts are cents as zigzag-encoded variable-length longs, so
+ * the usual amounts take 2-4 bytes and negative ones still get through to validation.
+ * Payment method and promotion IDs are interned per connection: an ID is sent as its table index plus one, or as
+ * {@code 0} followed by the UTF-8 bytes of a new ID, which both sides then append to their tables. Only the client
+ * defines new IDs. Order IDs are unique per request and would only grow the tables, so they are sent inline as
+ * length and UTF-8 bytes.
+ * <pre>
+ * request:  u8 type=1 | methods: count, (id, discount, limit)* | orders: count, (inline id, value, promotions+1, id*)*
+ *           (promotions+1 = 0 means no promotion list)
+ * response: u8 status=0 | count, (id, spent)*
+ *           u8 status=1 | error message length, UTF-8 bytes
+ * </pre>
+ */
+final class BinaryProtocol {
+
+    static final byte REQUEST_OPTIMIZE = 1;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    static final int MONEY_SCALE = 2;
+
+    private BinaryProtocol() {
+    }
+
+
+    /**
+     * IDs interned on one connection, in definition order.
+     */
+    static final class IdTable {
+        private final List<String> ids = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        void write(ByteBuffer buffer, String id) {
+            Integer index = indexes.get(id);
+            if (index != null) {
+                writeVarInt(buffer, index + 1);
+                return;
+            }
+            byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(buffer, 0);
+            writeVarInt(buffer, bytes.length);
+            buffer.put(bytes);
+            define(id);
+        }
+
+        /**
+         * Writes an ID that must already be in the table, e.g. in a response.
+         * @throws IllegalArgumentException If the ID is unknown.
+         */
+        void writeKnown(ByteBuffer buffer, String id) {
+            Integer index = indexes.get(id);
+            if (index == null) {
+                throw new IllegalArgumentException("ID was not interned on this connection: " + id);
+            }
+            writeVarInt(buffer, index + 1);
+        }
+
+        String read(ByteBuffer buffer) {
+            int reference = readVarInt(buffer);
+            if (reference == 0) {
+                String id = readString(buffer);
+                define(id);
+                return id;
+            }
+            if (reference > ids.size()) {
+                throw new IllegalArgumentException("Unknown interned ID reference: " + reference);
+            }
+            return ids.get(reference - 1);
+        }
+
+        int size() {
+            return ids.size();
+        }
+
+        /**
+         * Forgets the IDs defined after the table had {@code size} entries, e.g. when the message defining them
+         * was never sent.
+         */
+        void truncate(int size) {
+            while (ids.size() > size) {
+                indexes.remove(ids.remove(ids.size() - 1));
+            }
+        }
+
+        private void define(String id) {
+            indexes.put(id, ids.size());
+            ids.add(id);
+        }
+    }
+
+
+    /**
+     * Pool of direct buffers reused across connections, so that connections do not allocate buffers per call.
+     */
+    static final class BufferPool {
+        private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+        private final int bufferSize;
+
+        BufferPool(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer buffer = freeBuffers.poll();
+            return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void release(ByteBuffer buffer) {
+            if (buffer.isDirect() && buffer.capacity() == bufferSize) {
+                freeBuffers.offer(buffer.clear());
+            }
+        }
+    }
+
+
+    /**
+     * Reads one frame.
+     *
+     * @param channel Channel to read from.
+     * @param buffer Buffer to read into if the frame fits; a larger buffer is allocated otherwise.
+     * @return Buffer positioned at the start of the payload, or {@code null} if the channel was closed between frames.
+     * @throws IOException If reading fails, the stream ends inside a frame or the frame is too large.
+     */
+    static ByteBuffer readFrame(ByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear().limit(Integer.BYTES);
+        if (!readFully(channel, buffer, true)) {
+            return null;
+        }
+        int length = buffer.getInt(0);
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        ByteBuffer payload = length <= buffer.capacity() ? buffer.clear().limit(length) : ByteBuffer.allocate(length);
+        readFully(channel, payload, false);
+        return payload.flip();
+    }
+
+
+    /**
+     * Writes one frame whose payload was encoded into {@code buffer} after the 4 bytes reserved with {@link #startFrame}.
+     */
+    static void writeFrame(ByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.putInt(0, buffer.position() - Integer.BYTES);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    /**
+     * Clears the buffer and reserves space for the frame length.
+     */
+    static ByteBuffer startFrame(ByteBuffer buffer) {
+        buffer.clear().position(Integer.BYTES);
+        return buffer;
+    }
+
+
+    static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Variable-length integer out of range.");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Variable-length integer is too long.");
+    }
+
+
+    static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Variable-length integer is too long.");
+    }
+
+
+    /**
+     * Writes an amount as zigzag-encoded cents.
+     * @throws ArithmeticException If the amount has fractions of a cent.
+     */
+    static void writeAmount(ByteBuffer buffer, BigDecimal amount) {
+        long cents = toCents(amount);
+        writeVarLong(buffer, (cents << 1) ^ (cents >> 63));
+    }
+
+
+    static BigDecimal readAmount(ByteBuffer buffer) {
+        long zigzag = readVarLong(buffer);
+        return fromCents((zigzag >>> 1) ^ -(zigzag & 1));
+    }
+
+
+    static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+
+    static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * @throws ArithmeticException If the amount has fractions of a cent.
+     */
+    static long toCents(BigDecimal amount) {
+        return amount.setScale(MONEY_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+
+    static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, MONEY_SCALE);
+    }
+
+
+    private static boolean readFully(ByteChannel channel, ByteBuffer buffer, boolean endAllowed) throws IOException {
+        boolean started = false;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (endAllowed && !started) {
+                    return false;
+                }
+                throw new EOFException("Connection closed inside a frame.");
+            }
+            started = true;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,286 @@
+package com.chamera.patryk.server;
+
+import com.chamera.patryk.exception.NoPaymentOptionException;
+import com.chamera.patryk.metrics.OptimizerMetrics;
+import com.chamera.patryk.metrics.PrometheusWriter;
+import com.chamera.patryk.metrics.StripedHistogram;
+import com.chamera.patryk.model.OptimizationRequest;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Long-running HTTP server exposing the payment optimizer, so that one warmed-up JVM serves many requests
+ * instead of starting a fresh process per optimization.
+ * Built on the JDK's {@link HttpServer}; every request is handled on its own virtual thread and solved in
+ * isolation with a shared, stateless {@link PaymentOptimizerService}. The JSON parser is created once.
+ * <p>
+ * Endpoints:
+ * <ul>
+ *     <li>{@code POST /optimize} with a body {@code {"orders": [...], "paymentMethods": [...]}} returns the totals spent
+ *     per payment method as a JSON object (200), or {@code {"error": "..."}} with 400 for an invalid request
+ *     (see {@link #validateRequest(OptimizationRequest)}), 422 when the orders cannot be paid and 500 when
+ *     the optimizer fails for any other reason.</li>
+ *     <li>{@code GET /health} returns 200.</li>
+ *     <li>{@code GET /metrics} returns {@link OptimizerMetrics} and request metrics in the Prometheus text format.</li>
+ * </ul>
+ */
+public class OptimizerHttpServer {
+
+    static final String OPTIMIZE_PATH = "/optimize";
+    static final String HEALTH_PATH = "/health";
+    static final String METRICS_PATH = "/metrics";
+
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final JsonDataParser jsonDataParser;
+    private final OptimizerMetrics optimizerMetrics;
+    private final PaymentOptimizerService paymentOptimizerService;
+    private final StripedHistogram requestDuration = new StripedHistogram();
+    private final Map<Integer, LongAdder> responsesByStatus = new ConcurrentHashMap<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+
+    /**
+     * Turns on TCP_NODELAY for every JDK {@link HttpServer} in this JVM (system property
+     * {@code sun.net.httpserver.nodelay}), unless the property is already set. Without it, Nagle's algorithm and
+     * delayed ACKs add about 40 ms to each response. The JDK reads the property once, when an {@link HttpServer} is
+     * first used, so an application's entry point calls this before it creates the first server. Code embedding
+     * the server in a larger application leaves the choice to that application.
+     */
+    public static void enableTcpNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+
+    /**
+     * Constructs a server bound to a port. The server does not accept requests until {@link #start()} is called.
+     *
+     * @param port Port to listen on; 0 picks a free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public OptimizerHttpServer(int port) throws IOException {
+        this(port, new OptimizerMetrics());
+    }
+
+
+    private OptimizerHttpServer(int port, OptimizerMetrics optimizerMetrics) throws IOException {
+        this(port, optimizerMetrics, new PaymentOptimizerService(optimizerMetrics));
+    }
+
+
+    /**
+     * Constructs a server solving with the given optimizer, which should report to the given metrics.
+     */
+    OptimizerHttpServer(int port, OptimizerMetrics optimizerMetrics, PaymentOptimizerService paymentOptimizerService) throws IOException {
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.jsonDataParser = new JsonDataParser();
+        this.optimizerMetrics = optimizerMetrics;
+        this.paymentOptimizerService = paymentOptimizerService;
+
+        httpServer.setExecutor(executor);
+        httpServer.createContext(OPTIMIZE_PATH, this::handleOptimize);
+        httpServer.createContext(HEALTH_PATH, this::handleHealth);
+        httpServer.createContext(METRICS_PATH, this::handleMetrics);
+    }
+
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        httpServer.start();
+    }
+
+
+    /**
+     * Stops the server, letting requests in progress finish for up to a second.
+     */
+    public void stop() {
+        httpServer.stop(1);
+        executor.close();
+        stopped.countDown();
+    }
+
+
+    /**
+     * Blocks until the server is stopped.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+
+    private void handleOptimize(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Method " + exchange.getRequestMethod() + " is not allowed, use POST.");
+                return;
+            }
+
+            OptimizationRequest request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = jsonDataParser.parseOptimizationRequest(body);
+            } catch (IOException e) {
+                sendError(exchange, 400, "Invalid request JSON: " + e.getMessage());
+                return;
+            }
+            if (request.getOrders() == null || request.getOrders().isEmpty()) {
+                sendError(exchange, 400, "No orders were sent. Cannot proceed with payment optimization.");
+                return;
+            }
+            if (request.getPaymentMethods() == null || request.getPaymentMethods().isEmpty()) {
+                sendError(exchange, 400, "No payment methods (including 'PUNKTY') were sent. Cannot pay for orders.");
+                return;
+            }
+            String invalid = validateRequest(request);
+            if (invalid != null) {
+                sendError(exchange, 400, invalid);
+                return;
+            }
+
+            Map<String, BigDecimal> totalSpentByMethods;
+            try {
+                totalSpentByMethods = paymentOptimizerService.optimizePayments(request.getOrders(), request.getPaymentMethods());
+            } catch (NoPaymentOptionException e) {
+                sendError(exchange, 422, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                // blad optymalizatora, nie klienta; szczegoly tylko w logu serwera
+                System.err.println("Error while optimizing payments: " + e);
+                sendError(exchange, 500, "Internal error while optimizing payments.");
+                return;
+            }
+            sendJson(exchange, 200, jsonDataParser.toJsonBytes(totalSpentByMethods));
+        } finally {
+            requestDuration.record(System.nanoTime() - start);
+            responsesByStatus.computeIfAbsent(exchange.getResponseCode(), status -> new LongAdder()).increment();
+        }
+    }
+
+
+    /**
+     * Checks every order and payment method of a parsed request, so that malformed input is answered with 400
+     * instead of failing inside the optimizer.
+     * Orders need an id, a non-negative value and no {@code null} promotions; payment methods need a unique id,
+     * a discount between 0 and 100 and a non-negative limit.
+     *
+     * @param request Request with non-empty orders and payment methods.
+     * @return Description of the first problem found, or {@code null} if the request is valid.
+     */
+    static String validateRequest(OptimizationRequest request) {
+        for (int i = 0; i < request.getOrders().size(); i++) {
+            Order order = request.getOrders().get(i);
+            if (order == null || order.getId() == null || order.getId().isBlank()) {
+                return "Order at index " + i + " has no id.";
+            }
+            if (order.getValue() == null || order.getValue().signum() < 0) {
+                return "Order " + order.getId() + " must have a non-negative value.";
+            }
+            if (order.getPromotions() != null && order.getPromotions().contains(null)) {
+                return "Order " + order.getId() + " has a null promotion.";
+            }
+        }
+        Set<String> methodIds = new HashSet<>();
+        for (int i = 0; i < request.getPaymentMethods().size(); i++) {
+            PaymentMethod paymentMethod = request.getPaymentMethods().get(i);
+            if (paymentMethod == null || paymentMethod.getId() == null || paymentMethod.getId().isBlank()) {
+                return "Payment method at index " + i + " has no id.";
+            }
+            if (!methodIds.add(paymentMethod.getId())) {
+                return "Payment method " + paymentMethod.getId() + " is listed more than once.";
+            }
+            if (paymentMethod.getDiscount() < 0 || paymentMethod.getDiscount() > 100) {
+                return "Payment method " + paymentMethod.getId() + " must have a discount between 0 and 100.";
+            }
+            if (paymentMethod.getLimit() == null || paymentMethod.getLimit().signum() < 0) {
+                return "Payment method " + paymentMethod.getId() + " must have a non-negative limit.";
+            }
+        }
+        return null;
+    }
+
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            sendJson(exchange, 200, jsonDataParser.toJsonBytes(Map.of("status", "UP")));
+        }
+    }
+
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", PrometheusWriter.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+    }
+
+
+    /**
+     * @return All metrics of this server in the Prometheus text format.
+     */
+    String scrape() {
+        PrometheusWriter writer = new PrometheusWriter();
+        optimizerMetrics.writeTo(writer);
+
+        writer.histogram("optimizer_http_request_duration_seconds", "Duration of POST /optimize requests.", requestDuration);
+        writer.family("optimizer_http_responses_total", "counter", "Responses to /optimize, per status code.");
+        for (Map.Entry<Integer, LongAdder> responses : new TreeMap<>(responsesByStatus).entrySet()) {
+            writer.sample("optimizer_http_responses_total", "status", String.valueOf(responses.getKey()), responses.getValue().sum());
+        }
+        return writer.toString();
+    }
+
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, jsonDataParser.toJsonBytes(Map.of("error", String.valueOf(message))));
+    }
+
+
+    private static void sendJson(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.chamera.patryk.server;
+
+import com.chamera.patryk.exception.ProcessingException;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.server.BinaryProtocol.IdTable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Client of {@link UnixSocketOptimizerServer}. Keeps one connection with its interned IDs and reuses its buffers,
+ * so repeated calls with the same payment methods send each method and promotion ID only once. Order IDs are sent
+ * inline, so a long-lived connection does not accumulate them.
+ * Not thread-safe; use one client per calling thread.
+ */
+public class UnixSocketOptimizerClient implements AutoCloseable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final IdTable ids = new IdTable();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+
+    /**
+     * Connects to a server.
+     * @param socketPath Path of the server's socket file.
+     * @throws IOException If the connection fails.
+     */
+    public UnixSocketOptimizerClient(Path socketPath) throws IOException {
+        this.channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socketPath));
+    }
+
+
+    /**
+     * Sends orders and payment methods to the server and returns the optimized totals.
+     * All amounts must be whole cents.
+     *
+     * @param orders List of orders to process.
+     * @param paymentMethods Available payment methods.
+     * @return Map of payment method ID to total amount spent with that method.
+     * @throws IOException If the connection fails or the response is malformed.
+     * @throws ProcessingException If the server reports an error, e.g. an order that cannot be paid.
+     * @throws ArithmeticException If an amount has fractions of a cent.
+     */
+    public Map<String, BigDecimal> optimizePayments(List<Order> orders, List<PaymentMethod> paymentMethods) throws IOException, ProcessingException {
+        writeRequest(orders, paymentMethods);
+
+        ByteBuffer response = BinaryProtocol.readFrame(channel, readBuffer);
+        if (response == null) {
+            throw new IOException("Server closed the connection.");
+        }
+        try {
+            byte status = response.get();
+            if (status == BinaryProtocol.STATUS_ERROR) {
+                throw new ProcessingException(BinaryProtocol.readString(response));
+            }
+            int count = BinaryProtocol.readVarInt(response);
+            Map<String, BigDecimal> totals = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String id = ids.read(response);
+                totals.put(id, BinaryProtocol.readAmount(response));
+            }
+            return totals;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed response from server.", e);
+        }
+    }
+
+
+    /**
+     * @return Number of IDs interned on this connection.
+     */
+    int internedIds() {
+        return ids.size();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    private void writeRequest(List<Order> orders, List<PaymentMethod> paymentMethods) throws IOException {
+        while (true) {
+            int definedIds = ids.size();
+            try {
+                ByteBuffer buffer = BinaryProtocol.startFrame(writeBuffer);
+                buffer.put(BinaryProtocol.REQUEST_OPTIMIZE);
+                BinaryProtocol.writeVarInt(buffer, paymentMethods.size());
+                for (PaymentMethod paymentMethod : paymentMethods) {
+                    ids.write(buffer, paymentMethod.getId());
+                    BinaryProtocol.writeVarInt(buffer, paymentMethod.getDiscount());
+                    BinaryProtocol.writeAmount(buffer, paymentMethod.getLimit());
+                }
+                BinaryProtocol.writeVarInt(buffer, orders.size());
+                for (Order order : orders) {
+                    BinaryProtocol.writeString(buffer, order.getId());
+                    BinaryProtocol.writeAmount(buffer, order.getValue());
+                    List<String> promotions = order.getPromotions();
+                    BinaryProtocol.writeVarInt(buffer, promotions == null ? 0 : promotions.size() + 1);
+                    if (promotions != null) {
+                        for (String promotion : promotions) {
+                            ids.write(buffer, promotion);
+                        }
+                    }
+                }
+                BinaryProtocol.writeFrame(channel, buffer);
+                return;
+            } catch (BufferOverflowException e) {
+                ids.truncate(definedIds); // te IDs nie zostaly wyslane
+                writeBuffer = ByteBuffer.allocateDirect(writeBuffer.capacity() * 2);
+            } catch (RuntimeException e) {
+                ids.truncate(definedIds);
+                throw e;
+            }
+        }
+    }
+}
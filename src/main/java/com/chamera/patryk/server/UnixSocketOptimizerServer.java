@@ -0,0 +1,224 @@
+package com.chamera.patryk.server;
+
+import com.chamera.patryk.model.OptimizationRequest;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.server.BinaryProtocol.BufferPool;
+import com.chamera.patryk.server.BinaryProtocol.IdTable;
+import com.chamera.patryk.service.PaymentOptimizerService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Optimizer server for callers on the same host, using the compact {@link BinaryProtocol} over a Unix domain socket
+ * instead of HTTP and JSON.
+ * Every connection is served by its own virtual thread with blocking reads and writes; requests on a connection are
+ * answered in order. Read and write buffers come from a shared pool and are returned when the connection closes.
+ * A malformed request is answered with an error and the connection is closed, since the interned IDs of both sides
+ * may no longer match. A well-formed but invalid request, e.g. with a negative order value, is checked by
+ * {@link OptimizerHttpServer#validateRequest} like an HTTP request and answered with an error on an open connection.
+ */
+public class UnixSocketOptimizerServer implements AutoCloseable {
+
+    private static final int POOLED_BUFFER_BYTES = 64 * 1024;
+
+    private final Path socketPath;
+    private final ServerSocketChannel serverChannel;
+    private final BufferPool bufferPool = new BufferPool(POOLED_BUFFER_BYTES);
+    private final PaymentOptimizerService paymentOptimizerService = new PaymentOptimizerService();
+    private Thread acceptor;
+
+
+    /**
+     * Constructs a server bound to a socket file. The server does not accept connections until {@link #start()} is called.
+     *
+     * @param socketPath Path of the socket file; a stale file left by a previous run is replaced.
+     * @throws IOException If the socket cannot be bound.
+     */
+    public UnixSocketOptimizerServer(Path socketPath) throws IOException {
+        this.socketPath = socketPath;
+        Files.deleteIfExists(socketPath);
+        this.serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+    }
+
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        acceptor = Thread.ofPlatform().name("uds-acceptor").daemon().start(this::acceptConnections);
+    }
+
+
+    /**
+     * Blocks until the server is closed.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public void awaitStop() throws InterruptedException {
+        acceptor.join();
+    }
+
+
+    /**
+     * Stops accepting connections and removes the socket file. Open connections finish their current request.
+     */
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        Files.deleteIfExists(socketPath);
+    }
+
+
+    private void acceptConnections() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                Thread.ofVirtual().name("uds-connection").start(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Error while accepting a connection: " + e.getMessage());
+            }
+        }
+    }
+
+
+    private void serve(SocketChannel channel) {
+        ByteBuffer readBuffer = bufferPool.acquire();
+        ByteBuffer writeBuffer = bufferPool.acquire();
+        IdTable ids = new IdTable();
+        try (channel) {
+            ByteBuffer request;
+            while ((request = BinaryProtocol.readFrame(channel, readBuffer)) != null) {
+                boolean keepOpen = respond(channel, request, ids, writeBuffer);
+                if (!keepOpen) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // polaczenie zerwane przez klienta, nic do zrobienia
+        } finally {
+            bufferPool.release(readBuffer);
+            bufferPool.release(writeBuffer);
+        }
+    }
+
+
+    /**
+     * Answers one request.
+     * @return {@code false} if the connection must be closed.
+     */
+    private boolean respond(SocketChannel channel, ByteBuffer request, IdTable ids, ByteBuffer writeBuffer) throws IOException {
+        List<PaymentMethod> paymentMethods;
+        List<Order> orders;
+        try {
+            byte type = request.get();
+            if (type != BinaryProtocol.REQUEST_OPTIMIZE) {
+                throw new IllegalArgumentException("Unknown request type: " + type);
+            }
+            paymentMethods = readPaymentMethods(request, ids);
+            orders = readOrders(request, ids);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            writeError(channel, writeBuffer, "Malformed request: " + (e.getMessage() == null ? "truncated" : e.getMessage()));
+            return false;
+        }
+
+        String invalid = OptimizerHttpServer.validateRequest(new OptimizationRequest(orders, paymentMethods));
+        if (invalid != null) {
+            writeError(channel, writeBuffer, invalid);
+            return true;
+        }
+
+        Map<String, BigDecimal> totalSpentByMethods;
+        try {
+            totalSpentByMethods = paymentOptimizerService.optimizePayments(orders, paymentMethods);
+        } catch (RuntimeException e) {
+            writeError(channel, writeBuffer, e.getMessage());
+            return true;
+        }
+        writeTotals(channel, writeBuffer, totalSpentByMethods, ids);
+        return true;
+    }
+
+
+    private static List<PaymentMethod> readPaymentMethods(ByteBuffer request, IdTable ids) {
+        int count = BinaryProtocol.readVarInt(request);
+        List<PaymentMethod> paymentMethods = new ArrayList<>(Math.min(count, request.remaining()));
+        for (int i = 0; i < count; i++) {
+            String id = ids.read(request);
+            int discount = BinaryProtocol.readVarInt(request);
+            BigDecimal limit = BinaryProtocol.readAmount(request);
+            paymentMethods.add(new PaymentMethod(id, discount, limit));
+        }
+        return paymentMethods;
+    }
+
+
+    private static List<Order> readOrders(ByteBuffer request, IdTable ids) {
+        int count = BinaryProtocol.readVarInt(request);
+        List<Order> orders = new ArrayList<>(Math.min(count, request.remaining()));
+        for (int i = 0; i < count; i++) {
+            String id = BinaryProtocol.readString(request);
+            BigDecimal value = BinaryProtocol.readAmount(request);
+            int promotionCount = BinaryProtocol.readVarInt(request) - 1;
+            List<String> promotions = null;
+            if (promotionCount >= 0) {
+                promotions = new ArrayList<>(Math.min(promotionCount, request.remaining()));
+                for (int p = 0; p < promotionCount; p++) {
+                    promotions.add(ids.read(request));
+                }
+            }
+            orders.add(new Order(id, value, promotions));
+        }
+        return orders;
+    }
+
+
+    private static void writeTotals(SocketChannel channel, ByteBuffer writeBuffer, Map<String, BigDecimal> totals, IdTable ids) throws IOException {
+        ByteBuffer buffer = writeBuffer;
+        while (true) {
+            try {
+                BinaryProtocol.startFrame(buffer);
+                buffer.put(BinaryProtocol.STATUS_OK);
+                BinaryProtocol.writeVarInt(buffer, totals.size());
+                for (Map.Entry<String, BigDecimal> entry : totals.entrySet()) {
+                    ids.writeKnown(buffer, entry.getKey());
+                    BinaryProtocol.writeAmount(buffer, entry.getValue());
+                }
+                BinaryProtocol.writeFrame(channel, buffer);
+                return;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+
+    private static void writeError(SocketChannel channel, ByteBuffer writeBuffer, String message) throws IOException {
+        ByteBuffer buffer = writeBuffer;
+        while (true) {
+            try {
+                BinaryProtocol.startFrame(buffer);
+                buffer.put(BinaryProtocol.STATUS_ERROR);
+                BinaryProtocol.writeString(buffer, String.valueOf(message));
+                BinaryProtocol.writeFrame(channel, buffer);
+                return;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+}
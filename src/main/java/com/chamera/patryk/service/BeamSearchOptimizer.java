@@ -0,0 +1,172 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Beam-search optimizer over order assignment sequences.
+ * Orders are walked in the same sorted sequence as the greedy {@link PaymentOptimizerService}. After each order
+ * only the {@code beamWidth} best partial plans are kept, ranked by accumulated discount and then by points used.
+ * Every kept plan is expanded with the options of the service's generators; plans are expanded in parallel.
+ * A partial plan is stored as a compact snapshot of remaining limits in fixed-point {@code long}s, and plans
+ * that reach exactly the same limits are merged, keeping the one with the higher discount.
+ * The beam width trades run time for quality; with a width of one the plans are those of the greedy algorithm
+ * on every instance its first pass can pay. Where the greedy algorithm needs the second pass guarded by its
+ * {@link FeasibilityOracle} certificate, a beam of width one fails like the first pass.
+ */
+public class BeamSearchOptimizer {
+
+    private static final int MIN_MONEY_SCALE = 2;
+
+    private final PaymentOptimizerService optionRules;
+    private final int beamWidth;
+
+
+    /**
+     * A partial plan: remaining limits after paying a prefix of the sorted orders.
+     * The chosen options are kept as a chain of parents, so a state costs one array and one node.
+     */
+    private static final class BeamState {
+        final long[] remainingLimits;
+        final long discount;
+        final long pointsUsed;
+        final BeamState parent;
+        final PaymentOption option;
+        final int hash;
+
+        BeamState(long[] remainingLimits, long discount, long pointsUsed, BeamState parent, PaymentOption option) {
+            this.remainingLimits = remainingLimits;
+            this.discount = discount;
+            this.pointsUsed = pointsUsed;
+            this.parent = parent;
+            this.option = option;
+            this.hash = Arrays.hashCode(remainingLimits);
+        }
+
+        boolean sameLimits(BeamState other) {
+            return hash == other.hash && Arrays.equals(remainingLimits, other.remainingLimits);
+        }
+
+        /**
+         * Best first: the highest discount, then the most points used.
+         */
+        static int compareRank(BeamState s1, BeamState s2) {
+            int discountComparison = Long.compare(s2.discount, s1.discount);
+            if (discountComparison != 0) {
+                return discountComparison;
+            }
+            return Long.compare(s2.pointsUsed, s1.pointsUsed);
+        }
+    }
+
+
+    /**
+     * Key wrapper used to merge states with identical remaining limits.
+     */
+    private record LimitsKey(BeamState state) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LimitsKey other && state.sameLimits(other.state);
+        }
+
+        @Override
+        public int hashCode() {
+            return state.hash;
+        }
+    }
+
+
+    /**
+     * Constructs a beam-search optimizer.
+     * @param beamWidth Number of partial plans kept after each order.
+     * @throws IllegalArgumentException If the beam width is not positive.
+     */
+    public BeamSearchOptimizer(int beamWidth) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("Beam width must be at least 1, got " + beamWidth + ".");
+        }
+        this.optionRules = new PaymentOptimizerService();
+        this.beamWidth = beamWidth;
+    }
+
+
+    /**
+     * Finds a payment distribution for a list of orders with beam search.
+     * The best final plan goes through the same {@link PointsRebalancer} post-pass as the greedy algorithm.
+     *
+     * @param orders List of orders to process.
+     * @param paymentMethods Available payment methods.
+     * @return Map of payment method ID to total amount spent with that method.
+     * @throws RuntimeException If no kept plan can pay an order.
+     */
+    public Map<String, BigDecimal> optimizePayments(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        Map<String, PaymentMethod> paymentMethodMap = optionRules.buildPaymentMethodMap(paymentMethods);
+        List<Order> sortedOrders = optionRules.sortOrdersByMaxTheoreticalDiscount(orders, paymentMethodMap);
+        FixedPointLimits.Catalog catalog = FixedPointLimits.Catalog.of(paymentMethods, sortedOrders, MIN_MONEY_SCALE);
+
+        List<BeamState> beam = List.of(new BeamState(catalog.initialLimits(), 0, 0, null, null));
+
+        for (Order order : sortedOrders) {
+            Stream<BeamState> states = beam.size() > 1 ? beam.parallelStream() : beam.stream();
+            List<BeamState> children = states
+                    .flatMap(state -> expand(state, order, paymentMethodMap, catalog).stream())
+                    .toList();
+
+            if (children.isEmpty()) {
+                throw PaymentOptimizerService.noPaymentOptionException(order);
+            }
+            beam = selectBest(children);
+        }
+
+        BeamState best = beam.get(0);
+        LinkedList<PaymentOption> chosenOptions = new LinkedList<>();
+        for (BeamState state = best; state.parent != null; state = state.parent) {
+            chosenOptions.addFirst(state.option);
+        }
+        Map<String, BigDecimal> remainingLimits = new HashMap<>(new FixedPointLimits(catalog, best.remainingLimits));
+        return optionRules.finishPlan(sortedOrders, new ArrayList<>(chosenOptions), paymentMethodMap, remainingLimits);
+    }
+
+
+    private List<BeamState> expand(BeamState state, Order order, Map<String, PaymentMethod> paymentMethodMap, FixedPointLimits.Catalog catalog) {
+        FixedPointLimits limitsView = new FixedPointLimits(catalog, state.remainingLimits);
+        List<PaymentOption> options = optionRules.generatePaymentOptions(order, paymentMethodMap, limitsView);
+
+        List<BeamState> children = new ArrayList<>(options.size());
+        for (PaymentOption option : options) {
+            long[] remaining = state.remainingLimits.clone();
+            long pointsUsed = state.pointsUsed;
+            for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+                int methodIndex = catalog.indexOf(charge.getKey());
+                long amount = catalog.toFixedPoint(charge.getValue());
+                remaining[methodIndex] -= amount;
+                if (methodIndex == catalog.pointsIndex()) {
+                    pointsUsed += amount;
+                }
+            }
+            long discount = state.discount + catalog.toFixedPoint(option.getCalculatedDiscountAmount());
+            children.add(new BeamState(remaining, discount, pointsUsed, state, option));
+        }
+        return children;
+    }
+
+
+    /**
+     * Merges children with identical limits (keeping the better one, the earlier one on ties)
+     * and keeps the {@code beamWidth} best, with ties broken by generation order.
+     */
+    private List<BeamState> selectBest(List<BeamState> children) {
+        Map<LimitsKey, BeamState> unique = new LinkedHashMap<>(children.size() * 2);
+        for (BeamState child : children) {
+            unique.merge(new LimitsKey(child), child, (kept, candidate) -> BeamState.compareRank(candidate, kept) < 0 ? candidate : kept);
+        }
+        List<BeamState> ranked = new ArrayList<>(unique.values());
+        ranked.sort(BeamState::compareRank);
+        return ranked.size() > beamWidth ? new ArrayList<>(ranked.subList(0, beamWidth)) : ranked;
+    }
+}
@@ -0,0 +1,257 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.metrics.PrometheusWriter;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Result cache in front of an optimizer, for callers that submit exactly the same input again
+ * (what-if tools, retries).
+ * <p>
+ * The key is the {@link InputFingerprint#ofSequence order-sensitive fingerprint} of the input, and a cache miss
+ * solves the input exactly as given, so a cached result is always the one a direct solve would return. The greedy
+ * solver breaks ties by input order, so a permutation of the same orders and methods is a different key;
+ * the input itself is not kept.
+ * <p>
+ * Entries are evicted least recently used first, when there are more than {@code maxEntries} of them or when their
+ * estimated size exceeds {@code maxBytes}. Concurrent requests with the same key are coalesced: one of them solves
+ * and the others wait for its result. Failed solves are not cached; the exception is rethrown to every waiter.
+ * This class is thread-safe.
+ */
+public class CachingPaymentOptimizer {
+
+    /**
+     * Default maximum number of cached results.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /**
+     * Default maximum estimated size of the cached results.
+     */
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int RESULT_ENTRY_BYTES = 112;
+
+    private final BiFunction<List<Order>, List<PaymentMethod>, Map<String, BigDecimal>> optimizer;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<InputFingerprint, CachedResult> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<InputFingerprint, CompletableFuture<Map<String, BigDecimal>>> inFlight = new ConcurrentHashMap<>();
+    private long cachedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * Snapshot of the cache counters.
+     *
+     * @param hits Requests answered from the cache.
+     * @param misses Requests that had to be solved.
+     * @param coalesced Requests that waited for an identical request already being solved.
+     * @param evictions Results evicted to respect the bounds.
+     * @param entries Results currently cached.
+     * @param bytes Estimated size of the results currently cached.
+     */
+    public record CacheStats(long hits, long misses, long coalesced, long evictions, int entries, long bytes) {
+
+        /**
+         * @return Share of requests that did not need their own solve, between 0 and 1.
+         */
+        public double hitRatio() {
+            long total = hits + misses + coalesced;
+            return total == 0 ? 0.0 : (double) (hits + coalesced) / total;
+        }
+
+        /**
+         * Writes the counters, prefixed with {@code optimizer_cache_}, for callers that serve this cache
+         * behind their own {@code /metrics} endpoint.
+         *
+         * @param writer The writer of the current scrape.
+         */
+        public void writeTo(PrometheusWriter writer) {
+            writer.family("optimizer_cache_hits_total", "counter", "Requests answered from the result cache.")
+                    .sample("optimizer_cache_hits_total", hits);
+            writer.family("optimizer_cache_misses_total", "counter", "Requests solved because no cached result existed.")
+                    .sample("optimizer_cache_misses_total", misses);
+            writer.family("optimizer_cache_coalesced_total", "counter", "Requests that waited for an identical request being solved.")
+                    .sample("optimizer_cache_coalesced_total", coalesced);
+            writer.family("optimizer_cache_evictions_total", "counter", "Results evicted to respect the cache bounds.")
+                    .sample("optimizer_cache_evictions_total", evictions);
+            writer.family("optimizer_cache_entries", "gauge", "Results currently cached.")
+                    .sample("optimizer_cache_entries", entries);
+            writer.family("optimizer_cache_bytes", "gauge", "Estimated size of the results currently cached.")
+                    .sample("optimizer_cache_bytes", bytes);
+            writer.family("optimizer_cache_hit_ratio", "gauge", "Share of requests that did not need their own solve.")
+                    .sample("optimizer_cache_hit_ratio", hitRatio());
+        }
+    }
+
+
+    private record CachedResult(Map<String, BigDecimal> totals, long bytes) {
+    }
+
+
+    /**
+     * Constructs a cache in front of the greedy {@link PaymentOptimizerService}, with the default bounds.
+     */
+    public CachingPaymentOptimizer() {
+        this(new PaymentOptimizerService()::optimizePayments, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+
+    /**
+     * Constructs a cache in front of any optimizer.
+     *
+     * @param optimizer The optimizer solving cache misses; it must be deterministic for the cache to be transparent.
+     * @param maxEntries Maximum number of cached results.
+     * @param maxBytes Maximum estimated size of the cached results.
+     * @throws IllegalArgumentException If a bound is not positive.
+     */
+    public CachingPaymentOptimizer(BiFunction<List<Order>, List<PaymentMethod>, Map<String, BigDecimal>> optimizer, int maxEntries, long maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive, got " + maxEntries + ".");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum cache size must be positive, got " + maxBytes + ".");
+        }
+        this.optimizer = Objects.requireNonNull(optimizer);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * Returns the payment distribution for the input, from the cache if the same input was solved before.
+     *
+     * @param orders List of orders to process.
+     * @param paymentMethods Available payment methods.
+     * @return Map of payment method ID to total amount spent with that method; a new map the caller may modify.
+     * @throws RuntimeException If an order cannot be fully paid (as thrown by the optimizer).
+     */
+    public Map<String, BigDecimal> optimizePayments(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        InputFingerprint key = InputFingerprint.ofSequence(orders, paymentMethods);
+
+        Map<String, BigDecimal> cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return new HashMap<>(cached);
+        }
+
+        CompletableFuture<Map<String, BigDecimal>> ownFlight = new CompletableFuture<>();
+        CompletableFuture<Map<String, BigDecimal>> flight = inFlight.putIfAbsent(key, ownFlight);
+        if (flight != null) {
+            coalesced.increment();
+            return new HashMap<>(await(flight));
+        }
+
+        try {
+            cached = lookup(key); // wynik mogl zostac zapisany miedzy lookup a putIfAbsent
+            if (cached != null) {
+                hits.increment();
+                ownFlight.complete(cached);
+                return new HashMap<>(cached);
+            }
+            misses.increment();
+            Map<String, BigDecimal> totals = Collections.unmodifiableMap(new HashMap<>(optimizer.apply(orders, paymentMethods)));
+            store(key, totals);
+            ownFlight.complete(totals);
+            return new HashMap<>(totals);
+        } catch (RuntimeException | Error e) {
+            ownFlight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ownFlight);
+        }
+    }
+
+
+    /**
+     * @return A snapshot of the cache counters.
+     */
+    public CacheStats getStats() {
+        synchronized (lru) {
+            return new CacheStats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), lru.size(), cachedBytes);
+        }
+    }
+
+
+    /**
+     * Removes every cached result. Counters are kept.
+     */
+    public void clear() {
+        synchronized (lru) {
+            lru.clear();
+            cachedBytes = 0;
+        }
+    }
+
+
+    private Map<String, BigDecimal> lookup(InputFingerprint key) {
+        synchronized (lru) {
+            CachedResult result = lru.get(key);
+            return result == null ? null : result.totals();
+        }
+    }
+
+
+    private void store(InputFingerprint key, Map<String, BigDecimal> totals) {
+        long bytes = estimateBytes(totals);
+        if (bytes > maxBytes) {
+            return; // pojedynczy wynik wiekszy niz caly cache
+        }
+        synchronized (lru) {
+            CachedResult previous = lru.put(key, new CachedResult(totals, bytes));
+            if (previous != null) {
+                cachedBytes -= previous.bytes();
+            }
+            cachedBytes += bytes;
+
+            Iterator<CachedResult> eldest = lru.values().iterator();
+            while (lru.size() > maxEntries || cachedBytes > maxBytes) {
+                cachedBytes -= eldest.next().bytes();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+
+    private static Map<String, BigDecimal> await(CompletableFuture<Map<String, BigDecimal>> flight) {
+        try {
+            return flight.join();
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * Rough heap size of a cached result: the entry and key objects plus, per payment method, a map node,
+     * the ID string and the amount.
+     */
+    private static long estimateBytes(Map<String, BigDecimal> totals) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (String methodId : totals.keySet()) {
+            bytes += RESULT_ENTRY_BYTES + 2L * methodId.length();
+        }
+        return bytes;
+    }
+}
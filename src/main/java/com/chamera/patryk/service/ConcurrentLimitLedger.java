@@ -0,0 +1,224 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.OnlinePaymentOptimizer.Decision;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe limit bookkeeping for settling orders in parallel checkout threads.
+ * <p>
+ * The remaining limit of every payment method is an atomic {@code long} in fixed point (cents for the usual
+ * two decimal places), and the amount spent per method is a {@link LongAdder}. A reservation charging several
+ * methods, such as the points + card split of a partial-points option, is all-or-nothing: methods are debited
+ * one by one with compare-and-set in a fixed index order, and if one of them lacks limit the methods already
+ * debited are credited back. There is no global lock, so threads only contend when they hit the same method
+ * at the same moment.
+ * <p>
+ * While a reservation is in progress its partial debits are visible, so a concurrent reservation may fail
+ * because of a debit that is rolled back a moment later. {@link #settle(Order)} tolerates this by trying
+ * the next option and regenerating options a few times.
+ * <p>
+ * The fixed-point scale is chosen once, from the limits and the orders given to the constructor, as the limits are
+ * shared by threads and cannot be rescaled later. An amount with more decimal places than that scale is rejected
+ * with an {@link IllegalArgumentException} before anything is debited.
+ */
+public class ConcurrentLimitLedger {
+
+    private static final int MIN_MONEY_SCALE = 2;
+    private static final int MAX_SETTLE_ATTEMPTS = 8;
+
+    private final PaymentOptimizerService optionRules;
+    private final Map<String, PaymentMethod> paymentMethodMap;
+    private final FixedPointLimits.Catalog catalog;
+    private final AtomicLongArray remainingLimits;
+    private final LongAdder[] spentByMethod;
+
+
+    /**
+     * Constructs a ledger with the full limit of every payment method available and nothing spent.
+     * Amounts may have as many decimal places as the limits, and at least two.
+     * @param paymentMethods Available payment methods.
+     */
+    public ConcurrentLimitLedger(List<PaymentMethod> paymentMethods) {
+        this(paymentMethods, Collections.emptyList());
+    }
+
+
+    /**
+     * Constructs a ledger with the full limit of every payment method available and nothing spent,
+     * precise enough for the given orders.
+     * @param paymentMethods Available payment methods.
+     * @param orders Orders that will be settled; their values may have more decimal places than the limits.
+     */
+    public ConcurrentLimitLedger(List<PaymentMethod> paymentMethods, List<Order> orders) {
+        this.optionRules = new PaymentOptimizerService();
+        this.paymentMethodMap = optionRules.buildPaymentMethodMap(paymentMethods);
+        this.catalog = FixedPointLimits.Catalog.of(paymentMethods, orders, MIN_MONEY_SCALE);
+        this.remainingLimits = new AtomicLongArray(catalog.initialLimits());
+        this.spentByMethod = new LongAdder[catalog.methodIds().length];
+        for (int i = 0; i < spentByMethod.length; i++) {
+            spentByMethod[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * Reserves the given charges, all or nothing.
+     *
+     * @param charges Amounts to charge per payment method.
+     * @return {@code true} if every charge was reserved, {@code false} if nothing was reserved.
+     * @throws IllegalStateException If a payment method is unknown.
+     * @throws IllegalArgumentException If an amount has more decimal places than the ledger.
+     */
+    public boolean tryReserve(Map<String, BigDecimal> charges) {
+        int[] indexes = new int[charges.size()];
+        long[] amounts = new long[charges.size()];
+        toSortedFixedPoint(charges, indexes, amounts);
+
+        for (int i = 0; i < indexes.length; i++) {
+            if (!tryDebit(indexes[i], amounts[i])) {
+                for (int j = i - 1; j >= 0; j--) {
+                    remainingLimits.addAndGet(indexes[j], amounts[j]);
+                }
+                return false;
+            }
+        }
+        for (int i = 0; i < indexes.length; i++) {
+            spentByMethod[indexes[i]].add(amounts[i]);
+        }
+        return true;
+    }
+
+
+    /**
+     * Gives back previously reserved charges, all or nothing: every charge is checked before any is credited.
+     *
+     * @param charges Amounts charged per payment method by an earlier successful reservation.
+     * @throws IllegalStateException If a payment method is unknown; nothing is given back.
+     * @throws IllegalArgumentException If an amount has more decimal places than the ledger; nothing is given back.
+     */
+    public void release(Map<String, BigDecimal> charges) {
+        int[] indexes = new int[charges.size()];
+        long[] amounts = new long[charges.size()];
+        toSortedFixedPoint(charges, indexes, amounts);
+
+        for (int i = 0; i < indexes.length; i++) {
+            spentByMethod[indexes[i]].add(-amounts[i]);
+            remainingLimits.addAndGet(indexes[i], amounts[i]);
+        }
+    }
+
+
+    /**
+     * Chooses the best option for an order under the current limits and reserves it.
+     * If a concurrent checkout takes the limit first, the next option is tried, and the options are regenerated
+     * from fresh limits a few times before giving up.
+     *
+     * @param order The order to settle.
+     * @return The reserved decision.
+     * @throws RuntimeException If the order cannot be fully paid.
+     * @throws IllegalArgumentException If the order value has more decimal places than the ledger.
+     */
+    public Decision settle(Order order) {
+        toFixedPoint(order.getValue());
+        for (int attempt = 0; attempt < MAX_SETTLE_ATTEMPTS; attempt++) {
+            List<PaymentOption> options = optionRules.generatePaymentOptions(order, paymentMethodMap, snapshotLimits());
+            if (options.isEmpty()) {
+                break;
+            }
+            for (PaymentOption option : options) {
+                if (tryReserve(option.getAmountsToChargeByMethod())) {
+                    return new Decision(order.getId(), Collections.unmodifiableMap(option.getAmountsToChargeByMethod()), option.getCalculatedDiscountAmount());
+                }
+            }
+        }
+        throw PaymentOptimizerService.noPaymentOptionException(order);
+    }
+
+
+    /**
+     * Returns the remaining limit of a payment method.
+     * @param methodId Payment method ID.
+     * @return The remaining limit.
+     * @throws IllegalStateException If the payment method is unknown.
+     */
+    public BigDecimal getRemainingLimit(String methodId) {
+        return catalog.toBigDecimal(remainingLimits.get(catalog.indexOf(methodId)));
+    }
+
+
+    /**
+     * Returns the total amount spent per payment method. Methods with nothing spent are omitted.
+     * The sums are exact once no reservation is in progress.
+     *
+     * @return Map of payment method ID to total amount spent with that method.
+     */
+    public Map<String, BigDecimal> getTotalSpentByMethod() {
+        Map<String, BigDecimal> totalSpentByMethod = new HashMap<>();
+        for (int i = 0; i < spentByMethod.length; i++) {
+            long spent = spentByMethod[i].sum();
+            if (spent != 0) {
+                totalSpentByMethod.put(catalog.methodIds()[i], catalog.toBigDecimal(spent));
+            }
+        }
+        return totalSpentByMethod;
+    }
+
+
+    private boolean tryDebit(int index, long amount) {
+        while (true) {
+            long current = remainingLimits.get(index);
+            if (current < amount) {
+                return false;
+            }
+            if (remainingLimits.compareAndSet(index, current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Converts the charges to method indexes and fixed-point amounts, sorted by index,
+     * so that every reservation debits methods in the same order.
+     */
+    private void toSortedFixedPoint(Map<String, BigDecimal> charges, int[] indexes, long[] amounts) {
+        int count = 0;
+        for (Map.Entry<String, BigDecimal> charge : charges.entrySet()) {
+            int index = catalog.indexOf(charge.getKey());
+            long amount = toFixedPoint(charge.getValue());
+            int position = count++;
+            while (position > 0 && indexes[position - 1] > index) {
+                indexes[position] = indexes[position - 1];
+                amounts[position] = amounts[position - 1];
+                position--;
+            }
+            indexes[position] = index;
+            amounts[position] = amount;
+        }
+    }
+
+
+    private long toFixedPoint(BigDecimal amount) {
+        if (amount.scale() > catalog.scale() && amount.stripTrailingZeros().scale() > catalog.scale()) {
+            throw new IllegalArgumentException("Amount " + amount.toPlainString() + " has more than " + catalog.scale()
+                    + " decimal places, the precision of this ledger; construct the ledger with the orders to settle.");
+        }
+        return catalog.toFixedPoint(amount);
+    }
+
+
+    private FixedPointLimits snapshotLimits() {
+        long[] limits = new long[remainingLimits.length()];
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = remainingLimits.get(i);
+        }
+        return new FixedPointLimits(catalog, limits);
+    }
+}
@@ -0,0 +1,251 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Guards the greedy choices of {@link PaymentOptimizerService} against making later orders unpayable.
+ * <p>
+ * Two checks are available, both ignoring discounts:
+ * <ul>
+ *     <li>An aggregate bound. In the flow network source &rarr; order &rarr; payment method &rarr; sink every
+ *     order may be paid by every method, so the maximum flow is simply the smaller of the total amount still to
+ *     pay and the total remaining limit. The oracle keeps both sums up to date, which makes this check O(1).
+ *     The amount still to pay uses each order's value minus its maximum theoretical discount, a lower bound,
+ *     so an option failing this check provably leaves the remaining orders unpayable.</li>
+ *     <li>A certificate assigning every remaining order, at its full value, to a single card or to points,
+ *     within the remaining limits. Such a plan is always offered by the generators (card payment without
+ *     promotion, full points payment), so while a certificate exists the remaining orders can certainly be paid.
+ *     Checking whether a choice keeps the certificate only looks at the methods the choice charges, so it is
+ *     O(1) per option; the certificate is rebuilt by decreasing bin packing only when the preferred choice
+ *     breaks it.</li>
+ * </ul>
+ * Without a certificate the oracle vetoes an option only when the aggregate bound proves the rest infeasible,
+ * so the greedy plan is unchanged on every instance the plain greedy pass can pay. The certificate is
+ * sufficient but not necessary: it ignores payments split between points and a card, so keeping it may give up
+ * discounts a feasible greedy choice would have kept. It is therefore meant only for a second pass after the
+ * plain one got stuck. With a certificate the preferred option is kept whenever it keeps one; otherwise the next
+ * option that does is chosen, then the first option passing the aggregate bound, and only then the preferred
+ * option again.
+ */
+class FeasibilityOracle {
+
+    private final List<Order> orders;
+    private final boolean useCertificate;
+    private final BigDecimal[] remainingMinimumPayments;
+    private final Map<String, Integer> binIndexes;
+    private final Integer[] ordersByValueDescending;
+
+    private BigDecimal totalRemainingLimit;
+    private int[] witnessBins;
+    private BigDecimal[] witnessLoads;
+    private int nextRebuildAttempt;
+    private int rebuildBackoff = 1;
+
+
+    /**
+     * Constructs an oracle and, if requested, tries to build the initial certificate.
+     *
+     * @param orders Orders in processing order.
+     * @param minimumPayments Lower bound of the amount paid for each order (same indexes as {@code orders}).
+     * @param initialLimits Limits before any order is paid.
+     * @param useCertificate {@code true} to prefer options keeping a certificate, {@code false} to veto only
+     *                       options the aggregate bound proves infeasible.
+     */
+    FeasibilityOracle(List<Order> orders, BigDecimal[] minimumPayments, Map<String, BigDecimal> initialLimits, boolean useCertificate) {
+        this.orders = orders;
+        this.useCertificate = useCertificate;
+
+        this.remainingMinimumPayments = new BigDecimal[orders.size() + 1];
+        remainingMinimumPayments[orders.size()] = BigDecimal.ZERO;
+        for (int i = orders.size() - 1; i >= 0; i--) {
+            remainingMinimumPayments[i] = remainingMinimumPayments[i + 1].add(minimumPayments[i]);
+        }
+
+        this.totalRemainingLimit = initialLimits.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        this.binIndexes = new HashMap<>();
+        if (!useCertificate) {
+            this.ordersByValueDescending = null;
+            return;
+        }
+
+        for (String methodId : initialLimits.keySet()) {
+            binIndexes.put(methodId, binIndexes.size());
+        }
+        this.ordersByValueDescending = new Integer[orders.size()];
+        for (int i = 0; i < orders.size(); i++) {
+            ordersByValueDescending[i] = i;
+        }
+        Arrays.sort(ordersByValueDescending, (i1, i2) -> orders.get(i2).getValue().compareTo(orders.get(i1).getValue()));
+        buildWitness(-1, initialLimits, Collections.emptyMap());
+    }
+
+
+    /**
+     * @return {@code true} if the oracle currently holds a certificate that the remaining orders can be paid.
+     */
+    boolean hasCertificate() {
+        return witnessBins != null;
+    }
+
+
+    /**
+     * Chooses the option to apply for an order and updates the oracle as if it had been applied.
+     *
+     * @param orderIndex Index of the order in processing order.
+     * @param options Valid options for the order, best first; must not be empty.
+     * @param remainingLimits Remaining limits before the option is applied.
+     * @return The option to apply.
+     */
+    PaymentOption choose(int orderIndex, List<PaymentOption> options, Map<String, BigDecimal> remainingLimits) {
+        PaymentOption chosen = selectOption(orderIndex, options, remainingLimits);
+        totalRemainingLimit = totalRemainingLimit.subtract(totalCharge(chosen));
+        return chosen;
+    }
+
+
+    private PaymentOption selectOption(int orderIndex, List<PaymentOption> options, Map<String, BigDecimal> remainingLimits) {
+        PaymentOption preferred = options.get(0);
+        if (orderIndex == orders.size() - 1) {
+            return preferred;
+        }
+        if (!useCertificate) {
+            return firstPassingAggregateBound(orderIndex, options);
+        }
+
+        if (witnessBins != null && keepsWitness(orderIndex, preferred, remainingLimits)) {
+            releaseWitnessOrder(orderIndex);
+            return preferred;
+        }
+        if (shouldTryRebuild(orderIndex) && buildWitness(orderIndex, remainingLimits, preferred.getAmountsToChargeByMethod())) {
+            return preferred;
+        }
+        if (witnessBins != null) {
+            for (PaymentOption option : options) {
+                if (keepsWitness(orderIndex, option, remainingLimits)) {
+                    releaseWitnessOrder(orderIndex);
+                    return option;
+                }
+            }
+            witnessBins = null; // zadna opcja nie zachowuje certyfikatu
+            witnessLoads = null;
+        }
+        return firstPassingAggregateBound(orderIndex, options);
+    }
+
+
+    /**
+     * @return The first option after which the remaining limits still cover the lower bound of the amount
+     *         still to pay, or the preferred option if none does.
+     */
+    private PaymentOption firstPassingAggregateBound(int orderIndex, List<PaymentOption> options) {
+        BigDecimal stillToPay = remainingMinimumPayments[orderIndex + 1];
+        for (PaymentOption option : options) {
+            if (totalRemainingLimit.subtract(totalCharge(option)).compareTo(stillToPay) >= 0) {
+                return option;
+            }
+        }
+        return options.get(0);
+    }
+
+
+    /**
+     * Checks whether the certificate stays valid after the option is applied. Only the charged methods lose limit
+     * and only the bin of the current order loses load, so just the charged methods need checking.
+     */
+    private boolean keepsWitness(int orderIndex, PaymentOption option, Map<String, BigDecimal> remainingLimits) {
+        int ownBin = witnessBins[orderIndex];
+        for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+            int bin = binIndexes.get(charge.getKey());
+            BigDecimal load = bin == ownBin ? witnessLoads[bin].subtract(orders.get(orderIndex).getValue()) : witnessLoads[bin];
+            BigDecimal limitAfter = remainingLimits.get(charge.getKey()).subtract(charge.getValue());
+            if (load.compareTo(limitAfter) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void releaseWitnessOrder(int orderIndex) {
+        int bin = witnessBins[orderIndex];
+        witnessLoads[bin] = witnessLoads[bin].subtract(orders.get(orderIndex).getValue());
+        witnessBins[orderIndex] = -1;
+    }
+
+
+    /**
+     * Rebuilding is retried with exponential backoff after a failed attempt, so that tight instances
+     * do not pay for a packing attempt on every order.
+     */
+    private boolean shouldTryRebuild(int orderIndex) {
+        return orderIndex >= nextRebuildAttempt;
+    }
+
+
+    /**
+     * Packs the orders after {@code orderIndex}, whole and at full value, into the limits left once
+     * {@code charges} are applied, and replaces the certificate on success. Worst-fit decreasing is tried first,
+     * because spreading the load leaves slack in every method and the certificate then survives more of the
+     * greedy choices; best-fit decreasing, which packs tighter, is the fallback.
+     *
+     * @return {@code true} if a certificate was found.
+     */
+    private boolean buildWitness(int orderIndex, Map<String, BigDecimal> remainingLimits, Map<String, BigDecimal> charges) {
+        if (pack(orderIndex, remainingLimits, charges, false) || pack(orderIndex, remainingLimits, charges, true)) {
+            rebuildBackoff = 1;
+            return true;
+        }
+        nextRebuildAttempt = orderIndex + rebuildBackoff;
+        rebuildBackoff *= 2;
+        return false;
+    }
+
+
+    private boolean pack(int orderIndex, Map<String, BigDecimal> remainingLimits, Map<String, BigDecimal> charges, boolean bestFit) {
+        TreeMap<BigDecimal, ArrayDeque<Integer>> binsByCapacity = new TreeMap<>();
+        for (Map.Entry<String, Integer> bin : binIndexes.entrySet()) {
+            BigDecimal capacity = remainingLimits.get(bin.getKey()).subtract(charges.getOrDefault(bin.getKey(), BigDecimal.ZERO));
+            binsByCapacity.computeIfAbsent(capacity, c -> new ArrayDeque<>()).add(bin.getValue());
+        }
+
+        int[] bins = new int[orders.size()];
+        Arrays.fill(bins, -1);
+        BigDecimal[] loads = new BigDecimal[binIndexes.size()];
+        Arrays.fill(loads, BigDecimal.ZERO);
+
+        for (int index : ordersByValueDescending) {
+            if (index <= orderIndex) {
+                continue;
+            }
+            BigDecimal value = orders.get(index).getValue();
+            Map.Entry<BigDecimal, ArrayDeque<Integer>> target = bestFit ? binsByCapacity.ceilingEntry(value) : binsByCapacity.lastEntry();
+            if (target == null || target.getKey().compareTo(value) < 0) {
+                return false;
+            }
+            int bin = target.getValue().poll();
+            if (target.getValue().isEmpty()) {
+                binsByCapacity.remove(target.getKey());
+            }
+            binsByCapacity.computeIfAbsent(target.getKey().subtract(value), c -> new ArrayDeque<>()).add(bin);
+            bins[index] = bin;
+            loads[bin] = loads[bin].add(value);
+        }
+
+        witnessBins = bins;
+        witnessLoads = loads;
+        return true;
+    }
+
+
+    private static BigDecimal totalCharge(PaymentOption option) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal amount : option.getAmountsToChargeByMethod().values()) {
+            total = total.add(amount);
+        }
+        return total;
+    }
+}
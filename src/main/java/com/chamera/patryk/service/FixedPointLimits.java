@@ -0,0 +1,108 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Read-only map view of remaining limits stored as fixed-point {@code long}s, one per payment method.
+ * Lets the option generators of {@link PaymentOptimizerService}, which read limits from a
+ * {@code Map<String, BigDecimal>}, work directly on compact primitive snapshots.
+ */
+class FixedPointLimits extends AbstractMap<String, BigDecimal> {
+
+    private final Catalog catalog;
+    private final long[] limits;
+
+
+    /**
+     * Payment methods indexed by position, with the common scale used for all fixed-point amounts.
+     * The scale is the largest scale of any limit or order value (at least {@code minScale}), so every amount
+     * the option generators produce (differences of those values and discounts rounded to two decimal places)
+     * converts to a {@code long} without rounding.
+     */
+    record Catalog(String[] methodIds, Map<String, Integer> indexes, int scale, int pointsIndex, long[] baseLimits) {
+
+        static Catalog of(List<PaymentMethod> paymentMethods, List<Order> orders, int minScale) {
+            Map<String, BigDecimal> limitsById = new LinkedHashMap<>();
+            int scale = minScale;
+            for (PaymentMethod paymentMethod : paymentMethods) {
+                limitsById.put(paymentMethod.getId(), paymentMethod.getLimit());
+                scale = Math.max(scale, paymentMethod.getLimit().scale());
+            }
+            for (Order order : orders) {
+                scale = Math.max(scale, order.getValue().scale());
+            }
+
+            String[] methodIds = limitsById.keySet().toArray(new String[0]);
+            Map<String, Integer> indexes = new HashMap<>();
+            long[] initialLimits = new long[methodIds.length];
+            for (int i = 0; i < methodIds.length; i++) {
+                indexes.put(methodIds[i], i);
+                initialLimits[i] = limitsById.get(methodIds[i]).setScale(scale).unscaledValue().longValueExact();
+            }
+            int pointsIndex = indexes.getOrDefault(PaymentOptimizerService.POINTS_ID_STRING, -1);
+            return new Catalog(methodIds, indexes, scale, pointsIndex, initialLimits);
+        }
+
+        /**
+         * @return A fresh copy of the full limits, safe to modify.
+         */
+        long[] initialLimits() {
+            return baseLimits.clone();
+        }
+
+        int indexOf(String methodId) {
+            Integer index = indexes.get(methodId);
+            if (index == null) {
+                throw new IllegalStateException("Error while applying payment limit");
+            }
+            return index;
+        }
+
+        /**
+         * Converts an amount to fixed point.
+         * @throws ArithmeticException If the amount has more decimal places than the catalog scale.
+         */
+        long toFixedPoint(BigDecimal amount) {
+            return amount.setScale(scale).unscaledValue().longValueExact();
+        }
+
+        BigDecimal toBigDecimal(long amount) {
+            return BigDecimal.valueOf(amount, scale);
+        }
+    }
+
+
+    FixedPointLimits(Catalog catalog, long[] limits) {
+        this.catalog = catalog;
+        this.limits = limits;
+    }
+
+    @Override
+    public BigDecimal get(Object key) {
+        Integer index = catalog.indexes().get(key);
+        return index == null ? null : catalog.toBigDecimal(limits[index]);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return catalog.indexes().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return limits.length;
+    }
+
+    @Override
+    public Set<Entry<String, BigDecimal>> entrySet() {
+        Set<Entry<String, BigDecimal>> entries = new LinkedHashSet<>();
+        for (int i = 0; i < limits.length; i++) {
+            entries.add(new SimpleImmutableEntry<>(catalog.methodIds()[i], catalog.toBigDecimal(limits[i])));
+        }
+        return Collections.unmodifiableSet(entries);
+    }
+}
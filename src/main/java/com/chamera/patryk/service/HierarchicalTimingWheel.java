@@ -0,0 +1,165 @@
+package com.chamera.patryk.service;
+
+import java.util.function.Predicate;
+
+/**
+ * Hierarchical timing wheel for {@link Hold} expiry, so that expired holds are found without scanning all of them.
+ * <p>
+ * Time is counted in ticks. There are {@value #LEVELS} levels of {@value #SLOTS} slots; a slot of level {@code n}
+ * spans {@code 64^n} ticks. A hold is put in the lowest level that can hold its distance to the deadline, and
+ * whenever a level completes a revolution the next slot of the level above is cascaded down. Adding a hold is
+ * O(1) and each hold is cascaded at most once per level. Deadlines beyond the top level are parked in its
+ * farthest slot and re-placed when that slot is cascaded.
+ * <p>
+ * Slots are intrusive doubly linked lists through {@link Hold#prevInWheel} and {@link Hold#nextInWheel}, and every
+ * hold remembers its slot, so a committed or released hold is {@link #remove removed} in O(1) instead of staying
+ * in the wheel until its deadline.
+ * Not thread-safe; {@link HoldManager} guards every wheel with its own lock.
+ */
+class HierarchicalTimingWheel {
+
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 4;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DISTANCE = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final Hold[][] slots = new Hold[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+
+    /**
+     * Constructs an empty wheel.
+     * @param startTick Tick the wheel starts at.
+     */
+    HierarchicalTimingWheel(long startTick) {
+        this.currentTick = startTick;
+    }
+
+
+    /**
+     * @return Number of holds in the wheel.
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Adds a hold. A deadline that has already passed is due at the next tick.
+     * @param hold The hold to add.
+     */
+    void add(Hold hold) {
+        place(hold, 1);
+        size++;
+    }
+
+
+    /**
+     * Removes a hold before its deadline.
+     * @param hold The hold to remove.
+     * @return {@code true} if the hold was in the wheel, {@code false} if it had already come due.
+     */
+    boolean remove(Hold hold) {
+        if (hold.slotInWheel < 0) {
+            return false;
+        }
+        Hold previous = hold.prevInWheel;
+        Hold next = hold.nextInWheel;
+        if (previous == null) {
+            slots[hold.slotInWheel >>> SLOT_BITS][hold.slotInWheel & SLOT_MASK] = next;
+        } else {
+            previous.nextInWheel = next;
+        }
+        if (next != null) {
+            next.prevInWheel = previous;
+        }
+        unlink(hold);
+        size--;
+        return true;
+    }
+
+
+    /**
+     * Advances the wheel to a tick and passes every hold whose deadline is reached to the callback.
+     *
+     * @param targetTick Tick to advance to; ignored if not after the current tick.
+     * @param onDue Callback for due holds, returning {@code true} if the hold actually expired.
+     * @return Number of due holds for which the callback returned {@code true}.
+     */
+    int advanceTo(long targetTick, Predicate<Hold> onDue) {
+        int expired = 0;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+            if ((currentTick & SLOT_MASK) == 0) {
+                cascade(1);
+            }
+
+            int slot = (int) (currentTick & SLOT_MASK);
+            Hold hold = slots[0][slot];
+            slots[0][slot] = null;
+            while (hold != null) {
+                Hold next = hold.nextInWheel;
+                unlink(hold);
+                if (hold.deadlineTick <= currentTick) {
+                    size--;
+                    if (onDue.test(hold)) {
+                        expired++;
+                    }
+                } else {
+                    place(hold, 1);
+                }
+                hold = next;
+            }
+        }
+        return expired;
+    }
+
+
+    private void cascade(int level) {
+        int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        if (slot == 0 && level + 1 < LEVELS) {
+            cascade(level + 1);
+        }
+        Hold hold = slots[level][slot];
+        slots[level][slot] = null;
+        while (hold != null) {
+            Hold next = hold.nextInWheel;
+            unlink(hold);
+            place(hold, 0); // slot biezacego ticku jest przetwarzany zaraz po kaskadzie
+            hold = next;
+        }
+    }
+
+
+    private void place(Hold hold, long minDistance) {
+        long deadline = Math.max(hold.deadlineTick, currentTick + minDistance);
+        long distance = Math.min(deadline - currentTick, MAX_DISTANCE);
+        deadline = currentTick + distance;
+
+        int level = 0;
+        while (level < LEVELS - 1 && distance >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Hold head = slots[level][slot];
+        if (head != null) {
+            head.prevInWheel = hold;
+        }
+        hold.nextInWheel = head;
+        hold.slotInWheel = level << SLOT_BITS | slot;
+        slots[level][slot] = hold;
+    }
+
+
+    private static void unlink(Hold hold) {
+        hold.prevInWheel = null;
+        hold.nextInWheel = null;
+        hold.slotInWheel = -1;
+    }
+}
@@ -0,0 +1,79 @@
+package com.chamera.patryk.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Reservation of payment limits made by {@link HoldManager}, valid until committed, released or expired.
+ * The state is changed with compare-and-set, so exactly one of commit, release and expiry wins.
+ * The hold is also its own entry in the {@link HierarchicalTimingWheel}, so a reservation allocates no timer node.
+ */
+public final class Hold {
+
+    /**
+     * Lifecycle of a hold. Only {@code HELD} can change, to any of the other states.
+     */
+    public enum State {
+        HELD, COMMITTED, RELEASED, EXPIRED
+    }
+
+    private static final State[] STATES = State.values();
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Hold.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long id;
+    private final Map<String, BigDecimal> charges;
+    private volatile int state;
+
+    final long deadlineTick;
+    final int wheelIndex;
+    Hold prevInWheel;
+    Hold nextInWheel;
+    int slotInWheel = -1; // poziom i slot w kole, -1 poza kolem; zmieniane pod blokada kola
+
+
+    Hold(long id, Map<String, BigDecimal> charges, long deadlineTick, int wheelIndex) {
+        this.id = id;
+        this.charges = charges;
+        this.deadlineTick = deadlineTick;
+        this.wheelIndex = wheelIndex;
+    }
+
+
+    /**
+     * @return ID of the hold, unique within its {@link HoldManager}.
+     */
+    public long getId() {
+        return id;
+    }
+
+
+    /**
+     * @return Amounts held per payment method.
+     */
+    public Map<String, BigDecimal> getCharges() {
+        return charges;
+    }
+
+
+    /**
+     * @return Current state of the hold.
+     */
+    public State getState() {
+        return STATES[state];
+    }
+
+
+    boolean finish(State newState) {
+        return STATE.compareAndSet(this, State.HELD.ordinal(), newState.ordinal());
+    }
+}
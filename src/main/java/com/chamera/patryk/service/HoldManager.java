@@ -0,0 +1,234 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.PaymentMethod;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Two-phase reservation of payment limits for checkout: a payment plan is held first and captured seconds later,
+ * or never.
+ * <p>
+ * {@link #reserve(Map, long)} takes the limits of a plan from a {@link ConcurrentLimitLedger} and returns a
+ * {@link Hold} with a time to live. {@link #commit(Hold)} makes the charges final and {@link #release(Hold)}
+ * gives them back. A hold that is neither committed nor released before its TTL is released automatically.
+ * <p>
+ * Expiry is driven by {@link HierarchicalTimingWheel}s instead of a scan over all holds. To avoid contention, holds
+ * are spread over several wheels by the reserving thread, each guarded by its own lock. Exactly one of commit,
+ * release and expiry wins the compare-and-set on the hold state; a committed or released hold is then unlinked from
+ * its wheel in O(1), so finished holds do not pile up until their deadlines. A hold is its own timer entry, so no
+ * timer node is allocated; a reservation still allocates the hold, a copy of its charges and the ledger's
+ * per-reservation arrays.
+ * A reaper thread advances the wheels every tick until the manager is closed.
+ */
+public class HoldManager implements AutoCloseable {
+
+    private static final long REAPER_JOIN_MILLIS = 1_000;
+
+    private final ConcurrentLimitLedger ledger;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final long tickNanos;
+    private final HierarchicalTimingWheel[] wheels;
+    private final int wheelMask;
+    private final AtomicLong nextHoldId = new AtomicLong();
+    private final Predicate<Hold> expireAction = this::expire;
+    private final Thread reaper;
+
+    private volatile boolean closed;
+
+
+    /**
+     * Constructs a hold manager and starts its reaper thread.
+     *
+     * @param paymentMethods Available payment methods with their full limits.
+     * @param tickMillis Expiry resolution; a hold expires at most one tick after its TTL.
+     * @throws IllegalArgumentException If the tick is not positive.
+     */
+    public HoldManager(List<PaymentMethod> paymentMethods, long tickMillis) {
+        this(new ConcurrentLimitLedger(paymentMethods), tickMillis, System::nanoTime, true);
+    }
+
+
+    HoldManager(ConcurrentLimitLedger ledger, long tickMillis, LongSupplier nanoClock, boolean startReaper) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be at least 1 ms, got " + tickMillis + ".");
+        }
+        this.ledger = ledger;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+
+        int wheelCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.wheels = new HierarchicalTimingWheel[wheelCount];
+        for (int i = 0; i < wheelCount; i++) {
+            wheels[i] = new HierarchicalTimingWheel(0);
+        }
+        this.wheelMask = wheelCount - 1;
+
+        if (startReaper) {
+            this.reaper = new Thread(this::runReaper, "hold-reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        } else {
+            this.reaper = null;
+        }
+    }
+
+
+    /**
+     * Holds the charges of a payment plan for a limited time.
+     *
+     * @param charges Amounts to hold per payment method, e.g. the charges of a chosen payment option.
+     * @param ttlMillis Time after which an uncommitted hold is released.
+     * @return The hold, or {@code null} if a method lacks limit; nothing is held in that case.
+     * @throws IllegalArgumentException If the TTL is not positive.
+     * @throws IllegalStateException If a payment method is unknown.
+     */
+    public Hold reserve(Map<String, BigDecimal> charges, long ttlMillis) {
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("TTL must be at least 1 ms, got " + ttlMillis + ".");
+        }
+        if (!ledger.tryReserve(charges)) {
+            return null;
+        }
+        long deadlineNanos = nanoClock.getAsLong() - startNanos + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+        int wheelIndex = (int) Thread.currentThread().threadId() & wheelMask;
+        Hold hold = new Hold(nextHoldId.incrementAndGet(), Map.copyOf(charges), deadlineTick, wheelIndex);
+
+        HierarchicalTimingWheel wheel = wheels[wheelIndex];
+        synchronized (wheel) {
+            wheel.add(hold);
+        }
+        return hold;
+    }
+
+
+    /**
+     * Makes the charges of a hold final.
+     * @param hold The hold to commit.
+     * @return {@code true} if committed, {@code false} if the hold was already released, expired or committed.
+     */
+    public boolean commit(Hold hold) {
+        if (hold.finish(Hold.State.COMMITTED)) {
+            removeFromWheel(hold);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Gives the charges of a hold back.
+     * @param hold The hold to release.
+     * @return {@code true} if released, {@code false} if the hold was already committed, expired or released.
+     */
+    public boolean release(Hold hold) {
+        if (hold.finish(Hold.State.RELEASED)) {
+            removeFromWheel(hold);
+            ledger.release(hold.getCharges());
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Releases every hold whose TTL has passed. Called by the reaper thread every tick; may also be called directly.
+     * @return Number of holds expired by this call.
+     */
+    public long expireHolds() {
+        long nowTick = (nanoClock.getAsLong() - startNanos) / tickNanos;
+        long expired = 0;
+        for (HierarchicalTimingWheel wheel : wheels) {
+            synchronized (wheel) {
+                expired += wheel.advanceTo(nowTick, expireAction);
+            }
+        }
+        return expired;
+    }
+
+
+    /**
+     * @return Number of holds waiting in the timing wheels; committed, released and expired holds are not counted.
+     */
+    int pendingHolds() {
+        int pending = 0;
+        for (HierarchicalTimingWheel wheel : wheels) {
+            synchronized (wheel) {
+                pending += wheel.size();
+            }
+        }
+        return pending;
+    }
+
+
+    /**
+     * @return The ledger the holds are taken from.
+     */
+    public ConcurrentLimitLedger getLedger() {
+        return ledger;
+    }
+
+
+    /**
+     * Stops the reaper thread and waits up to a second for it to finish a pass already under way, so no hold
+     * expires after this method returns. Holds still open stay held.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (reaper == null) {
+            return;
+        }
+        reaper.interrupt();
+        try {
+            reaper.join(REAPER_JOIN_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * @return Whether the reaper thread is still running.
+     */
+    boolean isReaperAlive() {
+        return reaper != null && reaper.isAlive();
+    }
+
+
+    private void removeFromWheel(Hold hold) {
+        HierarchicalTimingWheel wheel = wheels[hold.wheelIndex];
+        synchronized (wheel) {
+            wheel.remove(hold); // false, gdy reaper zdjal juz hold z kola jako wymagalny
+        }
+    }
+
+
+    private boolean expire(Hold hold) {
+        if (hold.finish(Hold.State.EXPIRED)) {
+            ledger.release(hold.getCharges());
+            return true;
+        }
+        return false;
+    }
+
+
+    private void runReaper() {
+        while (!closed) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(tickNanos);
+            } catch (InterruptedException e) {
+                continue; // sprawdzamy closed
+            }
+            expireHolds();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 128-bit fingerprint of an optimizer input, used to identify inputs and as the key of cached and stored results.
+ * <p>
+ * Every item is hashed on its own with MurmurHash3 (x64, 128-bit) and the item hashes are added lane by lane.
+ * {@link #of} takes the input as a set of payment methods and a multiset of orders, with the promotions of each
+ * order sorted, so any permutation of the same orders and methods has the same fingerprint and computing it sorts
+ * nothing. The greedy solver breaks ties by input order, so results are keyed by {@link #ofSequence} instead,
+ * which also hashes the position of every item and keeps the promotions as given.
+ * Amounts are hashed with their scale, so {@code 10.0} and {@code 10.00} differ. A collision between two different
+ * inputs is practically impossible (about 2<sup>-64</sup> among four billion distinct inputs).
+ *
+ * @param high The high 64 bits.
+ * @param low The low 64 bits.
+ */
+public record InputFingerprint(long high, long low) {
+
+    /**
+     * Returns the fingerprint of this input solved with a given solver configuration, so that results of different
+     * solvers (or of different versions of one solver) get different keys.
+     *
+     * @param solverConfiguration Identifier of the solver and its parameters, e.g. {@code "greedy-v1"}.
+     * @return The combined fingerprint.
+     */
+    public InputFingerprint withConfiguration(String solverConfiguration) {
+        CanonicalEncoder encoder = new CanonicalEncoder();
+        encoder.writeLong(high);
+        encoder.writeLong(low);
+        encoder.writeString(solverConfiguration);
+        long[] hash = MurmurHash3.hash128(encoder.buf(), encoder.size());
+        return new InputFingerprint(hash[0], hash[1]);
+    }
+
+
+    /**
+     * @return The fingerprint as 32 hexadecimal digits.
+     */
+    public String toHex() {
+        return String.format("%016x%016x", high, low);
+    }
+
+
+    /**
+     * Computes a fingerprint of raw bytes, with the same hash function.
+     */
+    static InputFingerprint ofBytes(byte[] data) {
+        long[] hash = MurmurHash3.hash128(data, data.length);
+        return new InputFingerprint(hash[0], hash[1]);
+    }
+
+
+    /**
+     * Computes the fingerprint of an input regardless of the order of its items.
+     *
+     * @param orders Orders, in any order.
+     * @param paymentMethods Payment methods, in any order.
+     * @return The fingerprint.
+     */
+    public static InputFingerprint of(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        return of(orders, paymentMethods, false);
+    }
+
+
+    /**
+     * Computes the fingerprint of an input as given: the same items in another order, or the same promotions of an
+     * order in another order, give a different fingerprint. Use it as the key of solved results.
+     *
+     * @param orders Orders, in the order given to the solver.
+     * @param paymentMethods Payment methods, in the order given to the solver.
+     * @return The fingerprint; never equal to the order-independent fingerprint of the same input.
+     */
+    public static InputFingerprint ofSequence(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        return of(orders, paymentMethods, true);
+    }
+
+
+    private static InputFingerprint of(List<Order> orders, List<PaymentMethod> paymentMethods, boolean ordered) {
+        CanonicalEncoder encoder = new CanonicalEncoder();
+        long methodsHigh = 0;
+        long methodsLow = 0;
+        for (int i = 0; i < paymentMethods.size(); i++) {
+            PaymentMethod paymentMethod = paymentMethods.get(i);
+            encoder.reset();
+            if (ordered) {
+                encoder.writeInt(i);
+            }
+            encoder.writeString(paymentMethod.getId());
+            encoder.writeInt(paymentMethod.getDiscount());
+            encoder.writeAmount(paymentMethod.getLimit());
+            long[] itemHash = MurmurHash3.hash128(encoder.buf(), encoder.size());
+            methodsHigh += itemHash[0];
+            methodsLow += itemHash[1];
+        }
+
+        long ordersHigh = 0;
+        long ordersLow = 0;
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            encoder.reset();
+            if (ordered) {
+                encoder.writeInt(i);
+            }
+            encoder.writeString(order.getId());
+            encoder.writeAmount(order.getValue());
+            List<String> promotions = order.getPromotions();
+            encoder.writeInt(promotions == null ? -1 : promotions.size());
+            if (promotions != null) {
+                for (String promotionId : ordered ? promotions : sortedPromotions(promotions)) {
+                    encoder.writeString(promotionId);
+                }
+            }
+            long[] itemHash = MurmurHash3.hash128(encoder.buf(), encoder.size());
+            ordersHigh += itemHash[0];
+            ordersLow += itemHash[1];
+        }
+
+        encoder.reset();
+        if (ordered) {
+            encoder.writeInt(-1); // dluzsze kodowanie, wiec nigdy nie rowny odciskowi bez kolejnosci
+        }
+        encoder.writeInt(paymentMethods.size());
+        encoder.writeLong(methodsHigh);
+        encoder.writeLong(methodsLow);
+        encoder.writeInt(orders.size());
+        encoder.writeLong(ordersHigh);
+        encoder.writeLong(ordersLow);
+        long[] hash = MurmurHash3.hash128(encoder.buf(), encoder.size());
+        return new InputFingerprint(hash[0], hash[1]);
+    }
+
+
+
+
+    static List<String> sortedPromotions(List<String> promotions) {
+        if (promotions.size() < 2) {
+            return promotions;
+        }
+        List<String> sorted = new ArrayList<>(promotions);
+        sorted.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+        return sorted;
+    }
+
+
+
+
+    /**
+     * Unambiguous byte encoding of one input item: every variable-length field is length-prefixed
+     * and {@code null}s have their own marker. The buffer is reused between items.
+     */
+    private static final class CanonicalEncoder {
+
+        private byte[] buf = new byte[256];
+        private int size;
+
+        byte[] buf() {
+            return buf;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buf, size, length);
+            size += length;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            buf[size++] = (byte) (value >>> 24);
+            buf[size++] = (byte) (value >>> 16);
+            buf[size++] = (byte) (value >>> 8);
+            buf[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(value.length());
+            ensureCapacity(2 * value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                buf[size++] = (byte) (c >>> 8);
+                buf[size++] = (byte) c;
+            }
+        }
+
+        void writeAmount(BigDecimal amount) {
+            if (amount == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] unscaled = amount.unscaledValue().toByteArray();
+            writeInt(unscaled.length);
+            write(unscaled, 0, unscaled.length);
+            writeInt(amount.scale());
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+
+
+    /**
+     * MurmurHash3 x64 128-bit variant (Austin Appleby, public domain), seed 0.
+     */
+    private static final class MurmurHash3 {
+
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private MurmurHash3() {
+        }
+
+        static long[] hash128(byte[] data, int length) {
+            long h1 = 0;
+            long h2 = 0;
+            int blocks = length / 16;
+
+            for (int i = 0; i < blocks; i++) {
+                long k1 = getLongLittleEndian(data, i * 16);
+                long k2 = getLongLittleEndian(data, i * 16 + 8);
+
+                h1 ^= mixK1(k1);
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                h2 ^= mixK2(k2);
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+
+            int tail = blocks * 16;
+            long k1 = 0;
+            long k2 = 0;
+            switch (length & 15) {
+                case 15: k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+                case 14: k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+                case 13: k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+                case 12: k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+                case 11: k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+                case 10: k2 ^= (long) (data[tail + 9] & 0xff) << 8;
+                case 9: k2 ^= data[tail + 8] & 0xff;
+                    h2 ^= mixK2(k2);
+                case 8: k1 ^= (long) (data[tail + 7] & 0xff) << 56;
+                case 7: k1 ^= (long) (data[tail + 6] & 0xff) << 48;
+                case 6: k1 ^= (long) (data[tail + 5] & 0xff) << 40;
+                case 5: k1 ^= (long) (data[tail + 4] & 0xff) << 32;
+                case 4: k1 ^= (long) (data[tail + 3] & 0xff) << 24;
+                case 3: k1 ^= (long) (data[tail + 2] & 0xff) << 16;
+                case 2: k1 ^= (long) (data[tail + 1] & 0xff) << 8;
+                case 1: k1 ^= data[tail] & 0xff;
+                    h1 ^= mixK1(k1);
+                default:
+                    break;
+            }
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+            return new long[]{h1, h2};
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            return k1 * C2;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            return k2 * C1;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        private static long getLongLittleEndian(byte[] data, int offset) {
+            long value = 0;
+            for (int i = 7; i >= 0; i--) {
+                value = (value << 8) | (data[offset + i] & 0xff);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Bookkeeping of remaining limits and total spent amounts per payment method, with undo.
+ * <p>
+ * Every change made by {@link #apply(PaymentOption)} or {@link #release(PaymentOption)} is recorded on a trail of
+ * previous values. {@link #checkpoint()} is O(1) (it only remembers the trail length) and {@link #rollback(int)}
+ * costs as much as the changes it reverts, so search engines can try an option and revert it instead of copying
+ * the limit maps for every explored node. The trail arrays grow once and are then reused.
+ * <p>
+ * {@link #snapshot()} creates an independent ledger for a parallel branch without copying anything up front:
+ * both ledgers share the maps and each copies them only before its first write (copy-on-write).
+ * A single ledger is not thread-safe; parallel branches should each work on their own snapshot.
+ */
+class LimitLedger {
+
+    private static final int INITIAL_TRAIL_CAPACITY = 16;
+
+    private Map<String, BigDecimal> remainingLimits;
+    private Map<String, BigDecimal> totalSpentByMethod;
+    private boolean shared;
+
+    private final Map<String, BigDecimal> remainingLimitsView = new AbstractMap<>() {
+        @Override
+        public BigDecimal get(Object key) {
+            return remainingLimits.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return remainingLimits.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return remainingLimits.size();
+        }
+
+        @Override
+        public Set<Entry<String, BigDecimal>> entrySet() {
+            return Collections.unmodifiableMap(remainingLimits).entrySet();
+        }
+    };
+
+    private String[] trailMethodIds = new String[INITIAL_TRAIL_CAPACITY];
+    private BigDecimal[] trailPreviousLimits = new BigDecimal[INITIAL_TRAIL_CAPACITY];
+    private BigDecimal[] trailPreviousSpent = new BigDecimal[INITIAL_TRAIL_CAPACITY];
+    private int trailSize;
+
+
+    /**
+     * Constructs a ledger with the full limit of every payment method available and nothing spent.
+     * @param paymentMethods Available payment methods.
+     */
+    LimitLedger(List<PaymentMethod> paymentMethods) {
+        this.remainingLimits = new HashMap<>();
+        for (PaymentMethod paymentMethod : paymentMethods) {
+            remainingLimits.put(paymentMethod.getId(), paymentMethod.getLimit());
+        }
+        this.totalSpentByMethod = new HashMap<>();
+    }
+
+
+    private LimitLedger(Map<String, BigDecimal> remainingLimits, Map<String, BigDecimal> totalSpentByMethod) {
+        this.remainingLimits = remainingLimits;
+        this.totalSpentByMethod = totalSpentByMethod;
+        this.shared = true;
+    }
+
+
+    /**
+     * Returns a read-only live view of the remaining limits, suitable for the option generators
+     * of {@link PaymentOptimizerService}.
+     * @return Map of payment method ID to remaining limit.
+     */
+    Map<String, BigDecimal> remainingLimits() {
+        return remainingLimitsView;
+    }
+
+
+    /**
+     * Returns the remaining limit of a payment method.
+     * @param methodId Payment method ID.
+     * @return The remaining limit, or zero for an unknown method.
+     */
+    BigDecimal remainingLimit(String methodId) {
+        return remainingLimits.getOrDefault(methodId, BigDecimal.ZERO);
+    }
+
+
+    /**
+     * Returns a copy of the total amounts spent per payment method.
+     * @return Map of payment method ID to total amount spent.
+     */
+    Map<String, BigDecimal> totalSpentByMethod() {
+        return new HashMap<>(totalSpentByMethod);
+    }
+
+
+    /**
+     * Charges a payment option against the remaining limits and records the change on the trail.
+     *
+     * @param option The payment option to apply.
+     * @throws IllegalStateException If a method's limit is insufficient; nothing is charged in that case.
+     */
+    void apply(PaymentOption option) {
+        for (Map.Entry<String, BigDecimal> entry : option.getAmountsToChargeByMethod().entrySet()) {
+            BigDecimal currentLimit = remainingLimits.get(entry.getKey());
+            if (currentLimit == null || currentLimit.compareTo(entry.getValue()) < 0) {
+                throw new IllegalStateException("Error while applying payment limit");
+            }
+        }
+        ensureOwnMaps();
+        for (Map.Entry<String, BigDecimal> entry : option.getAmountsToChargeByMethod().entrySet()) {
+            String methodId = entry.getKey();
+            BigDecimal amount = entry.getValue();
+            BigDecimal previousLimit = remainingLimits.get(methodId);
+            BigDecimal previousSpent = totalSpentByMethod.get(methodId);
+
+            pushTrail(methodId, previousLimit, previousSpent);
+            remainingLimits.put(methodId, previousLimit.subtract(amount));
+            totalSpentByMethod.put(methodId, previousSpent == null ? amount : previousSpent.add(amount));
+        }
+    }
+
+
+    /**
+     * Gives back the charges of a previously applied payment option, e.g. when its order is cancelled,
+     * and records the change on the trail.
+     *
+     * @param option The payment option to release.
+     * @throws IllegalStateException If the option charges more to a method than was spent with it.
+     */
+    void release(PaymentOption option) {
+        for (Map.Entry<String, BigDecimal> entry : option.getAmountsToChargeByMethod().entrySet()) {
+            BigDecimal spent = totalSpentByMethod.get(entry.getKey());
+            if (spent == null || spent.compareTo(entry.getValue()) < 0) {
+                throw new IllegalStateException("Error while releasing payment limit");
+            }
+        }
+        ensureOwnMaps();
+        for (Map.Entry<String, BigDecimal> entry : option.getAmountsToChargeByMethod().entrySet()) {
+            String methodId = entry.getKey();
+            BigDecimal amount = entry.getValue();
+            BigDecimal previousLimit = remainingLimits.get(methodId);
+            BigDecimal previousSpent = totalSpentByMethod.get(methodId);
+
+            pushTrail(methodId, previousLimit, previousSpent);
+            remainingLimits.put(methodId, previousLimit.add(amount));
+            totalSpentByMethod.put(methodId, previousSpent.subtract(amount));
+        }
+    }
+
+
+    /**
+     * Marks the current state so it can be restored later. O(1).
+     * @return A checkpoint to pass to {@link #rollback(int)}.
+     */
+    int checkpoint() {
+        return trailSize;
+    }
+
+
+    /**
+     * Reverts every change made after the given checkpoint, newest first.
+     *
+     * @param checkpoint A checkpoint returned by {@link #checkpoint()}.
+     * @throws IllegalArgumentException If the checkpoint is not a valid position on the trail.
+     */
+    void rollback(int checkpoint) {
+        if (checkpoint < 0 || checkpoint > trailSize) {
+            throw new IllegalArgumentException("Invalid ledger checkpoint: " + checkpoint);
+        }
+        if (checkpoint == trailSize) {
+            return;
+        }
+        ensureOwnMaps();
+        while (trailSize > checkpoint) {
+            trailSize--;
+            String methodId = trailMethodIds[trailSize];
+            remainingLimits.put(methodId, trailPreviousLimits[trailSize]);
+            if (trailPreviousSpent[trailSize] == null) {
+                totalSpentByMethod.remove(methodId);
+            } else {
+                totalSpentByMethod.put(methodId, trailPreviousSpent[trailSize]);
+            }
+            trailMethodIds[trailSize] = null;
+            trailPreviousLimits[trailSize] = null;
+            trailPreviousSpent[trailSize] = null;
+        }
+    }
+
+
+    /**
+     * Forgets the trail. Changes made so far become permanent and can no longer be rolled back,
+     * which keeps the trail short when a long plan is committed step by step.
+     */
+    void clearTrail() {
+        Arrays.fill(trailMethodIds, 0, trailSize, null);
+        Arrays.fill(trailPreviousLimits, 0, trailSize, null);
+        Arrays.fill(trailPreviousSpent, 0, trailSize, null);
+        trailSize = 0;
+    }
+
+
+    /**
+     * Creates an independent ledger with the current limits and spent amounts, e.g. for a parallel search branch.
+     * Nothing is copied until one of the two ledgers is written to. The snapshot starts with an empty trail.
+     *
+     * @return The snapshot.
+     */
+    LimitLedger snapshot() {
+        shared = true;
+        return new LimitLedger(remainingLimits, totalSpentByMethod);
+    }
+
+
+    private void ensureOwnMaps() {
+        if (shared) {
+            remainingLimits = new HashMap<>(remainingLimits);
+            totalSpentByMethod = new HashMap<>(totalSpentByMethod);
+            shared = false;
+        }
+    }
+
+
+    private void pushTrail(String methodId, BigDecimal previousLimit, BigDecimal previousSpent) {
+        if (trailSize == trailMethodIds.length) {
+            int newCapacity = trailSize * 2;
+            trailMethodIds = Arrays.copyOf(trailMethodIds, newCapacity);
+            trailPreviousLimits = Arrays.copyOf(trailPreviousLimits, newCapacity);
+            trailPreviousSpent = Arrays.copyOf(trailPreviousSpent, newCapacity);
+        }
+        trailMethodIds[trailSize] = methodId;
+        trailPreviousLimits[trailSize] = previousLimit;
+        trailPreviousSpent[trailSize] = previousSpent;
+        trailSize++;
+    }
+}
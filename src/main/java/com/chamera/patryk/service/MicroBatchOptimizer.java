@@ -0,0 +1,395 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.OnlinePaymentOptimizer.Decision;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Micro-batch optimizer for near-real-time order flows, between the {@link OnlinePaymentOptimizer} and a full batch run.
+ * <p>
+ * Submitted orders are buffered by a single worker thread until the batch window elapses (measured from the
+ * first order of the batch) or {@code maxBatchSize} orders are waiting. Each batch is then solved against the
+ * shared {@link LimitLedger} with the greedy rules of {@link PaymentOptimizerService}: orders sorted by maximum
+ * theoretical discount, options vetoed only when a {@link FeasibilityOracle} proves the rest of the batch unpayable.
+ * If an order is still left unpaid, the batch is solved again with the oracle's certificate guarding every choice,
+ * and that plan is kept if it pays more orders. An order that cannot be paid fails only its own future.
+ * <p>
+ * The window adapts to the load after every batch, staying within the latency target minus twice the
+ * average solve time, so that waiting and solving together fit the target:
+ * <ul>
+ *     <li>A batch of a single order gained nothing from waiting, so the window is halved.</li>
+ *     <li>A batch closed by the window with several orders is worth growing, by a quarter.</li>
+ *     <li>A full batch is left as is; under such load the size closes the batches anyway.</li>
+ * </ul>
+ * Queueing delay and solve time of every batch are reported to an optional listener, and the latency of the last
+ * orders is kept for percentile queries.
+ */
+public class MicroBatchOptimizer implements AutoCloseable {
+
+    private static final int LATENCY_SAMPLE_CAPACITY = 4096;
+    private static final long MIN_WINDOW_STEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final PendingOrder END_OF_STREAM = new PendingOrder(null, 0, null);
+
+    private final PaymentOptimizerService optionRules;
+    private final Map<String, PaymentMethod> paymentMethodMap;
+    private final LimitLedger ledger;
+    private final long latencyTargetNanos;
+    private final int maxBatchSize;
+    private final Consumer<BatchStats> statsListener;
+
+    private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+    private final Object submitLock = new Object();
+    private final Thread worker;
+    private boolean closed;
+
+    private final long[] latencySamples = new long[LATENCY_SAMPLE_CAPACITY];
+    private int latencySampleCount;
+    private int nextLatencySample;
+
+    private long windowNanos;
+    private long averageSolveNanos;
+
+
+    private record PendingOrder(Order order, long submittedNanos, CompletableFuture<Decision> result) {
+    }
+
+
+    /**
+     * Measurements of one solved batch.
+     *
+     * @param size Number of orders in the batch.
+     * @param windowNanos Batch window in force while the batch was collected.
+     * @param meanQueueingDelayNanos Mean time the orders waited before the batch was solved.
+     * @param maxQueueingDelayNanos Longest time an order waited before the batch was solved.
+     * @param solveNanos Time spent solving the batch.
+     */
+    public record BatchStats(int size, long windowNanos, long meanQueueingDelayNanos, long maxQueueingDelayNanos, long solveNanos) {
+    }
+
+
+    /**
+     * Constructs a micro-batch optimizer without a statistics listener and starts its worker thread.
+     *
+     * @param paymentMethods Available payment methods with their full limits.
+     * @param latencyTargetMillis Target latency of an order; also the largest batch window.
+     * @param maxBatchSize Number of waiting orders that closes a batch early.
+     */
+    public MicroBatchOptimizer(List<PaymentMethod> paymentMethods, long latencyTargetMillis, int maxBatchSize) {
+        this(paymentMethods, latencyTargetMillis, maxBatchSize, null);
+    }
+
+
+    /**
+     * Constructs a micro-batch optimizer and starts its worker thread.
+     *
+     * @param paymentMethods Available payment methods with their full limits.
+     * @param latencyTargetMillis Target latency of an order; also the largest batch window.
+     * @param maxBatchSize Number of waiting orders that closes a batch early.
+     * @param statsListener Called on the worker thread after every batch; may be {@code null}.
+     * @throws IllegalArgumentException If the parameters are out of range.
+     */
+    public MicroBatchOptimizer(List<PaymentMethod> paymentMethods, long latencyTargetMillis, int maxBatchSize, Consumer<BatchStats> statsListener) {
+        if (latencyTargetMillis < 0) {
+            throw new IllegalArgumentException("Latency target must not be negative, got " + latencyTargetMillis + ".");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + maxBatchSize + ".");
+        }
+        this.optionRules = new PaymentOptimizerService();
+        this.paymentMethodMap = optionRules.buildPaymentMethodMap(paymentMethods);
+        this.ledger = new LimitLedger(paymentMethods);
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.statsListener = statsListener;
+        this.windowNanos = latencyTargetNanos;
+
+        this.worker = new Thread(this::runWorker, "micro-batch-optimizer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+
+    /**
+     * Submits an order for payment in one of the next batches.
+     *
+     * @param order The order to pay.
+     * @return A future completed with the decision, or exceptionally if the order cannot be fully paid.
+     * @throws IllegalStateException If the optimizer is closed.
+     */
+    public CompletableFuture<Decision> submit(Order order) {
+        CompletableFuture<Decision> result = new CompletableFuture<>();
+        synchronized (submitLock) {
+            if (closed) {
+                throw new IllegalStateException("Micro-batch optimizer is closed.");
+            }
+            queue.add(new PendingOrder(order, System.nanoTime(), result));
+        }
+        return result;
+    }
+
+
+    /**
+     * @return Total amount spent per payment method by all batches solved so far.
+     */
+    public Map<String, BigDecimal> getTotalSpentByMethod() {
+        synchronized (ledger) {
+            return ledger.totalSpentByMethod();
+        }
+    }
+
+
+    /**
+     * Returns a percentile of the latency (from submission to decision) of the most recent orders.
+     *
+     * @param percentile Percentile between 0 and 100, e.g. 99.
+     * @return The latency in nanoseconds, or zero if no order has been decided yet.
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        long[] samples;
+        synchronized (latencySamples) {
+            samples = Arrays.copyOf(latencySamples, latencySampleCount);
+        }
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile / 100 * samples.length) - 1;
+        return samples[Math.max(0, Math.min(index, samples.length - 1))];
+    }
+
+
+    /**
+     * Stops accepting orders, solves the orders already submitted and waits for the worker thread to finish.
+     */
+    @Override
+    public void close() {
+        synchronized (submitLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(END_OF_STREAM);
+        }
+        boolean interrupted = false;
+        while (worker.isAlive()) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private void runWorker() {
+        boolean endOfStream = false;
+        while (!endOfStream) {
+            PendingOrder first;
+            try {
+                first = queue.take();
+            } catch (InterruptedException e) {
+                continue; // konczymy tylko po END_OF_STREAM
+            }
+            if (first == END_OF_STREAM) {
+                break;
+            }
+
+            List<PendingOrder> batch = new ArrayList<>();
+            batch.add(first);
+            long deadline = first.submittedNanos() + windowNanos;
+            while (batch.size() < maxBatchSize) {
+                PendingOrder next = pollUntil(deadline);
+                if (next == null) {
+                    break;
+                }
+                if (next == END_OF_STREAM) {
+                    endOfStream = true;
+                    break;
+                }
+                batch.add(next);
+            }
+            solveIsolatingFailures(batch);
+        }
+    }
+
+
+    /**
+     * Solves a batch; if the solver throws, solves its orders one by one, so that only the orders causing the
+     * failure complete exceptionally and the worker keeps running.
+     */
+    private void solveIsolatingFailures(List<PendingOrder> batch) {
+        try {
+            solveBatch(batch);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            for (PendingOrder pending : batch) {
+                if (!pending.result().isDone()) {
+                    solveIsolatingFailures(List.of(pending));
+                }
+            }
+        }
+    }
+
+
+    private PendingOrder pollUntil(long deadline) {
+        long wait = deadline - System.nanoTime();
+        try {
+            return wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+        } catch (InterruptedException e) {
+            return queue.poll();
+        }
+    }
+
+
+    private void solveBatch(List<PendingOrder> batch) {
+        long solveStart = System.nanoTime();
+
+        Map<Order, PendingOrder> pendingByOrder = new IdentityHashMap<>(batch.size());
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (PendingOrder pending : batch) {
+            pendingByOrder.put(pending.order(), pending);
+            orders.add(pending.order());
+        }
+        List<Order> sortedOrders = optionRules.sortOrdersByMaxTheoreticalDiscount(orders, paymentMethodMap);
+
+        Decision[] decisions = new Decision[sortedOrders.size()];
+        synchronized (ledger) {
+            int checkpoint = ledger.checkpoint();
+            PaymentOption[] chosen;
+            try {
+                chosen = solveBatchPasses(sortedOrders, checkpoint);
+            } catch (RuntimeException e) {
+                ledger.rollback(checkpoint); // czesciowo zastosowana partia nie moze zostac w limitach
+                ledger.clearTrail();
+                throw e;
+            }
+            ledger.clearTrail();
+
+            for (int i = 0; i < sortedOrders.size(); i++) {
+                if (chosen[i] != null) {
+                    decisions[i] = new Decision(sortedOrders.get(i).getId(),
+                            Collections.unmodifiableMap(chosen[i].getAmountsToChargeByMethod()), chosen[i].getCalculatedDiscountAmount());
+                }
+            }
+        }
+
+        long solveEnd = System.nanoTime();
+        long totalQueueingDelay = 0;
+        long maxQueueingDelay = 0;
+        for (int i = 0; i < sortedOrders.size(); i++) {
+            PendingOrder pending = pendingByOrder.get(sortedOrders.get(i));
+            long queueingDelay = solveStart - pending.submittedNanos();
+            totalQueueingDelay += queueingDelay;
+            maxQueueingDelay = Math.max(maxQueueingDelay, queueingDelay);
+            recordLatency(solveEnd - pending.submittedNanos());
+
+            if (decisions[i] == null) {
+                pending.result().completeExceptionally(PaymentOptimizerService.noPaymentOptionException(pending.order()));
+            } else {
+                pending.result().complete(decisions[i]);
+            }
+        }
+
+        long solveNanos = solveEnd - solveStart;
+        BatchStats stats = new BatchStats(batch.size(), windowNanos, totalQueueingDelay / batch.size(), maxQueueingDelay, solveNanos);
+        adaptWindow(batch.size(), solveNanos);
+        if (statsListener != null) {
+            statsListener.accept(stats);
+        }
+    }
+
+
+    /**
+     * Solves the sorted batch against the ledger: a plain pass, then a certificate-guarded one if the plain pass
+     * left orders unpaid.
+     *
+     * @return Chosen option of each order (same indexes as {@code sortedOrders}), {@code null} for unpaid orders.
+     */
+    private PaymentOption[] solveBatchPasses(List<Order> sortedOrders, int checkpoint) {
+        BigDecimal[] minimumPayments = optionRules.calculateMinimumPayments(sortedOrders, paymentMethodMap);
+        PaymentOption[] chosen = solvePass(sortedOrders, minimumPayments, false);
+        int unpaid = countUnpaid(chosen);
+        if (unpaid > 0) {
+            // jak w PaymentOptimizerService: drugi przebieg z certyfikatem, gdy zachlanny zostawil zamowienia bez platnosci
+            ledger.rollback(checkpoint);
+            PaymentOption[] guarded = solvePass(sortedOrders, minimumPayments, true);
+            if (countUnpaid(guarded) < unpaid) {
+                return guarded;
+            }
+            ledger.rollback(checkpoint);
+            for (PaymentOption option : chosen) {
+                if (option != null) {
+                    ledger.apply(option);
+                }
+            }
+        }
+        return chosen;
+    }
+
+
+    /**
+     * Chooses and applies an option for each order of the batch; an order without any option is skipped.
+     *
+     * @return Chosen option of each order (same indexes as {@code sortedOrders}), {@code null} for unpaid orders.
+     */
+    private PaymentOption[] solvePass(List<Order> sortedOrders, BigDecimal[] minimumPayments, boolean useCertificate) {
+        PaymentOption[] chosen = new PaymentOption[sortedOrders.size()];
+        FeasibilityOracle feasibilityOracle = new FeasibilityOracle(sortedOrders, minimumPayments, ledger.remainingLimits(), useCertificate);
+        for (int i = 0; i < sortedOrders.size(); i++) {
+            List<PaymentOption> options = optionRules.generatePaymentOptions(sortedOrders.get(i), paymentMethodMap, ledger.remainingLimits());
+            if (options.isEmpty()) {
+                continue;
+            }
+            chosen[i] = feasibilityOracle.choose(i, options, ledger.remainingLimits());
+            ledger.apply(chosen[i]);
+        }
+        return chosen;
+    }
+
+
+    private static int countUnpaid(PaymentOption[] chosen) {
+        int unpaid = 0;
+        for (PaymentOption option : chosen) {
+            if (option == null) {
+                unpaid++;
+            }
+        }
+        return unpaid;
+    }
+
+
+    private void adaptWindow(int batchSize, long solveNanos) {
+        averageSolveNanos = averageSolveNanos == 0 ? solveNanos : (averageSolveNanos * 7 + solveNanos) / 8;
+        if (batchSize == 1) {
+            windowNanos /= 2;
+        } else if (batchSize < maxBatchSize) {
+            windowNanos += windowNanos / 4 + MIN_WINDOW_STEP_NANOS;
+        }
+        long maxWindowNanos = Math.max(0, latencyTargetNanos - 2 * averageSolveNanos);
+        windowNanos = Math.min(windowNanos, maxWindowNanos);
+    }
+
+
+    private void recordLatency(long latencyNanos) {
+        synchronized (latencySamples) {
+            latencySamples[nextLatencySample] = latencyNanos;
+            nextLatencySample = (nextLatencySample + 1) % LATENCY_SAMPLE_CAPACITY;
+            latencySampleCount = Math.min(latencySampleCount + 1, LATENCY_SAMPLE_CAPACITY);
+        }
+    }
+}
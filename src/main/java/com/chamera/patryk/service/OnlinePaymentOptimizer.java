@@ -0,0 +1,260 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Online optimizer for checkout-time use: each order is paid on arrival, without seeing the orders that follow.
+ * <p>
+ * Without look-ahead, taking the best option for every order can spend a limit on a low-value use (e.g. points
+ * on a partial-points discount) that a later order would have turned into a higher discount. To avoid that,
+ * the optimizer keeps a reserve threshold per payment method, derived from a forecast of the day's orders:
+ * the forecast is planned once with the greedy algorithm, and every charge of that plan is recorded with its
+ * discount rate (discount per amount charged). When an option is considered, each method it charges must keep
+ * at least the forecast demand of higher-rate uses that is still expected, so limits are protected for better
+ * uses in the same way as nested booking limits. The expected demand shrinks linearly with the number of orders
+ * decided, reaching zero once as many orders as in the forecast have arrived.
+ * <p>
+ * The options are produced by the {@link PaymentOptimizerService} generators and tried best first; the first
+ * option respecting all thresholds is chosen. If none does, the best option is taken anyway, as the order must
+ * be paid. A decision costs one option generation plus a binary search per charged method.
+ * The optimizer is not thread-safe.
+ */
+public class OnlinePaymentOptimizer {
+
+    private static final int RATE_SCALE = 10;
+
+    private final PaymentOptimizerService optionRules;
+    private final List<PaymentMethod> paymentMethods;
+    private final Map<String, PaymentMethod> paymentMethodMap;
+    private final LimitLedger ledger;
+    private final Map<String, DemandCurve> forecastDemandByMethod;
+    private final int expectedOrderCount;
+
+    private int decidedOrderCount;
+    private BigDecimal totalDiscount = BigDecimal.ZERO;
+
+
+    /**
+     * Payment decided for one order.
+     *
+     * @param orderId ID of the order.
+     * @param charges Amounts charged per payment method.
+     * @param discount Discount obtained.
+     */
+    public record Decision(String orderId, Map<String, BigDecimal> charges, BigDecimal discount) {
+    }
+
+
+    /**
+     * Discount achieved online compared with the offline greedy run over the same orders.
+     *
+     * @param onlineDiscount Total discount of the online decisions.
+     * @param offlineDiscount Total discount of {@link PaymentOptimizerService#optimizePayments} over the same orders.
+     */
+    public record DiscountComparison(BigDecimal onlineDiscount, BigDecimal offlineDiscount) {
+
+        /**
+         * @return Online discount divided by offline discount, or one if the offline discount is zero.
+         */
+        public BigDecimal ratio() {
+            if (offlineDiscount.signum() == 0) {
+                return BigDecimal.ONE;
+            }
+            return onlineDiscount.divide(offlineDiscount, 4, RoundingMode.HALF_UP);
+        }
+    }
+
+
+    /**
+     * Forecast charges of one payment method, sorted by discount rate descending,
+     * with the cumulative amount charged at each rate or higher.
+     */
+    private static final class DemandCurve {
+        private final BigDecimal[] ratesDescending;
+        private final BigDecimal[] cumulativeDemand;
+
+        DemandCurve(List<Map.Entry<BigDecimal, BigDecimal>> ratedCharges) {
+            ratedCharges.sort((c1, c2) -> c2.getKey().compareTo(c1.getKey())); //malejaco po stawce
+            this.ratesDescending = new BigDecimal[ratedCharges.size()];
+            this.cumulativeDemand = new BigDecimal[ratedCharges.size() + 1];
+            cumulativeDemand[0] = BigDecimal.ZERO;
+            for (int i = 0; i < ratedCharges.size(); i++) {
+                ratesDescending[i] = ratedCharges.get(i).getKey();
+                cumulativeDemand[i + 1] = cumulativeDemand[i].add(ratedCharges.get(i).getValue());
+            }
+        }
+
+        /**
+         * @return Forecast amount charged at a rate strictly higher than {@code rate}.
+         */
+        BigDecimal demandAbove(BigDecimal rate) {
+            int low = 0;
+            int high = ratesDescending.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ratesDescending[middle].compareTo(rate) > 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return cumulativeDemand[low];
+        }
+    }
+
+
+    /**
+     * Constructs an online optimizer.
+     *
+     * @param paymentMethods Available payment methods with their full limits.
+     * @param forecastOrders Orders expected over the day; an empty forecast keeps no reserves.
+     * @throws RuntimeException If the forecast itself cannot be fully paid.
+     */
+    public OnlinePaymentOptimizer(List<PaymentMethod> paymentMethods, List<Order> forecastOrders) {
+        this.optionRules = new PaymentOptimizerService();
+        this.paymentMethods = List.copyOf(paymentMethods);
+        this.paymentMethodMap = optionRules.buildPaymentMethodMap(paymentMethods);
+        this.ledger = new LimitLedger(paymentMethods);
+        this.forecastDemandByMethod = buildForecastDemand(forecastOrders);
+        this.expectedOrderCount = forecastOrders.size();
+    }
+
+
+    /**
+     * Decides and applies the payment of an arriving order.
+     *
+     * @param order The arriving order.
+     * @return The decision.
+     * @throws RuntimeException If the order cannot be fully paid with the remaining limits.
+     */
+    public Decision decide(Order order) {
+        List<PaymentOption> options = optionRules.generatePaymentOptions(order, paymentMethodMap, ledger.remainingLimits());
+        if (options.isEmpty()) {
+            throw PaymentOptimizerService.noPaymentOptionException(order);
+        }
+
+        BigDecimal expectedShare = expectedRemainingShare();
+        PaymentOption chosen = options.get(0);
+        for (PaymentOption option : options) {
+            if (respectsReserves(option, expectedShare)) {
+                chosen = option;
+                break;
+            }
+        }
+
+        ledger.apply(chosen);
+        ledger.clearTrail();
+        decidedOrderCount++;
+        totalDiscount = totalDiscount.add(chosen.getCalculatedDiscountAmount());
+        return new Decision(order.getId(), Collections.unmodifiableMap(chosen.getAmountsToChargeByMethod()), chosen.getCalculatedDiscountAmount());
+    }
+
+
+    /**
+     * @return Total discount of all decisions so far.
+     */
+    public BigDecimal getTotalDiscount() {
+        return totalDiscount;
+    }
+
+
+    /**
+     * @return Total amount spent per payment method by all decisions so far.
+     */
+    public Map<String, BigDecimal> getTotalSpentByMethod() {
+        return ledger.totalSpentByMethod();
+    }
+
+
+    /**
+     * Compares the discount achieved so far with an offline greedy run over the same orders.
+     *
+     * @param decidedOrders The orders decided by this optimizer.
+     * @return The comparison.
+     * @throws RuntimeException If the offline run cannot pay the orders.
+     */
+    public DiscountComparison compareWithOffline(List<Order> decidedOrders) {
+        Map<String, BigDecimal> offlineSpent = optionRules.optimizePayments(decidedOrders, paymentMethods);
+        BigDecimal offlineDiscount = BigDecimal.ZERO;
+        for (Order order : decidedOrders) {
+            offlineDiscount = offlineDiscount.add(order.getValue());
+        }
+        for (BigDecimal spent : offlineSpent.values()) {
+            offlineDiscount = offlineDiscount.subtract(spent);
+        }
+        return new DiscountComparison(totalDiscount, offlineDiscount);
+    }
+
+
+    private Map<String, DemandCurve> buildForecastDemand(List<Order> forecastOrders) {
+        List<Order> sortedOrders = optionRules.sortOrdersByMaxTheoreticalDiscount(forecastOrders, paymentMethodMap);
+        Map<String, BigDecimal> remainingLimits = optionRules.buildInitialLimits(paymentMethods);
+        List<PaymentOption> plannedOptions = optionRules.rebalancePlan(sortedOrders,
+                optionRules.chooseGreedyOptions(sortedOrders, paymentMethodMap, remainingLimits), paymentMethodMap, remainingLimits);
+
+        Map<String, List<Map.Entry<BigDecimal, BigDecimal>>> ratedChargesByMethod = new HashMap<>();
+        for (PaymentOption option : plannedOptions) {
+            BigDecimal rate = discountRate(option);
+            for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+                ratedChargesByMethod.computeIfAbsent(charge.getKey(), id -> new ArrayList<>())
+                        .add(Map.entry(rate, charge.getValue()));
+            }
+        }
+
+        Map<String, DemandCurve> demandByMethod = new HashMap<>();
+        for (Map.Entry<String, List<Map.Entry<BigDecimal, BigDecimal>>> entry : ratedChargesByMethod.entrySet()) {
+            demandByMethod.put(entry.getKey(), new DemandCurve(entry.getValue()));
+        }
+        return demandByMethod;
+    }
+
+
+    private BigDecimal expectedRemainingShare() {
+        if (decidedOrderCount >= expectedOrderCount) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(expectedOrderCount - decidedOrderCount)
+                .divide(BigDecimal.valueOf(expectedOrderCount), RATE_SCALE, RoundingMode.HALF_UP);
+    }
+
+
+    private boolean respectsReserves(PaymentOption option, BigDecimal expectedShare) {
+        if (expectedShare.signum() == 0) {
+            return true;
+        }
+        BigDecimal rate = discountRate(option);
+        for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+            DemandCurve demand = forecastDemandByMethod.get(charge.getKey());
+            if (demand == null) {
+                continue;
+            }
+            BigDecimal reserve = demand.demandAbove(rate).multiply(expectedShare);
+            BigDecimal limitAfter = ledger.remainingLimit(charge.getKey()).subtract(charge.getValue());
+            if (limitAfter.compareTo(reserve) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Discount per amount charged, the same for every method the option charges.
+     */
+    private static BigDecimal discountRate(PaymentOption option) {
+        BigDecimal charged = BigDecimal.ZERO;
+        for (BigDecimal amount : option.getAmountsToChargeByMethod().values()) {
+            charged = charged.add(amount);
+        }
+        if (charged.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        return option.getCalculatedDiscountAmount().divide(charged, RATE_SCALE, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,214 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.metrics.PhaseMetrics;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import jdk.jfr.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Java Flight Recorder events of the greedy optimizer, for correlating slow orders with GC and hot code in
+ * JDK Mission Control.
+ * <p>
+ * All events are disabled by default ({@link Enabled @Enabled(false)}) and have no stack traces. While they are
+ * disabled, the optimizer only creates an event object per order and phase, which escape analysis removes, and
+ * nothing is formatted. They are enabled per recording, for example next to the CPU and allocation samples of the
+ * {@code profile} settings:
+ * <pre>
+ * java -XX:StartFlightRecording:filename=optimizer.jfr,settings=profile,+com.chamera.patryk.OptimizerPhase#enabled=true,
+ *      +com.chamera.patryk.OrderDecision#enabled=true,+com.chamera.patryk.LimitExhausted#enabled=true -jar app.jar ...
+ * </pre>
+ */
+public final class OptimizerEvents {
+
+    private static final String CATEGORY = "Payment Optimizer";
+
+
+    private OptimizerEvents() {
+    }
+
+
+    /**
+     * A phase of {@link PaymentOptimizerService#optimizePayments}; its duration is the duration of the phase.
+     */
+    @Name("com.chamera.patryk.OptimizerPhase")
+    @Label("Optimizer Phase")
+    @Category(CATEGORY)
+    @Description("A phase of the greedy payment optimizer")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Orders")
+        @Description("Number of orders of the run")
+        int orders;
+
+
+        /**
+         * Begins the event of a phase.
+         *
+         * @param phase The phase.
+         * @param orders Number of orders of the run.
+         * @return The begun event.
+         */
+        static PhaseEvent begin(PhaseMetrics.Phase phase, int orders) {
+            PhaseEvent event = new PhaseEvent();
+            event.begin();
+            if (event.isEnabled()) {
+                event.phase = phase.label();
+                event.orders = orders;
+            }
+            return event;
+        }
+
+
+        /**
+         * Commits this event and begins the event of the next phase.
+         *
+         * @param nextPhase The phase that starts now.
+         * @return The begun event of the next phase.
+         */
+        PhaseEvent next(PhaseMetrics.Phase nextPhase) {
+            commit();
+            return begin(nextPhase, orders);
+        }
+    }
+
+
+    /**
+     * The choice of a payment option for one order of the greedy pass; its duration covers generating, choosing and
+     * applying the option.
+     */
+    @Name("com.chamera.patryk.OrderDecision")
+    @Label("Order Decision")
+    @Category(CATEGORY)
+    @Description("Payment option chosen for an order")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class OrderDecisionEvent extends Event {
+
+        @Label("Order")
+        String orderId;
+
+        @Label("Order Value")
+        double orderValue;
+
+        @Label("Option Kind")
+        @Description("CARD_PROMOTION, CARD_NO_PROMOTION, POINTS_ONLY or POINTS_AND_CARD")
+        String optionKind;
+
+        @Label("Discount")
+        double discount;
+
+        @Label("Points Used")
+        double pointsUsed;
+
+        @Label("Methods Charged")
+        @Description("Charged amount per method, e.g. PUNKTY=15.00,mZysk=120.00")
+        String methodsCharged;
+
+        @Label("Candidates")
+        @Description("Number of payment options considered")
+        int candidates;
+
+
+        /**
+         * Fills in the chosen option and commits the event, if it is enabled and passes the recording's threshold.
+         *
+         * @param order The order.
+         * @param option The option chosen for it.
+         * @param candidates Number of options considered.
+         */
+        void commit(Order order, PaymentOption option, int candidates) {
+            if (!shouldCommit()) {
+                return;
+            }
+            orderId = order.getId();
+            orderValue = order.getValue().doubleValue();
+            optionKind = optionKind(option);
+            discount = option.getCalculatedDiscountAmount().doubleValue();
+            pointsUsed = option.getPointsUsedAmount().doubleValue();
+            methodsCharged = formatCharges(option.getAmountsToChargeByMethod());
+            this.candidates = candidates;
+            commit();
+        }
+    }
+
+
+    /**
+     * A payment method whose remaining limit dropped to zero.
+     */
+    @Name("com.chamera.patryk.LimitExhausted")
+    @Label("Limit Exhausted")
+    @Category(CATEGORY)
+    @Description("A payment method's remaining limit reached zero")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class LimitExhaustedEvent extends Event {
+
+        @Label("Method")
+        String methodId;
+
+        @Label("Order")
+        @Description("The order whose payment used up the limit")
+        String orderId;
+    }
+
+
+    /**
+     * Emits a {@link LimitExhaustedEvent} for every method the option charged that has no limit left.
+     *
+     * @param order The order just paid.
+     * @param option The option applied to it.
+     * @param remainingLimits Remaining limits after applying the option.
+     */
+    static void limitsExhausted(Order order, PaymentOption option, Map<String, BigDecimal> remainingLimits) {
+        LimitExhaustedEvent event = new LimitExhaustedEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+            BigDecimal remaining = remainingLimits.get(charge.getKey());
+            if (charge.getValue().signum() > 0 && remaining != null && remaining.signum() == 0) {
+                event.methodId = charge.getKey();
+                event.orderId = order.getId();
+                event.commit();
+                event = new LimitExhaustedEvent();
+            }
+        }
+    }
+
+
+    static String optionKind(PaymentOption option) {
+        boolean usesPoints = option.getPointsUsedAmount().signum() > 0;
+        boolean usesCard = false;
+        for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+            if (!charge.getKey().equals(PaymentOptimizerService.POINTS_ID_STRING) && charge.getValue().signum() > 0) {
+                usesCard = true;
+            }
+        }
+        if (usesPoints) {
+            return usesCard ? "POINTS_AND_CARD" : "POINTS_ONLY";
+        }
+        return option.getCalculatedDiscountAmount().signum() > 0 ? "CARD_PROMOTION" : "CARD_NO_PROMOTION";
+    }
+
+
+    private static String formatCharges(Map<String, BigDecimal> charges) {
+        StringBuilder formatted = new StringBuilder();
+        charges.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(charge -> {
+                    if (!formatted.isEmpty()) {
+                        formatted.append(',');
+                    }
+                    formatted.append(charge.getKey()).append('=').append(charge.getValue().toPlainString());
+                });
+        return formatted.toString();
+    }
+}
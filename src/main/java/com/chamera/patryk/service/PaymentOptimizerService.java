@@ -1,5 +1,8 @@
 package com.chamera.patryk.service;
 
+import com.chamera.patryk.exception.NoPaymentOptionException;
+import com.chamera.patryk.metrics.OptimizerMetrics;
+import com.chamera.patryk.metrics.PhaseMetrics;
 import com.chamera.patryk.model.Order;
 import com.chamera.patryk.model.PaymentMethod;
 import lombok.Getter;
@@ -17,9 +20,12 @@ import java.util.*;
  */
 public class PaymentOptimizerService {
 
-    private static final String POINTS_ID_STRING = "PUNKTY";
-    private static final BigDecimal PARTIAL_POINTS_ORDER_DISCOUNT_PERCENTAGE = new BigDecimal("0.10");
-    private static final BigDecimal MIN_POINTS_PERCENTAGE_FOR_PARTIAL_DISCOUNT = new BigDecimal("0.10");
+    static final String POINTS_ID_STRING = "PUNKTY";
+    static final BigDecimal PARTIAL_POINTS_ORDER_DISCOUNT_PERCENTAGE = new BigDecimal("0.10");
+    static final BigDecimal MIN_POINTS_PERCENTAGE_FOR_PARTIAL_DISCOUNT = new BigDecimal("0.10");
+
+    private final PhaseMetrics metrics;
+    private final OptimizerMetrics optimizerMetrics;
 
 
     /**
@@ -49,62 +55,363 @@ public class PaymentOptimizerService {
     }
 
 
+    /**
+     * Constructs a service without instrumentation.
+     */
+    public PaymentOptimizerService() {
+        this(PhaseMetrics.disabled());
+    }
+
+
+    /**
+     * Constructs a service that charges the time and allocation of each phase of {@link #optimizePayments} to the
+     * given metrics and records the latency of every order in the greedy pass.
+     *
+     * @param metrics Metrics of the current run; used only on the calling thread.
+     */
+    public PaymentOptimizerService(PhaseMetrics metrics) {
+        this(metrics, OptimizerMetrics.disabled());
+    }
+
+
+    /**
+     * Constructs a service for long-lived use that records solve latencies, orders, candidates per generator,
+     * infeasible orders and remaining limits to the given metrics.
+     *
+     * @param optimizerMetrics Metrics shared by all threads using this service.
+     */
+    public PaymentOptimizerService(OptimizerMetrics optimizerMetrics) {
+        this(PhaseMetrics.disabled(), optimizerMetrics);
+    }
+
+
+    private PaymentOptimizerService(PhaseMetrics metrics, OptimizerMetrics optimizerMetrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+        this.optimizerMetrics = Objects.requireNonNull(optimizerMetrics);
+    }
+
+
     /**
      * Main method to find the optimal payment distribution for a list of orders.
      * It sorts orders by their highest theoretical discount to tackle high-value discounts first.
      * For each order, it explores different payment scenarios (full card, full points, partial points, etc.),
      * choosing the one that offers the best discount, or uses more points if discounts are equal.
+     * A {@link FeasibilityOracle} rejects a choice that provably leaves the remaining orders unpayable,
+     * and if an order still cannot be paid the pass is rerun with a certificate guarding every choice.
+     * Once every order is paid, a {@link PointsRebalancer} post-pass moves surplus points
+     * between orders where that raises the total discount or increases points usage.
+     * Phases, order decisions and exhausted limits are reported as {@link OptimizerEvents} when recorded by JFR.
      *
      * @param orders List of orders to process.
      * @param paymentMethods Available payment methods.
      * @return Map of payment method ID to total amount spent with that method.
-     * @throws RuntimeException If an order cannot be fully paid.
+     * @throws NoPaymentOptionException If an order cannot be fully paid.
      */
     public Map<String, BigDecimal> optimizePayments(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        long solveStart = System.nanoTime();
+        metrics.start();
+        OptimizerEvents.PhaseEvent phaseEvent = OptimizerEvents.PhaseEvent.begin(PhaseMetrics.Phase.INDEX, orders.size());
+        Map<String, PaymentMethod> paymentMethodMap = buildPaymentMethodMap(paymentMethods);
+        Map<String, BigDecimal> remainingLimits = buildInitialLimits(paymentMethods);
+        metrics.lap(PhaseMetrics.Phase.INDEX);
+        phaseEvent = phaseEvent.next(PhaseMetrics.Phase.SORT);
+
+        List<Order> sortedOrders = sortOrdersByMaxTheoreticalDiscount(orders, paymentMethodMap);
+        metrics.lap(PhaseMetrics.Phase.SORT);
+        phaseEvent = phaseEvent.next(PhaseMetrics.Phase.GREEDY_PASS);
+        List<PaymentOption> chosenOptions = chooseGreedyOptions(sortedOrders, paymentMethodMap, remainingLimits);
+        metrics.lap(PhaseMetrics.Phase.GREEDY_PASS);
+        phaseEvent = phaseEvent.next(PhaseMetrics.Phase.FINISH_PLAN);
+
+        Map<String, BigDecimal> totalSpentByMethod = finishPlan(sortedOrders, chosenOptions, paymentMethodMap, remainingLimits);
+        metrics.lap(PhaseMetrics.Phase.FINISH_PLAN);
+        phaseEvent.commit();
+        optimizerMetrics.recordSolve(System.nanoTime() - solveStart, orders.size(), remainingLimits);
+        return totalSpentByMethod;
+    }
+
+
+    /**
+     * Runs the greedy pass: chooses and applies an option for each order in processing order.
+     * The pass vetoes only options that provably leave the remaining orders unpayable, so it keeps every greedy
+     * choice on instances the greedy algorithm can pay. If an order still cannot be paid, the limits are restored
+     * and the pass is run again with a {@link FeasibilityOracle} certificate guarding every choice, trading
+     * discount for a plan that pays every order.
+     *
+     * @param sortedOrders Orders in processing order.
+     * @param paymentMethodMap All payment methods.
+     * @param remainingLimits Current limits of methods; updated in place.
+     * @return Payment option chosen for each order (same indexes as {@code sortedOrders}).
+     * @throws NoPaymentOptionException If an order cannot be fully paid.
+     */
+    protected List<PaymentOption> chooseGreedyOptions(List<Order> sortedOrders, Map<String, PaymentMethod> paymentMethodMap, Map<String, BigDecimal> remainingLimits) {
+        BigDecimal[] minimumPayments = calculateMinimumPayments(sortedOrders, paymentMethodMap);
+        Map<String, BigDecimal> initialLimits = new HashMap<>(remainingLimits);
+
+        List<PaymentOption> chosenOptions = greedyPass(sortedOrders, paymentMethodMap, remainingLimits, minimumPayments, false);
+        if (chosenOptions.size() < sortedOrders.size()) {
+            // zachlanny przebieg utknal - drugi przebieg od poczatku, z certyfikatem
+            remainingLimits.clear();
+            remainingLimits.putAll(initialLimits);
+            chosenOptions = greedyPass(sortedOrders, paymentMethodMap, remainingLimits, minimumPayments, true);
+        }
+
+        for (int i = 0; i < chosenOptions.size(); i++) {
+            onOptionApplied(sortedOrders.get(i), chosenOptions.get(i));
+        }
+        if (chosenOptions.size() < sortedOrders.size()) {
+            optimizerMetrics.recordInfeasibleOrder();
+            throw noPaymentOptionException(sortedOrders.get(chosenOptions.size()));
+        }
+        return chosenOptions;
+    }
+
+
+    /**
+     * Chooses and applies an option for each order in processing order until an order cannot be paid.
+     *
+     * @return Options chosen so far; shorter than {@code sortedOrders} if the order after the last one has no option.
+     */
+    private List<PaymentOption> greedyPass(List<Order> sortedOrders, Map<String, PaymentMethod> paymentMethodMap, Map<String, BigDecimal> remainingLimits,
+                                           BigDecimal[] minimumPayments, boolean useCertificate) {
+        Map<String, BigDecimal> totalSpentByMethod = new HashMap<>();
+        List<PaymentOption> chosenOptions = new ArrayList<>(sortedOrders.size());
+        FeasibilityOracle feasibilityOracle = new FeasibilityOracle(sortedOrders, minimumPayments, remainingLimits, useCertificate);
+
+        for (int i = 0; i < sortedOrders.size(); i++) {
+            Order order = sortedOrders.get(i);
+            metrics.startOrder();
+            OptimizerEvents.OrderDecisionEvent decisionEvent = new OptimizerEvents.OrderDecisionEvent();
+            decisionEvent.begin();
+            List<PaymentOption> possibleOptions = generatePaymentOptions(order, paymentMethodMap, remainingLimits);
+            metrics.orderLap(PhaseMetrics.Phase.GENERATE_OPTIONS);
+
+            if (possibleOptions.isEmpty()) {
+                metrics.endOrder();
+                break;
+            }
+
+            PaymentOption bestOption = feasibilityOracle.choose(i, possibleOptions, remainingLimits);
+
+            applyPaymentOption(bestOption, remainingLimits, totalSpentByMethod);
+            chosenOptions.add(bestOption);
+            metrics.orderLap(PhaseMetrics.Phase.APPLY_PAYMENTS);
+            metrics.endOrder();
+            decisionEvent.commit(order, bestOption, possibleOptions.size());
+            OptimizerEvents.limitsExhausted(order, bestOption, remainingLimits);
+        }
+        return chosenOptions;
+    }
+
+
+    /**
+     * Indexes payment methods by their ID.
+     *
+     * @param paymentMethods Available payment methods.
+     * @return Map of payment method ID to payment method.
+     */
+    protected Map<String, PaymentMethod> buildPaymentMethodMap(List<PaymentMethod> paymentMethods) {
         Map<String, PaymentMethod> paymentMethodMap = new HashMap<>();
-        Map<String, BigDecimal> remainingLimits = new HashMap<>();
         for (PaymentMethod paymentMethod : paymentMethods) {
             paymentMethodMap.put(paymentMethod.getId(), paymentMethod);
+        }
+        return paymentMethodMap;
+    }
+
+
+    /**
+     * Builds the initial remaining limits, equal to each payment method's limit.
+     *
+     * @param paymentMethods Available payment methods.
+     * @return Map of payment method ID to its full limit.
+     */
+    protected Map<String, BigDecimal> buildInitialLimits(List<PaymentMethod> paymentMethods) {
+        Map<String, BigDecimal> remainingLimits = new HashMap<>();
+        for (PaymentMethod paymentMethod : paymentMethods) {
             remainingLimits.put(paymentMethod.getId(), paymentMethod.getLimit());
         }
+        return remainingLimits;
+    }
 
-        List<Order> sortedOrders = new ArrayList<>(orders);
-        sortedOrders.sort((order1, order2) -> {
-            BigDecimal maxDiscount1 = calculateMaxTheoreticalDiscount(order1, paymentMethodMap);
-            BigDecimal maxDiscount2 = calculateMaxTheoreticalDiscount(order2, paymentMethodMap);
-            return maxDiscount2.compareTo(maxDiscount1); //malejaco
-        });
 
-        Map<String, BigDecimal> totalSpentByMethod = new HashMap<>();
+    /**
+     * Sorts orders descending by their maximum theoretical discount (stable for equal discounts).
+     * The discount of each order is computed once, not on every comparison.
+     *
+     * @param orders Orders to sort; the list itself is not modified.
+     * @param paymentMethodMap Available payment methods.
+     * @return A new list with the orders in processing order.
+     */
+    protected List<Order> sortOrdersByMaxTheoreticalDiscount(List<Order> orders, Map<String, PaymentMethod> paymentMethodMap) {
+        return sortOrdersByMaxTheoreticalDiscount(orders, paymentMethodMap, new BigDecimal[orders.size()]);
+    }
 
-        for (Order order : sortedOrders) {
-            List<PaymentOption> possibleOptions = new ArrayList<>();
 
+    /**
+     * Sorts orders like {@link #sortOrdersByMaxTheoreticalDiscount(List, Map)} and hands back the discounts
+     * the sort computed, for engines that use them again as bounds.
+     *
+     * @param orders Orders to sort; the list itself is not modified.
+     * @param paymentMethodMap Available payment methods.
+     * @param maxDiscounts Array as long as {@code orders}, filled with the maximum theoretical discount of each
+     *                     sorted order (same indexes as the returned list).
+     * @return A new list with the orders in processing order.
+     */
+    protected List<Order> sortOrdersByMaxTheoreticalDiscount(List<Order> orders, Map<String, PaymentMethod> paymentMethodMap, BigDecimal[] maxDiscounts) {
+        Order[] input = orders.toArray(new Order[0]);
+        BigDecimal[] discounts = new BigDecimal[input.length];
+        Integer[] positions = new Integer[input.length];
+        for (int i = 0; i < input.length; i++) {
+            discounts[i] = calculateMaxTheoreticalDiscount(input[i], paymentMethodMap);
+            positions[i] = i;
+        }
+        Arrays.sort(positions, (position1, position2) -> discounts[position2].compareTo(discounts[position1])); //malejaco, stabilnie
+
+        List<Order> sortedOrders = new ArrayList<>(input.length);
+        for (int i = 0; i < input.length; i++) {
+            sortedOrders.add(input[positions[i]]);
+            maxDiscounts[i] = discounts[positions[i]];
+        }
+        return sortedOrders;
+    }
+
+
+    /**
+     * Calculates a lower bound of the amount paid for each order: its value minus its maximum theoretical discount.
+     *
+     * @param orders Orders to evaluate.
+     * @param paymentMethodMap Available payment methods.
+     * @return Minimum payment of each order (same indexes as {@code orders}).
+     */
+    protected BigDecimal[] calculateMinimumPayments(List<Order> orders, Map<String, PaymentMethod> paymentMethodMap) {
+        BigDecimal[] minimumPayments = new BigDecimal[orders.size()];
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            minimumPayments[i] = order.getValue().subtract(calculateMaxTheoreticalDiscount(order, paymentMethodMap));
+        }
+        return minimumPayments;
+    }
+
+
+    /**
+     * Called after the greedy pass for each option of the plan it kept, in processing order; if an order cannot
+     * be paid, for the options chosen before it. Does nothing by default; subclasses may record the decisions.
+     *
+     * @param order The order just paid.
+     * @param option The option applied to it.
+     */
+    protected void onOptionApplied(Order order, PaymentOption option) {
+    }
+
+
+    /**
+     * Generates all valid payment options for an order under the given remaining limits,
+     * best first: the highest discount, then the most points used. Equal options keep generation order.
+     *
+     * @param order Current order.
+     * @param paymentMethodMap All payment methods.
+     * @param remainingLimits Current limits of methods.
+     * @return Valid payment options, best first; empty if the order cannot be paid.
+     */
+    protected List<PaymentOption> generatePaymentOptions(Order order, Map<String, PaymentMethod> paymentMethodMap, Map<String, BigDecimal> remainingLimits) {
+        List<PaymentOption> possibleOptions = new ArrayList<>();
+
+        if (optimizerMetrics.isEnabled()) {
+            addCountedPaymentOptions(order, paymentMethodMap, remainingLimits, possibleOptions);
+        } else {
             addFullCardPaymentOptions(order, paymentMethodMap, remainingLimits, possibleOptions);
             addFullPointsOptions(order, paymentMethodMap, remainingLimits, possibleOptions);
             addPartialPointsOption(order, paymentMethodMap, remainingLimits, possibleOptions); //opcja gdzie min 10% placone punktami, to daje rabat 10%
             addCardPaymentWithoutPromotionOption(order, paymentMethodMap, remainingLimits, possibleOptions);
+        }
 
-            if (possibleOptions.isEmpty()) {
-                throw new RuntimeException("No possible payment option found for order " + order.getId() +
-                        " All orders must be fully paid.");
-            }
+        // 1)najwiekszy rabat 2)najwiecej puntkow uzytych
+        possibleOptions.sort(PaymentOptimizerService::compareOptions);
+        return possibleOptions;
+    }
 
-            // 1)najwiekszy rabat 2)najwiecej puntkow uzytych
-            possibleOptions.sort(((o1, o2) -> {
-                int discountComparison = o2.getCalculatedDiscountAmount().compareTo(o1.getCalculatedDiscountAmount());
-                if (discountComparison != 0) {
-                    return discountComparison;
-                }
-                return o2.getPointsUsedAmount().compareTo(o1.getPointsUsedAmount());
-            }));
 
-            PaymentOption bestOption = possibleOptions.get(0);
+    /**
+     * Runs the same generators as {@link #generatePaymentOptions}, in the same order, and records how many
+     * candidates each one looked at and produced: a full card payment per promotion, one full points and one partial
+     * points payment if points exist, and a payment without promotion per card.
+     */
+    private void addCountedPaymentOptions(Order order, Map<String, PaymentMethod> paymentMethodMap, Map<String, BigDecimal> remainingLimits, List<PaymentOption> possibleOptions) {
+        int pointsCandidates = paymentMethodMap.containsKey(POINTS_ID_STRING) ? 1 : 0;
+
+        int before = possibleOptions.size();
+        addFullCardPaymentOptions(order, paymentMethodMap, remainingLimits, possibleOptions);
+        int promotions = order.getPromotions() == null ? 0 : order.getPromotions().size();
+        optimizerMetrics.recordCandidates(OptimizerMetrics.Generator.FULL_CARD, promotions, possibleOptions.size() - before);
+
+        before = possibleOptions.size();
+        addFullPointsOptions(order, paymentMethodMap, remainingLimits, possibleOptions);
+        optimizerMetrics.recordCandidates(OptimizerMetrics.Generator.FULL_POINTS, pointsCandidates, possibleOptions.size() - before);
+
+        before = possibleOptions.size();
+        addPartialPointsOption(order, paymentMethodMap, remainingLimits, possibleOptions);
+        optimizerMetrics.recordCandidates(OptimizerMetrics.Generator.PARTIAL_POINTS, pointsCandidates, possibleOptions.size() - before);
+
+        before = possibleOptions.size();
+        addCardPaymentWithoutPromotionOption(order, paymentMethodMap, remainingLimits, possibleOptions);
+        optimizerMetrics.recordCandidates(OptimizerMetrics.Generator.CARD_WITHOUT_PROMOTION,
+                paymentMethodMap.size() - pointsCandidates, possibleOptions.size() - before);
+    }
 
-            applyPaymentOption(bestOption, remainingLimits, totalSpentByMethod);
+
+    /**
+     * Orders payment options from best to worst: a higher discount first, then more points used.
+     *
+     * @param o1 First option.
+     * @param o2 Second option.
+     * @return Negative if {@code o1} is better, positive if {@code o2} is better, zero if equal.
+     */
+    protected static int compareOptions(PaymentOption o1, PaymentOption o2) {
+        int discountComparison = o2.getCalculatedDiscountAmount().compareTo(o1.getCalculatedDiscountAmount());
+        if (discountComparison != 0) {
+            return discountComparison;
         }
-        return totalSpentByMethod;
+        return o2.getPointsUsedAmount().compareTo(o1.getPointsUsedAmount());
+    }
+
+
+    /**
+     * Finishes a complete plan: runs the {@link PointsRebalancer} post-pass and sums the charges per method.
+     *
+     * @param sortedOrders Orders in the order they were processed.
+     * @param chosenOptions Payment option applied for each order (same indexes as {@code sortedOrders}).
+     * @param paymentMethodMap All payment methods.
+     * @param remainingLimits Remaining limits after applying the plan; updated in place by the post-pass.
+     * @return Map of payment method ID to total amount spent with that method.
+     */
+    protected Map<String, BigDecimal> finishPlan(List<Order> sortedOrders, List<PaymentOption> chosenOptions, Map<String, PaymentMethod> paymentMethodMap, Map<String, BigDecimal> remainingLimits) {
+        return sumChargesByMethod(rebalancePlan(sortedOrders, chosenOptions, paymentMethodMap, remainingLimits));
+    }
+
+
+    /**
+     * Runs the {@link PointsRebalancer} post-pass over a complete plan.
+     *
+     * @param sortedOrders Orders in the order they were processed.
+     * @param chosenOptions Payment option applied for each order (same indexes as {@code sortedOrders}).
+     * @param paymentMethodMap All payment methods.
+     * @param remainingLimits Remaining limits after applying the plan; updated in place.
+     * @return Final payment option of each order (same indexes as {@code sortedOrders}).
+     */
+    protected List<PaymentOption> rebalancePlan(List<Order> sortedOrders, List<PaymentOption> chosenOptions, Map<String, PaymentMethod> paymentMethodMap, Map<String, BigDecimal> remainingLimits) {
+        return new PointsRebalancer(paymentMethodMap).rebalance(sortedOrders, chosenOptions, remainingLimits);
+    }
+
 
+    /**
+     * Creates the exception thrown when an order has no valid payment option left.
+     *
+     * @param order The order that cannot be paid.
+     * @return The exception to throw.
+     */
+    protected static NoPaymentOptionException noPaymentOptionException(Order order) {
+        return new NoPaymentOptionException("No possible payment option found for order " + order.getId() +
+                " All orders must be fully paid.");
     }
 
 
@@ -288,10 +595,11 @@ public class PaymentOptimizerService {
             return;
         }
 
-        //logika wyboru karty
-        PaymentMethod selectedCardToPayRemainder = null;
-        List<PaymentMethod> candidateCardsGroup1 = new ArrayList<>(); // bez promocji
-        List<PaymentMethod> candidateCardsGroup2 = new ArrayList<>(); // z
+        //logika wyboru karty - jedno przejscie zamiast sortowania kandydatow przy kazdym zamowieniu
+        PaymentMethod cardWithoutPromotion = null; // najmniejszy limit
+        BigDecimal cardWithoutPromotionLimit = null;
+        PaymentMethod cardOnPromotion = null; // najmniejszy rabat (i tak sie tu nie liczy), potem najmniejszy limit
+        BigDecimal cardOnPromotionLimit = null;
 
         for (PaymentMethod card : paymentMethodMap.values()) {
             if (card.getId().equals(POINTS_ID_STRING)) {
@@ -305,26 +613,21 @@ public class PaymentOptimizerService {
                     isOnOrderPromotion = true;
                 }
 
+                // przy remisie zostaje pierwsza karta, tak jak przy stabilnym sortowaniu
                 if (isOnOrderPromotion) {
-                    candidateCardsGroup2.add(card);
+                    if (cardOnPromotion == null || card.getDiscount() < cardOnPromotion.getDiscount()
+                            || (card.getDiscount() == cardOnPromotion.getDiscount() && cardLimit.compareTo(cardOnPromotionLimit) < 0)) {
+                        cardOnPromotion = card;
+                        cardOnPromotionLimit = cardLimit;
+                    }
                 }
-                else {
-                    candidateCardsGroup1.add(card);
+                else if (cardWithoutPromotion == null || cardLimit.compareTo(cardWithoutPromotionLimit) < 0) {
+                    cardWithoutPromotion = card;
+                    cardWithoutPromotionLimit = cardLimit;
                 }
             }
         }
-        if (!candidateCardsGroup1.isEmpty()) {
-            candidateCardsGroup1.sort(Comparator.comparing(card -> remainingLimits.getOrDefault(card.getId(), BigDecimal.ZERO)));
-            selectedCardToPayRemainder = candidateCardsGroup1.get(0);
-        }
-
-        if (selectedCardToPayRemainder == null && !candidateCardsGroup2.isEmpty()) {
-            candidateCardsGroup2.sort(Comparator
-                    .comparingInt(PaymentMethod::getDiscount) // rosnaco po rabacie (chchemy wybrac ta ktora ma najmniejszy rabat bo i tak sie nie liczy tu)
-                    .thenComparing(card -> remainingLimits.getOrDefault(card.getId(), BigDecimal.ZERO)) //rosnaco po limicie
-            );
-            selectedCardToPayRemainder = candidateCardsGroup2.get(0);
-        }
+        PaymentMethod selectedCardToPayRemainder = cardWithoutPromotion != null ? cardWithoutPromotion : cardOnPromotion;
 
         if (selectedCardToPayRemainder != null) {
             Map<String, BigDecimal> usedMethods = new HashMap<>();
@@ -388,6 +691,21 @@ public class PaymentOptimizerService {
     }
 
 
-
-
+    /**
+     * Sums the charges of the given payment options per payment method.
+     * Every method charged by at least one option appears in the result, even with a zero amount,
+     * which mirrors the bookkeeping done by {@link #applyPaymentOption}.
+     *
+     * @param options Payment options of a complete plan.
+     * @return Map of payment method ID to total amount charged to that method.
+     */
+    protected Map<String, BigDecimal> sumChargesByMethod(List<PaymentOption> options) {
+        Map<String, BigDecimal> totalSpentByMethod = new HashMap<>();
+        for (PaymentOption option : options) {
+            for (Map.Entry<String, BigDecimal> entry : option.getAmountsToChargeByMethod().entrySet()) {
+                totalSpentByMethod.merge(entry.getKey(), entry.getValue(), BigDecimal::add);
+            }
+        }
+        return totalSpentByMethod;
+    }
 }
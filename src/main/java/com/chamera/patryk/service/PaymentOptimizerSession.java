@@ -0,0 +1,288 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static com.chamera.patryk.service.PaymentOptimizerService.POINTS_ID_STRING;
+
+/**
+ * Stateful optimizer session that keeps a payment plan up to date while orders are added and cancelled,
+ * instead of running {@link PaymentOptimizerService#optimizePayments} again over the full list.
+ * <p>
+ * The session starts from the same plan as the greedy algorithm and keeps the payment methods, a
+ * {@link LimitLedger} and the current option of every order in memory. Each change is repaired locally:
+ * <ul>
+ *     <li>An added order gets its best option under the remaining limits.</li>
+ *     <li>A cancelled order gives its charges back, and the freed limit is reoffered to the orders that can
+ *     profit from it: orders with a promotion on a freed card (found through a promotion-to-orders index)
+ *     and, when points are freed, orders not paying with points yet. An order is moved only if its new
+ *     best option is strictly better, and at most {@code maxReoffersPerChange} orders are re-evaluated.</li>
+ * </ul>
+ * Every change returns the list of assignments it changed. The session is not thread-safe.
+ */
+public class PaymentOptimizerSession {
+
+    /**
+     * Default number of orders re-evaluated after a cancellation.
+     */
+    public static final int DEFAULT_MAX_REOFFERS_PER_CHANGE = 1_000;
+
+    private final PaymentOptimizerService optionRules;
+    private final Map<String, PaymentMethod> paymentMethodMap;
+    private final LimitLedger ledger;
+    private final int maxReoffersPerChange;
+
+    private final Map<String, Order> ordersById = new HashMap<>();
+    private final Map<String, PaymentOption> assignments = new HashMap<>();
+    private final Map<String, Set<String>> ordersByPromotion = new HashMap<>();
+    private final Set<String> ordersWithoutPoints = new LinkedHashSet<>();
+
+
+    /**
+     * A changed assignment of one order.
+     *
+     * @param orderId ID of the order.
+     * @param previousCharges Amounts charged per payment method before the change, or {@code null} for an added order.
+     * @param newCharges Amounts charged per payment method after the change, or {@code null} for a cancelled order.
+     */
+    public record AssignmentChange(String orderId, Map<String, BigDecimal> previousCharges, Map<String, BigDecimal> newCharges) {
+    }
+
+
+    /**
+     * Constructs a session with the default reoffer budget.
+     *
+     * @param orders Initial orders.
+     * @param paymentMethods Available payment methods.
+     * @throws IllegalArgumentException If two orders share an ID.
+     * @throws RuntimeException If an order cannot be fully paid.
+     */
+    public PaymentOptimizerSession(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        this(orders, paymentMethods, DEFAULT_MAX_REOFFERS_PER_CHANGE);
+    }
+
+
+    /**
+     * Constructs a session and computes the initial plan with the greedy algorithm.
+     *
+     * @param orders Initial orders.
+     * @param paymentMethods Available payment methods.
+     * @param maxReoffersPerChange Maximum number of orders re-evaluated after a cancellation.
+     * @throws IllegalArgumentException If two orders share an ID or the reoffer budget is negative.
+     * @throws RuntimeException If an order cannot be fully paid.
+     */
+    public PaymentOptimizerSession(List<Order> orders, List<PaymentMethod> paymentMethods, int maxReoffersPerChange) {
+        if (maxReoffersPerChange < 0) {
+            throw new IllegalArgumentException("Reoffer budget must not be negative, got " + maxReoffersPerChange + ".");
+        }
+        this.optionRules = new PaymentOptimizerService();
+        this.paymentMethodMap = optionRules.buildPaymentMethodMap(paymentMethods);
+        this.ledger = new LimitLedger(paymentMethods);
+        this.maxReoffersPerChange = maxReoffersPerChange;
+
+        for (Order order : orders) {
+            if (ordersById.putIfAbsent(order.getId(), order) != null) {
+                throw new IllegalArgumentException("Duplicate order ID: " + order.getId());
+            }
+        }
+
+        List<Order> sortedOrders = optionRules.sortOrdersByMaxTheoreticalDiscount(orders, paymentMethodMap);
+        Map<String, BigDecimal> remainingLimits = optionRules.buildInitialLimits(paymentMethods);
+        List<PaymentOption> chosenOptions = optionRules.chooseGreedyOptions(sortedOrders, paymentMethodMap, remainingLimits);
+        List<PaymentOption> finalOptions = optionRules.rebalancePlan(sortedOrders, chosenOptions, paymentMethodMap, remainingLimits);
+
+        for (int i = 0; i < sortedOrders.size(); i++) {
+            ledger.apply(finalOptions.get(i));
+            assign(sortedOrders.get(i), finalOptions.get(i));
+        }
+        ledger.clearTrail();
+    }
+
+
+    /**
+     * Adds an order and pays it with its best option under the remaining limits.
+     * If the order cannot be paid, the session is left unchanged.
+     *
+     * @param order The order to add.
+     * @return The changed assignments: just the new order.
+     * @throws IllegalArgumentException If an order with the same ID is already in the session.
+     * @throws RuntimeException If the order cannot be fully paid.
+     */
+    public List<AssignmentChange> addOrder(Order order) {
+        if (ordersById.containsKey(order.getId())) {
+            throw new IllegalArgumentException("Order " + order.getId() + " is already in the session.");
+        }
+        List<PaymentOption> options = optionRules.generatePaymentOptions(order, paymentMethodMap, ledger.remainingLimits());
+        if (options.isEmpty()) {
+            throw PaymentOptimizerService.noPaymentOptionException(order);
+        }
+
+        PaymentOption bestOption = options.get(0);
+        ledger.apply(bestOption);
+        ledger.clearTrail();
+        ordersById.put(order.getId(), order);
+        assign(order, bestOption);
+        return List.of(new AssignmentChange(order.getId(), null, charges(bestOption)));
+    }
+
+
+    /**
+     * Cancels an order, gives its charges back and reoffers the freed limit to the orders that can profit from it.
+     *
+     * @param orderId ID of the order to cancel.
+     * @return The changed assignments: the cancelled order first, then every order moved to a better option.
+     * @throws IllegalArgumentException If the order is not in the session.
+     */
+    public List<AssignmentChange> cancelOrder(String orderId) {
+        Order order = ordersById.remove(orderId);
+        if (order == null) {
+            throw new IllegalArgumentException("Order " + orderId + " is not in the session.");
+        }
+        PaymentOption cancelledOption = unassign(order);
+        ledger.release(cancelledOption);
+
+        List<AssignmentChange> changes = new ArrayList<>();
+        changes.add(new AssignmentChange(orderId, charges(cancelledOption), null));
+        reoffer(cancelledOption.getAmountsToChargeByMethod().keySet(), changes);
+        ledger.clearTrail();
+        return changes;
+    }
+
+
+    /**
+     * Returns the amounts currently charged for an order.
+     *
+     * @param orderId ID of the order.
+     * @return Map of payment method ID to amount charged, or {@code null} if the order is not in the session.
+     */
+    public Map<String, BigDecimal> getAssignment(String orderId) {
+        PaymentOption option = assignments.get(orderId);
+        return option == null ? null : charges(option);
+    }
+
+
+    /**
+     * Returns the total amount spent per payment method by the current plan, in the format of
+     * {@link PaymentOptimizerService#optimizePayments}.
+     *
+     * @return Map of payment method ID to total amount spent with that method.
+     */
+    public Map<String, BigDecimal> getTotalSpentByMethod() {
+        return ledger.totalSpentByMethod();
+    }
+
+
+    /**
+     * @return Number of orders in the session.
+     */
+    public int getOrderCount() {
+        return ordersById.size();
+    }
+
+
+    /**
+     * Re-evaluates the orders that can profit from the freed methods, source by source, until the budget or the
+     * freed limit is used up. Only as many candidates as the budget allows are read from each source, so the cost
+     * of a cancellation depends on the budget and not on the number of orders in the session.
+     */
+    private void reoffer(Set<String> freedMethodIds, List<AssignmentChange> changes) {
+        Set<String> visited = new HashSet<>();
+        for (String methodId : freedMethodIds) {
+            int budgetLeft = maxReoffersPerChange - visited.size();
+            if (budgetLeft <= 0) {
+                return;
+            }
+            Set<String> source = methodId.equals(POINTS_ID_STRING)
+                    ? ordersWithoutPoints
+                    : ordersByPromotion.getOrDefault(methodId, Collections.emptySet());
+
+            // kopia tylko do wyczerpania budzetu - przeniesienie zamowienia zmienia zbiory w trakcie petli
+            List<String> candidateIds = new ArrayList<>(Math.min(budgetLeft, source.size()));
+            for (String candidateId : source) {
+                if (candidateIds.size() >= budgetLeft) {
+                    break;
+                }
+                if (!visited.contains(candidateId)) {
+                    candidateIds.add(candidateId);
+                }
+            }
+
+            for (String candidateId : candidateIds) {
+                if (allUsedUp(freedMethodIds)) {
+                    return;
+                }
+                visited.add(candidateId);
+                reofferTo(candidateId, changes);
+            }
+        }
+    }
+
+
+    /**
+     * Moves an order to its best option under the current limits if that option is strictly better.
+     */
+    private void reofferTo(String candidateId, List<AssignmentChange> changes) {
+        Order candidate = ordersById.get(candidateId);
+        PaymentOption currentOption = assignments.get(candidateId);
+        int checkpoint = ledger.checkpoint();
+        ledger.release(currentOption);
+
+        List<PaymentOption> options = optionRules.generatePaymentOptions(candidate, paymentMethodMap, ledger.remainingLimits());
+        if (options.isEmpty() || PaymentOptimizerService.compareOptions(options.get(0), currentOption) >= 0) {
+            ledger.rollback(checkpoint);
+            return;
+        }
+
+        PaymentOption betterOption = options.get(0);
+        ledger.apply(betterOption);
+        unassign(candidate);
+        assign(candidate, betterOption);
+        changes.add(new AssignmentChange(candidateId, charges(currentOption), charges(betterOption)));
+    }
+
+
+    private boolean allUsedUp(Set<String> methodIds) {
+        for (String methodId : methodIds) {
+            if (ledger.remainingLimit(methodId).signum() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void assign(Order order, PaymentOption option) {
+        assignments.put(order.getId(), option);
+        if (order.getPromotions() != null) {
+            for (String promotionId : order.getPromotions()) {
+                ordersByPromotion.computeIfAbsent(promotionId, id -> new LinkedHashSet<>()).add(order.getId());
+            }
+        }
+        if (!option.getAmountsToChargeByMethod().containsKey(POINTS_ID_STRING)) {
+            ordersWithoutPoints.add(order.getId());
+        }
+    }
+
+
+    private PaymentOption unassign(Order order) {
+        if (order.getPromotions() != null) {
+            for (String promotionId : order.getPromotions()) {
+                Set<String> promotionOrders = ordersByPromotion.get(promotionId);
+                if (promotionOrders != null) {
+                    promotionOrders.remove(order.getId());
+                }
+            }
+        }
+        ordersWithoutPoints.remove(order.getId());
+        return assignments.remove(order.getId());
+    }
+
+
+    private static Map<String, BigDecimal> charges(PaymentOption option) {
+        return Collections.unmodifiableMap(option.getAmountsToChargeByMethod());
+    }
+}
@@ -0,0 +1,356 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static com.chamera.patryk.service.PaymentOptimizerService.MIN_POINTS_PERCENTAGE_FOR_PARTIAL_DISCOUNT;
+import static com.chamera.patryk.service.PaymentOptimizerService.PARTIAL_POINTS_ORDER_DISCOUNT_PERCENTAGE;
+import static com.chamera.patryk.service.PaymentOptimizerService.POINTS_ID_STRING;
+
+/**
+ * Post-pass over an already applied payment plan which redistributes loyalty points ("PUNKTY").
+ * Once the plan is fixed, a partial-points order only needs 10% of its value paid with points to keep
+ * its 10% discount; anything above that merely displaces card spend. The rebalancer moves this surplus
+ * onto orders currently paid fully by card, where the points unlock either the partial-points discount
+ * or the full-points discount (water-filling by discount gained per point). Points that are still free
+ * at the end are poured back into partial-points orders, so points usage never decreases.
+ * Every move is checked against the remaining limits, so no method is ever overdrawn.
+ */
+class PointsRebalancer {
+
+    private final Map<String, PaymentMethod> paymentMethodMap;
+
+
+    /**
+     * Mutable working copy of a single order's payment, limited to the shapes produced by the option
+     * generators: points only, a single card only, or points plus a single card.
+     */
+    private static class PlanEntry {
+        final Order order;
+        final PaymentOption originalOption;
+        final BigDecimal minPointsForPartialDiscount;
+        BigDecimal discount;
+        BigDecimal points;
+        String cardId;
+        BigDecimal cardCharge;
+        boolean changed;
+
+        PlanEntry(Order order, PaymentOption option) {
+            this.order = order;
+            this.originalOption = option;
+            this.minPointsForPartialDiscount = order.getValue().multiply(MIN_POINTS_PERCENTAGE_FOR_PARTIAL_DISCOUNT).setScale(2, RoundingMode.HALF_UP);
+            this.discount = option.getCalculatedDiscountAmount();
+            this.points = BigDecimal.ZERO;
+            this.cardCharge = BigDecimal.ZERO;
+            for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+                if (charge.getKey().equals(POINTS_ID_STRING)) {
+                    points = charge.getValue();
+                } else {
+                    cardId = charge.getKey();
+                    cardCharge = charge.getValue();
+                }
+            }
+        }
+
+        boolean isPartialPointsWithCard() {
+            return points.signum() > 0 && cardId != null;
+        }
+
+        boolean isFullCard() {
+            return points.signum() == 0 && cardId != null;
+        }
+
+        BigDecimal surplusPoints() {
+            return points.subtract(minPointsForPartialDiscount).max(BigDecimal.ZERO);
+        }
+
+        PaymentOption toPaymentOption() {
+            if (!changed) {
+                return originalOption;
+            }
+            Map<String, BigDecimal> usedMethods = new HashMap<>();
+            if (points.signum() > 0) {
+                usedMethods.put(POINTS_ID_STRING, points);
+            }
+            if (cardId != null && cardCharge.signum() > 0) {
+                usedMethods.put(cardId, cardCharge);
+            }
+            return new PaymentOption(discount, points, usedMethods);
+        }
+    }
+
+
+    /**
+     * A possible upgrade of a fully card-paid order to a points-based payment.
+     * Besides the amounts, it keeps the discount percentage it reaches and the share of the order value it pays
+     * with points, in percent, which give its efficiency before rounding to cents.
+     */
+    private record Upgrade(PlanEntry target, BigDecimal discount, BigDecimal pointsNeeded, BigDecimal newCardCharge,
+                           int discountPercentage, int pointsPercentage) {
+
+        BigDecimal gain() {
+            return discount.subtract(target.discount);
+        }
+
+        /**
+         * Compares discount gained per point needed without dividing: a/b > c/d  <=>  a*d > c*b.
+         */
+        int compareEfficiency(Upgrade other) {
+            return gain().multiply(other.pointsNeeded).compareTo(other.gain().multiply(pointsNeeded));
+        }
+    }
+
+
+    /**
+     * Discount gained per point as a reduced fraction of percentages, the same for every order value.
+     */
+    private record NominalEfficiency(int gain, int points) implements Comparable<NominalEfficiency> {
+
+        static NominalEfficiency of(int gain, int points) {
+            int divisor = BigInteger.valueOf(gain).gcd(BigInteger.valueOf(points)).intValue();
+            return new NominalEfficiency(gain / divisor, points / divisor);
+        }
+
+        @Override
+        public int compareTo(NominalEfficiency other) {
+            return Long.compare((long) gain * other.points, (long) other.gain * points);
+        }
+    }
+
+
+    /**
+     * Constructs a rebalancer for the given payment methods.
+     * @param paymentMethodMap All payment methods, keyed by ID.
+     */
+    PointsRebalancer(Map<String, PaymentMethod> paymentMethodMap) {
+        this.paymentMethodMap = paymentMethodMap;
+    }
+
+
+    /**
+     * Rebalances points across an applied plan.
+     * Orders are upgraded in decreasing order of discount gained per point. An upgrade the free points limit
+     * already covers is taken with the highest gain; otherwise the most efficient upgrade takes points from the
+     * surplus of partial-points orders, which move the same amount onto their own card as long as that card
+     * has remaining limit. Upgrade candidates are ordered by bucketing (see {@link #upgradesByEfficiency}) and donors
+     * are visited with a single forward cursor, so the pass is linear in the number of orders.
+     *
+     * @param orders Orders of the plan, in the order they were processed.
+     * @param options Payment option applied for each order (same indexes as {@code orders}).
+     * @param remainingLimits Remaining limits after applying the plan; updated in place.
+     * @return Payment options after rebalancing (same indexes as {@code orders}).
+     */
+    List<PaymentOption> rebalance(List<Order> orders, List<PaymentOption> options, Map<String, BigDecimal> remainingLimits) {
+        PaymentMethod pointsMethod = paymentMethodMap.get(POINTS_ID_STRING);
+        if (pointsMethod == null || orders.isEmpty()) {
+            return options;
+        }
+
+        List<PlanEntry> entries = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            entries.add(new PlanEntry(orders.get(i), options.get(i)));
+        }
+
+        List<List<Upgrade>> upgradesByTarget = upgradesByEfficiency(entries, pointsMethod);
+
+        List<PlanEntry> donors = new ArrayList<>();
+        for (PlanEntry entry : entries) {
+            if (entry.isPartialPointsWithCard() && entry.surplusPoints().signum() > 0) {
+                donors.add(entry);
+            }
+        }
+
+        int donorCursor = 0;
+        for (List<Upgrade> upgrades : upgradesByTarget) {
+            Upgrade affordableWithFreePoints = highestGainAffordable(upgrades, remainingLimits.get(POINTS_ID_STRING));
+            if (affordableWithFreePoints != null) {
+                applyUpgrade(affordableWithFreePoints, remainingLimits);
+                continue;
+            }
+            Upgrade mostEfficient = upgrades.get(0);
+            donorCursor = collectPoints(mostEfficient.pointsNeeded(), donors, donorCursor, remainingLimits);
+            if (remainingLimits.get(POINTS_ID_STRING).compareTo(mostEfficient.pointsNeeded()) >= 0) {
+                applyUpgrade(mostEfficient, remainingLimits);
+            }
+        }
+
+        pourFreePoints(entries, remainingLimits);
+
+        List<PaymentOption> rebalancedOptions = new ArrayList<>(entries.size());
+        for (PlanEntry entry : entries) {
+            rebalancedOptions.add(entry.toPaymentOption());
+        }
+        return rebalancedOptions;
+    }
+
+
+    /**
+     * Lists the upgrades of every fully card-paid order, ordered by decreasing efficiency of each order's best
+     * upgrade, without sorting the orders.
+     * Before rounding to cents, the efficiency of an upgrade depends only on its kind and on the discount percentage
+     * of the card the order is paid with, so the orders fall into at most two buckets per percentage. Only the
+     * buckets are sorted; within a bucket the orders keep plan order, so upgrades whose efficiencies differ only
+     * by rounding count as ties.
+     *
+     * @return Possible upgrades of each order that has any, best bucket first.
+     */
+    private List<List<Upgrade>> upgradesByEfficiency(List<PlanEntry> entries, PaymentMethod pointsMethod) {
+        Map<NominalEfficiency, List<List<Upgrade>>> buckets = new HashMap<>();
+        for (PlanEntry entry : entries) {
+            if (entry.isFullCard()) {
+                List<Upgrade> upgrades = possibleUpgrades(entry, pointsMethod);
+                if (!upgrades.isEmpty()) {
+                    buckets.computeIfAbsent(nominalEfficiency(upgrades.get(0)), efficiency -> new ArrayList<>()).add(upgrades);
+                }
+            }
+        }
+
+        List<NominalEfficiency> bucketOrder = new ArrayList<>(buckets.keySet());
+        bucketOrder.sort(Comparator.reverseOrder()); // najwyzej 2 * 101 kubelkow
+        List<List<Upgrade>> upgradesByTarget = new ArrayList<>();
+        for (NominalEfficiency efficiency : bucketOrder) {
+            upgradesByTarget.addAll(buckets.get(efficiency));
+        }
+        return upgradesByTarget;
+    }
+
+
+    /**
+     * Efficiency of an upgrade before rounding: the discount percentage it adds over the card's own discount,
+     * per percent of the order value paid with points.
+     */
+    private NominalEfficiency nominalEfficiency(Upgrade upgrade) {
+        PlanEntry target = upgrade.target();
+        int cardPercentage = target.discount.signum() > 0 ? paymentMethodMap.get(target.cardId).getDiscount() : 0;
+        return NominalEfficiency.of(upgrade.discountPercentage() - cardPercentage, upgrade.pointsPercentage());
+    }
+
+
+    /**
+     * Lists the upgrades that raise the discount of a fully card-paid order, most efficient
+     * (discount gained per point) first: the 10% partial-points discount, paying the minimum 10% with points
+     * and the rest with the same card, and the full-points discount.
+     *
+     * @return Possible upgrades, empty if none raises the order's discount.
+     */
+    private List<Upgrade> possibleUpgrades(PlanEntry entry, PaymentMethod pointsMethod) {
+        BigDecimal orderValue = entry.order.getValue();
+        List<Upgrade> upgrades = new ArrayList<>(2);
+
+        BigDecimal partialDiscount = orderValue.multiply(PARTIAL_POINTS_ORDER_DISCOUNT_PERCENTAGE).setScale(2, RoundingMode.HALF_UP);
+        BigDecimal partialPoints = entry.minPointsForPartialDiscount;
+        if (partialPoints.signum() > 0 && partialDiscount.compareTo(entry.discount) > 0) {
+            BigDecimal newCardCharge = orderValue.subtract(partialDiscount).subtract(partialPoints).max(BigDecimal.ZERO);
+            upgrades.add(new Upgrade(entry, partialDiscount, partialPoints, newCardCharge,
+                    PARTIAL_POINTS_ORDER_DISCOUNT_PERCENTAGE.movePointRight(2).intValueExact(),
+                    MIN_POINTS_PERCENTAGE_FOR_PARTIAL_DISCOUNT.movePointRight(2).intValueExact()));
+        }
+
+        BigDecimal pointsDiscountPercentage = BigDecimal.valueOf(pointsMethod.getDiscount()).divide(BigDecimal.valueOf(100), 6, RoundingMode.HALF_UP);
+        BigDecimal fullPointsDiscount = orderValue.multiply(pointsDiscountPercentage).setScale(2, RoundingMode.HALF_UP);
+        BigDecimal fullPoints = orderValue.subtract(fullPointsDiscount);
+        if (fullPoints.signum() > 0 && fullPointsDiscount.compareTo(entry.discount) > 0) {
+            upgrades.add(new Upgrade(entry, fullPointsDiscount, fullPoints, BigDecimal.ZERO,
+                    pointsMethod.getDiscount(), 100 - pointsMethod.getDiscount()));
+        }
+
+        upgrades.sort((u1, u2) -> u2.compareEfficiency(u1));
+        return upgrades;
+    }
+
+
+    /**
+     * Finds the upgrade with the highest discount gain that the free points limit covers without touching donors.
+     *
+     * @return The upgrade, or {@code null} if none is affordable.
+     */
+    private Upgrade highestGainAffordable(List<Upgrade> upgrades, BigDecimal freePoints) {
+        Upgrade best = null;
+        for (Upgrade upgrade : upgrades) {
+            if (freePoints.compareTo(upgrade.pointsNeeded()) >= 0 && (best == null || upgrade.gain().compareTo(best.gain()) > 0)) {
+                best = upgrade;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Moves surplus points from donors onto their cards until the free points limit covers {@code pointsNeeded}
+     * or the donors run out. Points collected for an upgrade that still cannot be afforded stay free and are
+     * poured back by {@link #pourFreePoints}.
+     *
+     * @return The new donor cursor.
+     */
+    private int collectPoints(BigDecimal pointsNeeded, List<PlanEntry> donors, int donorCursor, Map<String, BigDecimal> remainingLimits) {
+        while (donorCursor < donors.size()) {
+            BigDecimal missing = pointsNeeded.subtract(remainingLimits.get(POINTS_ID_STRING));
+            if (missing.signum() <= 0) {
+                break;
+            }
+            PlanEntry donor = donors.get(donorCursor);
+            BigDecimal cardHeadroom = remainingLimits.getOrDefault(donor.cardId, BigDecimal.ZERO);
+            BigDecimal movable = donor.surplusPoints().min(cardHeadroom);
+            BigDecimal moved = movable.min(missing);
+
+            if (moved.signum() > 0) {
+                donor.points = donor.points.subtract(moved);
+                donor.cardCharge = donor.cardCharge.add(moved);
+                donor.changed = true;
+                remainingLimits.put(donor.cardId, cardHeadroom.subtract(moved));
+                remainingLimits.put(POINTS_ID_STRING, remainingLimits.get(POINTS_ID_STRING).add(moved));
+            }
+            if (moved.compareTo(movable) == 0) {
+                donorCursor++; // donor wyczerpany (brak nadwyzki albo limitu na karcie)
+            }
+        }
+        return donorCursor;
+    }
+
+
+    /**
+     * Applies an affordable upgrade: charges the points and lowers the card charge to the new amount.
+     */
+    private void applyUpgrade(Upgrade upgrade, Map<String, BigDecimal> remainingLimits) {
+        PlanEntry target = upgrade.target();
+        BigDecimal releasedCardLimit = target.cardCharge.subtract(upgrade.newCardCharge());
+
+        remainingLimits.put(POINTS_ID_STRING, remainingLimits.get(POINTS_ID_STRING).subtract(upgrade.pointsNeeded()));
+        remainingLimits.put(target.cardId, remainingLimits.getOrDefault(target.cardId, BigDecimal.ZERO).add(releasedCardLimit));
+
+        target.points = upgrade.pointsNeeded();
+        target.cardCharge = upgrade.newCardCharge();
+        target.discount = upgrade.discount();
+        target.changed = true;
+    }
+
+
+    /**
+     * Spends the remaining free points on the card part of partial-points orders, in plan order,
+     * freeing the same amount of card limit. The discounts do not change.
+     */
+    private void pourFreePoints(List<PlanEntry> entries, Map<String, BigDecimal> remainingLimits) {
+        BigDecimal freePoints = remainingLimits.get(POINTS_ID_STRING);
+        for (PlanEntry entry : entries) {
+            if (freePoints.signum() <= 0) {
+                break;
+            }
+            if (!entry.isPartialPointsWithCard() || entry.cardCharge.signum() <= 0) {
+                continue;
+            }
+            BigDecimal poured = freePoints.min(entry.cardCharge);
+            entry.points = entry.points.add(poured);
+            entry.cardCharge = entry.cardCharge.subtract(poured);
+            entry.changed = true;
+            freePoints = freePoints.subtract(poured);
+            remainingLimits.put(entry.cardId, remainingLimits.get(entry.cardId).add(poured));
+        }
+        remainingLimits.put(POINTS_ID_STRING, freePoints);
+    }
+}
@@ -0,0 +1,248 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Rolling-horizon optimizer, a middle ground between the greedy {@link PaymentOptimizerService}
+ * and a global exact search.
+ * Orders are processed in the same sorted sequence as the greedy algorithm, but in windows of
+ * {@code windowSize} orders. Each window is solved exactly with a depth-first branch-and-bound over the
+ * options produced by the service's generators, then only the first {@code commitSize} decisions are
+ * committed before the window slides on. A larger window gives better plans at a higher cost; with a
+ * window of one order the plans are those of the greedy algorithm on every instance its first pass can pay.
+ * Where the greedy algorithm needs the second pass guarded by its {@link FeasibilityOracle} certificate,
+ * a window of one fails like the first pass.
+ * The search runs on one array of fixed-point limits ({@link FixedPointLimits}), trying options and reverting them
+ * from a trail in place; discounts and points are summed as {@code long}s, so the bookkeeping of a search node
+ * allocates nothing. Only the option generators, which the search shares with the greedy algorithm, allocate.
+ */
+public class RollingHorizonOptimizer {
+
+    /**
+     * Default number of search nodes explored per window before the search turns into a greedy dive.
+     */
+    public static final long DEFAULT_MAX_NODES_PER_WINDOW = 100_000;
+
+    private static final int MIN_MONEY_SCALE = 2;
+
+    private final PaymentOptimizerService optionRules;
+    private final int windowSize;
+    private final int commitSize;
+    private final long maxNodesPerWindow;
+
+
+    /**
+     * Constructs an optimizer committing one decision per window, with the default search budget.
+     * @param windowSize Number of orders solved together in each window.
+     */
+    public RollingHorizonOptimizer(int windowSize) {
+        this(windowSize, 1, DEFAULT_MAX_NODES_PER_WINDOW);
+    }
+
+
+    /**
+     * Constructs an optimizer.
+     * @param windowSize Number of orders solved together in each window.
+     * @param commitSize Number of leading decisions committed from each window solution.
+     * @param maxNodesPerWindow Search nodes explored per window before only the best-ranked option of each
+     *                          remaining order is followed; limits the cost of a window to near-exact.
+     * @throws IllegalArgumentException If the parameters are out of range.
+     */
+    public RollingHorizonOptimizer(int windowSize, int commitSize, long maxNodesPerWindow) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1, got " + windowSize + ".");
+        }
+        if (commitSize < 1 || commitSize > windowSize) {
+            throw new IllegalArgumentException("Commit size must be between 1 and the window size (" + windowSize + "), got " + commitSize + ".");
+        }
+        if (maxNodesPerWindow < 1) {
+            throw new IllegalArgumentException("Search budget must be positive, got " + maxNodesPerWindow + ".");
+        }
+        this.optionRules = new PaymentOptimizerService();
+        this.windowSize = windowSize;
+        this.commitSize = commitSize;
+        this.maxNodesPerWindow = maxNodesPerWindow;
+    }
+
+
+    /**
+     * Finds a payment distribution for a list of orders window by window.
+     * The committed plan goes through the same {@link PointsRebalancer} post-pass as the greedy algorithm.
+     *
+     * @param orders List of orders to process.
+     * @param paymentMethods Available payment methods.
+     * @return Map of payment method ID to total amount spent with that method.
+     * @throws RuntimeException If an order cannot be fully paid.
+     */
+    public Map<String, BigDecimal> optimizePayments(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        Map<String, PaymentMethod> paymentMethodMap = optionRules.buildPaymentMethodMap(paymentMethods);
+        BigDecimal[] maxDiscounts = new BigDecimal[orders.size()];
+        List<Order> sortedOrders = optionRules.sortOrdersByMaxTheoreticalDiscount(orders, paymentMethodMap, maxDiscounts);
+        FixedPointLimits.Catalog catalog = FixedPointLimits.Catalog.of(paymentMethods, sortedOrders, MIN_MONEY_SCALE);
+
+        // ograniczenie zaokraglone w gore, zeby nie odciac galezi, ktorej nie odcialby dokladny BigDecimal
+        long[] maxDiscountBounds = new long[maxDiscounts.length];
+        for (int i = 0; i < maxDiscounts.length; i++) {
+            maxDiscountBounds[i] = maxDiscounts[i].setScale(catalog.scale(), RoundingMode.CEILING).unscaledValue().longValueExact();
+        }
+
+        WindowSearch search = new WindowSearch(paymentMethodMap, catalog, maxDiscountBounds);
+        List<PaymentOption> chosenOptions = new ArrayList<>(sortedOrders.size());
+
+        int windowStart = 0;
+        while (windowStart < sortedOrders.size()) {
+            int windowEnd = Math.min(windowStart + windowSize, sortedOrders.size());
+            search.solve(sortedOrders, windowStart, windowEnd);
+
+            if (search.bestDepth == 0) {
+                throw PaymentOptimizerService.noPaymentOptionException(sortedOrders.get(windowStart));
+            }
+
+            int committed = Math.min(commitSize, search.bestDepth);
+            for (int i = 0; i < committed; i++) {
+                search.apply(search.bestOptions[i]);
+                chosenOptions.add(search.bestOptions[i]);
+            }
+            search.clearTrail();
+            windowStart += committed;
+        }
+
+        return optionRules.finishPlan(sortedOrders, chosenOptions, paymentMethodMap, new HashMap<>(search.limitsView));
+    }
+
+
+    /**
+     * Depth-first branch-and-bound over the orders of one window.
+     * Sequences are ranked by the number of orders paid, then total discount, then points used,
+     * so a window whose later orders cannot all be paid still yields its best feasible prefix.
+     * A branch is cut when even the maximum theoretical discounts of the remaining orders cannot reach the best
+     * discount found so far.
+     * Applied charges are recorded on a trail of (method index, amount) pairs that grows once and is then reused.
+     */
+    private final class WindowSearch {
+        private static final int INITIAL_TRAIL_CAPACITY = 16;
+
+        private final Map<String, PaymentMethod> paymentMethodMap;
+        private final FixedPointLimits.Catalog catalog;
+        private final long[] limits;
+        private final FixedPointLimits limitsView;
+        private final long[] maxDiscountBounds;
+        private final PaymentOption[] currentOptions = new PaymentOption[windowSize];
+        private final PaymentOption[] bestOptions = new PaymentOption[windowSize];
+        private final long[] remainingBound = new long[windowSize + 1];
+
+        private int[] trailIndexes = new int[INITIAL_TRAIL_CAPACITY];
+        private long[] trailAmounts = new long[INITIAL_TRAIL_CAPACITY];
+        private int trailSize;
+
+        private List<Order> orders;
+        private int windowStart;
+        private int windowLength;
+        private int bestDepth;
+        private long bestDiscount;
+        private long bestPoints;
+        private long nodes;
+
+        WindowSearch(Map<String, PaymentMethod> paymentMethodMap, FixedPointLimits.Catalog catalog, long[] maxDiscountBounds) {
+            this.paymentMethodMap = paymentMethodMap;
+            this.catalog = catalog;
+            this.limits = catalog.initialLimits();
+            this.limitsView = new FixedPointLimits(catalog, limits);
+            this.maxDiscountBounds = maxDiscountBounds;
+        }
+
+        void solve(List<Order> orders, int windowStart, int windowEnd) {
+            this.orders = orders;
+            this.windowStart = windowStart;
+            this.windowLength = windowEnd - windowStart;
+            this.bestDepth = -1;
+            this.bestDiscount = 0;
+            this.bestPoints = 0;
+            this.nodes = 0;
+
+            remainingBound[windowLength] = 0;
+            for (int depth = windowLength - 1; depth >= 0; depth--) {
+                remainingBound[depth] = remainingBound[depth + 1] + maxDiscountBounds[windowStart + depth];
+            }
+
+            search(0, 0, 0);
+        }
+
+        void apply(PaymentOption option) {
+            for (Map.Entry<String, BigDecimal> charge : option.getAmountsToChargeByMethod().entrySet()) {
+                int methodIndex = catalog.indexOf(charge.getKey());
+                long amount = catalog.toFixedPoint(charge.getValue());
+                if (trailSize == trailIndexes.length) {
+                    trailIndexes = Arrays.copyOf(trailIndexes, trailSize * 2);
+                    trailAmounts = Arrays.copyOf(trailAmounts, trailSize * 2);
+                }
+                trailIndexes[trailSize] = methodIndex;
+                trailAmounts[trailSize++] = amount;
+                limits[methodIndex] -= amount;
+            }
+        }
+
+        void rollback(int checkpoint) {
+            while (trailSize > checkpoint) {
+                trailSize--;
+                limits[trailIndexes[trailSize]] += trailAmounts[trailSize];
+            }
+        }
+
+        void clearTrail() {
+            trailSize = 0;
+        }
+
+        private void search(int depth, long discount, long points) {
+            nodes++;
+            if (depth == windowLength) {
+                record(depth, discount, points);
+                return;
+            }
+            if (bestDepth == windowLength && discount + remainingBound[depth] < bestDiscount) {
+                return;
+            }
+
+            Order order = orders.get(windowStart + depth);
+            List<PaymentOption> options = optionRules.generatePaymentOptions(order, paymentMethodMap, limitsView);
+            if (options.isEmpty()) {
+                record(depth, discount, points);
+                return;
+            }
+
+            for (PaymentOption option : options) {
+                int checkpoint = trailSize;
+                apply(option);
+                currentOptions[depth] = option;
+                search(depth + 1, discount + catalog.toFixedPoint(option.getCalculatedDiscountAmount()),
+                        points + catalog.toFixedPoint(option.getPointsUsedAmount()));
+                rollback(checkpoint);
+
+                if (nodes >= maxNodesPerWindow) {
+                    break; // budzet wyczerpany, dalej tylko najlepsza opcja na kazdym poziomie
+                }
+            }
+        }
+
+        private void record(int depth, long discount, long points) {
+            boolean better;
+            if (depth != bestDepth) {
+                better = depth > bestDepth;
+            } else {
+                better = discount > bestDiscount || (discount == bestDiscount && points > bestPoints);
+            }
+            if (better) {
+                bestDepth = depth;
+                bestDiscount = discount;
+                bestPoints = points;
+                System.arraycopy(currentOptions, 0, bestOptions, 0, depth);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.metrics.PhaseMetrics;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.trace.DecisionTraceWriter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Greedy optimizer that writes a {@link DecisionTraceWriter decision trace} of every optimization: the input
+ * fingerprint and solver configuration, each applied payment option, and the totals or the failure.
+ * The trace lets a surprising or slow run be replayed and checked later.
+ * <p>
+ * The input fingerprint is not computed here: a caller that has it passes it to the constructor, otherwise the trace
+ * is recorded without one.
+ */
+public class TracingPaymentOptimizer extends PaymentOptimizerService {
+
+    private final DecisionTraceWriter trace;
+    private final String configuration;
+    private final InputFingerprint fingerprint;
+
+
+    /**
+     * Constructs a tracing optimizer recording no input fingerprint.
+     *
+     * @param metrics Metrics of the current run.
+     * @param trace Writer the decisions are written to; not closed by this optimizer.
+     * @param configuration Identifier of the solver configuration, stored in the trace header.
+     */
+    public TracingPaymentOptimizer(PhaseMetrics metrics, DecisionTraceWriter trace, String configuration) {
+        this(metrics, trace, configuration, null);
+    }
+
+
+    /**
+     * Constructs a tracing optimizer.
+     *
+     * @param metrics Metrics of the current run.
+     * @param trace Writer the decisions are written to; not closed by this optimizer.
+     * @param configuration Identifier of the solver configuration, stored in the trace header.
+     * @param fingerprint {@link InputFingerprint#ofSequence Sequence fingerprint} of the input that will be solved,
+     *                    or {@code null} to record none.
+     */
+    public TracingPaymentOptimizer(PhaseMetrics metrics, DecisionTraceWriter trace, String configuration, InputFingerprint fingerprint) {
+        super(metrics);
+        this.trace = trace;
+        this.configuration = configuration;
+        this.fingerprint = fingerprint;
+    }
+
+
+    /**
+     * Optimizes like {@link PaymentOptimizerService#optimizePayments} and traces the run.
+     *
+     * @param orders List of orders to process.
+     * @param paymentMethods Available payment methods.
+     * @return Map of payment method ID to total amount spent with that method.
+     * @throws RuntimeException If an order cannot be fully paid; the failure is traced first.
+     */
+    @Override
+    public Map<String, BigDecimal> optimizePayments(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        trace.begin(orders, paymentMethods, configuration, fingerprint);
+        try {
+            Map<String, BigDecimal> totalSpentByMethod = super.optimizePayments(orders, paymentMethods);
+            trace.end(totalSpentByMethod);
+            return totalSpentByMethod;
+        } catch (RuntimeException e) {
+            trace.fail(e.getMessage());
+            throw e;
+        }
+    }
+
+
+    @Override
+    protected void onOptionApplied(Order order, PaymentOption option) {
+        trace.decision(order.getId(), option.getCalculatedDiscountAmount(), option.getPointsUsedAmount(), option.getAmountsToChargeByMethod());
+    }
+}
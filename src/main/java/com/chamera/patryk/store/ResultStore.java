@@ -0,0 +1,585 @@
+package com.chamera.patryk.store;
+
+import com.chamera.patryk.service.InputFingerprint;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent content-addressed store of solved plans on local disk, keyed by an {@link InputFingerprint}
+ * (the fingerprint of the input combined with the solver configuration).
+ * <p>
+ * Records are appended to segment files ({@code segment-NNNNNNNN.log}); only the newest segment is written to and
+ * older ones are sealed. Each record carries the key, the encoded totals and a CRC32C checksum. Records are read
+ * through memory mappings of the segments, and an in-memory index maps every key to the position of its newest
+ * record. When a segment is sealed its index is written next to it ({@code segment-NNNNNNNN.idx}), so opening the
+ * store only scans the newest segment; a sealed segment whose index is missing or stale is scanned instead.
+ * A torn record at the end of the newest segment (e.g. after a crash) is cut off when the store is opened.
+ * <p>
+ * {@link #compact()} rewrites the live records into new segments and deletes the old ones, dropping removed and
+ * overwritten records. Old segments are only deleted after the new ones are complete, oldest first, so a crash
+ * during compaction never loses data.
+ * All methods are synchronized; the store is meant for one process at a time.
+ */
+public class ResultStore implements AutoCloseable {
+
+    /**
+     * Default size after which the newest segment is sealed and a new one is started.
+     */
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Largest allowed segment size; segments are mapped and addressed with {@code int} offsets.
+     */
+    public static final long MAX_SEGMENT_BYTES = 1024L * 1024 * 1024;
+
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{8})\\" + SEGMENT_SUFFIX);
+    private static final int RECORD_HEADER_BYTES = 8 + 8 + 4;
+    private static final int RECORD_TRAILER_BYTES = 4;
+    private static final int TOMBSTONE = -1;
+    private static final int INDEX_ENTRY_BYTES = 8 + 8 + 8 + 4;
+    private static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<InputFingerprint, Location> index = new HashMap<>();
+    private Segment activeSegment;
+    private long liveBytes;
+    private boolean closed;
+
+
+    /**
+     * Position of the newest record of a key.
+     */
+    private record Location(Segment segment, long offset, int payloadLength) {
+
+        long recordBytes() {
+            return RECORD_HEADER_BYTES + (long) payloadLength + RECORD_TRAILER_BYTES;
+        }
+    }
+
+
+    /**
+     * Header of a record read from a segment; a payload length of {@code TOMBSTONE} marks a removal.
+     */
+    private record RecordHeader(InputFingerprint key, long offset, int payloadLength) {
+
+        long end() {
+            return offset + RECORD_HEADER_BYTES + Math.max(payloadLength, 0) + RECORD_TRAILER_BYTES;
+        }
+    }
+
+
+    /**
+     * Sizes of the store.
+     *
+     * @param entries Keys currently stored.
+     * @param segments Segment files.
+     * @param liveBytes Bytes taken by the newest record of every stored key.
+     * @param totalBytes Bytes of all segment files; the difference to {@code liveBytes} is reclaimed by {@link #compact()}.
+     */
+    public record StoreStats(int entries, int segments, long liveBytes, long totalBytes) {
+    }
+
+
+    /**
+     * Opens (or creates) a store with the default segment size.
+     *
+     * @param directory Directory of the store; created if it does not exist.
+     * @throws IOException If the directory or its segments cannot be read or created.
+     */
+    public ResultStore(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+
+    /**
+     * Opens (or creates) a store.
+     *
+     * @param directory Directory of the store; created if it does not exist.
+     * @param maxSegmentBytes Size after which the newest segment is sealed.
+     * @throws IOException If the directory or its segments cannot be read or created.
+     * @throws IllegalArgumentException If the segment size is out of range.
+     */
+    public ResultStore(Path directory, long maxSegmentBytes) throws IOException {
+        if (maxSegmentBytes < 1 || maxSegmentBytes > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Maximum segment size must be between 1 and " + MAX_SEGMENT_BYTES + ", got " + maxSegmentBytes + ".");
+        }
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+        load();
+    }
+
+
+    /**
+     * Returns the stored totals of a key.
+     *
+     * @param key The key.
+     * @return Map of payment method ID to total amount spent, or {@code null} if the key is not stored
+     * (or its record fails the checksum, in which case it is forgotten and can be stored again).
+     * @throws IOException If the segment cannot be read.
+     */
+    public synchronized Map<String, BigDecimal> get(InputFingerprint key) throws IOException {
+        ensureOpen();
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer record = location.segment().read(location.offset(), location.recordBytes());
+        if (!checksumMatches(record)) {
+            forget(key, location);
+            return null;
+        }
+        record.position(RECORD_HEADER_BYTES);
+        return decodeTotals(record);
+    }
+
+
+    /**
+     * Stores the totals of a key. Nothing is written if exactly these totals are already stored.
+     *
+     * @param key The key.
+     * @param totals Map of payment method ID to total amount spent.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void put(InputFingerprint key, Map<String, BigDecimal> totals) throws IOException {
+        ensureOpen();
+        byte[] payload = encodeTotals(totals);
+        Location existing = index.get(key);
+        if (existing != null && existing.payloadLength() == payload.length) {
+            ByteBuffer record = existing.segment().read(existing.offset(), existing.recordBytes());
+            if (checksumMatches(record) && record.slice(RECORD_HEADER_BYTES, payload.length).equals(ByteBuffer.wrap(payload))) {
+                return;
+            }
+        }
+        append(key, payload);
+    }
+
+
+    /**
+     * Removes a key, e.g. to force a plan to be solved again.
+     *
+     * @param key The key.
+     * @return {@code true} if the key was stored.
+     * @throws IOException If the removal cannot be written.
+     */
+    public synchronized boolean remove(InputFingerprint key) throws IOException {
+        ensureOpen();
+        if (!index.containsKey(key)) {
+            return false;
+        }
+        append(key, null);
+        return true;
+    }
+
+
+    /**
+     * Rewrites the live records into new segments and deletes the old segments.
+     *
+     * @throws IOException If the new segments cannot be written; the old ones are kept in that case.
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        sealActiveSegment();
+        List<Segment> oldSegments = new ArrayList<>(segments.values());
+
+        List<Map.Entry<InputFingerprint, Location>> live = new ArrayList<>(index.entrySet());
+        live.sort(Comparator.comparing((Map.Entry<InputFingerprint, Location> e) -> e.getValue().segment().number)
+                .thenComparingLong(e -> e.getValue().offset()));
+
+        startNewSegment();
+        for (Map.Entry<InputFingerprint, Location> entry : live) {
+            Location location = entry.getValue();
+            ByteBuffer record = location.segment().read(location.offset(), location.recordBytes());
+            if (!checksumMatches(record)) {
+                forget(entry.getKey(), location);
+                continue;
+            }
+            if (activeSegment.size > 0 && activeSegment.size + record.remaining() > maxSegmentBytes) {
+                sealActiveSegment();
+                startNewSegment();
+            }
+            long offset = activeSegment.append(record);
+            index.put(entry.getKey(), new Location(activeSegment, offset, location.payloadLength()));
+        }
+        if (activeSegment.size > 0) {
+            sealActiveSegment();
+        } else {
+            segments.remove(activeSegment.number);
+            activeSegment.delete();
+        }
+
+        for (Segment segment : oldSegments) { // od najstarszego, zeby usuniecia nie "ozyly"
+            segments.remove(segment.number);
+            segment.delete();
+        }
+        startNewSegment();
+    }
+
+
+    /**
+     * @return The current sizes of the store.
+     */
+    public synchronized StoreStats getStats() {
+        long totalBytes = 0;
+        for (Segment segment : segments.values()) {
+            totalBytes += segment.size;
+        }
+        return new StoreStats(index.size(), segments.size(), liveBytes, totalBytes);
+    }
+
+
+    /**
+     * Seals the newest segment (writing its index) and closes all segment files.
+     *
+     * @throws IOException If the newest segment cannot be flushed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (activeSegment.size > 0) {
+                sealActiveSegment();
+            }
+        } finally {
+            for (Segment segment : segments.values()) {
+                segment.closeChannel();
+            }
+        }
+    }
+
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Result store is closed.");
+        }
+    }
+
+
+    private void load() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    int number = Integer.parseInt(matcher.group(1));
+                    segments.put(number, new Segment(number));
+                }
+            }
+        }
+
+        Segment newest = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        for (Segment segment : segments.values()) {
+            if (segment == newest || !loadIndex(segment)) {
+                List<RecordHeader> records = scan(segment, segment == newest);
+                if (segment != newest) {
+                    segment.writeIndex(records);
+                }
+            }
+        }
+
+        if (newest == null || newest.size >= maxSegmentBytes) {
+            if (newest != null) {
+                sealActiveSegment(newest);
+            }
+            startNewSegment();
+        } else {
+            activeSegment = newest;
+            activeSegment.openForAppend();
+        }
+    }
+
+
+    /**
+     * Reads all records of a segment into the index. For the newest segment a torn or corrupt tail is cut off;
+     * in a sealed segment it is skipped.
+     *
+     * @return The records read, for the segment's index file.
+     */
+    private List<RecordHeader> scan(Segment segment, boolean truncateTail) throws IOException {
+        List<RecordHeader> records = records(segment, true);
+        for (RecordHeader record : records) {
+            indexRecord(record.key(), segment, record.offset(), record.payloadLength());
+        }
+        long end = records.isEmpty() ? 0 : records.get(records.size() - 1).end();
+        if (end < segment.size && truncateTail) {
+            segment.truncate(end);
+        }
+        return records;
+    }
+
+
+    /**
+     * Walks the records of a segment, tombstones included, in the order they were written. The walk stops at the
+     * first record whose header is out of range, that runs past the end of the segment or, if checksums are
+     * verified, whose checksum does not match.
+     */
+    private List<RecordHeader> records(Segment segment, boolean verifyChecksums) throws IOException {
+        List<RecordHeader> records = new ArrayList<>();
+        long offset = 0;
+        while (offset + RECORD_HEADER_BYTES + RECORD_TRAILER_BYTES <= segment.size) {
+            ByteBuffer header = segment.read(offset, RECORD_HEADER_BYTES);
+            RecordHeader record = new RecordHeader(new InputFingerprint(header.getLong(), header.getLong()), offset, header.getInt());
+            if (record.payloadLength() < TOMBSTONE || record.payloadLength() > MAX_PAYLOAD_BYTES || record.end() > segment.size) {
+                break;
+            }
+            if (verifyChecksums && !checksumMatches(segment.read(offset, record.end() - offset))) {
+                break;
+            }
+            records.add(record);
+            offset = record.end();
+        }
+        return records;
+    }
+
+
+    private boolean loadIndex(Segment segment) throws IOException {
+        Path indexFile = segment.indexFile();
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        if (buffer.remaining() < 8 + 4 + 4) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            return false;
+        }
+        long segmentSize = buffer.getLong();
+        int count = buffer.getInt();
+        if (segmentSize != segment.size || buffer.remaining() != (long) count * INDEX_ENTRY_BYTES + 4) {
+            return false; // indeks nie pasuje do segmentu
+        }
+        for (int i = 0; i < count; i++) {
+            InputFingerprint key = new InputFingerprint(buffer.getLong(), buffer.getLong());
+            long offset = buffer.getLong();
+            int payloadLength = buffer.getInt();
+            indexRecord(key, segment, offset, payloadLength);
+        }
+        return true;
+    }
+
+
+    private void indexRecord(InputFingerprint key, Segment segment, long offset, int payloadLength) {
+        Location previous = payloadLength == TOMBSTONE ? index.remove(key) : index.put(key, new Location(segment, offset, payloadLength));
+        if (previous != null) {
+            liveBytes -= previous.recordBytes();
+        }
+        if (payloadLength != TOMBSTONE) {
+            liveBytes += RECORD_HEADER_BYTES + (long) payloadLength + RECORD_TRAILER_BYTES;
+        }
+    }
+
+
+    private void forget(InputFingerprint key, Location location) {
+        index.remove(key);
+        liveBytes -= location.recordBytes();
+    }
+
+
+    private void append(InputFingerprint key, byte[] payload) throws IOException {
+        int payloadLength = payload == null ? TOMBSTONE : payload.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + Math.max(payloadLength, 0) + RECORD_TRAILER_BYTES);
+        record.putLong(key.high()).putLong(key.low()).putInt(payloadLength);
+        if (payload != null) {
+            record.put(payload);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        if (activeSegment.size > 0 && activeSegment.size + record.remaining() > maxSegmentBytes) {
+            sealActiveSegment();
+            startNewSegment();
+        }
+        long offset = activeSegment.append(record);
+        indexRecord(key, activeSegment, offset, payloadLength);
+    }
+
+
+    private void sealActiveSegment() throws IOException {
+        sealActiveSegment(activeSegment);
+    }
+
+
+    private void sealActiveSegment(Segment segment) throws IOException {
+        segment.force();
+        segment.writeIndex(records(segment, false)); // rekordy sprawdzone przy otwarciu albo dopisane przez ten proces
+        segment.closeChannel();
+    }
+
+
+    private void startNewSegment() throws IOException {
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        activeSegment = new Segment(number);
+        activeSegment.openForAppend();
+        segments.put(number, activeSegment);
+    }
+
+
+    private static boolean checksumMatches(ByteBuffer record) {
+        int checksumPosition = record.limit() - RECORD_TRAILER_BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(record.duplicate().position(0).limit(checksumPosition));
+        return (int) crc.getValue() == record.getInt(checksumPosition);
+    }
+
+
+    /**
+     * Payload layout: number of entries, then per entry, sorted by method ID, the method ID (UTF-8, length-prefixed),
+     * the unscaled amount (two's complement, length-prefixed) and its scale. Equal totals always encode to equal bytes.
+     */
+    static byte[] encodeTotals(Map<String, BigDecimal> unsortedTotals) {
+        SortedMap<String, BigDecimal> totals = new TreeMap<>(unsortedTotals);
+        List<byte[]> ids = new ArrayList<>(totals.size());
+        List<byte[]> amounts = new ArrayList<>(totals.size());
+        int size = 4;
+        for (Map.Entry<String, BigDecimal> entry : totals.entrySet()) {
+            byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] amount = entry.getValue().unscaledValue().toByteArray();
+            ids.add(id);
+            amounts.add(amount);
+            size += 4 + id.length + 4 + amount.length + 4;
+        }
+        if (size > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Plan is too large to be stored: " + size + " bytes.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(totals.size());
+        int i = 0;
+        for (BigDecimal amount : totals.values()) {
+            buffer.putInt(ids.get(i).length).put(ids.get(i));
+            buffer.putInt(amounts.get(i).length).put(amounts.get(i));
+            buffer.putInt(amount.scale());
+            i++;
+        }
+        return buffer.array();
+    }
+
+
+    static Map<String, BigDecimal> decodeTotals(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        Map<String, BigDecimal> totals = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[buffer.getInt()];
+            buffer.get(id);
+            byte[] amount = new byte[buffer.getInt()];
+            buffer.get(amount);
+            int scale = buffer.getInt();
+            totals.put(new String(id, StandardCharsets.UTF_8), new BigDecimal(new BigInteger(amount), scale));
+        }
+        return totals;
+    }
+
+
+    /**
+     * One segment file with a read-only memory mapping that is extended when records beyond it are read.
+     */
+    private final class Segment {
+        final int number;
+        final Path file;
+        long size;
+        private FileChannel appendChannel;
+        private MappedByteBuffer mapping;
+
+        Segment(int number) throws IOException {
+            this.number = number;
+            this.file = directory.resolve(String.format("segment-%08d%s", number, SEGMENT_SUFFIX));
+            this.size = Files.exists(file) ? Files.size(file) : 0;
+        }
+
+        Path indexFile() {
+            return directory.resolve(String.format("segment-%08d%s", number, INDEX_SUFFIX));
+        }
+
+        void openForAppend() throws IOException {
+            appendChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            appendChannel.position(size);
+        }
+
+        long append(ByteBuffer record) throws IOException {
+            long offset = size;
+            while (record.hasRemaining()) {
+                size += appendChannel.write(record);
+            }
+            return offset;
+        }
+
+        ByteBuffer read(long offset, long length) throws IOException {
+            if (mapping == null || offset + length > mapping.capacity()) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+            }
+            return mapping.slice((int) offset, (int) length);
+        }
+
+        void truncate(long newSize) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(newSize);
+            }
+            size = newSize;
+            mapping = null;
+        }
+
+        void force() throws IOException {
+            if (appendChannel != null) {
+                appendChannel.force(false);
+            }
+        }
+
+        void writeIndex(List<RecordHeader> records) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + records.size() * INDEX_ENTRY_BYTES + 4);
+            buffer.putLong(size).putInt(records.size());
+            for (RecordHeader record : records) {
+                buffer.putLong(record.key().high()).putLong(record.key().low()).putLong(record.offset()).putInt(record.payloadLength());
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.putInt((int) crc.getValue());
+
+            Path temporary = indexFile().resolveSibling(indexFile().getFileName() + ".tmp");
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, indexFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void closeChannel() throws IOException {
+            if (appendChannel != null) {
+                appendChannel.close();
+                appendChannel = null;
+            }
+        }
+
+        void delete() throws IOException {
+            closeChannel();
+            mapping = null;
+            Files.deleteIfExists(indexFile());
+            Files.deleteIfExists(file);
+        }
+    }
+}
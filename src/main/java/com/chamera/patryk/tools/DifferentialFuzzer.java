@@ -0,0 +1,767 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.ApplicationRunner;
+import com.chamera.patryk.exception.ArgsValidationException;
+import com.chamera.patryk.metrics.OptimizerMetrics;
+import com.chamera.patryk.metrics.PhaseMetrics;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.service.BeamSearchOptimizer;
+import com.chamera.patryk.service.CachingPaymentOptimizer;
+import com.chamera.patryk.service.MicroBatchOptimizer;
+import com.chamera.patryk.service.OnlinePaymentOptimizer;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import com.chamera.patryk.service.PaymentOptimizerSession;
+import com.chamera.patryk.service.RollingHorizonOptimizer;
+import com.chamera.patryk.service.TracingPaymentOptimizer;
+import com.chamera.patryk.trace.DecisionTraceWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Differential fuzzer: solves random and adversarial instances with a reference optimizer and with every other
+ * engine, and reports the instances on which an engine returns a different plan.
+ * <p>
+ * Instances are derived from a seed, so a case is reproduced by its seed alone. Besides ordinary orders the generator
+ * favours the edges of the input: amounts whose 10% or promotion discount ends in half a cent ({@code x.x5}), limits
+ * of zero or exactly the amount needed, ties between orders, empty or missing promotions, promotions of methods that
+ * do not exist, missing or discount-free points, and amounts written with fewer decimal places ({@code 10}, {@code 10.5}).
+ * Two outcomes agree when both engines spend the same amount per method (a method missing from the result counts as
+ * zero, so {@code 10.0} equals {@code 10.00}) or when both fail. Engines built on other algorithms are held to the
+ * weaker {@link Relation} documented for them instead.
+ * <p>
+ * A failing instance is shrunk before it is reported: orders, payment methods and promotions are removed and amounts
+ * and discounts simplified for as long as the same engine still disagrees, which usually leaves one to three orders.
+ * Cases are checked in parallel by several threads, each taking blocks of consecutive seeds.
+ */
+public final class DifferentialFuzzer {
+
+    /**
+     * Default largest number of orders of a generated instance.
+     */
+    public static final int DEFAULT_MAX_ORDERS = 8;
+
+    /**
+     * Default largest number of cards of a generated instance.
+     */
+    public static final int DEFAULT_MAX_CARDS = 4;
+
+    static final String REFERENCE = "reference";
+    static final String POINTS_ID = "PUNKTY";
+    static final String MISSING_METHOD_ID = "GHOST";
+
+    private static final int SEED_BLOCK = 256;
+    private static final int MAX_SHRINK_CHECKS = 20_000;
+    // limit okna micro-batch tak duzy, ze partie zamyka tylko ich rozmiar
+    private static final long MICRO_BATCH_LATENCY_TARGET_MILLIS = 60_000;
+    private static final int[] EDGE_DISCOUNTS = {0, 1, 5, 10, 15, 33, 99, 100};
+
+    private final List<Engine> engines;
+    private final int maxOrders;
+    private final int maxCards;
+
+
+    /**
+     * How the outcome of an engine must relate to the outcome of the reference.
+     */
+    public enum Relation {
+
+        /**
+         * The same plan, or both fail.
+         */
+        EXACT,
+
+        /**
+         * The same plan, or the engine fails where the reference pays: engines running only the first, unguarded
+         * greedy pass, which the reference retries with its feasibility certificate when it leaves an order unpaid.
+         */
+        EXACT_OR_FAILS,
+
+        /**
+         * Any valid plan, or a failure: engines deciding with less information than the reference (orders in arrival
+         * order, or without the points post-pass). A plan is valid when it charges only existing methods, none above
+         * its limit, and the total spent lies between the sum of the order values less the largest discount each
+         * order could get and the sum of the order values.
+         */
+        VALID_PLAN;
+
+
+        /**
+         * @param instance The solved instance.
+         * @param expected Outcome of the reference.
+         * @param actual Outcome of the engine.
+         * @return {@code true} if the outcomes are in this relation.
+         */
+        public boolean holds(Instance instance, Outcome expected, Outcome actual) {
+            return switch (this) {
+                case EXACT -> actual.agreesWith(expected);
+                case EXACT_OR_FAILS -> actual.agreesWith(expected) || (actual.totals() == null && expected.totals() != null);
+                case VALID_PLAN -> actual.totals() == null || isValidPlan(instance, actual.totals());
+            };
+        }
+    }
+
+
+    /**
+     * An optimizer under test.
+     *
+     * @param name Name in the report.
+     * @param optimizer The optimizer; called from several threads at once.
+     * @param relation How its outcomes must relate to those of the reference.
+     */
+    public record Engine(String name, BiFunction<List<Order>, List<PaymentMethod>, Map<String, BigDecimal>> optimizer, Relation relation) {
+
+        /**
+         * Constructs an engine that must return exactly the plans of the reference.
+         *
+         * @param name Name in the report.
+         * @param optimizer The optimizer; called from several threads at once.
+         */
+        public Engine(String name, BiFunction<List<Order>, List<PaymentMethod>, Map<String, BigDecimal>> optimizer) {
+            this(name, optimizer, Relation.EXACT);
+        }
+    }
+
+
+    /**
+     * A generated instance.
+     *
+     * @param seed Seed the instance was generated from.
+     * @param orders Orders to pay.
+     * @param paymentMethods Available payment methods.
+     */
+    public record Instance(long seed, List<Order> orders, List<PaymentMethod> paymentMethods) {
+    }
+
+
+    /**
+     * Result of one engine on one instance.
+     *
+     * @param totals Amount spent per payment method, or {@code null} if the engine failed.
+     * @param failure Exception class and message of the failure, or {@code null}.
+     */
+    public record Outcome(Map<String, BigDecimal> totals, String failure) {
+
+        /**
+         * @param other Outcome of another engine.
+         * @return {@code true} if both spend the same amount per method or both failed.
+         */
+        public boolean agreesWith(Outcome other) {
+            if (totals == null || other.totals == null) {
+                return totals == null && other.totals == null;
+            }
+            Set<String> methodIds = new HashSet<>(totals.keySet());
+            methodIds.addAll(other.totals.keySet());
+            for (String methodId : methodIds) {
+                BigDecimal amount = totals.getOrDefault(methodId, BigDecimal.ZERO);
+                if (amount.compareTo(other.totals.getOrDefault(methodId, BigDecimal.ZERO)) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return totals == null ? "failed: " + failure : new TreeMap<>(totals).toString();
+        }
+    }
+
+
+    /**
+     * An engine disagreeing with the reference.
+     *
+     * @param engine Name of the engine.
+     * @param instance The generated instance.
+     * @param shrunk The smallest instance found on which the engine still disagrees.
+     * @param expected Outcome of the reference on the shrunk instance.
+     * @param actual Outcome of the engine on the shrunk instance.
+     */
+    public record Mismatch(String engine, Instance instance, Instance shrunk, Outcome expected, Outcome actual) {
+    }
+
+
+    /**
+     * Summary of a fuzzing run.
+     *
+     * @param cases Number of instances checked.
+     * @param nanos Wall time of the run.
+     * @param mismatches Disagreements found, ordered by seed.
+     */
+    public record Report(long cases, long nanos, List<Mismatch> mismatches) {
+
+        /**
+         * @return Instances checked per minute.
+         */
+        public long casesPerMinute() {
+            return nanos == 0 ? 0 : (long) (cases * 60e9 / nanos);
+        }
+    }
+
+
+    /**
+     * Constructs a fuzzer.
+     *
+     * @param engines The reference optimizer first, then the engines compared with it.
+     * @param maxOrders Largest number of orders of a generated instance.
+     * @param maxCards Largest number of cards of a generated instance.
+     * @throws IllegalArgumentException If there are fewer than two engines or a size limit is not positive.
+     */
+    public DifferentialFuzzer(List<Engine> engines, int maxOrders, int maxCards) {
+        if (engines.size() < 2) {
+            throw new IllegalArgumentException("A reference and at least one other engine are required.");
+        }
+        if (maxOrders < 1 || maxCards < 1) {
+            throw new IllegalArgumentException("Instance size limits must be positive, got " + maxOrders + " orders and " + maxCards + " cards.");
+        }
+        this.engines = List.copyOf(engines);
+        this.maxOrders = maxOrders;
+        this.maxCards = maxCards;
+    }
+
+
+    /**
+     * The engines of this code base, by name, each with its relation to the reference:
+     * <ul>
+     *     <li>{@link Relation#EXACT}: the service with optimizer and with phase metrics enabled (a separate option
+     *     generation path), the tracing service, the initial plan of a {@link PaymentOptimizerSession}
+     *     ({@code LimitLedger} bookkeeping) and the {@link CachingPaymentOptimizer}, whose second, cached answer
+     *     is compared.</li>
+     *     <li>{@link Relation#EXACT_OR_FAILS}: beam search of width one (fixed-point {@code long} limits) and rolling
+     *     horizon with a one-order window, which fail where the reference needs its guarded second pass.</li>
+     *     <li>{@link Relation#VALID_PLAN}: the {@link OnlinePaymentOptimizer} deciding the orders in input order with
+     *     the instance as its forecast, and the {@link MicroBatchOptimizer} solving the instance as one batch
+     *     without the points post-pass.</li>
+     * </ul>
+     *
+     * @return The engines, the reference first.
+     */
+    public static Map<String, Engine> allEngines() {
+        Map<String, Engine> engines = new LinkedHashMap<>();
+        for (Engine engine : List.of(
+                new Engine(REFERENCE, (orders, methods) -> new PaymentOptimizerService().optimizePayments(orders, methods)),
+                new Engine("instrumented", (orders, methods) -> new PaymentOptimizerService(new OptimizerMetrics()).optimizePayments(orders, methods)),
+                new Engine("phase-metrics", (orders, methods) -> new PaymentOptimizerService(new PhaseMetrics(1)).optimizePayments(orders, methods)),
+                new Engine("traced", DifferentialFuzzer::solveTraced),
+                new Engine("session", (orders, methods) -> new PaymentOptimizerSession(orders, methods).getTotalSpentByMethod()),
+                new Engine("cached", DifferentialFuzzer::solveCached),
+                new Engine("beam-1", (orders, methods) -> new BeamSearchOptimizer(1).optimizePayments(orders, methods), Relation.EXACT_OR_FAILS),
+                new Engine("rolling-horizon-1", (orders, methods) -> new RollingHorizonOptimizer(1).optimizePayments(orders, methods), Relation.EXACT_OR_FAILS),
+                new Engine("online", DifferentialFuzzer::solveOnline, Relation.VALID_PLAN),
+                new Engine("micro-batch", DifferentialFuzzer::solveMicroBatch, Relation.VALID_PLAN))) {
+            engines.put(engine.name(), engine);
+        }
+        return engines;
+    }
+
+
+    /**
+     * All engines of this code base, each checked against its {@link Relation} to the reference.
+     *
+     * @return The engines, the reference first.
+     */
+    public static List<Engine> defaultEngines() {
+        return List.copyOf(allEngines().values());
+    }
+
+
+    /**
+     * Generates the instance of a seed.
+     *
+     * @param seed The seed.
+     * @return The instance; the same seed always gives the same instance.
+     */
+    public Instance generate(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int scale = random.nextInt(8) == 0 ? random.nextInt(2) : 2; // czasem 10 albo 10.5 zamiast 10.00
+
+        List<PaymentMethod> methods = new ArrayList<>();
+        int cards = random.nextInt(maxCards + 1);
+        long referenceCents = 1 + random.nextLong(20_000);
+        for (int i = 0; i < cards; i++) {
+            methods.add(new PaymentMethod("CARD" + i, discount(random), amount(random, referenceCents * (1 + random.nextInt(maxOrders)), scale)));
+        }
+        if (random.nextInt(8) != 0) {
+            int pointsDiscount = random.nextInt(6) == 0 ? 0 : discount(random);
+            methods.add(new PaymentMethod(POINTS_ID, pointsDiscount, amount(random, referenceCents * (1 + random.nextInt(maxOrders)), scale)));
+        }
+        Collections.shuffle(methods, new Random(random.nextLong()));
+
+        List<Order> orders = new ArrayList<>();
+        int orderCount = 1 + random.nextInt(maxOrders);
+        for (int i = 0; i < orderCount; i++) {
+            BigDecimal value = !orders.isEmpty() && random.nextInt(5) == 0
+                    ? orders.get(random.nextInt(orders.size())).getValue() // remis z wczesniejszym zamowieniem
+                    : amount(random, referenceCents, scale);
+            orders.add(new Order("ORDER" + (i + 1), value, promotions(random, cards)));
+        }
+        return new Instance(seed, orders, methods);
+    }
+
+
+    /**
+     * Solves an instance with every engine.
+     *
+     * @param instance The instance.
+     * @return The first engine disagreeing with the reference and both outcomes, or {@code null} if all agree.
+     */
+    public Mismatch check(Instance instance) {
+        Outcome expected = solve(engines.get(0), instance);
+        for (int i = 1; i < engines.size(); i++) {
+            Outcome actual = solve(engines.get(i), instance);
+            if (!engines.get(i).relation().holds(instance, expected, actual)) {
+                return new Mismatch(engines.get(i).name(), instance, instance, expected, actual);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Shrinks a disagreement to a smaller instance on which the same engine still disagrees with the reference.
+     *
+     * @param mismatch The disagreement.
+     * @return The disagreement with the smallest instance found.
+     */
+    public Mismatch shrink(Mismatch mismatch) {
+        Engine reference = engines.get(0);
+        Engine engine = engines.stream().filter(e -> e.name().equals(mismatch.engine())).findFirst().orElseThrow();
+        Shrinker shrinker = new Shrinker(candidate -> !engine.relation().holds(candidate, solve(reference, candidate), solve(engine, candidate)));
+        Instance shrunk = shrinker.shrink(mismatch.instance());
+        return new Mismatch(mismatch.engine(), mismatch.instance(), shrunk, solve(reference, shrunk), solve(engine, shrunk));
+    }
+
+
+    /**
+     * Checks the instances of consecutive seeds in parallel, then shrinks the disagreements found.
+     *
+     * @param firstSeed Seed of the first instance.
+     * @param maxCases Largest number of instances to check.
+     * @param maxNanos Time limit of the checking, or 0 for none.
+     * @param threads Number of checking threads.
+     * @param maxMismatches The run stops once this many disagreements are found.
+     * @return The report.
+     * @throws IllegalArgumentException If a limit is out of range.
+     */
+    public Report run(long firstSeed, long maxCases, long maxNanos, int threads, int maxMismatches) {
+        if (maxCases < 0 || maxNanos < 0 || threads < 1 || maxMismatches < 1) {
+            throw new IllegalArgumentException("Invalid fuzzing limits.");
+        }
+        long start = System.nanoTime();
+        AtomicLong nextCase = new AtomicLong();
+        AtomicLong checked = new AtomicLong();
+        ConcurrentLinkedQueue<Mismatch> found = new ConcurrentLinkedQueue<>();
+        Runnable worker = () -> {
+            while (found.size() < maxMismatches && (maxNanos == 0 || System.nanoTime() - start < maxNanos)) {
+                long from = nextCase.getAndAdd(SEED_BLOCK);
+                if (from >= maxCases) {
+                    return;
+                }
+                long to = Math.min(from + SEED_BLOCK, maxCases);
+                for (long i = from; i < to; i++) {
+                    Mismatch mismatch = check(generate(firstSeed + i));
+                    if (mismatch != null) {
+                        found.add(mismatch);
+                    }
+                }
+                checked.addAndGet(to - from);
+            }
+        };
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(Thread.ofPlatform().name("fuzz-worker-" + i).start(worker));
+        }
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        List<Mismatch> mismatches = found.stream()
+                .sorted(Comparator.comparingLong(m -> m.instance().seed()))
+                .limit(maxMismatches)
+                .map(this::shrink)
+                .toList();
+        return new Report(checked.get(), nanos, mismatches);
+    }
+
+
+    /**
+     * Writes the shrunk instance of a disagreement as input files of the application.
+     *
+     * @param mismatch The disagreement.
+     * @param directory Directory of the files.
+     * @return The orders file and the payment methods file.
+     * @throws IOException If the files cannot be written.
+     */
+    public static List<Path> writeFixture(Mismatch mismatch, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        String prefix = mismatch.engine() + "-" + mismatch.instance().seed();
+        Path ordersFile = directory.resolve(prefix + "-orders.json");
+        Path methodsFile = directory.resolve(prefix + "-paymentmethods.json");
+        JsonDataParser jsonDataParser = new JsonDataParser();
+        Files.write(ordersFile, jsonDataParser.toJsonBytes(mismatch.shrunk().orders()));
+        Files.write(methodsFile, jsonDataParser.toJsonBytes(mismatch.shrunk().paymentMethods()));
+        return List.of(ordersFile, methodsFile);
+    }
+
+
+    /**
+     * Entry point of the fuzzer.
+     * Options: {@code --cases <n>} (default 1000000), {@code --seconds <n>} (time limit, default none),
+     * {@code --seed <n>} (default 1), {@code --threads <n>} (default: available processors),
+     * {@code --max-orders <n>}, {@code --max-cards <n>}, {@code --max-mismatches <n>} (default 5) and
+     * {@code --output-dir <dir>} for the shrunk fixtures (default {@code target/fuzz}) and {@code --engines <a,b,...>}
+     * to compare only some of the {@link #defaultEngines()} with the reference.
+     * Exits with 0 if all engines kept their relation to the reference and 1 otherwise.
+     *
+     * @param args Command-line options.
+     */
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = WorkloadGenerator.parseOptions(args);
+            Set<String> known = Set.of("--cases", "--seconds", "--seed", "--threads", "--max-orders", "--max-cards", "--max-mismatches", "--output-dir", "--engines");
+            for (String option : options.keySet()) {
+                if (!known.contains(option)) {
+                    throw new ArgsValidationException("Unknown option '" + option + "'.");
+                }
+            }
+            long cases;
+            long seconds;
+            long seed;
+            int threads;
+            int maxOrders;
+            int maxCards;
+            int maxMismatches;
+            try {
+                cases = Long.parseLong(options.getOrDefault("--cases", "1000000"));
+                seconds = Long.parseLong(options.getOrDefault("--seconds", "0"));
+                seed = Long.parseLong(options.getOrDefault("--seed", "1"));
+                threads = Integer.parseInt(options.getOrDefault("--threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+                maxOrders = Integer.parseInt(options.getOrDefault("--max-orders", Integer.toString(DEFAULT_MAX_ORDERS)));
+                maxCards = Integer.parseInt(options.getOrDefault("--max-cards", Integer.toString(DEFAULT_MAX_CARDS)));
+                maxMismatches = Integer.parseInt(options.getOrDefault("--max-mismatches", "5"));
+            } catch (NumberFormatException e) {
+                throw new ArgsValidationException("Invalid option value: " + e.getMessage());
+            }
+            if (cases < 0 || seconds < 0 || threads < 1 || maxOrders < 1 || maxCards < 1 || maxMismatches < 1) {
+                throw new ArgsValidationException("Counts and limits must be positive.");
+            }
+            Path outputDirectory = Paths.get(options.getOrDefault("--output-dir", "target/fuzz"));
+            List<Engine> engines = defaultEngines();
+            if (options.containsKey("--engines")) {
+                engines = new ArrayList<>(List.of(allEngines().get(REFERENCE)));
+                for (String name : options.get("--engines").split(",")) {
+                    Engine engine = allEngines().get(name.trim());
+                    if (engine == null) {
+                        throw new ArgsValidationException("Unknown engine '" + name.trim() + "', expected one of " + allEngines().keySet() + ".");
+                    }
+                    if (!engine.name().equals(REFERENCE)) {
+                        engines.add(engine);
+                    }
+                }
+                if (engines.size() < 2) {
+                    throw new ArgsValidationException("At least one engine besides the reference is required.");
+                }
+            }
+
+            Report report = new DifferentialFuzzer(engines, maxOrders, maxCards)
+                    .run(seed, cases, seconds * 1_000_000_000L, threads, maxMismatches);
+            System.out.printf("Checked %d instances in %.1f s (%d per minute) on %d threads.%n",
+                    report.cases(), report.nanos() / 1e9, report.casesPerMinute(), threads);
+            for (Mismatch mismatch : report.mismatches()) {
+                List<Path> files = writeFixture(mismatch, outputDirectory);
+                System.out.println("Engine " + mismatch.engine() + " disagrees on seed " + mismatch.instance().seed()
+                        + " (shrunk to " + mismatch.shrunk().orders().size() + " orders): reference " + mismatch.expected()
+                        + ", " + mismatch.engine() + " " + mismatch.actual() + ". Fixture: " + files.get(0) + ", " + files.get(1));
+            }
+            System.exit(report.mismatches().isEmpty() ? 0 : 1);
+        } catch (ArgsValidationException e) {
+            System.err.println("Configuration error: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("File access error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    private static Outcome solve(Engine engine, Instance instance) {
+        try {
+            return new Outcome(engine.optimizer().apply(instance.orders(), instance.paymentMethods()), null);
+        } catch (RuntimeException e) {
+            return new Outcome(null, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+
+    private static Map<String, BigDecimal> solveTraced(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        try (DecisionTraceWriter trace = new DecisionTraceWriter(OutputStream.nullOutputStream())) {
+            return new TracingPaymentOptimizer(PhaseMetrics.disabled(), trace, ApplicationRunner.SOLVER_CONFIGURATION)
+                    .optimizePayments(orders, paymentMethods);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Solves through a fresh result cache twice, so the answer compared is the cached one.
+     */
+    private static Map<String, BigDecimal> solveCached(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer(new PaymentOptimizerService()::optimizePayments,
+                CachingPaymentOptimizer.DEFAULT_MAX_ENTRIES, CachingPaymentOptimizer.DEFAULT_MAX_BYTES);
+        cache.optimizePayments(orders, paymentMethods);
+        return cache.optimizePayments(orders, paymentMethods);
+    }
+
+
+    private static Map<String, BigDecimal> solveOnline(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        OnlinePaymentOptimizer online = new OnlinePaymentOptimizer(paymentMethods, orders);
+        for (Order order : orders) {
+            online.decide(order);
+        }
+        return online.getTotalSpentByMethod();
+    }
+
+
+    private static Map<String, BigDecimal> solveMicroBatch(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        try (MicroBatchOptimizer microBatch = new MicroBatchOptimizer(paymentMethods, MICRO_BATCH_LATENCY_TARGET_MILLIS, orders.size())) {
+            List<CompletableFuture<OnlinePaymentOptimizer.Decision>> decisions = new ArrayList<>();
+            for (Order order : orders) {
+                decisions.add(microBatch.submit(order));
+            }
+            for (CompletableFuture<OnlinePaymentOptimizer.Decision> decision : decisions) {
+                try {
+                    decision.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException cause ? cause : e;
+                }
+            }
+            return microBatch.getTotalSpentByMethod();
+        }
+    }
+
+
+    /**
+     * Checks the plan of an engine that may legitimately differ from the reference: only existing methods charged,
+     * none above its limit, and a total between the order values less their best possible discounts and the order values.
+     */
+    static boolean isValidPlan(Instance instance, Map<String, BigDecimal> totals) {
+        Map<String, PaymentMethod> methods = new HashMap<>();
+        instance.paymentMethods().forEach(method -> methods.put(method.getId(), method));
+        BigDecimal spent = BigDecimal.ZERO;
+        for (Map.Entry<String, BigDecimal> total : totals.entrySet()) {
+            PaymentMethod method = methods.get(total.getKey());
+            if (total.getValue().signum() < 0 || (method == null ? total.getValue().signum() != 0 : total.getValue().compareTo(method.getLimit()) > 0)) {
+                return false;
+            }
+            spent = spent.add(total.getValue());
+        }
+        BigDecimal values = BigDecimal.ZERO;
+        BigDecimal lowest = BigDecimal.ZERO;
+        PaymentMethod points = methods.get(POINTS_ID);
+        for (Order order : instance.orders()) {
+            int bestDiscount = points == null ? 0 : Math.max(10, points.getDiscount());
+            if (order.getPromotions() != null) {
+                for (String promotion : order.getPromotions()) {
+                    if (methods.containsKey(promotion)) {
+                        bestDiscount = Math.max(bestDiscount, methods.get(promotion).getDiscount());
+                    }
+                }
+            }
+            values = values.add(order.getValue());
+            // grosz zapasu na zaokraglenie rabatu
+            lowest = lowest.add(order.getValue().multiply(BigDecimal.valueOf(100 - bestDiscount)).movePointLeft(2)).subtract(new BigDecimal("0.01"));
+        }
+        return spent.compareTo(values) <= 0 && spent.compareTo(lowest) >= 0;
+    }
+
+
+    private static int discount(SplittableRandom random) {
+        return random.nextBoolean() ? EDGE_DISCOUNTS[random.nextInt(EDGE_DISCOUNTS.length)] : random.nextInt(101);
+    }
+
+
+    /**
+     * Draws an amount around a reference number of cents, biased towards the edges of the discount rounding.
+     */
+    private static BigDecimal amount(SplittableRandom random, long referenceCents, int scale) {
+        long cents = switch (random.nextInt(6)) {
+            case 0 -> 0;
+            case 1 -> random.nextLong(10) * 10 + 5; // x.x5 - 10% konczy sie na pol grosza
+            case 2 -> (random.nextLong(referenceCents / 10 + 1) * 10) + 5;
+            case 3 -> referenceCents;
+            default -> 1 + random.nextLong(2 * referenceCents);
+        };
+        long unit = scale == 2 ? 1 : scale == 1 ? 10 : 100;
+        cents = scale == 2 ? cents : Math.max(cents / unit, 1) * unit;
+        return BigDecimal.valueOf(cents / unit, scale);
+    }
+
+
+    private static List<String> promotions(SplittableRandom random, int cards) {
+        int kind = random.nextInt(10);
+        if (kind == 0) {
+            return null;
+        }
+        if (kind == 1 || cards == 0 && kind < 5) {
+            return new ArrayList<>();
+        }
+        List<String> promotions = new ArrayList<>();
+        int count = 1 + random.nextInt(Math.max(cards, 1) + 1);
+        for (int i = 0; i < count; i++) {
+            int pick = random.nextInt(cards + 2);
+            promotions.add(pick < cards ? "CARD" + pick : pick == cards ? MISSING_METHOD_ID : POINTS_ID);
+        }
+        return promotions;
+    }
+
+
+    /**
+     * Greedy shrinking: tries smaller variants of the instance and keeps every one that still fails, until no variant
+     * does or the check budget is spent.
+     */
+    private static final class Shrinker {
+
+        private final Predicate<Instance> fails;
+        private int checks;
+
+
+        Shrinker(Predicate<Instance> fails) {
+            this.fails = fails;
+        }
+
+
+        Instance shrink(Instance instance) {
+            Instance current = instance;
+            boolean progress = true;
+            while (progress && checks < MAX_SHRINK_CHECKS) {
+                progress = false;
+                for (Instance candidate : candidates(current)) {
+                    if (checks++ >= MAX_SHRINK_CHECKS) {
+                        break;
+                    }
+                    if (fails.test(candidate)) {
+                        current = candidate;
+                        progress = true;
+                        break;
+                    }
+                }
+            }
+            return current;
+        }
+
+
+        /**
+         * Smaller variants, the most reducing first: removing chunks of orders, single methods and promotions,
+         * then simplifying amounts and discounts.
+         */
+        private static List<Instance> candidates(Instance instance) {
+            List<Order> orders = instance.orders();
+            List<PaymentMethod> methods = instance.paymentMethods();
+            List<Instance> candidates = new ArrayList<>();
+            for (int chunk = orders.size() / 2; chunk >= 1; chunk /= 2) {
+                for (int from = 0; from + chunk <= orders.size(); from += chunk) {
+                    List<Order> fewer = new ArrayList<>(orders.subList(0, from));
+                    fewer.addAll(orders.subList(from + chunk, orders.size()));
+                    candidates.add(new Instance(instance.seed(), fewer, methods));
+                }
+            }
+            for (int i = 0; i < methods.size(); i++) {
+                List<PaymentMethod> fewer = new ArrayList<>(methods);
+                fewer.remove(i);
+                candidates.add(new Instance(instance.seed(), orders, fewer));
+            }
+            for (int i = 0; i < orders.size(); i++) {
+                Order order = orders.get(i);
+                List<String> promotions = order.getPromotions();
+                if (promotions == null) {
+                    continue;
+                }
+                for (int p = 0; p < promotions.size(); p++) {
+                    List<String> fewer = new ArrayList<>(promotions);
+                    fewer.remove(p);
+                    candidates.add(withOrder(instance, i, new Order(order.getId(), order.getValue(), fewer)));
+                }
+            }
+            for (int i = 0; i < orders.size(); i++) {
+                Order order = orders.get(i);
+                for (BigDecimal value : simpler(order.getValue())) {
+                    candidates.add(withOrder(instance, i, new Order(order.getId(), value, order.getPromotions())));
+                }
+            }
+            for (int i = 0; i < methods.size(); i++) {
+                PaymentMethod method = methods.get(i);
+                for (BigDecimal limit : simpler(method.getLimit())) {
+                    candidates.add(withMethod(instance, i, new PaymentMethod(method.getId(), method.getDiscount(), limit)));
+                }
+                for (int discount : new int[]{0, 10, 50}) {
+                    if (discount < method.getDiscount()) {
+                        candidates.add(withMethod(instance, i, new PaymentMethod(method.getId(), discount, method.getLimit())));
+                    }
+                }
+            }
+            return candidates;
+        }
+
+
+        /**
+         * Simpler amounts than the given one, strictly smaller or with fewer decimal places.
+         */
+        private static List<BigDecimal> simpler(BigDecimal amount) {
+            List<BigDecimal> simpler = new ArrayList<>();
+            if (amount.signum() == 0) {
+                return simpler;
+            }
+            simpler.add(BigDecimal.ZERO.setScale(amount.scale()));
+            BigDecimal whole = amount.setScale(0, RoundingMode.DOWN);
+            if (whole.compareTo(amount) != 0) {
+                simpler.add(whole.setScale(amount.scale()));
+            }
+            BigDecimal half = amount.divide(BigDecimal.valueOf(2), amount.scale(), RoundingMode.DOWN);
+            if (half.compareTo(amount) < 0) {
+                simpler.add(half);
+            }
+            BigDecimal oneLess = amount.subtract(BigDecimal.ONE);
+            if (oneLess.signum() > 0) {
+                simpler.add(oneLess);
+            }
+            return simpler;
+        }
+
+
+        private static Instance withOrder(Instance instance, int index, Order order) {
+            List<Order> orders = new ArrayList<>(instance.orders());
+            orders.set(index, order);
+            return new Instance(instance.seed(), orders, instance.paymentMethods());
+        }
+
+
+        private static Instance withMethod(Instance instance, int index, PaymentMethod method) {
+            List<PaymentMethod> methods = new ArrayList<>(instance.paymentMethods());
+            methods.set(index, method);
+            return new Instance(instance.seed(), instance.orders(), methods);
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.exception.ArgsValidationException;
+import com.chamera.patryk.metrics.LatencyHistogram;
+import com.chamera.patryk.model.OptimizationRequest;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.server.OptimizerHttpServer;
+import com.chamera.patryk.service.PaymentOptimizerService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Load generator for the optimizer server: sends {@code POST /optimize} requests over HTTP and reports throughput and
+ * latency percentiles per interval and for the whole run, so a release can be load-qualified on one machine.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ *     <li>Open loop: requests are sent at a fixed arrival rate, whatever the server's speed, each on its own virtual
+ *     thread, like independent clients.</li>
+ *     <li>Closed loop: a fixed number of workers each send a request and wait for its response before sending the next,
+ *     optionally paced to a total target rate.</li>
+ * </ul>
+ * Every request has an intended send time on a fixed schedule, and its latency is measured from that time, not from
+ * the moment it was actually sent. A server that stalls therefore shows the stall in every request that should have
+ * been sent meanwhile, instead of in a single slow sample (coordinated omission). Only an unpaced closed loop has no
+ * schedule; it measures service time.
+ * <p>
+ * The requests come from a pool generated from a seed, with varying basket sizes (mostly small, some up to
+ * {@code maxOrders} orders) and varying sets of cards, with or without points. Every pooled instance is solved once
+ * when the pool is built and redrawn if it cannot be paid, so any error under load comes from the server.
+ * The pool is sent round-robin; the optimizer server solves every request, so a repeated request costs a full solve.
+ * Without {@code --url} an in-process server is started on a free port.
+ */
+public final class LoadGenerator {
+
+    /**
+     * Default number of distinct requests in the pool.
+     */
+    public static final int DEFAULT_POOL_SIZE = 1_000;
+
+    private static final String POINTS_ID = "PUNKTY";
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String CSV_HEADER = "elapsed_s,requests,errors,throughput_per_s,p50_ms,p90_ms,p99_ms,p999_ms,max_ms";
+
+
+    /**
+     * Load mode.
+     */
+    public enum Mode {
+        OPEN, CLOSED
+    }
+
+
+    /**
+     * Server under load.
+     */
+    @FunctionalInterface
+    public interface Target {
+
+        /**
+         * Sends one request and waits for the response.
+         *
+         * @param body JSON body of the request.
+         * @return HTTP status of the response.
+         * @throws IOException If the request fails.
+         * @throws InterruptedException If the sending thread is interrupted.
+         */
+        int send(byte[] body) throws IOException, InterruptedException;
+    }
+
+
+    /**
+     * Shape of a load run.
+     *
+     * @param mode Open or closed loop.
+     * @param rate Requests per second; in closed loop 0 means no pacing.
+     * @param concurrency Number of closed-loop workers.
+     * @param warmupNanos Time before measuring starts; requests sent then are not reported.
+     * @param durationNanos Measured time.
+     * @param intervalNanos Length of a reported interval.
+     * @param maxInFlight Open-loop limit of requests awaiting a response; requests over it are dropped and counted.
+     */
+    public record Spec(Mode mode, double rate, int concurrency, long warmupNanos, long durationNanos, long intervalNanos, int maxInFlight) {
+    }
+
+
+    /**
+     * Results of one reported interval, by completion time.
+     *
+     * @param elapsedNanos End of the interval, measured from the start of measuring.
+     * @param requests Responses received in the interval, errors included.
+     * @param errors Responses other than 200 and failed requests.
+     * @param throughput Responses per second.
+     * @param percentileNanos Latency at the 50th, 90th, 99th and 99.9th percentile.
+     * @param maxNanos Largest latency.
+     */
+    public record Interval(long elapsedNanos, long requests, long errors, double throughput, long[] percentileNanos, long maxNanos) {
+    }
+
+
+    /**
+     * Results of a load run.
+     *
+     * @param intervals Reported intervals, in time order.
+     * @param latency Latencies of all measured requests.
+     * @param errors Measured responses other than 200 and failed requests.
+     * @param dropped Open-loop requests not sent because too many were in flight.
+     * @param responsesByStatus Number of measured responses per HTTP status; failed requests are counted under -1.
+     * @param measuredNanos Length of the measured part of the run.
+     */
+    public record Report(List<Interval> intervals, LatencyHistogram latency, long errors, long dropped,
+                         Map<Integer, Long> responsesByStatus, long measuredNanos) {
+
+        /**
+         * @return Measured responses per second.
+         */
+        public double throughput() {
+            return measuredNanos == 0 ? 0 : latency.getCount() * 1e9 / measuredNanos;
+        }
+
+        /**
+         * @return Share of measured requests that failed or were dropped.
+         */
+        public double errorRate() {
+            long total = latency.getCount() + dropped;
+            return total == 0 ? 0 : (double) (errors + dropped) / total;
+        }
+    }
+
+
+    private LoadGenerator() {
+    }
+
+
+    /**
+     * A target posting to the optimize endpoint of a server.
+     *
+     * @param optimizeUri URI of {@code /optimize}.
+     * @return The target; safe for concurrent use.
+     */
+    public static Target httpTarget(URI optimizeUri) {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        return body -> client.send(HttpRequest.newBuilder(optimizeUri)
+                        .timeout(Duration.ofSeconds(30))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+
+    /**
+     * Generates a pool of requests, each checked to be payable by solving it once.
+     *
+     * @param size Number of requests.
+     * @param maxOrders Largest basket; most baskets are much smaller.
+     * @param maxCards Largest number of cards of a request.
+     * @param seed Seed; the same arguments always give the same pool.
+     * @return JSON bodies of the requests.
+     * @throws IllegalArgumentException If a count is not positive.
+     */
+    public static List<byte[]> requestPool(int size, int maxOrders, int maxCards, long seed) {
+        if (size < 1 || maxOrders < 1 || maxCards < 1) {
+            throw new IllegalArgumentException("Pool size, basket size and card count must be positive.");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        JsonDataParser jsonDataParser = new JsonDataParser();
+        List<byte[]> pool = new ArrayList<>(size);
+        PaymentOptimizerService paymentOptimizerService = new PaymentOptimizerService();
+        for (int i = 0; i < size; i++) {
+            OptimizationRequest request = request(random, maxOrders, maxCards);
+            try {
+                paymentOptimizerService.optimizePayments(request.getOrders(), request.getPaymentMethods());
+            } catch (RuntimeException e) {
+                i--; // niewykonalna instancja - losujemy inna
+                continue;
+            }
+            try {
+                pool.add(jsonDataParser.toJsonBytes(request));
+            } catch (IOException e) {
+                throw new IllegalStateException("Request could not be serialized", e);
+            }
+        }
+        return pool;
+    }
+
+
+    /**
+     * Runs a load against a target. Blocks until the run is over and every sent request has been answered.
+     *
+     * @param target Server under load.
+     * @param requests Request bodies, sent in turn.
+     * @param spec Shape of the run.
+     * @param intervalListener Called with every interval as soon as it ends, from a background thread.
+     * @return The results.
+     * @throws IllegalArgumentException If the spec is invalid or there are no requests.
+     */
+    public static Report run(Target target, List<byte[]> requests, Spec spec, Consumer<Interval> intervalListener) {
+        validate(spec, requests);
+        long start = System.nanoTime();
+        long measureStart = start + spec.warmupNanos();
+        long end = measureStart + spec.durationNanos();
+        Recorder recorder = new Recorder(measureStart);
+
+        Thread reporter = Thread.ofPlatform().name("load-reporter").daemon().start(() -> {
+            long next = measureStart + spec.intervalNanos();
+            while (next <= end) {
+                parkUntil(next);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                intervalListener.accept(recorder.closeInterval(next, true));
+                next += spec.intervalNanos();
+            }
+        });
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (spec.mode() == Mode.OPEN) {
+                runOpenLoop(target, requests, spec, start, end, recorder, executor);
+            } else {
+                for (int worker = 0; worker < spec.concurrency(); worker++) {
+                    int workerIndex = worker;
+                    executor.execute(() -> runClosedLoopWorker(target, requests, spec, workerIndex, start, end, recorder));
+                }
+            }
+        }
+        reporter.interrupt();
+        try {
+            reporter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long finished = System.nanoTime();
+        Interval last = recorder.closeInterval(finished, false); // odpowiedzi po koncu ostatniego pelnego przedzialu
+        if (last != null) {
+            intervalListener.accept(last);
+        }
+        return recorder.report(Math.max(Math.min(finished, end) - measureStart, 0));
+    }
+
+
+    /**
+     * Entry point of the load generator.
+     * Options: {@code --url <http://host:port>} (default: an in-process server), {@code --mode open|closed}
+     * (default open), {@code --rate <requests/s>} (default 200; 0 for an unpaced closed loop),
+     * {@code --concurrency <workers>} (closed loop, default 16), {@code --duration <s>} (default 30),
+     * {@code --warmup <s>} (default 5), {@code --interval-ms <ms>} (default 1000), {@code --max-orders <n>} (default 20),
+     * {@code --max-cards <n>} (default 8), {@code --pool-size <n>} (default {@value #DEFAULT_POOL_SIZE}), {@code --seed <n>},
+     * {@code --max-in-flight <n>} (default 10000), {@code --report <file.csv>} for the intervals, and the qualification limits
+     * {@code --max-p99-ms <ms>} and {@code --max-error-rate <share>} (default 0).
+     * Exits with 0 if the limits are met and 1 otherwise.
+     *
+     * @param args Command-line options.
+     */
+    public static void main(String[] args) {
+        OptimizerHttpServer localServer = null;
+        try {
+            Map<String, String> options = WorkloadGenerator.parseOptions(args);
+            Set<String> known = Set.of("--url", "--mode", "--rate", "--concurrency", "--duration", "--warmup", "--interval-ms",
+                    "--max-orders", "--max-cards", "--pool-size", "--seed", "--max-in-flight", "--report", "--max-p99-ms", "--max-error-rate");
+            for (String option : options.keySet()) {
+                if (!known.contains(option)) {
+                    throw new ArgsValidationException("Unknown option '" + option + "'.");
+                }
+            }
+            Spec spec;
+            int maxOrders;
+            int maxCards;
+            int poolSize;
+            long seed;
+            double maxP99Millis;
+            double maxErrorRate;
+            try {
+                Mode mode = Mode.valueOf(options.getOrDefault("--mode", "open").toUpperCase(Locale.ROOT));
+                spec = new Spec(mode,
+                        Double.parseDouble(options.getOrDefault("--rate", "200")),
+                        Integer.parseInt(options.getOrDefault("--concurrency", "16")),
+                        (long) (Double.parseDouble(options.getOrDefault("--warmup", "5")) * 1e9),
+                        (long) (Double.parseDouble(options.getOrDefault("--duration", "30")) * 1e9),
+                        Long.parseLong(options.getOrDefault("--interval-ms", "1000")) * 1_000_000,
+                        Integer.parseInt(options.getOrDefault("--max-in-flight", "10000")));
+                maxOrders = Integer.parseInt(options.getOrDefault("--max-orders", "20"));
+                maxCards = Integer.parseInt(options.getOrDefault("--max-cards", "8"));
+                poolSize = Integer.parseInt(options.getOrDefault("--pool-size", Integer.toString(DEFAULT_POOL_SIZE)));
+                seed = Long.parseLong(options.getOrDefault("--seed", "1"));
+                maxP99Millis = Double.parseDouble(options.getOrDefault("--max-p99-ms", "Infinity"));
+                maxErrorRate = Double.parseDouble(options.getOrDefault("--max-error-rate", "0"));
+            } catch (IllegalArgumentException e) {
+                throw new ArgsValidationException("Invalid option value: " + e.getMessage());
+            }
+            if (maxOrders < 1 || maxCards < 1 || poolSize < 1) {
+                throw new ArgsValidationException("Basket size, card count and pool size must be positive.");
+            }
+            try {
+                validate(spec, List.of(new byte[0]));
+            } catch (IllegalArgumentException e) {
+                throw new ArgsValidationException(e.getMessage());
+            }
+
+            URI baseUri;
+            if (options.containsKey("--url")) {
+                baseUri = URI.create(options.get("--url"));
+            } else {
+                OptimizerHttpServer.enableTcpNoDelay();
+                localServer = new OptimizerHttpServer(0);
+                localServer.start();
+                baseUri = URI.create("http://localhost:" + localServer.getPort());
+                System.out.println("Started an in-process server on port " + localServer.getPort() + ".");
+            }
+            List<byte[]> requests = requestPool(poolSize, maxOrders, maxCards, seed);
+
+            System.out.printf("%s loop, %s, %.0f s warm-up, %.0f s measured, against %s%n", spec.mode().name().toLowerCase(Locale.ROOT),
+                    spec.mode() == Mode.OPEN || spec.rate() > 0 ? spec.rate() + " requests/s" : "unpaced",
+                    spec.warmupNanos() / 1e9, spec.durationNanos() / 1e9, baseUri);
+            System.out.printf("%8s %10s %8s %9s %9s %9s %9s %9s%n", "time s", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+            Report report = run(httpTarget(baseUri.resolve("/optimize")), requests, spec, interval -> {
+                long[] p = interval.percentileNanos();
+                System.out.printf("%8.1f %10.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", interval.elapsedNanos() / 1e9, interval.throughput(),
+                        interval.errors(), p[0] / 1e6, p[1] / 1e6, p[2] / 1e6, p[3] / 1e6, interval.maxNanos() / 1e6);
+            });
+
+            LatencyHistogram latency = report.latency();
+            System.out.printf("Total: %d requests, %.1f requests/s, %d errors, %d dropped, statuses %s%n", latency.getCount(),
+                    report.throughput(), report.errors(), report.dropped(), report.responsesByStatus());
+            System.out.printf("Latency: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                    latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.9) / 1e6, latency.getPercentile(0.99) / 1e6,
+                    latency.getPercentile(0.999) / 1e6, latency.getMax() / 1e6);
+            if (options.containsKey("--report")) {
+                Files.writeString(Paths.get(options.get("--report")), toCsv(report.intervals()));
+            }
+
+            List<String> violations = new ArrayList<>();
+            if (latency.getPercentile(0.99) / 1e6 > maxP99Millis) {
+                violations.add(String.format("p99 %.2f ms is above %.2f ms", latency.getPercentile(0.99) / 1e6, maxP99Millis));
+            }
+            if (report.errorRate() > maxErrorRate) {
+                violations.add(String.format("error rate %.4f is above %.4f", report.errorRate(), maxErrorRate));
+            }
+            if (!violations.isEmpty()) {
+                System.err.println("Load qualification failed: " + String.join("; ", violations) + ".");
+                exit(localServer, 1);
+            }
+            exit(localServer, 0);
+        } catch (ArgsValidationException e) {
+            System.err.println("Configuration error: " + e.getMessage());
+            exit(localServer, 1);
+        } catch (IOException e) {
+            System.err.println("File access error: " + e.getMessage());
+            exit(localServer, 1);
+        }
+    }
+
+
+    /**
+     * Formats the intervals as CSV.
+     *
+     * @param intervals Reported intervals.
+     * @return The CSV text, with a header line.
+     */
+    public static String toCsv(List<Interval> intervals) {
+        StringBuilder csv = new StringBuilder(CSV_HEADER).append('\n');
+        for (Interval interval : intervals) {
+            csv.append(String.format(Locale.ROOT, "%.3f,%d,%d,%.1f", interval.elapsedNanos() / 1e9, interval.requests(), interval.errors(), interval.throughput()));
+            for (long nanos : interval.percentileNanos()) {
+                csv.append(String.format(Locale.ROOT, ",%.3f", nanos / 1e6));
+            }
+            csv.append(String.format(Locale.ROOT, ",%.3f", interval.maxNanos() / 1e6)).append('\n');
+        }
+        return csv.toString();
+    }
+
+
+    private static void runOpenLoop(Target target, List<byte[]> requests, Spec spec, long start, long end, Recorder recorder, ExecutorService executor) {
+        Semaphore inFlight = new Semaphore(spec.maxInFlight());
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * 1e9 / spec.rate());
+            if (intended >= end) {
+                return;
+            }
+            parkUntil(intended);
+            if (!inFlight.tryAcquire()) {
+                recorder.drop(intended);
+                continue;
+            }
+            byte[] body = requests.get((int) (i % requests.size()));
+            executor.execute(() -> {
+                try {
+                    exchange(target, body, intended, recorder);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+
+    /**
+     * One closed-loop worker. When paced, the workers' schedules are interleaved so that together they send at the
+     * target rate; a worker that falls behind sends at once and its requests are measured from the schedule.
+     */
+    private static void runClosedLoopWorker(Target target, List<byte[]> requests, Spec spec, int worker, long start, long end, Recorder recorder) {
+        double periodNanos = spec.rate() > 0 ? spec.concurrency() * 1e9 / spec.rate() : 0;
+        long offset = (long) (periodNanos * worker / spec.concurrency());
+        for (long i = 0; ; i++) {
+            long intended = periodNanos > 0 ? start + offset + (long) (i * periodNanos) : System.nanoTime();
+            if (intended >= end) {
+                return;
+            }
+            parkUntil(intended);
+            exchange(target, requests.get((int) ((i * spec.concurrency() + worker) % requests.size())), intended, recorder);
+        }
+    }
+
+
+    private static void exchange(Target target, byte[] body, long intended, Recorder recorder) {
+        int status;
+        try {
+            status = target.send(body);
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        recorder.record(intended, System.nanoTime() - intended, status);
+    }
+
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+
+    private static void validate(Spec spec, List<byte[]> requests) {
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("At least one request is required.");
+        }
+        if (spec.rate() < 0 || (spec.mode() == Mode.OPEN && spec.rate() == 0) || Double.isNaN(spec.rate()) || Double.isInfinite(spec.rate())) {
+            throw new IllegalArgumentException("The rate must be positive in open loop and not negative in closed loop, got " + spec.rate() + ".");
+        }
+        if (spec.concurrency() < 1 || spec.maxInFlight() < 1) {
+            throw new IllegalArgumentException("Concurrency and the in-flight limit must be positive.");
+        }
+        if (spec.warmupNanos() < 0 || spec.durationNanos() <= 0 || spec.intervalNanos() <= 0) {
+            throw new IllegalArgumentException("Warm-up must not be negative, duration and interval must be positive.");
+        }
+    }
+
+
+    private static void exit(OptimizerHttpServer localServer, int status) {
+        if (localServer != null) {
+            localServer.stop();
+        }
+        System.exit(status);
+    }
+
+
+    private static OptimizationRequest request(SplittableRandom random, int maxOrders, int maxCards) {
+        // koszyki glownie male, czasem duze: rozklad wykladniczy obciety do maxOrders
+        int basketSize = (int) Math.min(maxOrders, 1 + Math.floor(-Math.log(1 - random.nextDouble()) * Math.max(maxOrders / 4.0, 1)));
+        int cardCount = 1 + random.nextInt(maxCards);
+        List<String> cardIds = new ArrayList<>();
+        for (int card = 0; card < 2 * maxCards && cardIds.size() < cardCount; card++) {
+            if (random.nextInt(2 * maxCards - card) < cardCount - cardIds.size()) {
+                cardIds.add("CARD" + card); // losowy podzbior z wiekszej puli kart
+            }
+        }
+
+        List<Order> orders = new ArrayList<>(basketSize);
+        long totalCents = 0;
+        long maxCents = 0;
+        for (int i = 0; i < basketSize; i++) {
+            long cents = 100 + random.nextLong(49_900);
+            totalCents += cents;
+            maxCents = Math.max(maxCents, cents);
+            List<String> promotions = new ArrayList<>();
+            for (int p = random.nextInt(3); p > 0; p--) {
+                String cardId = cardIds.get(random.nextInt(cardIds.size()));
+                if (!promotions.contains(cardId)) {
+                    promotions.add(cardId);
+                }
+            }
+            orders.add(new Order("ORDER" + (i + 1), BigDecimal.valueOf(cents, 2), promotions));
+        }
+
+        List<PaymentMethod> paymentMethods = new ArrayList<>(cardIds.size() + 1);
+        for (String cardId : cardIds) {
+            // kazda karta miesci najwiekszy koszyk, razem zostaje zapas ponad sume zamowien
+            long limitCents = totalCents * (11 + random.nextInt(8)) / (10L * cardIds.size()) + maxCents;
+            paymentMethods.add(new PaymentMethod(cardId, 5 * random.nextInt(5), BigDecimal.valueOf(limitCents, 2)));
+        }
+        if (random.nextInt(5) != 0) {
+            paymentMethods.add(new PaymentMethod(POINTS_ID, 5 + random.nextInt(16), BigDecimal.valueOf(random.nextLong(totalCents / 2 + 1), 2)));
+        }
+        return new OptimizationRequest(orders, paymentMethods);
+    }
+
+
+    /**
+     * Collects latencies of measured requests, per interval and in total. Synchronized, as responses arrive on many
+     * threads; recording is a histogram increment, far cheaper than the request itself.
+     */
+    private static final class Recorder {
+
+        private final long measureStart;
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final Map<Integer, Long> responsesByStatus = new TreeMap<>();
+        private final List<Interval> intervals = new ArrayList<>();
+        private LatencyHistogram interval = new LatencyHistogram();
+        private long intervalStart;
+        private long intervalErrors;
+        private long errors;
+        private long dropped;
+
+
+        Recorder(long measureStart) {
+            this.measureStart = measureStart;
+            this.intervalStart = measureStart;
+        }
+
+
+        synchronized void record(long intended, long latencyNanos, int status) {
+            if (intended < measureStart) {
+                return; // rozgrzewka
+            }
+            total.record(latencyNanos);
+            interval.record(latencyNanos);
+            responsesByStatus.merge(status, 1L, Long::sum);
+            if (status != 200) {
+                errors++;
+                intervalErrors++;
+            }
+        }
+
+
+        synchronized void drop(long intended) {
+            if (intended >= measureStart) {
+                dropped++;
+            }
+        }
+
+
+        /**
+         * Ends the current interval and starts the next one.
+         *
+         * @return The ended interval, or {@code null} if it is empty and {@code keepEmpty} is not set.
+         */
+        synchronized Interval closeInterval(long now, boolean keepEmpty) {
+            if (!keepEmpty && interval.getCount() == 0) {
+                return null;
+            }
+            long[] percentiles = new long[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                percentiles[i] = interval.getPercentile(PERCENTILES[i]);
+            }
+            long length = Math.max(now - intervalStart, 1);
+            Interval closed = new Interval(now - measureStart, interval.getCount(), intervalErrors,
+                    interval.getCount() * 1e9 / length, percentiles, interval.getMax());
+            interval = new LatencyHistogram();
+            intervalErrors = 0;
+            intervalStart = now;
+            intervals.add(closed);
+            return closed;
+        }
+
+
+        synchronized Report report(long measuredNanos) {
+            return new Report(List.copyOf(intervals), total, errors, dropped, new TreeMap<>(responsesByStatus), measuredNanos);
+        }
+    }
+}
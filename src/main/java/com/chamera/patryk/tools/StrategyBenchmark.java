@@ -0,0 +1,401 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.exception.ArgsValidationException;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.service.BeamSearchOptimizer;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import com.chamera.patryk.service.RollingHorizonOptimizer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * Solution-quality versus run-time benchmark of the solver strategies over a fixed corpus of seeded instances.
+ * <p>
+ * Each strategy solves each instance after a few warm-up runs; the report gives, per instance and strategy, the total
+ * discount, the gap to the reference, the points used, the median wall time and the peak heap growth during the
+ * measured runs. The reference is the optimum found by the exhaustive strategy where the instance is small enough for
+ * it, and otherwise the best discount any strategy reached ("best known"). The exhaustive strategy is a rolling-horizon
+ * search with one window spanning all orders and no node budget, so its optimum is exact over the payment options the
+ * service generates (full card, full points, partial points) rather than over every possible split of an order.
+ * <p>
+ * The corpus is generated with {@link WorkloadGenerator} from fixed seeds, so reports of different builds are
+ * directly comparable. The report is written as CSV or Markdown, chosen by the extension of the report file.
+ */
+public final class StrategyBenchmark {
+
+    /**
+     * Default largest instance the exhaustive strategy is run on.
+     */
+    public static final int DEFAULT_EXHAUSTIVE_MAX_ORDERS = 10;
+
+    static final String EXHAUSTIVE = "exhaustive";
+
+    private static final String POINTS_ID_STRING = "PUNKTY";
+    private static final String CSV_HEADER = "instance,orders,methods,strategy,total_discount,gap_percent,reference,points_used,wall_ms,peak_heap_kb,error";
+
+    private final List<Strategy> strategies;
+    private final int warmupRuns;
+    private final int measuredRuns;
+
+
+    /**
+     * A solver strategy.
+     *
+     * @param name Name in the report.
+     * @param optimizer The solver.
+     * @param maxOrders Largest instance the strategy is run on.
+     */
+    public record Strategy(String name, BiFunction<List<Order>, List<PaymentMethod>, Map<String, BigDecimal>> optimizer, int maxOrders) {
+    }
+
+
+    /**
+     * An instance of the corpus.
+     *
+     * @param name Name in the report.
+     * @param orders Orders to pay.
+     * @param paymentMethods Available payment methods.
+     */
+    public record Instance(String name, List<Order> orders, List<PaymentMethod> paymentMethods) {
+    }
+
+
+    /**
+     * One line of the report.
+     *
+     * @param instance Name of the instance.
+     * @param orders Number of orders of the instance.
+     * @param methods Number of payment methods of the instance.
+     * @param strategy Name of the strategy.
+     * @param totalDiscount Total discount of the plan, or {@code null} if the strategy failed.
+     * @param gapPercent Gap to the reference discount, in percent of the reference, or {@code null} if the strategy failed.
+     * @param reference {@code optimum} or {@code best known}.
+     * @param pointsUsed Points spent by the plan, or {@code null} if the strategy failed.
+     * @param wallNanos Median wall time of the measured runs.
+     * @param peakHeapBytes Largest heap growth observed during a measured run; heap usage is tracked per allocation
+     *                      buffer, so runs that allocate less than about a megabyte may show 0.
+     * @param error Reason of the failure, or {@code null}.
+     */
+    public record Result(String instance, int orders, int methods, String strategy, BigDecimal totalDiscount, BigDecimal gapPercent,
+                         String reference, BigDecimal pointsUsed, long wallNanos, long peakHeapBytes, String error) {
+    }
+
+
+    /**
+     * Constructs a benchmark.
+     *
+     * @param strategies Strategies to compare.
+     * @param warmupRuns Unmeasured runs of each strategy on each instance.
+     * @param measuredRuns Measured runs of each strategy on each instance.
+     * @throws IllegalArgumentException If there are no strategies or the run counts are out of range.
+     */
+    public StrategyBenchmark(List<Strategy> strategies, int warmupRuns, int measuredRuns) {
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("At least one strategy is required.");
+        }
+        if (warmupRuns < 0 || measuredRuns < 1) {
+            throw new IllegalArgumentException("Warm-up runs must not be negative and measured runs must be positive, got " + warmupRuns + " and " + measuredRuns + ".");
+        }
+        this.strategies = List.copyOf(strategies);
+        this.warmupRuns = warmupRuns;
+        this.measuredRuns = measuredRuns;
+    }
+
+
+    /**
+     * The strategies of this code base: the greedy service, rolling horizon, beam search and exhaustive search.
+     *
+     * @param exhaustiveMaxOrders Largest instance the exhaustive strategy is run on.
+     * @return The strategies, the greedy one first.
+     */
+    public static List<Strategy> defaultStrategies(int exhaustiveMaxOrders) {
+        return List.of(
+                new Strategy("greedy", (orders, methods) -> new PaymentOptimizerService().optimizePayments(orders, methods), Integer.MAX_VALUE),
+                new Strategy("rolling-horizon-4", new RollingHorizonOptimizer(4)::optimizePayments, Integer.MAX_VALUE),
+                new Strategy("beam-16", new BeamSearchOptimizer(16)::optimizePayments, Integer.MAX_VALUE),
+                new Strategy(EXHAUSTIVE, (orders, methods) -> new RollingHorizonOptimizer(orders.size(), orders.size(), Long.MAX_VALUE)
+                        .optimizePayments(orders, methods), exhaustiveMaxOrders));
+    }
+
+
+    /**
+     * Generates the fixed corpus: small instances the exhaustive strategy can solve, with tight limits and scarce
+     * points so that choices matter, and medium and large instances with the default workload shape.
+     *
+     * @param corpusDirectory Directory the instance files are written to.
+     * @return The instances.
+     * @throws IOException If the files cannot be written or read.
+     */
+    public static List<Instance> defaultCorpus(Path corpusDirectory) throws IOException {
+        List<Instance> corpus = new ArrayList<>();
+        for (int seed = 1; seed <= 4; seed++) {
+            corpus.add(generate(corpusDirectory, "small-tight-" + seed, spec(8, 4, seed, 2.0, 0.9, 0.3)));
+        }
+        for (int seed = 1; seed <= 2; seed++) {
+            corpus.add(generate(corpusDirectory, "small-loose-" + seed, spec(10, 5, seed, 1.0, 1.5, 0.1)));
+        }
+        corpus.add(generate(corpusDirectory, "medium", spec(300, 10, 1, 1.5, 1.0, 0.1)));
+        corpus.add(generate(corpusDirectory, "large", spec(5_000, 20, 1, 1.5, 1.1, 0.05)));
+        return corpus;
+    }
+
+
+    /**
+     * Runs every strategy on every instance it accepts.
+     *
+     * @param corpus Instances to solve.
+     * @return Report lines, per instance in strategy order.
+     */
+    public List<Result> run(List<Instance> corpus) {
+        List<Result> results = new ArrayList<>();
+        for (Instance instance : corpus) {
+            List<Result> instanceResults = new ArrayList<>();
+            BigDecimal reference = null;
+            boolean optimum = false;
+            for (Strategy strategy : strategies) {
+                if (instance.orders().size() > strategy.maxOrders()) {
+                    continue;
+                }
+                Result result = measure(instance, strategy);
+                instanceResults.add(result);
+                if (result.totalDiscount() == null) {
+                    continue;
+                }
+                if (strategy.name().equals(EXHAUSTIVE)) {
+                    reference = result.totalDiscount();
+                    optimum = true;
+                } else if (!optimum && (reference == null || result.totalDiscount().compareTo(reference) > 0)) {
+                    reference = result.totalDiscount();
+                }
+            }
+            for (Result result : instanceResults) {
+                results.add(withGap(result, reference, optimum ? "optimum" : "best known"));
+            }
+        }
+        return results;
+    }
+
+
+    private Result measure(Instance instance, Strategy strategy) {
+        int methods = instance.paymentMethods().size();
+        Map<String, BigDecimal> totals = null;
+        try {
+            for (int i = 0; i < warmupRuns; i++) {
+                strategy.optimizer().apply(instance.orders(), instance.paymentMethods());
+            }
+            long[] wallNanos = new long[measuredRuns];
+            long peakHeapBytes = 0;
+            for (int i = 0; i < measuredRuns; i++) {
+                long baseline = resetHeapPeak();
+                long start = System.nanoTime();
+                totals = strategy.optimizer().apply(instance.orders(), instance.paymentMethods());
+                wallNanos[i] = System.nanoTime() - start;
+                peakHeapBytes = Math.max(peakHeapBytes, heapPeak() - baseline);
+            }
+            Arrays.sort(wallNanos);
+
+            BigDecimal totalValue = instance.orders().stream().map(Order::getValue).reduce(BigDecimal.ZERO, BigDecimal::add);
+            BigDecimal totalPaid = totals.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+            BigDecimal pointsUsed = totals.getOrDefault(POINTS_ID_STRING, BigDecimal.ZERO);
+            return new Result(instance.name(), instance.orders().size(), methods, strategy.name(), totalValue.subtract(totalPaid),
+                    null, null, pointsUsed, wallNanos[measuredRuns / 2], Math.max(peakHeapBytes, 0), null);
+        } catch (RuntimeException e) {
+            return new Result(instance.name(), instance.orders().size(), methods, strategy.name(), null, null, null, null, 0, 0, e.getMessage());
+        }
+    }
+
+
+    private static Result withGap(Result result, BigDecimal reference, String referenceName) {
+        if (result.totalDiscount() == null || reference == null) {
+            return result;
+        }
+        BigDecimal gapPercent = reference.signum() == 0 ? BigDecimal.ZERO.setScale(2)
+                : reference.subtract(result.totalDiscount()).multiply(BigDecimal.valueOf(100)).divide(reference, 2, RoundingMode.HALF_UP);
+        return new Result(result.instance(), result.orders(), result.methods(), result.strategy(), result.totalDiscount(), gapPercent,
+                referenceName, result.pointsUsed(), result.wallNanos(), result.peakHeapBytes(), null);
+    }
+
+
+    /**
+     * Collects garbage and resets the peak usage of the heap pools.
+     *
+     * @return Heap in use after the collection.
+     */
+    private static long resetHeapPeak() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+
+    /**
+     * @return Peak heap usage since the last reset; the current usage counts too, because allocations in the young
+     * generation are reflected in the peak only after a collection.
+     */
+    private static long heapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += Math.max(pool.getPeakUsage().getUsed(), pool.getUsage().getUsed());
+            }
+        }
+        return peak;
+    }
+
+
+    /**
+     * Formats the report as CSV, one line per result.
+     *
+     * @param results Report lines.
+     * @return The CSV text, with a header line.
+     */
+    public static String toCsv(List<Result> results) {
+        StringBuilder csv = new StringBuilder(CSV_HEADER).append('\n');
+        for (Result result : results) {
+            csv.append(result.instance()).append(',')
+                    .append(result.orders()).append(',')
+                    .append(result.methods()).append(',')
+                    .append(result.strategy()).append(',')
+                    .append(plain(result.totalDiscount())).append(',')
+                    .append(plain(result.gapPercent())).append(',')
+                    .append(result.reference() == null ? "" : result.reference()).append(',')
+                    .append(plain(result.pointsUsed())).append(',')
+                    .append(millis(result.wallNanos())).append(',')
+                    .append(result.peakHeapBytes() / 1024).append(',')
+                    .append(result.error() == null ? "" : '"' + result.error().replace("\"", "\"\"") + '"')
+                    .append('\n');
+        }
+        return csv.toString();
+    }
+
+
+    /**
+     * Formats the report as a Markdown table.
+     *
+     * @param results Report lines.
+     * @return The Markdown text.
+     */
+    public static String toMarkdown(List<Result> results) {
+        StringBuilder markdown = new StringBuilder()
+                .append("| Instance | Orders | Strategy | Discount | Gap % | Reference | Points used | Wall ms | Peak heap KB |\n")
+                .append("|---|---:|---|---:|---:|---|---:|---:|---:|\n");
+        for (Result result : results) {
+            markdown.append("| ").append(result.instance())
+                    .append(" | ").append(result.orders())
+                    .append(" | ").append(result.strategy());
+            if (result.error() != null) {
+                markdown.append(" | failed: ").append(result.error().replace("|", "\\|")).append(" | | | | | |\n");
+                continue;
+            }
+            markdown.append(" | ").append(plain(result.totalDiscount()))
+                    .append(" | ").append(plain(result.gapPercent()))
+                    .append(" | ").append(result.reference() == null ? "" : result.reference())
+                    .append(" | ").append(plain(result.pointsUsed()))
+                    .append(" | ").append(millis(result.wallNanos()))
+                    .append(" | ").append(result.peakHeapBytes() / 1024)
+                    .append(" |\n");
+        }
+        return markdown.toString();
+    }
+
+
+    /**
+     * Entry point of the benchmark.
+     * Options: {@code --report <file.csv|file.md>}, {@code --corpus-dir <dir>}, {@code --warmup <runs>},
+     * {@code --runs <runs>}, {@code --exhaustive-max-orders <count>}. The Markdown report is also printed.
+     *
+     * @param args Command-line options.
+     */
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = WorkloadGenerator.parseOptions(args);
+            Set<String> known = Set.of("--report", "--corpus-dir", "--warmup", "--runs", "--exhaustive-max-orders");
+            for (String option : options.keySet()) {
+                if (!known.contains(option)) {
+                    throw new ArgsValidationException("Unknown option '" + option + "'.");
+                }
+            }
+            int warmupRuns;
+            int measuredRuns;
+            int exhaustiveMaxOrders;
+            try {
+                warmupRuns = Integer.parseInt(options.getOrDefault("--warmup", "2"));
+                measuredRuns = Integer.parseInt(options.getOrDefault("--runs", "3"));
+                exhaustiveMaxOrders = Integer.parseInt(options.getOrDefault("--exhaustive-max-orders", Integer.toString(DEFAULT_EXHAUSTIVE_MAX_ORDERS)));
+            } catch (NumberFormatException e) {
+                throw new ArgsValidationException("Invalid option value: " + e.getMessage());
+            }
+            if (warmupRuns < 0 || measuredRuns < 1) {
+                throw new ArgsValidationException("Warm-up runs must not be negative and measured runs must be positive.");
+            }
+            Path corpusDirectory = Paths.get(options.getOrDefault("--corpus-dir", "target/strategy-corpus"));
+
+            List<Result> results = new StrategyBenchmark(defaultStrategies(exhaustiveMaxOrders), warmupRuns, measuredRuns)
+                    .run(defaultCorpus(corpusDirectory));
+            String markdown = toMarkdown(results);
+            System.out.print(markdown);
+
+            String report = options.get("--report");
+            if (report != null) {
+                Path reportFile = Paths.get(report);
+                Files.writeString(reportFile, report.endsWith(".csv") ? toCsv(results) : markdown);
+                System.out.println("Report written to " + reportFile);
+            }
+            System.exit(0);
+        } catch (ArgsValidationException e) {
+            System.err.println("Configuration error: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("File access error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    private static WorkloadGenerator.Spec spec(int orders, int cards, long seed, double meanPromotions, double limitTightness, double pointsScarcity) {
+        WorkloadGenerator.Spec defaults = WorkloadGenerator.Spec.defaults(orders);
+        return new WorkloadGenerator.Spec(orders, cards, seed, defaults.valueDistribution(), defaults.minValue(), defaults.maxValue(),
+                defaults.medianValue(), defaults.sigma(), defaults.paretoAlpha(), meanPromotions, defaults.promotionSkew(),
+                limitTightness, pointsScarcity, WorkloadGenerator.Format.JSON);
+    }
+
+
+    private static Instance generate(Path corpusDirectory, String name, WorkloadGenerator.Spec spec) throws IOException {
+        List<Path> files;
+        try {
+            files = new WorkloadGenerator(spec).generate(corpusDirectory.resolve(name));
+        } catch (ArgsValidationException e) {
+            throw new IllegalStateException("Invalid corpus specification of " + name + ": " + e.getMessage(), e);
+        }
+        JsonDataParser parser = new JsonDataParser();
+        return new Instance(name, parser.parseOrders(files.get(0).toString()), parser.parsePaymentMethods(files.get(1).toString()));
+    }
+
+
+    private static String plain(BigDecimal amount) {
+        return amount == null ? "" : amount.toPlainString();
+    }
+
+
+    private static String millis(long nanos) {
+        return BigDecimal.valueOf(nanos, 6).setScale(3, RoundingMode.HALF_UP).toPlainString();
+    }
+}
@@ -0,0 +1,242 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.ApplicationRunner;
+import com.chamera.patryk.exception.ArgsValidationException;
+import com.chamera.patryk.exception.ProcessingException;
+import com.chamera.patryk.metrics.PhaseMetrics;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.service.InputFingerprint;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import com.chamera.patryk.service.TracingPaymentOptimizer;
+import com.chamera.patryk.trace.DecisionTrace;
+import com.chamera.patryk.trace.DecisionTraceReader;
+import com.chamera.patryk.trace.DecisionTraceWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Replays a decision trace recorded with {@code --trace}: solves the traced instance again, checks that every
+ * decision and the totals are the same, and optionally benchmarks the instance.
+ * <p>
+ * The trace holds only the fingerprint of the input, so the original orders and payment methods files must be given;
+ * a different input or a different solver configuration is reported before anything is solved. The fingerprint is the
+ * {@link InputFingerprint#ofSequence sequence fingerprint}, as ties between equally good orders are broken by their
+ * order in the file, so reordered files are reported as a different input. A trace recorded without a fingerprint is
+ * only checked by its number of orders and its payment methods; any other difference shows up as a diverging decision.
+ * The benchmark runs the untraced optimizer and prints the minimum, median and maximum wall time next to the
+ * duration recorded in the trace.
+ */
+public final class TraceReplay {
+
+    /**
+     * Outcome of comparing a recorded trace with a replayed one.
+     *
+     * @param decisionsCompared Number of decisions compared.
+     * @param firstDivergence Index of the first decision that differs, or -1 if none does.
+     * @param message Description of the first difference, or {@code null} if the traces agree.
+     */
+    public record Comparison(int decisionsCompared, int firstDivergence, String message) {
+
+        /**
+         * @return {@code true} if the replay reached the same decisions and the same end.
+         */
+        public boolean identical() {
+            return message == null;
+        }
+    }
+
+
+    private TraceReplay() {
+    }
+
+
+    /**
+     * Solves an instance with tracing into memory.
+     *
+     * @param orders Orders of the instance.
+     * @param paymentMethods Payment methods of the instance.
+     * @return The trace of the solve; it ends with a failure if the orders cannot be paid.
+     */
+    public static DecisionTrace replay(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            try (DecisionTraceWriter trace = new DecisionTraceWriter(buffer)) {
+                new TracingPaymentOptimizer(PhaseMetrics.disabled(), trace, ApplicationRunner.SOLVER_CONFIGURATION)
+                        .optimizePayments(orders, paymentMethods);
+            } catch (RuntimeException e) {
+                // porazka jest zapisana w sladzie
+            }
+            return DecisionTraceReader.read(new ByteArrayInputStream(buffer.toByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory trace could not be written or read", e);
+        }
+    }
+
+
+    /**
+     * Compares two traces decision by decision, then their totals or failures. Timings are ignored.
+     *
+     * @param recorded The recorded trace.
+     * @param replayed The replayed trace.
+     * @return The comparison.
+     */
+    public static Comparison compare(DecisionTrace recorded, DecisionTrace replayed) {
+        List<DecisionTrace.Decision> expected = recorded.decisions();
+        List<DecisionTrace.Decision> actual = replayed.decisions();
+        int common = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < common; i++) {
+            if (!expected.get(i).sameChoice(actual.get(i))) {
+                return new Comparison(i + 1, i, "Decision " + i + " differs: recorded " + describe(expected.get(i))
+                        + ", replayed " + describe(actual.get(i)) + ".");
+            }
+        }
+        if (!recorded.isComplete()) {
+            return new Comparison(common, -1, null); // slad uciety - porownujemy tylko zapisane decyzje
+        }
+        if (expected.size() != actual.size()) {
+            return new Comparison(common, common, "Recorded " + expected.size() + " decisions, replayed " + actual.size() + ".");
+        }
+        if (!Objects.equals(recorded.failure(), replayed.failure())) {
+            return new Comparison(common, -1, "Recorded failure '" + recorded.failure() + "', replayed failure '" + replayed.failure() + "'.");
+        }
+        if (recorded.totals() != null && !recorded.totals().equals(replayed.totals())) {
+            return new Comparison(common, -1, "Recorded totals " + recorded.totals() + ", replayed totals " + replayed.totals() + ".");
+        }
+        return new Comparison(common, -1, null);
+    }
+
+
+    /**
+     * Measures the untraced optimizer on an instance.
+     *
+     * @param orders Orders of the instance.
+     * @param paymentMethods Payment methods of the instance.
+     * @param warmupRuns Runs before measuring.
+     * @param measuredRuns Measured runs.
+     * @return Wall time of each measured run in nanoseconds, ascending.
+     */
+    public static long[] benchmark(List<Order> orders, List<PaymentMethod> paymentMethods, int warmupRuns, int measuredRuns) {
+        PaymentOptimizerService service = new PaymentOptimizerService();
+        for (int i = 0; i < warmupRuns; i++) {
+            service.optimizePayments(orders, paymentMethods);
+        }
+        long[] nanos = new long[measuredRuns];
+        for (int i = 0; i < measuredRuns; i++) {
+            long start = System.nanoTime();
+            service.optimizePayments(orders, paymentMethods);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+
+    /**
+     * Checks that the trace belongs to the instance and this solver configuration.
+     *
+     * @throws ProcessingException If the input or the configuration differs.
+     */
+    static void checkInstance(DecisionTrace trace, List<Order> orders, List<PaymentMethod> paymentMethods) throws ProcessingException {
+        if (trace.fingerprint() != null && !trace.fingerprint().equals(InputFingerprint.ofSequence(orders, paymentMethods))) {
+            throw new ProcessingException("The orders and payment methods differ from the traced input (fingerprint "
+                    + trace.fingerprint().toHex() + ").");
+        }
+        if (trace.orderCount() != orders.size()
+                || !trace.methodIds().equals(paymentMethods.stream().map(PaymentMethod::getId).toList())) {
+            throw new ProcessingException("The trace has " + trace.orderCount() + " orders and payment methods "
+                    + trace.methodIds() + ", the input has " + orders.size() + " orders.");
+        }
+        if (!ApplicationRunner.SOLVER_CONFIGURATION.equals(trace.configuration())) {
+            throw new ProcessingException("The trace was recorded with solver '" + trace.configuration()
+                    + "', this build is '" + ApplicationRunner.SOLVER_CONFIGURATION + "'.");
+        }
+    }
+
+
+    /**
+     * Replays a trace. Options: {@code --trace <file>}, {@code --orders <file>}, {@code --payment-methods <file>},
+     * {@code --runs <n>} (benchmark runs, default 0) and {@code --warmup <n>} (default 5).
+     * Exits with 0 if the replay matches and 1 otherwise.
+     *
+     * @param args Command-line options.
+     */
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = WorkloadGenerator.parseOptions(args);
+            Set<String> known = Set.of("--trace", "--orders", "--payment-methods", "--runs", "--warmup");
+            for (String option : options.keySet()) {
+                if (!known.contains(option)) {
+                    throw new ArgsValidationException("Unknown option '" + option + "'.");
+                }
+            }
+            for (String required : List.of("--trace", "--orders", "--payment-methods")) {
+                if (!options.containsKey(required)) {
+                    throw new ArgsValidationException("Missing option " + required + ".");
+                }
+            }
+            int measuredRuns;
+            int warmupRuns;
+            try {
+                measuredRuns = Integer.parseInt(options.getOrDefault("--runs", "0"));
+                warmupRuns = Integer.parseInt(options.getOrDefault("--warmup", "5"));
+            } catch (NumberFormatException e) {
+                throw new ArgsValidationException("Invalid option value: " + e.getMessage());
+            }
+            if (measuredRuns < 0 || warmupRuns < 0) {
+                throw new ArgsValidationException("Run counts must not be negative.");
+            }
+
+            Path traceFile = Paths.get(options.get("--trace"));
+            DecisionTrace recorded = DecisionTraceReader.read(traceFile);
+            JsonDataParser jsonDataParser = new JsonDataParser();
+            List<Order> orders = jsonDataParser.parseOrders(options.get("--orders"));
+            List<PaymentMethod> paymentMethods = jsonDataParser.parsePaymentMethods(options.get("--payment-methods"));
+            checkInstance(recorded, orders, paymentMethods);
+
+            Comparison comparison = compare(recorded, replay(orders, paymentMethods));
+            if (!recorded.isComplete()) {
+                System.out.println("The trace is cut off after " + recorded.decisions().size() + " decisions; only those were compared.");
+            }
+            if (!comparison.identical()) {
+                throw new ProcessingException(comparison.message());
+            }
+            System.out.println("Replayed " + comparison.decisionsCompared() + " decisions: identical to " + traceFile + ".");
+
+            if (measuredRuns > 0) {
+                long[] nanos = benchmark(orders, paymentMethods, warmupRuns, measuredRuns);
+                if (recorded.nanos() >= 0) {
+                    System.out.printf("Recorded run (traced): %.3f ms%n", recorded.nanos() / 1e6);
+                }
+                System.out.printf("Replay (%d runs): min %.3f ms, median %.3f ms, max %.3f ms%n", measuredRuns,
+                        nanos[0] / 1e6, nanos[nanos.length / 2] / 1e6, nanos[nanos.length - 1] / 1e6);
+            }
+            System.exit(0);
+        } catch (ArgsValidationException e) {
+            System.err.println("Configuration error: " + e.getMessage());
+            System.exit(1);
+        } catch (ProcessingException e) {
+            System.err.println("Replay mismatch: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("File access error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    private static String describe(DecisionTrace.Decision decision) {
+        return decision.orderId() + " discount " + decision.discount().toPlainString()
+                + " points " + decision.pointsUsed().toPlainString() + " charges " + decision.charges();
+    }
+}
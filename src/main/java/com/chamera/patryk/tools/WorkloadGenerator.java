@@ -0,0 +1,513 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.exception.ArgsValidationException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.SplittableRandom;
+
+/**
+ * Command-line generator of synthetic, reproducible order and payment method files, from a handful to hundreds of
+ * millions of orders, for benchmarks and capacity planning.
+ * <p>
+ * Orders are streamed to disk one by one and never held in memory. The card limits depend on the generated orders
+ * (their total value and how often each card is promoted), so the orders are generated twice from the same seed:
+ * the first pass only sums them up, the second writes them. The same arguments always produce the same files.
+ * <p>
+ * The shape of the workload is controlled by:
+ * <ul>
+ *     <li>the order value distribution: {@code uniform} between the minimum and maximum, {@code lognormal} around a
+ *     median, or {@code pareto} (heavy-tailed) above the minimum; values are always clamped to [min, max],</li>
+ *     <li>the promotion fan-out: the mean number of promoted cards per order, with card popularity following
+ *     a Zipf law (a skew of 0 makes all cards equally popular),</li>
+ *     <li>the limit tightness: total card limit divided by total order value (below 1 the instance cannot be fully
+ *     paid by cards alone),</li>
+ *     <li>the points scarcity: the points limit as a fraction of the total order value.</li>
+ * </ul>
+ * Output is JSON (the format the application reads), NDJSON (one object per line) or CSV
+ * (promotions separated by {@code ;}).
+ */
+public final class WorkloadGenerator {
+
+    /**
+     * Largest number of orders the generator accepts.
+     */
+    public static final long MAX_ORDERS = 1_000_000_000L;
+
+    private static final String POINTS_ID_STRING = "PUNKTY";
+    private static final int OUTPUT_BUFFER_BYTES = 1 << 20;
+    private static final long CARD_SEED_SALT = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Output file format.
+     */
+    public enum Format {
+        JSON("json"), NDJSON("ndjson"), CSV("csv");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @return The file extension, without the dot.
+         */
+        public String extension() {
+            return extension;
+        }
+    }
+
+    /**
+     * Distribution of order values.
+     */
+    public enum ValueDistribution {
+        UNIFORM, LOGNORMAL, PARETO
+    }
+
+
+    /**
+     * Parameters of a generated workload.
+     *
+     * @param orderCount Number of orders.
+     * @param cardCount Number of cards; {@code PUNKTY} is added on top.
+     * @param seed Seed of the random generator.
+     * @param valueDistribution Distribution of order values.
+     * @param minValue Smallest order value.
+     * @param maxValue Largest order value.
+     * @param medianValue Median of the lognormal distribution.
+     * @param sigma Spread (standard deviation of the logarithm) of the lognormal distribution.
+     * @param paretoAlpha Tail index of the Pareto distribution; smaller means a heavier tail.
+     * @param meanPromotions Mean number of promoted cards per order.
+     * @param promotionSkew Zipf exponent of card popularity.
+     * @param limitTightness Total card limit divided by the total order value.
+     * @param pointsScarcity Points limit divided by the total order value.
+     * @param format Output format.
+     */
+    public record Spec(long orderCount, int cardCount, long seed, ValueDistribution valueDistribution,
+                       BigDecimal minValue, BigDecimal maxValue, BigDecimal medianValue, double sigma, double paretoAlpha,
+                       double meanPromotions, double promotionSkew, double limitTightness, double pointsScarcity,
+                       Format format) {
+
+        /**
+         * Default parameters for a number of orders: 10 cards, lognormal values around 150.00 between 1.00 and
+         * 5000.00, one promotion per order on average with Zipf skew 1, 20% spare card limit and points worth 10%
+         * of the orders, written as JSON.
+         *
+         * @param orderCount Number of orders.
+         * @return The default parameters.
+         */
+        public static Spec defaults(long orderCount) {
+            return new Spec(orderCount, 10, 1L, ValueDistribution.LOGNORMAL,
+                    new BigDecimal("1.00"), new BigDecimal("5000.00"), new BigDecimal("150.00"), 1.0, 1.5,
+                    1.0, 1.0, 1.2, 0.1, Format.JSON);
+        }
+    }
+
+
+    private final Spec spec;
+    private final long minCents;
+    private final long maxCents;
+    private final double[] cumulativePopularity;
+
+
+    /**
+     * Constructs a generator.
+     *
+     * @param spec Parameters of the workload.
+     * @throws ArgsValidationException If a parameter is out of range.
+     */
+    public WorkloadGenerator(Spec spec) throws ArgsValidationException {
+        validate(spec);
+        this.spec = spec;
+        this.minCents = spec.minValue().movePointRight(2).longValueExact();
+        this.maxCents = spec.maxValue().movePointRight(2).longValueExact();
+
+        this.cumulativePopularity = new double[spec.cardCount()];
+        double sum = 0;
+        for (int i = 0; i < spec.cardCount(); i++) {
+            sum += 1.0 / Math.pow(i + 1, spec.promotionSkew());
+            cumulativePopularity[i] = sum;
+        }
+        for (int i = 0; i < spec.cardCount(); i++) {
+            cumulativePopularity[i] /= sum;
+        }
+    }
+
+
+    /**
+     * Generates the command-line usage text.
+     */
+    static String usage() {
+        return """
+                Usage: java -cp app.jar com.chamera.patryk.tools.WorkloadGenerator --orders <count> [options]
+                  --output-dir <dir>              directory of the generated files (default: current directory)
+                  --format json|ndjson|csv        output format (default: json)
+                  --cards <count>                 number of cards besides PUNKTY (default: 10)
+                  --seed <long>                   random seed (default: 1)
+                  --value-distribution uniform|lognormal|pareto   (default: lognormal)
+                  --min-value <amount>            smallest order value (default: 1.00)
+                  --max-value <amount>            largest order value (default: 5000.00)
+                  --median-value <amount>         lognormal median (default: 150.00)
+                  --sigma <double>                lognormal spread (default: 1.0)
+                  --pareto-alpha <double>         Pareto tail index (default: 1.5)
+                  --promotions <double>           mean promoted cards per order (default: 1.0)
+                  --promotion-skew <double>       Zipf exponent of card popularity (default: 1.0)
+                  --limit-tightness <double>      total card limit / total order value (default: 1.2)
+                  --points-scarcity <double>      points limit / total order value (default: 0.1)""";
+    }
+
+
+    /**
+     * Entry point of the generator.
+     *
+     * @param args Command-line options, see {@link #usage()}.
+     */
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = parseOptions(args);
+            Path outputDirectory = Paths.get(options.getOrDefault("--output-dir", "."));
+            Spec spec = toSpec(options);
+            long start = System.nanoTime();
+            List<Path> files = new WorkloadGenerator(spec).generate(outputDirectory);
+            System.out.println("Generated " + spec.orderCount() + " orders and " + (spec.cardCount() + 1) + " payment methods in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms: " + files.get(0) + ", " + files.get(1));
+            System.exit(0);
+        } catch (ArgsValidationException e) {
+            System.err.println("Configuration error: " + e.getMessage());
+            System.err.println(usage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("File access error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Writes the orders file and the payment methods file.
+     *
+     * @param outputDirectory Directory of the files; created if it does not exist.
+     * @return Paths of the orders file and the payment methods file.
+     * @throws IOException If a file cannot be written.
+     */
+    public List<Path> generate(Path outputDirectory) throws IOException {
+        Files.createDirectories(outputDirectory);
+        Path ordersFile = outputDirectory.resolve("orders." + spec.format().extension());
+        Path paymentMethodsFile = outputDirectory.resolve("paymentmethods." + spec.format().extension());
+
+        int[] cardDiscounts = new int[spec.cardCount()];
+        SplittableRandom cardRandom = new SplittableRandom(spec.seed() ^ CARD_SEED_SALT);
+        for (int i = 0; i < cardDiscounts.length; i++) {
+            cardDiscounts[i] = 5 + cardRandom.nextInt(16);
+        }
+        int pointsDiscount = 10 + cardRandom.nextInt(11);
+
+        // pierwszy przebieg: tylko sumy, nic nie jest zapisywane
+        long totalValueCents = 0;
+        long[] promotedValueCents = new long[spec.cardCount()];
+        OrderStream summingStream = new OrderStream();
+        for (long i = 0; i < spec.orderCount(); i++) {
+            summingStream.next();
+            totalValueCents += summingStream.valueCents;
+            for (int p = 0; p < summingStream.promotionCount; p++) {
+                promotedValueCents[summingStream.promotions[p]] += summingStream.valueCents / summingStream.promotionCount;
+            }
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(ordersFile), OUTPUT_BUFFER_BYTES)) {
+            RecordWriter writer = recordWriter(out, "id,value,promotions");
+            OrderStream orderStream = new OrderStream();
+            String[] promotionIds = new String[spec.cardCount()];
+            for (long i = 0; i < spec.orderCount(); i++) {
+                orderStream.next();
+                for (int p = 0; p < orderStream.promotionCount; p++) {
+                    promotionIds[p] = cardId(orderStream.promotions[p]);
+                }
+                writer.writeOrder("ORDER" + (i + 1), BigDecimal.valueOf(orderStream.valueCents, 2), promotionIds, orderStream.promotionCount);
+            }
+            writer.finish();
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(paymentMethodsFile), OUTPUT_BUFFER_BYTES)) {
+            RecordWriter writer = recordWriter(out, "id,discount,limit");
+            writer.writePaymentMethod(POINTS_ID_STRING, pointsDiscount, BigDecimal.valueOf(Math.round(totalValueCents * spec.pointsScarcity()), 2));
+            long totalPromotedCents = Math.max(Arrays.stream(promotedValueCents).sum(), 1);
+            double totalCardLimitCents = totalValueCents * spec.limitTightness();
+            for (int i = 0; i < spec.cardCount(); i++) {
+                // polowa limitu rowno, polowa proporcjonalnie do popytu na promocje karty
+                double share = 0.5 / spec.cardCount() + 0.5 * promotedValueCents[i] / totalPromotedCents;
+                if (spec.meanPromotions() == 0) {
+                    share = 1.0 / spec.cardCount();
+                }
+                writer.writePaymentMethod(cardId(i), cardDiscounts[i], BigDecimal.valueOf(Math.round(totalCardLimitCents * share), 2));
+            }
+            writer.finish();
+        }
+        return List.of(ordersFile, paymentMethodsFile);
+    }
+
+
+    /**
+     * Deterministic sequence of orders: value and distinct promoted cards of each order in turn.
+     */
+    private final class OrderStream {
+        private final SplittableRandom random = new SplittableRandom(spec.seed());
+        private final int[] promotions = new int[spec.cardCount()];
+        private final boolean[] promoted = new boolean[spec.cardCount()];
+        long valueCents;
+        int promotionCount;
+
+        void next() {
+            valueCents = nextValueCents();
+
+            int wanted = (int) spec.meanPromotions();
+            if (random.nextDouble() < spec.meanPromotions() - wanted) {
+                wanted++;
+            }
+            wanted = Math.min(wanted, spec.cardCount());
+            for (int p = 0; p < promotionCount; p++) {
+                promoted[promotions[p]] = false;
+            }
+            promotionCount = 0;
+            while (promotionCount < wanted) {
+                int card = Arrays.binarySearch(cumulativePopularity, random.nextDouble());
+                card = card >= 0 ? card : Math.min(-card - 1, spec.cardCount() - 1);
+                if (promoted[card]) {
+                    card = random.nextInt(spec.cardCount()); // przy duzym skosie losowanie wg popularnosci powtarza karty
+                    if (promoted[card]) {
+                        continue;
+                    }
+                }
+                promoted[card] = true;
+                promotions[promotionCount++] = card;
+            }
+        }
+
+        private long nextValueCents() {
+            double value = switch (spec.valueDistribution()) {
+                case UNIFORM -> minCents + random.nextDouble() * (maxCents - minCents);
+                case LOGNORMAL -> spec.medianValue().doubleValue() * 100 * Math.exp(spec.sigma() * random.nextGaussian());
+                case PARETO -> minCents / Math.pow(1.0 - random.nextDouble(), 1.0 / spec.paretoAlpha());
+            };
+            return Math.max(minCents, Math.min(maxCents, Math.round(value)));
+        }
+    }
+
+
+    /**
+     * Writes records one by one in the chosen format.
+     */
+    private interface RecordWriter {
+        void writeOrder(String id, BigDecimal value, String[] promotions, int promotionCount) throws IOException;
+
+        void writePaymentMethod(String id, int discount, BigDecimal limit) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+
+    private RecordWriter recordWriter(OutputStream out, String csvHeader) throws IOException {
+        if (spec.format() == Format.CSV) {
+            return csvWriter(out, csvHeader);
+        }
+        boolean array = spec.format() == Format.JSON;
+        JsonGenerator generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.setPrettyPrinter(new OneRecordPerLinePrinter());
+        if (array) {
+            generator.writeStartArray();
+        }
+        return new RecordWriter() {
+            @Override
+            public void writeOrder(String id, BigDecimal value, String[] promotions, int promotionCount) throws IOException {
+                generator.writeStartObject();
+                generator.writeStringField("id", id);
+                generator.writeStringField("value", value.toPlainString());
+                if (promotionCount > 0) {
+                    generator.writeArrayFieldStart("promotions");
+                    for (int p = 0; p < promotionCount; p++) {
+                        generator.writeString(promotions[p]);
+                    }
+                    generator.writeEndArray();
+                }
+                generator.writeEndObject();
+            }
+
+            @Override
+            public void writePaymentMethod(String id, int discount, BigDecimal limit) throws IOException {
+                generator.writeStartObject();
+                generator.writeStringField("id", id);
+                generator.writeStringField("discount", Integer.toString(discount));
+                generator.writeStringField("limit", limit.toPlainString());
+                generator.writeEndObject();
+            }
+
+            @Override
+            public void finish() throws IOException {
+                if (array) {
+                    generator.writeEndArray();
+                }
+                generator.writeRaw('\n');
+                generator.flush();
+            }
+        };
+    }
+
+
+    /**
+     * Compact JSON with every top-level record on its own line, so that large files stay greppable and splittable.
+     */
+    private static final class OneRecordPerLinePrinter extends MinimalPrettyPrinter {
+
+        OneRecordPerLinePrinter() {
+            super("\n");
+        }
+
+        @Override
+        public void beforeArrayValues(JsonGenerator generator) throws IOException {
+            if (isTopLevel(generator)) {
+                generator.writeRaw('\n');
+            }
+        }
+
+        @Override
+        public void writeArrayValueSeparator(JsonGenerator generator) throws IOException {
+            generator.writeRaw(isTopLevel(generator) ? ",\n" : ",");
+        }
+
+        @Override
+        public void writeEndArray(JsonGenerator generator, int nrOfValues) throws IOException {
+            if (isTopLevel(generator)) {
+                generator.writeRaw('\n');
+            }
+            generator.writeRaw(']');
+        }
+
+        private static boolean isTopLevel(JsonGenerator generator) {
+            return generator.getOutputContext().getParent().inRoot();
+        }
+    }
+
+
+    private static RecordWriter csvWriter(OutputStream out, String header) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write(header);
+        writer.write('\n');
+        return new RecordWriter() {
+            @Override
+            public void writeOrder(String id, BigDecimal value, String[] promotions, int promotionCount) throws IOException {
+                writer.write(id);
+                writer.write(',');
+                writer.write(value.toPlainString());
+                writer.write(',');
+                for (int p = 0; p < promotionCount; p++) {
+                    if (p > 0) {
+                        writer.write(';');
+                    }
+                    writer.write(promotions[p]);
+                }
+                writer.write('\n');
+            }
+
+            @Override
+            public void writePaymentMethod(String id, int discount, BigDecimal limit) throws IOException {
+                writer.write(id + "," + discount + "," + limit.toPlainString() + "\n");
+            }
+
+            @Override
+            public void finish() throws IOException {
+                writer.flush();
+            }
+        };
+    }
+
+
+    private static String cardId(int index) {
+        return "CARD" + (index + 1);
+    }
+
+
+    private static void validate(Spec spec) throws ArgsValidationException {
+        if (spec.orderCount() < 1 || spec.orderCount() > MAX_ORDERS) {
+            throw new ArgsValidationException("Number of orders must be between 1 and " + MAX_ORDERS + ", got " + spec.orderCount() + ".");
+        }
+        if (spec.cardCount() < 1) {
+            throw new ArgsValidationException("Number of cards must be positive, got " + spec.cardCount() + ".");
+        }
+        if (spec.minValue().scale() > 2 || spec.maxValue().scale() > 2 || spec.minValue().signum() <= 0 || spec.maxValue().compareTo(spec.minValue()) < 0) {
+            throw new ArgsValidationException("Order values must satisfy 0 < min <= max with at most 2 decimal places, got " + spec.minValue() + " and " + spec.maxValue() + ".");
+        }
+        if (spec.medianValue().signum() <= 0 || spec.sigma() < 0 || spec.paretoAlpha() <= 0) {
+            throw new ArgsValidationException("Median value and Pareto alpha must be positive and sigma non-negative.");
+        }
+        if (spec.meanPromotions() < 0 || spec.promotionSkew() < 0) {
+            throw new ArgsValidationException("Promotion fan-out and skew must not be negative.");
+        }
+        if (spec.limitTightness() <= 0 || spec.pointsScarcity() < 0) {
+            throw new ArgsValidationException("Limit tightness must be positive and points scarcity not negative.");
+        }
+    }
+
+
+    static Map<String, String> parseOptions(String[] args) throws ArgsValidationException {
+        Map<String, String> options = new HashMap<>();
+        if (args == null || args.length % 2 != 0) {
+            throw new ArgsValidationException("Options must be given as --name value pairs.");
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new ArgsValidationException("Expected an option name, got '" + args[i] + "'.");
+            }
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+
+    static Spec toSpec(Map<String, String> options) throws ArgsValidationException {
+        Set<String> known = Set.of("--orders", "--output-dir", "--format", "--cards", "--seed", "--value-distribution",
+                "--min-value", "--max-value", "--median-value", "--sigma", "--pareto-alpha", "--promotions",
+                "--promotion-skew", "--limit-tightness", "--points-scarcity");
+        for (String option : options.keySet()) {
+            if (!known.contains(option)) {
+                throw new ArgsValidationException("Unknown option '" + option + "'.");
+            }
+        }
+        if (!options.containsKey("--orders")) {
+            throw new ArgsValidationException("The number of orders (--orders) is required.");
+        }
+        try {
+            Spec defaults = Spec.defaults(Long.parseLong(options.get("--orders")));
+            return new Spec(
+                    defaults.orderCount(),
+                    Integer.parseInt(options.getOrDefault("--cards", Integer.toString(defaults.cardCount()))),
+                    Long.parseLong(options.getOrDefault("--seed", Long.toString(defaults.seed()))),
+                    ValueDistribution.valueOf(options.getOrDefault("--value-distribution", defaults.valueDistribution().name()).toUpperCase(Locale.ROOT)),
+                    new BigDecimal(options.getOrDefault("--min-value", defaults.minValue().toPlainString())),
+                    new BigDecimal(options.getOrDefault("--max-value", defaults.maxValue().toPlainString())),
+                    new BigDecimal(options.getOrDefault("--median-value", defaults.medianValue().toPlainString())),
+                    Double.parseDouble(options.getOrDefault("--sigma", Double.toString(defaults.sigma()))),
+                    Double.parseDouble(options.getOrDefault("--pareto-alpha", Double.toString(defaults.paretoAlpha()))),
+                    Double.parseDouble(options.getOrDefault("--promotions", Double.toString(defaults.meanPromotions()))),
+                    Double.parseDouble(options.getOrDefault("--promotion-skew", Double.toString(defaults.promotionSkew()))),
+                    Double.parseDouble(options.getOrDefault("--limit-tightness", Double.toString(defaults.limitTightness()))),
+                    Double.parseDouble(options.getOrDefault("--points-scarcity", Double.toString(defaults.pointsScarcity()))),
+                    Format.valueOf(options.getOrDefault("--format", defaults.format().name()).toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) { // takze NumberFormatException
+            throw new ArgsValidationException("Invalid option value: " + e.getMessage());
+        }
+    }
+}
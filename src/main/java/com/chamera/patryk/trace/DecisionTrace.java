@@ -0,0 +1,50 @@
+package com.chamera.patryk.trace;
+
+import com.chamera.patryk.service.InputFingerprint;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A decision trace read back by {@link DecisionTraceReader}.
+ *
+ * @param fingerprint Sequence fingerprint of the traced input, or {@code null} if the writer was given none.
+ * @param configuration Identifier of the solver that produced the trace.
+ * @param orderCount Number of orders of the input.
+ * @param methodIds IDs of the payment methods of the input.
+ * @param decisions Applied payment options, in processing order.
+ * @param totals Total amount spent per payment method, or {@code null} if the optimization failed or the trace is cut off.
+ * @param failure Reason of the failure, or {@code null} if the optimization did not fail.
+ * @param nanos Duration of the traced optimization in nanoseconds, or -1 if the trace is cut off.
+ */
+public record DecisionTrace(InputFingerprint fingerprint, String configuration, int orderCount, List<String> methodIds,
+                            List<Decision> decisions, Map<String, BigDecimal> totals, String failure, long nanos) {
+
+    /**
+     * One applied payment option.
+     *
+     * @param orderId ID of the order paid.
+     * @param discount Discount of the option.
+     * @param pointsUsed Points used by the option.
+     * @param charges Amount charged per payment method.
+     */
+    public record Decision(String orderId, BigDecimal discount, BigDecimal pointsUsed, Map<String, BigDecimal> charges) {
+
+        /**
+         * @param other Another decision.
+         * @return {@code true} if both pay the same order with the same amounts, in any order of the charges.
+         */
+        public boolean sameChoice(Decision other) {
+            return equals(other);
+        }
+    }
+
+
+    /**
+     * @return {@code true} if the trace ends with the totals or the failure, {@code false} if it was cut off.
+     */
+    public boolean isComplete() {
+        return totals != null || failure != null;
+    }
+}
@@ -0,0 +1,175 @@
+package com.chamera.patryk.trace;
+
+import com.chamera.patryk.service.InputFingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads traces written by {@link DecisionTraceWriter}.
+ * A trace cut off after a complete record (e.g. because the process was killed) is read up to that record and
+ * reported as incomplete.
+ */
+public final class DecisionTraceReader {
+
+    private final InputStream in;
+
+
+    private DecisionTraceReader(InputStream in) {
+        this.in = in;
+    }
+
+
+    /**
+     * Reads a trace file.
+     *
+     * @param file The trace file.
+     * @return The trace.
+     * @throws IOException If the file cannot be read or is not a decision trace.
+     */
+    public static DecisionTrace read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        }
+    }
+
+
+    /**
+     * Reads a trace from a stream, up to its end record.
+     *
+     * @param in Stream positioned at the start of a trace; not closed.
+     * @return The trace.
+     * @throws IOException If the stream cannot be read or does not hold a decision trace.
+     */
+    public static DecisionTrace read(InputStream in) throws IOException {
+        return new DecisionTraceReader(in).readTrace();
+    }
+
+
+    private DecisionTrace readTrace() throws IOException {
+        int magic = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        if (magic != DecisionTraceWriter.MAGIC) {
+            throw new IOException("Not a decision trace (bad magic number).");
+        }
+        long version = readVarLong();
+        if (version != DecisionTraceWriter.VERSION) {
+            throw new IOException("Unsupported decision trace version " + version + ".");
+        }
+        InputFingerprint fingerprint = readByte() == 0 ? null : new InputFingerprint(readFixedLong(), readFixedLong());
+        String configuration = readString();
+        int orderCount = (int) readVarLong();
+        int methodCount = (int) readVarLong();
+        List<String> methodIds = new ArrayList<>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            methodIds.add(readString());
+        }
+
+        List<DecisionTrace.Decision> decisions = new ArrayList<>(orderCount);
+        while (true) {
+            int tag = in.read();
+            try {
+                switch (tag) {
+                    case -1 -> {
+                        return new DecisionTrace(fingerprint, configuration, orderCount, methodIds, decisions, null, null, -1);
+                    }
+                    case DecisionTraceWriter.TAG_DECISION -> {
+                        String orderId = readString();
+                        BigDecimal discount = readAmount();
+                        BigDecimal pointsUsed = readAmount();
+                        decisions.add(new DecisionTrace.Decision(orderId, discount, pointsUsed, readAmountsByMethod(methodIds)));
+                    }
+                    case DecisionTraceWriter.TAG_END -> {
+                        long nanos = readVarLong();
+                        return new DecisionTrace(fingerprint, configuration, orderCount, methodIds, decisions, readAmountsByMethod(methodIds), null, nanos);
+                    }
+                    case DecisionTraceWriter.TAG_FAILURE -> {
+                        long nanos = readVarLong();
+                        return new DecisionTrace(fingerprint, configuration, orderCount, methodIds, decisions, null, readString(), nanos);
+                    }
+                    default -> throw new IOException("Corrupt decision trace: unknown record tag " + tag + ".");
+                }
+            } catch (EOFException e) {
+                // ostatni rekord uciety - zwracamy to, co bylo kompletne
+                return new DecisionTrace(fingerprint, configuration, orderCount, methodIds, decisions, null, null, -1);
+            }
+        }
+    }
+
+
+    private Map<String, BigDecimal> readAmountsByMethod(List<String> methodIds) throws IOException {
+        int count = (int) readVarLong();
+        Map<String, BigDecimal> amounts = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            long methodIndex = readVarLong();
+            if (methodIndex >= methodIds.size()) {
+                throw new IOException("Corrupt decision trace: unknown payment method index " + methodIndex + ".");
+            }
+            amounts.put(methodIds.get((int) methodIndex), readAmount());
+        }
+        return amounts;
+    }
+
+
+    private BigDecimal readAmount() throws IOException {
+        int scale = (int) readZigZag();
+        return new BigDecimal(BigInteger.valueOf(readZigZag()), scale);
+    }
+
+
+    private String readString() throws IOException {
+        int length = (int) readVarLong();
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    private long readFixedLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt decision trace: variable-length integer is too long.");
+    }
+
+
+    private long readZigZag() throws IOException {
+        long encoded = readVarLong();
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
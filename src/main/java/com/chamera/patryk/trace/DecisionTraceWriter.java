@@ -0,0 +1,494 @@
+package com.chamera.patryk.trace;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.InputFingerprint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Writes a binary trace of one optimization: a header with the input fingerprint (if given), the solver
+ * configuration and the payment methods, one record per applied payment option, and an end record with the duration
+ * and the totals or the failure. The format is read back by {@link DecisionTraceReader}.
+ * <p>
+ * Records are encoded on the solving thread into a reused buffer and copied into a ring buffer, which a background
+ * thread drains to the stream, so the solver never waits for the disk unless the ring is full. The writer does not
+ * fingerprint the input itself: a caller that has the {@link InputFingerprint#ofSequence sequence fingerprint}
+ * anyway, e.g. as a result store key, passes it to {@link #begin(List, List, String, InputFingerprint)}, and a trace
+ * without one is checked on replay by its order count and payment methods only.
+ * Integers are variable-length and amounts are written as scale and unscaled value, so a decision takes about
+ * 15-30 bytes. Encoding a decision allocates nothing: ASCII order IDs are copied char by char, amounts of up to
+ * 15 digits are converted without {@link java.math.BigInteger}, and charged methods are found in an open-addressing
+ * table of method indexes built by {@link #begin}.
+ * <p>
+ * On the solving thread a decision costs about 150-190 ns of CPU, mostly reading the charges of options that left
+ * the cache since they were chosen. Against untraced runs in separate JVMs ({@code TracingOverheadBenchmark}, counter
+ * {@code solvingCpuNanos}), that is 1-4% of a greedy run of 20 000 orders and 5-6% of a run of 1 000 orders, whose
+ * orders are solved faster. The background thread comes on top of that when it has no core of its own.
+ * The flusher wakes every 10 ms, or earlier when the ring is half full. If writing to the stream fails, later records
+ * are dropped and the error is thrown by {@link #close()}.
+ * <p>
+ * One writer traces one optimization, written from one thread.
+ */
+public final class DecisionTraceWriter implements Closeable {
+
+    static final int MAGIC = 0x50545243; // "PTRC"
+    static final int VERSION = 3;
+    static final int TAG_DECISION = 'D';
+    static final int TAG_END = 'E';
+    static final int TAG_FAILURE = 'F';
+
+    /**
+     * Default size of the ring buffer in bytes.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final long FLUSH_INTERVAL_NANOS = 10_000_000;
+    private static final long STALL_PARK_NANOS = 10_000;
+
+    private final OutputStream out;
+    private final byte[] ring;
+    private final int mask;
+    private final Thread flusher;
+    private final Encoder encoder = new Encoder();
+    private final BiConsumer<String, BigDecimal> chargeWriter = this::writeAmountOfMethod;
+
+    private String[] methodSlots = new String[0]; // tablica otwartego adresowania: ID metody -> jej indeks
+    private int[] methodSlotIndexes = new int[0];
+
+    private volatile long head; // bajty zapisane przez producenta
+    private volatile long tail; // bajty przekazane do strumienia
+    private volatile boolean closed;
+    private volatile IOException flushError;
+
+    private boolean begun;
+    private InputFingerprint fingerprint; // odczytywany przez watek zapisujacy po publikacji naglowka
+    private long cachedTail;
+    private long beginNanos;
+    private long stalls;
+
+
+    /**
+     * Constructs a writer with a ring buffer of {@value #DEFAULT_CAPACITY} bytes.
+     *
+     * @param out Stream the trace is written to; closed by {@link #close()}.
+     */
+    public DecisionTraceWriter(OutputStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Constructs a writer.
+     *
+     * @param out Stream the trace is written to; closed by {@link #close()}.
+     * @param capacity Size of the ring buffer in bytes, a power of two of at least 64.
+     * @throws IllegalArgumentException If the capacity is not a power of two or too small.
+     */
+    public DecisionTraceWriter(OutputStream out, int capacity) {
+        if (capacity < 64 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two of at least 64, got " + capacity + ".");
+        }
+        this.out = out;
+        this.ring = new byte[capacity];
+        this.mask = capacity - 1;
+        this.flusher = Thread.ofVirtual().name("decision-trace-flusher").start(this::flushLoop);
+    }
+
+
+    /**
+     * Writes the header of a trace without an input fingerprint.
+     *
+     * @param orders Orders of the optimization.
+     * @param paymentMethods Payment methods of the optimization; charges refer to them.
+     * @param configuration Identifier of the solver and its parameters.
+     * @throws IllegalStateException If the header was already written.
+     */
+    public void begin(List<Order> orders, List<PaymentMethod> paymentMethods, String configuration) {
+        begin(orders, paymentMethods, configuration, null);
+    }
+
+
+    /**
+     * Writes the header of the trace.
+     *
+     * @param orders Orders of the optimization.
+     * @param paymentMethods Payment methods of the optimization; charges refer to them.
+     * @param configuration Identifier of the solver and its parameters.
+     * @param fingerprint {@link InputFingerprint#ofSequence Sequence fingerprint} of the orders and payment methods,
+     *                    or {@code null} to record none.
+     * @throws IllegalStateException If the header was already written.
+     */
+    public void begin(List<Order> orders, List<PaymentMethod> paymentMethods, String configuration, InputFingerprint fingerprint) {
+        if (begun) {
+            throw new IllegalStateException("A decision trace holds a single optimization.");
+        }
+        begun = true;
+        this.fingerprint = fingerprint;
+        encoder.reset();
+        encoder.writeString(configuration);
+        encoder.writeVarLong(orders.size());
+        encoder.writeVarLong(paymentMethods.size());
+        int slots = Integer.highestOneBit(Math.max(paymentMethods.size(), 1) * 2) * 2;
+        methodSlots = new String[slots];
+        methodSlotIndexes = new int[slots];
+        for (int i = 0; i < paymentMethods.size(); i++) {
+            String methodId = paymentMethods.get(i).getId();
+            if (methodIndex(methodId) < 0) {
+                int slot = methodId.hashCode() & (slots - 1);
+                while (methodSlots[slot] != null) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                methodSlots[slot] = methodId;
+                methodSlotIndexes[slot] = i;
+            }
+            encoder.writeString(methodId);
+        }
+        beginNanos = System.nanoTime();
+        publish(); // publikacja head udostepnia tez odcisk watkowi zapisujacemu
+    }
+
+
+    /**
+     * Writes one applied payment option.
+     *
+     * @param orderId ID of the order paid.
+     * @param discount Discount of the option.
+     * @param pointsUsed Points used by the option.
+     * @param charges Amount charged per payment method.
+     * @throws IllegalArgumentException If a charged method was not listed in {@link #begin}.
+     */
+    public void decision(String orderId, BigDecimal discount, BigDecimal pointsUsed, Map<String, BigDecimal> charges) {
+        encoder.reset();
+        encoder.writeByte(TAG_DECISION);
+        encoder.writeString(orderId);
+        encoder.writeAmount(discount);
+        encoder.writeAmount(pointsUsed);
+        writeAmountsByMethod(charges);
+        publish();
+    }
+
+
+    /**
+     * Writes the end record of a successful optimization.
+     *
+     * @param totals Total amount spent per payment method.
+     */
+    public void end(Map<String, BigDecimal> totals) {
+        encoder.reset();
+        encoder.writeByte(TAG_END);
+        encoder.writeVarLong(Math.max(System.nanoTime() - beginNanos, 0));
+        writeAmountsByMethod(totals);
+        publish();
+    }
+
+
+    /**
+     * Writes the end record of a failed optimization.
+     *
+     * @param message Reason of the failure.
+     */
+    public void fail(String message) {
+        encoder.reset();
+        encoder.writeByte(TAG_FAILURE);
+        encoder.writeVarLong(Math.max(System.nanoTime() - beginNanos, 0));
+        encoder.writeString(String.valueOf(message));
+        publish();
+    }
+
+
+    /**
+     * @return Number of records that had to wait for free space in the ring buffer.
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+
+    /**
+     * Writes all buffered records, stops the background thread and closes the stream.
+     *
+     * @throws IOException If the trace could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try (out) {
+            if (flushError != null) {
+                throw flushError;
+            }
+        }
+    }
+
+
+    private void writeAmountsByMethod(Map<String, BigDecimal> amounts) {
+        encoder.writeVarLong(amounts.size());
+        amounts.forEach(chargeWriter);
+    }
+
+
+    private void writeAmountOfMethod(String methodId, BigDecimal amount) {
+        int methodIndex = methodIndex(methodId);
+        if (methodIndex < 0) {
+            throw new IllegalArgumentException("Payment method '" + methodId + "' is not part of the traced input.");
+        }
+        encoder.writeVarLong(methodIndex);
+        encoder.writeAmount(amount);
+    }
+
+
+    /**
+     * @return Index of the method in the traced input, or -1 if it is not part of it.
+     */
+    private int methodIndex(String methodId) {
+        int mask = methodSlots.length - 1;
+        for (int slot = methodId.hashCode() & mask; methodSlots[slot] != null; slot = (slot + 1) & mask) {
+            if (methodSlots[slot] == methodId || methodSlots[slot].equals(methodId)) {
+                return methodSlotIndexes[slot];
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Copies the encoded record into the ring, waiting for the flusher while the ring is full.
+     */
+    private void publish() {
+        byte[] record = encoder.buf;
+        int length = encoder.size;
+        long position = head;
+        if (length <= ring.length - (position - cachedTail)) {
+            // szybka sciezka: miejsce wystarcza wedlug ostatnio odczytanego tail, bez odczytu volatile
+            int start = (int) (position & mask);
+            int first = Math.min(length, ring.length - start);
+            System.arraycopy(record, 0, ring, start, first);
+            System.arraycopy(record, first, ring, 0, length - first);
+            head = position + length;
+            if (position + length - cachedTail >= ring.length / 2) {
+                cachedTail = tail;
+                if (position + length - cachedTail >= ring.length / 2) {
+                    LockSupport.unpark(flusher);
+                }
+            }
+            return;
+        }
+        publishSlow(record, length);
+    }
+
+
+    private void publishSlow(byte[] record, int length) {
+        int copied = 0;
+        boolean stalled = false;
+        long position = head;
+        while (copied < length) {
+            if (flushError != null || closed || !flusher.isAlive()) {
+                return; // watek zapisujacy zakonczyl sie bledem - rekord jest porzucany
+            }
+            cachedTail = tail;
+            int free = (int) (ring.length - (position - cachedTail));
+            if (free == 0) {
+                stalled = true;
+                LockSupport.unpark(flusher);
+                LockSupport.parkNanos(this, STALL_PARK_NANOS);
+                continue;
+            }
+            int chunk = Math.min(length - copied, free);
+            int start = (int) (position & mask);
+            int first = Math.min(chunk, ring.length - start);
+            System.arraycopy(record, copied, ring, start, first);
+            System.arraycopy(record, copied + first, ring, 0, chunk - first);
+            copied += chunk;
+            position += chunk;
+            head = position;
+        }
+        if (stalled) {
+            stalls++;
+        }
+        LockSupport.unpark(flusher);
+    }
+
+
+    private void flushLoop() {
+        try {
+            boolean prefixWritten = false;
+            while (true) {
+                long available = head;
+                long flushed = tail;
+                if (available == flushed) {
+                    // closed jest ustawiane po ostatnim zapisie head, wiec head czytamy jeszcze raz
+                    if (closed && head == flushed) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+                    continue;
+                }
+                if (!prefixWritten) {
+                    writePrefix();
+                    prefixWritten = true;
+                }
+                int start = (int) (flushed & mask);
+                int length = (int) (available - flushed);
+                int first = Math.min(length, ring.length - start);
+                out.write(ring, start, first);
+                if (length > first) {
+                    out.write(ring, 0, length - first);
+                }
+                out.flush();
+                tail = available;
+            }
+        } catch (IOException e) {
+            flushError = e;
+        } catch (RuntimeException e) {
+            flushError = new IOException("Decision trace could not be written: " + e, e);
+        }
+    }
+
+
+    /**
+     * Writes the start of the header, which the producer leaves out: magic number, version and, after a flag,
+     * the input fingerprint.
+     */
+    private void writePrefix() throws IOException {
+        if (!begun) {
+            throw new IOException("Decisions were written before the header of the trace.");
+        }
+        Encoder prefix = new Encoder();
+        prefix.writeFixedInt(MAGIC);
+        prefix.writeVarLong(VERSION);
+        prefix.writeByte(fingerprint == null ? 0 : 1);
+        if (fingerprint != null) {
+            prefix.writeFixedLong(fingerprint.high());
+            prefix.writeFixedLong(fingerprint.low());
+        }
+        out.write(prefix.buf, 0, prefix.size);
+    }
+
+
+    /**
+     * Growable buffer with the primitive encodings of the trace format.
+     */
+    static final class Encoder {
+
+        // 10^n dokladnie jako double; kwoty do 15 cyfr przeliczamy przez double bez BigInteger
+        private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+        private static final int MAX_DOUBLE_EXACT_PRECISION = 15;
+
+        private byte[] buf = new byte[256];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buf[size++] = (byte) value;
+        }
+
+        void writeFixedInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeFixedLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Unsigned LEB128: 7 bits per byte, the high bit marks that more bytes follow.
+         */
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            int length = value.length();
+            if (length < 0x80) {
+                ensure(1 + length);
+                int start = size;
+                buf[size++] = (byte) length;
+                for (int i = 0; i < length; i++) {
+                    char c = value.charAt(i);
+                    if (c >= 0x80) {
+                        size = start; // nie ASCII - kodujemy jako UTF-8
+                        writeUtf8(value);
+                        return;
+                    }
+                    buf[size++] = (byte) c;
+                }
+                return;
+            }
+            writeUtf8(value);
+        }
+
+        private void writeUtf8(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        /**
+         * Writes the scale and the unscaled value. With at most 15 digits the unscaled value is below 2<sup>50</sup>,
+         * so {@code doubleValue()} (one rounding, no allocation for such values) multiplied back by the exact power
+         * of ten is within a quarter of it and rounds back exactly.
+         *
+         * @throws ArithmeticException If the unscaled value does not fit in a {@code long}.
+         */
+        void writeAmount(BigDecimal amount) {
+            int scale = amount.scale();
+            writeZigZag(scale);
+            if (scale >= 0 && scale < POWERS_OF_TEN.length && amount.precision() <= MAX_DOUBLE_EXACT_PRECISION) {
+                writeZigZag(Math.round(amount.doubleValue() * POWERS_OF_TEN[scale]));
+            } else {
+                writeZigZag(amount.unscaledValue().longValueExact());
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+}
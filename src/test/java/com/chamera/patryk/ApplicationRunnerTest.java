@@ -4,8 +4,14 @@ import com.chamera.patryk.config.InputValidator;
 import com.chamera.patryk.exception.ArgsValidationException;
 import com.chamera.patryk.exception.FileValidationException;
 import com.chamera.patryk.exception.ProcessingException;
+import com.chamera.patryk.metrics.PhaseMetrics;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
 import com.chamera.patryk.parser.JsonDataParser;
 import com.chamera.patryk.service.PaymentOptimizerService;
+import com.chamera.patryk.store.ResultStore;
+import com.chamera.patryk.trace.DecisionTrace;
+import com.chamera.patryk.trace.DecisionTraceReader;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -23,6 +29,7 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.*;
 
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -167,4 +174,116 @@ class ApplicationRunnerTest {
         });
         assertTrue(thrown.getMessage().contains("No possible payment option found for order UNPAYABLE_ORDER"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("run with a result store should reuse the stored plan for the same input")
+    void run_withStore_reusesStoredPlan() throws Exception {
+        Path ordersFile = Files.createFile(tempDir.resolve("orders_store.json"));
+        Path paymentMethodsFile = Files.createFile(tempDir.resolve("payments_store.json"));
+        Path storeDirectory = tempDir.resolve("store");
+        String[] args = {ordersFile.toString(), paymentMethodsFile.toString(), InputValidator.STORE_FLAG, storeDirectory.toString()};
+
+        Files.writeString(ordersFile, "[{\"id\":\"O1\",\"value\":\"10.00\"}]");
+        Files.writeString(paymentMethodsFile, "[{\"id\":\"CARD_X\",\"discount\":0,\"limit\":\"20.00\"}, {\"id\":\"PUNKTY\",\"discount\":0,\"limit\":\"5.00\"}]");
+
+        mockedInputValidator.when(() -> InputValidator.hasStoreOption(args)).thenReturn(true);
+        mockedInputValidator.when(() -> InputValidator.validateStoreArgs(args)).thenReturn(storeDirectory);
+
+        applicationRunner.run(args);
+        String firstOutput = outContent.toString();
+        outContent.reset();
+        applicationRunner.run(args);
+
+        assertEquals(firstOutput, outContent.toString());
+        assertTrue(firstOutput.contains("CARD_X 4.00"));
+        try (ResultStore store = new ResultStore(storeDirectory)) {
+            assertEquals(1, store.getStats().entries());
+        }
+    }
+
+    @Test
+    @DisplayName("optimizeWithStore should not reuse the plan of a reordered input")
+    void optimizeWithStore_reorderedInput_solvedAsGiven() throws Exception {
+        Path storeDirectory = tempDir.resolve("store_reordered");
+        List<PaymentMethod> paymentMethods = List.of(
+                new PaymentMethod("PUNKTY", 15, new BigDecimal("16")),
+                new PaymentMethod("C0", 10, new BigDecimal("114")),
+                new PaymentMethod("C1", 0, new BigDecimal("135")));
+        List<Order> orders = List.of(
+                new Order("O1", new BigDecimal("50"), List.of("C0")),
+                new Order("O2", new BigDecimal("50"), List.of("C0")),
+                new Order("O3", new BigDecimal("50"), null));
+        List<Order> reversed = new ArrayList<>(orders);
+        Collections.reverse(reversed);
+        PaymentOptimizerService service = new PaymentOptimizerService();
+
+        Map<String, BigDecimal> first = applicationRunner.optimizeWithStore(orders, paymentMethods, storeDirectory, service, PhaseMetrics.disabled());
+        Map<String, BigDecimal> second = applicationRunner.optimizeWithStore(reversed, paymentMethods, storeDirectory, service, PhaseMetrics.disabled());
+
+        assertEquals(service.optimizePayments(orders, paymentMethods), first);
+        assertEquals(service.optimizePayments(reversed, paymentMethods), second);
+        assertNotEquals(first, second);
+        try (ResultStore store = new ResultStore(storeDirectory)) {
+            assertEquals(2, store.getStats().entries());
+        }
+    }
+
+    @Test
+    @DisplayName("run with the metrics option should print the phase summary to standard error and the plan as usual")
+    void run_withMetrics_printsSummaryToStandardError() throws Exception {
+        Path ordersFile = Files.createFile(tempDir.resolve("orders_metrics.json"));
+        Path paymentMethodsFile = Files.createFile(tempDir.resolve("payments_metrics.json"));
+        String[] args = {ordersFile.toString(), paymentMethodsFile.toString(), InputValidator.METRICS_FLAG, "json"};
+        String[] fileArgs = {ordersFile.toString(), paymentMethodsFile.toString()};
+
+        Files.writeString(ordersFile, "[{\"id\":\"O1\",\"value\":\"10.00\"}]");
+        Files.writeString(paymentMethodsFile, "[{\"id\":\"CARD_X\",\"discount\":0,\"limit\":\"20.00\"}, {\"id\":\"PUNKTY\",\"discount\":0,\"limit\":\"5.00\"}]");
+
+        mockedInputValidator.when(() -> InputValidator.hasMetricsOption(args)).thenReturn(true);
+        mockedInputValidator.when(() -> InputValidator.validateMetricsArgs(args)).thenReturn(PhaseMetrics.Format.JSON);
+        mockedInputValidator.when(() -> InputValidator.withoutMetricsOption(args)).thenReturn(fileArgs);
+
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(errContent));
+        try {
+            applicationRunner.run(args);
+        } finally {
+            System.setErr(originalErr);
+        }
+
+        assertTrue(outContent.toString().contains("CARD_X 4.00"));
+        String metrics = errContent.toString();
+        assertTrue(metrics.contains("\"parse\""));
+        assertTrue(metrics.contains("\"greedy_pass\""));
+        assertTrue(metrics.contains("\"orders\" : 1"));
+    }
+
+    @Test
+    @DisplayName("run with the trace option should write every decision and the totals to the trace file")
+    void run_withTrace_writesDecisionTrace() throws Exception {
+        Path ordersFile = Files.createFile(tempDir.resolve("orders_trace.json"));
+        Path paymentMethodsFile = Files.createFile(tempDir.resolve("payments_trace.json"));
+        Path traceFile = tempDir.resolve("run.trace");
+        String[] args = {ordersFile.toString(), paymentMethodsFile.toString(), InputValidator.TRACE_FLAG, traceFile.toString()};
+        String[] fileArgs = {ordersFile.toString(), paymentMethodsFile.toString()};
+
+        Files.writeString(ordersFile, "[{\"id\":\"O1\",\"value\":\"10.00\"}, {\"id\":\"O2\",\"value\":\"20.00\",\"promotions\":[\"CARD_X\"]}]");
+        Files.writeString(paymentMethodsFile, "[{\"id\":\"CARD_X\",\"discount\":10,\"limit\":\"50.00\"}, {\"id\":\"PUNKTY\",\"discount\":0,\"limit\":\"5.00\"}]");
+
+        mockedInputValidator.when(() -> InputValidator.hasTraceOption(args)).thenReturn(true);
+        mockedInputValidator.when(() -> InputValidator.validateTraceArgs(args)).thenReturn(traceFile);
+        mockedInputValidator.when(() -> InputValidator.withoutTraceOption(args)).thenReturn(fileArgs);
+
+        applicationRunner.run(args);
+
+        DecisionTrace trace = DecisionTraceReader.read(traceFile);
+        assertTrue(trace.isComplete());
+        assertEquals(ApplicationRunner.SOLVER_CONFIGURATION, trace.configuration());
+        assertEquals(2, trace.decisions().size());
+        assertEquals("O2", trace.decisions().get(0).orderId());
+        assertEquals(0, bd("13.00").compareTo(trace.decisions().get(0).charges().get("CARD_X")));
+        assertEquals(0, bd("5.00").compareTo(trace.decisions().get(0).pointsUsed()));
+        assertTrue(outContent.toString().contains("CARD_X"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.chamera.patryk.batch;
+
+import com.chamera.patryk.exception.FileValidationException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchManifestTest {
+
+    @TempDir
+    Path tempDir;
+
+
+    @Test
+    @DisplayName("Instances should be read in order, with comments skipped and relative paths resolved")
+    void parse_validManifest() throws Exception {
+        Path manifest = tempDir.resolve("instances.txt");
+        Files.writeString(manifest, """
+                # name orders methods
+                krakow   krakow/orders.json   krakow/paymentmethods.json
+
+                warszawa\t/data/warszawa/orders.json\t/data/warszawa/paymentmethods.json
+                """);
+
+        List<BatchManifest.Instance> instances = BatchManifest.parse(manifest);
+
+        assertEquals(2, instances.size());
+        assertEquals("krakow", instances.get(0).name());
+        assertEquals(tempDir.toAbsolutePath().resolve("krakow/orders.json"), instances.get(0).ordersFile());
+        assertEquals(Path.of("/data/warszawa/paymentmethods.json"), instances.get(1).paymentMethodsFile());
+    }
+
+    @Test
+    @DisplayName("A line with a wrong number of columns should be reported with its line number")
+    void parse_malformedLine_throwsFileValidationException() throws Exception {
+        Path manifest = tempDir.resolve("instances.txt");
+        Files.writeString(manifest, "a orders.json methods.json\nb orders.json\n");
+
+        FileValidationException exception = assertThrows(FileValidationException.class, () -> BatchManifest.parse(manifest));
+        assertTrue(exception.getMessage().startsWith("Manifest line 2"));
+    }
+
+    @Test
+    @DisplayName("Duplicate and unsafe instance names should be rejected")
+    void parse_invalidNames_throwFileValidationException() throws Exception {
+        Path duplicates = tempDir.resolve("duplicates.txt");
+        Files.writeString(duplicates, "a o1.json m1.json\na o2.json m2.json\n");
+        Path unsafe = tempDir.resolve("unsafe.txt");
+        Files.writeString(unsafe, "../a o1.json m1.json\n");
+
+        assertTrue(assertThrows(FileValidationException.class, () -> BatchManifest.parse(duplicates)).getMessage().contains("duplicate"));
+        assertTrue(assertThrows(FileValidationException.class, () -> BatchManifest.parse(unsafe)).getMessage().contains("invalid instance name"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.chamera.patryk.batch;
+
+import com.chamera.patryk.store.ResultStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchSolverTest {
+
+    private static final String PDF_ORDERS = """
+            [{"id": "ORDER1", "value": "100.00", "promotions": ["mZysk"]},
+             {"id": "ORDER2", "value": "200.00", "promotions": ["BosBankrut"]},
+             {"id": "ORDER3", "value": "150.00", "promotions": ["mZysk", "BosBankrut"]},
+             {"id": "ORDER4", "value": "50.00"}]
+            """;
+    private static final String PDF_PAYMENT_METHODS = """
+            [{"id": "PUNKTY", "discount": "15", "limit": "100.00"},
+             {"id": "mZysk", "discount": "10", "limit": "180.00"},
+             {"id": "BosBankrut", "discount": "5", "limit": "200.00"}]
+            """;
+
+    @TempDir
+    Path tempDir;
+
+
+    private BatchManifest.Instance instance(String name, String orders, String paymentMethods) throws Exception {
+        Path ordersFile = Files.writeString(tempDir.resolve(name + "_orders.json"), orders);
+        Path paymentMethodsFile = Files.writeString(tempDir.resolve(name + "_paymentmethods.json"), paymentMethods);
+        return new BatchManifest.Instance(name, ordersFile, paymentMethodsFile);
+    }
+
+
+    @Test
+    @DisplayName("Every instance should get its result file, and failures their error file")
+    void solve_writesResultAndErrorFiles() throws Exception {
+        List<BatchManifest.Instance> instances = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            instances.add(instance("pdf" + i, PDF_ORDERS, PDF_PAYMENT_METHODS));
+        }
+        instances.add(instance("unpayable", "[{\"id\": \"HUGE\", \"value\": \"10000.00\"}]", PDF_PAYMENT_METHODS));
+        instances.add(new BatchManifest.Instance("missing", tempDir.resolve("missing.json"), tempDir.resolve("missing2.json")));
+        Path output = tempDir.resolve("results");
+
+        BatchSolver.BatchSummary summary = new BatchSolver(2, 4, null, null).solve(instances, output);
+
+        assertEquals(22, summary.instances());
+        assertEquals(20, summary.solved());
+        assertEquals(List.of("unpayable", "missing"), summary.failed());
+        List<String> lines = Files.readAllLines(output.resolve("pdf7" + BatchSolver.RESULT_SUFFIX));
+        assertTrue(lines.containsAll(List.of("mZysk 175.00", "BosBankrut 182.50", "PUNKTY 100.00")));
+        assertTrue(Files.readString(output.resolve("unpayable" + BatchSolver.ERROR_SUFFIX)).contains("HUGE"));
+        assertTrue(Files.readString(output.resolve("missing" + BatchSolver.ERROR_SUFFIX)).startsWith("Configuration error"));
+        assertFalse(Files.exists(output.resolve("missing" + BatchSolver.RESULT_SUFFIX)));
+    }
+
+    @Test
+    @DisplayName("With a result store the second run should reuse every plan")
+    void solve_withStore_reusesPlans() throws Exception {
+        List<BatchManifest.Instance> instances = List.of(
+                instance("a", PDF_ORDERS, PDF_PAYMENT_METHODS),
+                instance("b", "[{\"id\": \"O1\", \"value\": \"10.00\"}]", PDF_PAYMENT_METHODS));
+        Path output = tempDir.resolve("results");
+
+        try (ResultStore store = new ResultStore(tempDir.resolve("store"))) {
+            BatchSolver solver = new BatchSolver(1, 1, store, "test-v1");
+            assertEquals(2, solver.solve(instances, output).solved());
+            String firstResult = Files.readString(output.resolve("a" + BatchSolver.RESULT_SUFFIX));
+
+            BatchSolver.BatchSummary secondRun = solver.solve(instances, output);
+
+            assertEquals(0, secondRun.solved());
+            assertEquals(2, secondRun.reused());
+            assertEquals(firstResult, Files.readString(output.resolve("a" + BatchSolver.RESULT_SUFFIX)));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.chamera.patryk.config;
 
 import com.chamera.patryk.exception.ArgsValidationException;
 import com.chamera.patryk.exception.FileValidationException;
+import com.chamera.patryk.metrics.PhaseMetrics;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -206,4 +207,120 @@ class InputValidatorTest {
         assertTrue(exception.getMessage().contains("Payment methods file is expected to have a .json extension: " + paymentMethodsFileTxt));
     }
 
-}
\ No newline at end of file
+    @Test
+    void isServerMode_shouldDetectServerFlag() {
+        assertTrue(InputValidator.isServerMode(new String[]{"--server"}));
+        assertFalse(InputValidator.isServerMode(new String[]{"orders.json", "payments.json"}));
+        assertFalse(InputValidator.isServerMode(null));
+    }
+
+    @Test
+    void validateServerArgs_shouldReturnDefaultOrGivenPort() throws ArgsValidationException {
+        assertEquals(InputValidator.DEFAULT_SERVER_PORT, InputValidator.validateServerArgs(new String[]{"--server"}));
+        assertEquals(9090, InputValidator.validateServerArgs(new String[]{"--server", "9090"}));
+    }
+
+    @Test
+    void validateServerArgs_shouldThrowArgsValidationExceptionForInvalidPort() {
+        ArgsValidationException notANumber = assertThrows(ArgsValidationException.class, () -> {
+            InputValidator.validateServerArgs(new String[]{"--server", "http"});
+        });
+        assertTrue(notANumber.getMessage().contains("Server port is not a number: 'http'."));
+
+        ArgsValidationException outOfRange = assertThrows(ArgsValidationException.class, () -> {
+            InputValidator.validateServerArgs(new String[]{"--server", "70000"});
+        });
+        assertTrue(outOfRange.getMessage().contains("Server port must be between 0 and 65535, got 70000."));
+
+        assertThrows(ArgsValidationException.class, () -> {
+            InputValidator.validateServerArgs(new String[]{"--server", "8080", "extra"});
+        });
+    }
+
+
+    @Test
+    void validateStoreArgs_shouldReturnStoreDirectory() throws Exception {
+        Path ordersFile = Files.createFile(tempDir.resolve("orders.json"));
+        Path paymentMethodsFile = Files.createFile(tempDir.resolve("paymentMethods.json"));
+        Path storeDirectory = tempDir.resolve("store");
+        String[] args = {ordersFile.toString(), paymentMethodsFile.toString(), InputValidator.STORE_FLAG, storeDirectory.toString()};
+
+        assertTrue(InputValidator.hasStoreOption(args));
+        assertEquals(storeDirectory, InputValidator.validateStoreArgs(args));
+    }
+
+    @Test
+    void validateStoreArgs_shouldThrowFileValidationExceptionForRegularFile() throws IOException {
+        Path ordersFile = Files.createFile(tempDir.resolve("orders.json"));
+        Path paymentMethodsFile = Files.createFile(tempDir.resolve("paymentMethods.json"));
+        String[] args = {ordersFile.toString(), paymentMethodsFile.toString(), InputValidator.STORE_FLAG, ordersFile.toString()};
+
+        FileValidationException exception = assertThrows(FileValidationException.class, () -> InputValidator.validateStoreArgs(args));
+        assertTrue(exception.getMessage().contains("does not point to a directory"));
+    }
+
+    @Test
+    void validateBatchArgs_shouldReturnManifestOutputAndStore() throws Exception {
+        Path manifestFile = Files.createFile(tempDir.resolve("instances.txt"));
+        String[] args = {InputValidator.BATCH_FLAG, manifestFile.toString(), tempDir.resolve("out").toString(), InputValidator.STORE_FLAG, tempDir.resolve("store").toString()};
+
+        assertTrue(InputValidator.isBatchMode(args));
+        InputValidator.BatchArguments batchArguments = InputValidator.validateBatchArgs(args);
+        assertEquals(manifestFile, batchArguments.manifestFile());
+        assertEquals(tempDir.resolve("out"), batchArguments.outputDirectory());
+        assertEquals(tempDir.resolve("store"), batchArguments.storeDirectory());
+    }
+
+    @Test
+    void validateBatchArgs_shouldThrowForMissingManifestOrWrongArgumentCount() {
+        String[] missingManifest = {InputValidator.BATCH_FLAG, tempDir.resolve("missing.txt").toString(), tempDir.toString()};
+        String[] tooFew = {InputValidator.BATCH_FLAG, "instances.txt"};
+
+        assertThrows(FileValidationException.class, () -> InputValidator.validateBatchArgs(missingManifest));
+        assertThrows(ArgsValidationException.class, () -> InputValidator.validateBatchArgs(tooFew));
+    }
+
+    @Test
+    void validateMetricsArgs_shouldReturnFormatAndStripOption() throws Exception {
+        String[] plain = {"orders.json", "payments.json", InputValidator.METRICS_FLAG};
+        String[] json = {"orders.json", "payments.json", InputValidator.STORE_FLAG, "store", InputValidator.METRICS_FLAG, "json"};
+
+        assertTrue(InputValidator.hasMetricsOption(plain));
+        assertTrue(InputValidator.hasMetricsOption(json));
+        assertFalse(InputValidator.hasMetricsOption(new String[]{"orders.json", "payments.json"}));
+        assertEquals(PhaseMetrics.Format.TEXT, InputValidator.validateMetricsArgs(plain));
+        assertEquals(PhaseMetrics.Format.JSON, InputValidator.validateMetricsArgs(json));
+        assertArrayEquals(new String[]{"orders.json", "payments.json"}, InputValidator.withoutMetricsOption(plain));
+        assertArrayEquals(new String[]{"orders.json", "payments.json", InputValidator.STORE_FLAG, "store"}, InputValidator.withoutMetricsOption(json));
+    }
+
+    @Test
+    void validateMetricsArgs_shouldThrowArgsValidationExceptionForUnknownFormat() {
+        String[] args = {"orders.json", "payments.json", InputValidator.METRICS_FLAG, "xml"};
+
+        ArgsValidationException exception = assertThrows(ArgsValidationException.class, () -> InputValidator.validateMetricsArgs(args));
+        assertTrue(exception.getMessage().contains("Unknown metrics format 'xml'"));
+    }
+
+    @Test
+    void validateTraceArgs_shouldReturnFileAndStripOption() throws Exception {
+        String traceFile = tempDir.resolve("run.trace").toString();
+        String[] args = {"orders.json", "payments.json", InputValidator.TRACE_FLAG, traceFile, InputValidator.STORE_FLAG, "store"};
+
+        assertTrue(InputValidator.hasTraceOption(args));
+        assertFalse(InputValidator.hasTraceOption(new String[]{"orders.json", "payments.json", InputValidator.STORE_FLAG, "store"}));
+        assertEquals(tempDir.resolve("run.trace"), InputValidator.validateTraceArgs(args));
+        assertArrayEquals(new String[]{"orders.json", "payments.json", InputValidator.STORE_FLAG, "store"}, InputValidator.withoutTraceOption(args));
+    }
+
+    @Test
+    void validateTraceArgs_shouldThrowForMissingFileOrDirectory() {
+        String[] missingFile = {"orders.json", "payments.json", InputValidator.TRACE_FLAG};
+        String[] directory = {"orders.json", "payments.json", InputValidator.TRACE_FLAG, tempDir.toString()};
+        String[] missingParent = {"orders.json", "payments.json", InputValidator.TRACE_FLAG, tempDir.resolve("missing/run.trace").toString()};
+
+        assertThrows(ArgsValidationException.class, () -> InputValidator.validateTraceArgs(missingFile));
+        assertThrows(FileValidationException.class, () -> InputValidator.validateTraceArgs(directory));
+        assertThrows(FileValidationException.class, () -> InputValidator.validateTraceArgs(missingParent));
+    }
+}
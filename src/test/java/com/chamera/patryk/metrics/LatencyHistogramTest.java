@@ -0,0 +1,58 @@
+package com.chamera.patryk.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Percentiles should be within one bucket (12.5%) above the exact value")
+    void getPercentile_uniformSamples_withinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 0.001);
+        for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+            long exact = (long) (quantile * 100_000);
+            long reported = histogram.getPercentile(quantile);
+            assertTrue(reported >= exact && reported <= exact * 1.125, quantile + ": " + reported);
+        }
+        assertEquals(100_000, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    @DisplayName("Bucket bounds should cover every value exactly once, up to Long.MAX_VALUE")
+    void bucketIndex_boundsAreConsistent() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1_000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Adding histograms should combine counts and the maximum; an empty histogram reports zeros")
+    void add_combinesHistograms() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        assertEquals(0, first.getPercentile(0.99));
+        first.record(100);
+        second.record(5_000);
+        second.record(-3);
+
+        first.add(second);
+
+        assertEquals(3, first.getCount());
+        assertEquals(5_000, first.getMax());
+        assertEquals(0, first.getPercentile(0.0));
+        assertEquals(2, first.getCountAtOrBelow(1_000));
+    }
+}
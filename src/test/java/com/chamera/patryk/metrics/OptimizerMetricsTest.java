@@ -0,0 +1,112 @@
+package com.chamera.patryk.metrics;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizerMetricsTest {
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", bd("100.00"), List.of("mZysk")),
+            new Order("ORDER2", bd("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", bd("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", bd("50.00"), null));
+
+    private static final List<PaymentMethod> PAYMENT_METHODS = List.of(
+            new PaymentMethod("PUNKTY", 15, bd("100.00")),
+            new PaymentMethod("mZysk", 10, bd("180.00")),
+            new PaymentMethod("BosBankrut", 5, bd("200.00")));
+
+
+    @Test
+    @DisplayName("A monitored solve should give the same plan and record orders, candidates and remaining limits")
+    void optimizePayments_withMetrics_recordsSolve() {
+        OptimizerMetrics metrics = new OptimizerMetrics();
+
+        Map<String, BigDecimal> result = new PaymentOptimizerService(metrics).optimizePayments(ORDERS, PAYMENT_METHODS);
+
+        assertEquals(0, bd("175.00").compareTo(result.get("mZysk")));
+        assertEquals(0, bd("182.50").compareTo(result.get("BosBankrut")));
+        assertEquals(0, bd("100.00").compareTo(result.get("PUNKTY")));
+        assertEquals(1, metrics.getSolves());
+        assertEquals(4, metrics.getOrders());
+        assertEquals(1, metrics.getSolveDuration().getCount());
+        assertEquals(0, metrics.getInfeasibleOrders());
+        // 4 zamowienia x 2 karty bez promocji
+        assertEquals(8, metrics.getCandidatesGenerated(OptimizerMetrics.Generator.CARD_WITHOUT_PROMOTION)
+                + metrics.getCandidatesPruned(OptimizerMetrics.Generator.CARD_WITHOUT_PROMOTION));
+        assertEquals(4, metrics.getCandidatesGenerated(OptimizerMetrics.Generator.FULL_CARD)
+                + metrics.getCandidatesPruned(OptimizerMetrics.Generator.FULL_CARD));
+        assertTrue(metrics.getCandidatesPruned(OptimizerMetrics.Generator.FULL_POINTS) > 0);
+        assertEquals(0.0, metrics.getRemainingLimit("PUNKTY"));
+        assertEquals(5.0, metrics.getRemainingLimit("mZysk"));
+        assertEquals(17.5, metrics.getRemainingLimit("BosBankrut"));
+    }
+
+
+    @Test
+    @DisplayName("An order without any payment option should be counted as infeasible")
+    void optimizePayments_unpayableOrder_countsInfeasible() {
+        OptimizerMetrics metrics = new OptimizerMetrics();
+        PaymentOptimizerService service = new PaymentOptimizerService(metrics);
+        List<Order> orders = List.of(new Order("BIG", bd("500.00"), null));
+        List<PaymentMethod> methods = List.of(new PaymentMethod("mZysk", 10, bd("100.00")));
+
+        assertThrows(RuntimeException.class, () -> service.optimizePayments(orders, methods));
+
+        assertEquals(0, metrics.getSolves());
+        assertEquals(1, metrics.getInfeasibleOrders());
+    }
+
+
+    @Test
+    @DisplayName("The exposition should contain every family with escaped labels and a complete histogram")
+    void writeTo_prometheusText() {
+        OptimizerMetrics metrics = new OptimizerMetrics();
+        metrics.recordCandidates(OptimizerMetrics.Generator.FULL_CARD, 3, 1);
+        metrics.recordSolve(2_000_000, 10, Map.of("karta \"A\"", bd("12.50")));
+        metrics.recordInfeasibleOrder();
+        PrometheusWriter writer = new PrometheusWriter();
+
+        metrics.writeTo(writer);
+        String text = writer.toString();
+
+        assertTrue(text.contains("# TYPE optimizer_solve_duration_seconds histogram\n"), text);
+        assertTrue(text.contains("optimizer_solve_duration_seconds_bucket{le=\"0.001\"} 0\n"), text);
+        assertTrue(text.contains("optimizer_solve_duration_seconds_bucket{le=\"0.0025\"} 1\n"), text);
+        assertTrue(text.contains("optimizer_solve_duration_seconds_bucket{le=\"+Inf\"} 1\n"), text);
+        assertTrue(text.contains("optimizer_solve_duration_seconds_sum 0.002\n"), text);
+        assertTrue(text.contains("optimizer_orders_total 10\n"), text);
+        assertTrue(text.contains("optimizer_infeasible_orders_total 1\n"), text);
+        assertTrue(text.contains("optimizer_candidates_generated_total{generator=\"full_card\"} 1\n"), text);
+        assertTrue(text.contains("optimizer_candidates_pruned_total{generator=\"full_card\"} 2\n"), text);
+        assertTrue(text.contains("optimizer_remaining_limit{method=\"karta \\\"A\\\"\"} 12.5\n"), text);
+    }
+
+
+    @Test
+    @DisplayName("Disabled metrics should record nothing")
+    void disabled_recordsNothing() {
+        OptimizerMetrics metrics = OptimizerMetrics.disabled();
+
+        new PaymentOptimizerService(metrics).optimizePayments(ORDERS, PAYMENT_METHODS);
+
+        assertFalse(metrics.isEnabled());
+        assertEquals(0, metrics.getSolves());
+        assertEquals(0, metrics.getCandidatesGenerated(OptimizerMetrics.Generator.FULL_CARD));
+        assertNull(metrics.getRemainingLimit("mZysk"));
+    }
+}
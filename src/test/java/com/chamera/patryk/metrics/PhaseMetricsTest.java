@@ -0,0 +1,99 @@
+package com.chamera.patryk.metrics;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhaseMetricsTest {
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", bd("100.00"), List.of("mZysk")),
+            new Order("ORDER2", bd("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", bd("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", bd("50.00"), null));
+
+    private static final List<PaymentMethod> PAYMENT_METHODS = List.of(
+            new PaymentMethod("PUNKTY", 15, bd("100.00")),
+            new PaymentMethod("mZysk", 10, bd("180.00")),
+            new PaymentMethod("BosBankrut", 5, bd("200.00")));
+
+
+    @Test
+    @DisplayName("An instrumented run should give the same plan and charge every optimizer phase")
+    void optimizePayments_withMetrics_recordsPhases() {
+        PhaseMetrics metrics = new PhaseMetrics(1);
+
+        Map<String, BigDecimal> totals = new PaymentOptimizerService(metrics).optimizePayments(ORDERS, PAYMENT_METHODS);
+
+        assertEquals(new PaymentOptimizerService().optimizePayments(ORDERS, PAYMENT_METHODS), totals);
+        for (PhaseMetrics.Phase phase : List.of(PhaseMetrics.Phase.INDEX, PhaseMetrics.Phase.SORT, PhaseMetrics.Phase.GREEDY_PASS,
+                PhaseMetrics.Phase.GENERATE_OPTIONS, PhaseMetrics.Phase.APPLY_PAYMENTS, PhaseMetrics.Phase.FINISH_PLAN)) {
+            assertTrue(metrics.getWallNanos(phase) > 0, phase.name());
+        }
+        assertTrue(metrics.getAllocatedBytes(PhaseMetrics.Phase.GENERATE_OPTIONS) > 0);
+        assertTrue(metrics.getWallNanos(PhaseMetrics.Phase.GENERATE_OPTIONS) + metrics.getWallNanos(PhaseMetrics.Phase.APPLY_PAYMENTS)
+                <= metrics.getWallNanos(PhaseMetrics.Phase.GREEDY_PASS));
+        assertEquals(-1, metrics.getCpuNanos(PhaseMetrics.Phase.APPLY_PAYMENTS));
+        assertEquals(4, metrics.getOrderLatency().getCount());
+        assertEquals(0, metrics.getWallNanos(PhaseMetrics.Phase.PARSE));
+    }
+
+    @Test
+    @DisplayName("The JSON summary should list only measured phases and the order latency")
+    void summary_json_listsMeasuredPhases() throws Exception {
+        PhaseMetrics metrics = new PhaseMetrics(1);
+        new PaymentOptimizerService(metrics).optimizePayments(ORDERS, PAYMENT_METHODS);
+
+        JsonNode summary = new ObjectMapper().readTree(metrics.summary(PhaseMetrics.Format.JSON));
+
+        assertTrue(summary.path("phases").has("sort"));
+        assertFalse(summary.path("phases").has("parse"));
+        assertEquals("greedy_pass", summary.path("phases").path("generate_options").path("parent").asText());
+        assertFalse(summary.path("phases").path("generate_options").has("cpuNanos"));
+        assertEquals(4, summary.path("orderLatency").path("sampled").asLong());
+        assertTrue(metrics.summary(PhaseMetrics.Format.TEXT).contains("Order latency (4 orders, 4 sampled)"));
+    }
+
+    @Test
+    @DisplayName("With sampling about one in n orders should be measured")
+    void optimizePayments_sampled_measuresShareOfOrders() {
+        PhaseMetrics metrics = new PhaseMetrics(4);
+        PaymentOptimizerService service = new PaymentOptimizerService(metrics);
+
+        for (int i = 0; i < 250; i++) {
+            service.optimizePayments(ORDERS, PAYMENT_METHODS);
+        }
+
+        assertEquals(1_000, metrics.getOrderCount());
+        assertTrue(metrics.getOrderLatency().getCount() > 150 && metrics.getOrderLatency().getCount() < 350, Long.toString(metrics.getOrderLatency().getCount()));
+        assertTrue(metrics.getWallNanos(PhaseMetrics.Phase.GENERATE_OPTIONS) > 0);
+        assertThrows(IllegalArgumentException.class, () -> new PhaseMetrics(0));
+    }
+
+    @Test
+    @DisplayName("Disabled metrics should record nothing")
+    void disabled_recordsNothing() {
+        PhaseMetrics metrics = PhaseMetrics.disabled();
+
+        new PaymentOptimizerService(metrics).optimizePayments(ORDERS, PAYMENT_METHODS);
+
+        assertFalse(metrics.isEnabled());
+        assertEquals(0, metrics.getWallNanos(PhaseMetrics.Phase.GREEDY_PASS));
+        assertEquals(0, metrics.getOrderLatency().getCount());
+    }
+}
@@ -0,0 +1,58 @@
+package com.chamera.patryk.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedHistogramTest {
+
+    @Test
+    @DisplayName("Durations should land in the first bucket whose bound is not below them, and counts should be cumulative")
+    void record_cumulativeBuckets() {
+        StripedHistogram histogram = new StripedHistogram(10, 100, 1000);
+
+        histogram.record(-5);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(1000);
+        histogram.record(5000);
+
+        assertArrayEquals(new long[]{2, 3, 4, 5}, histogram.getCumulativeCounts());
+        assertEquals(5, histogram.getCount());
+        assertEquals(6021, histogram.getSumNanos());
+    }
+
+
+    @Test
+    @DisplayName("Concurrent recording should not lose durations")
+    void record_concurrently_countsEverything() throws InterruptedException {
+        StripedHistogram histogram = new StripedHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i * 1_000L);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long[] cumulative = histogram.getCumulativeCounts();
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(40_000, cumulative[cumulative.length - 1]);
+    }
+
+
+    @Test
+    @DisplayName("Bounds that are not strictly ascending should be rejected")
+    void constructor_unorderedBounds_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new StripedHistogram(10, 10));
+        assertThrows(IllegalArgumentException.class, () -> new StripedHistogram(new long[0]));
+    }
+}
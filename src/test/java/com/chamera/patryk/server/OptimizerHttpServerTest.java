@@ -0,0 +1,192 @@
+package com.chamera.patryk.server;
+
+import com.chamera.patryk.metrics.OptimizerMetrics;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizerHttpServerTest {
+
+    private static final String PDF_REQUEST = """
+            {"orders": [
+                {"id": "ORDER1", "value": "100.00", "promotions": ["mZysk"]},
+                {"id": "ORDER2", "value": "200.00", "promotions": ["BosBankrut"]},
+                {"id": "ORDER3", "value": "150.00", "promotions": ["mZysk", "BosBankrut"]},
+                {"id": "ORDER4", "value": "50.00"}
+             ],
+             "paymentMethods": [
+                {"id": "PUNKTY", "discount": "15", "limit": "100.00"},
+                {"id": "mZysk", "discount": "10", "limit": "180.00"},
+                {"id": "BosBankrut", "discount": "5", "limit": "200.00"}
+             ]}
+            """;
+
+    private OptimizerHttpServer server;
+    private HttpClient client;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new OptimizerHttpServer(0);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri(OptimizerHttpServer.OPTIMIZE_PATH))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+
+    @Test
+    @DisplayName("POST /optimize should return the totals spent per payment method")
+    void optimize_validRequest_returnsTotals() throws Exception {
+        HttpResponse<String> response = post(PDF_REQUEST);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"mZysk\":175.00"), response.body());
+        assertTrue(response.body().contains("\"BosBankrut\":182.50"), response.body());
+        assertTrue(response.body().contains("\"PUNKTY\":100.00"), response.body());
+    }
+
+    @Test
+    @DisplayName("Concurrent requests should be solved in isolation")
+    void optimize_concurrentRequests_sameResult() {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            HttpRequest request = HttpRequest.newBuilder(uri(OptimizerHttpServer.OPTIMIZE_PATH))
+                    .POST(HttpRequest.BodyPublishers.ofString(PDF_REQUEST))
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        String first = responses.get(0).join().body();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.join().statusCode());
+            assertEquals(first, response.join().body());
+        }
+    }
+
+    @Test
+    @DisplayName("Invalid JSON and empty lists should be rejected with 400")
+    void optimize_invalidRequest_returnsBadRequest() throws Exception {
+        assertEquals(400, post("{not json").statusCode());
+
+        HttpResponse<String> response = post("{\"orders\": [], \"paymentMethods\": [{\"id\": \"PUNKTY\", \"discount\": 10, \"limit\": \"10.00\"}]}");
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("No orders were sent"));
+    }
+
+    @Test
+    @DisplayName("Malformed orders and payment methods should be rejected with 400 before solving")
+    void optimize_malformedOrdersOrMethods_returnsBadRequest() throws Exception {
+        String methods = "\"paymentMethods\": [{\"id\": \"PUNKTY\", \"discount\": 10, \"limit\": \"10.00\"}]";
+        String orders = "\"orders\": [{\"id\": \"O1\", \"value\": \"5.00\"}]";
+
+        List<String> malformed = List.of(
+                "{\"orders\": [{\"value\": \"5.00\"}], " + methods + "}",
+                "{\"orders\": [{\"id\": \"O1\"}], " + methods + "}",
+                "{\"orders\": [{\"id\": \"O1\", \"value\": \"-5.00\"}], " + methods + "}",
+                "{\"orders\": [{\"id\": \"O1\", \"value\": \"5.00\", \"promotions\": [null]}], " + methods + "}",
+                "{" + orders + ", \"paymentMethods\": [{\"discount\": 10, \"limit\": \"10.00\"}]}",
+                "{" + orders + ", \"paymentMethods\": [{\"id\": \"PUNKTY\", \"discount\": 10}]}",
+                "{" + orders + ", \"paymentMethods\": [{\"id\": \"PUNKTY\", \"discount\": 10, \"limit\": \"-1.00\"}]}",
+                "{" + orders + ", \"paymentMethods\": [{\"id\": \"PUNKTY\", \"discount\": 110, \"limit\": \"10.00\"}]}",
+                "{" + orders + ", " + methods.replace("]", ", {\"id\": \"PUNKTY\", \"discount\": 5, \"limit\": \"1.00\"}]") + "}");
+        for (String body : malformed) {
+            HttpResponse<String> response = post(body);
+            assertEquals(400, response.statusCode(), body + " -> " + response.body());
+        }
+        assertEquals(200, post("{" + orders + ", " + methods + "}").statusCode());
+    }
+
+    @Test
+    @DisplayName("A failure of the optimizer other than unpayable orders should be answered with 500")
+    void optimize_optimizerFails_returnsServerError() throws Exception {
+        server.stop();
+        OptimizerMetrics optimizerMetrics = new OptimizerMetrics();
+        server = new OptimizerHttpServer(0, optimizerMetrics, new PaymentOptimizerService(optimizerMetrics) {
+            @Override
+            public Map<String, BigDecimal> optimizePayments(List<Order> orders, List<PaymentMethod> paymentMethods) {
+                throw new IllegalStateException("Error while applying payment limit");
+            }
+        });
+        server.start();
+
+        HttpResponse<String> response = post(PDF_REQUEST);
+
+        assertEquals(500, response.statusCode());
+        assertFalse(response.body().contains("applying payment limit"), response.body());
+    }
+
+    @Test
+    @DisplayName("Orders that cannot be paid should be rejected with 422")
+    void optimize_unpayableOrders_returnsUnprocessable() throws Exception {
+        HttpResponse<String> response = post("{\"orders\": [{\"id\": \"O1\", \"value\": \"500.00\"}],"
+                + " \"paymentMethods\": [{\"id\": \"CARD\", \"discount\": 0, \"limit\": \"10.00\"}]}");
+
+        assertEquals(422, response.statusCode());
+        assertTrue(response.body().contains("O1"));
+    }
+
+    @Test
+    @DisplayName("GET /optimize should be rejected and GET /health should succeed")
+    void methodsAndHealth() throws Exception {
+        HttpResponse<String> optimize = client.send(HttpRequest.newBuilder(uri(OptimizerHttpServer.OPTIMIZE_PATH)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> health = client.send(HttpRequest.newBuilder(uri(OptimizerHttpServer.HEALTH_PATH)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(405, optimize.statusCode());
+        assertEquals(200, health.statusCode());
+    }
+
+    @Test
+    @DisplayName("GET /metrics should count every solved request in the Prometheus text format")
+    void metrics_afterRequests_exposesCounters() throws Exception {
+        post(PDF_REQUEST);
+        post(PDF_REQUEST);
+        post("{\"orders\": [{\"id\": \"O1\", \"value\": \"500.00\"}],"
+                + " \"paymentMethods\": [{\"id\": \"CARD\", \"discount\": 0, \"limit\": \"10.00\"}]}");
+
+        HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(uri(OptimizerHttpServer.METRICS_PATH)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, metrics.statusCode());
+        assertTrue(metrics.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+        String body = metrics.body();
+        assertTrue(body.contains("optimizer_solves_total 2\n"), body);
+        assertTrue(body.contains("optimizer_orders_total 8\n"), body);
+        assertTrue(body.contains("optimizer_infeasible_orders_total 1\n"), body);
+        assertTrue(body.contains("optimizer_remaining_limit{method=\"mZysk\"} 5\n"), body);
+        assertFalse(body.contains("optimizer_cache_"), body);
+        assertTrue(body.contains("optimizer_http_responses_total{status=\"200\"} 2\n"), body);
+        assertTrue(body.contains("optimizer_http_responses_total{status=\"422\"} 1\n"), body);
+        assertTrue(body.contains("optimizer_http_request_duration_seconds_count 3\n"), body);
+    }
+}
@@ -0,0 +1,157 @@
+package com.chamera.patryk.server;
+
+import com.chamera.patryk.exception.ProcessingException;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import com.chamera.patryk.service.PdfExample;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.chamera.patryk.service.PdfExample.pdfOrders;
+import static com.chamera.patryk.service.PdfExample.pdfPaymentMethods;
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnixSocketOptimizerServerTest {
+
+    private static final String POINTS_ID_STRING = PdfExample.POINTS_ID;
+
+    @TempDir
+    Path tempDir;
+
+    private Path socketPath;
+    private UnixSocketOptimizerServer server;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        socketPath = tempDir.resolve("optimizer.sock");
+        server = new UnixSocketOptimizerServer(socketPath);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+    }
+
+
+    @Test
+    @DisplayName("Binary request should return the same totals as the service")
+    void optimizePayments_matchesService() throws Exception {
+        Map<String, BigDecimal> expected = new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        try (UnixSocketOptimizerClient client = new UnixSocketOptimizerClient(socketPath)) {
+            assertEquals(expected, client.optimizePayments(pdfOrders(), pdfPaymentMethods()));
+            // drugie wywolanie korzysta juz z zinternowanych ID
+            assertEquals(expected, client.optimizePayments(pdfOrders(), pdfPaymentMethods()));
+        }
+    }
+
+    @Test
+    @DisplayName("Unpayable orders should be reported as a ProcessingException and keep the connection usable")
+    void optimizePayments_unpayable_throwsProcessingException() throws Exception {
+        try (UnixSocketOptimizerClient client = new UnixSocketOptimizerClient(socketPath)) {
+            ProcessingException exception = assertThrows(ProcessingException.class, () -> client.optimizePayments(
+                    Collections.singletonList(new Order("HUGE", bd("10000.00"), null)), pdfPaymentMethods()));
+            assertTrue(exception.getMessage().contains("HUGE"));
+
+            Map<String, BigDecimal> totals = client.optimizePayments(
+                    Collections.singletonList(new Order("SMALL", bd("10.00"), null)), pdfPaymentMethods());
+            assertEquals(0, bd("8.50").compareTo(totals.get(POINTS_ID_STRING)));
+        }
+    }
+
+    @Test
+    @DisplayName("An invalid request should be rejected like over HTTP instead of being solved, keeping the connection usable")
+    void optimizePayments_negativeValue_rejected() throws Exception {
+        try (UnixSocketOptimizerClient client = new UnixSocketOptimizerClient(socketPath)) {
+            ProcessingException exception = assertThrows(ProcessingException.class, () -> client.optimizePayments(
+                    Collections.singletonList(new Order("NEGATIVE", bd("-5.00"), null)), pdfPaymentMethods()));
+            assertTrue(exception.getMessage().contains("non-negative"), exception.getMessage());
+
+            assertEquals(new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods()),
+                    client.optimizePayments(pdfOrders(), pdfPaymentMethods()));
+        }
+    }
+
+    @Test
+    @DisplayName("Order IDs should be sent inline, so a long-lived connection interns only method and promotion IDs")
+    void optimizePayments_uniqueOrderIds_notInterned() throws Exception {
+        try (UnixSocketOptimizerClient client = new UnixSocketOptimizerClient(socketPath)) {
+            for (int i = 0; i < 50; i++) {
+                List<Order> checkout = Collections.singletonList(new Order("CHECKOUT-" + i, bd("10.00"), Collections.singletonList("mZysk")));
+                assertEquals(new PaymentOptimizerService().optimizePayments(checkout, pdfPaymentMethods()),
+                        client.optimizePayments(checkout, pdfPaymentMethods()));
+            }
+
+            assertEquals(3, client.internedIds());
+        }
+    }
+
+    @Test
+    @DisplayName("Amounts should round-trip as zigzag variable-length cents, small ones in few bytes")
+    void amounts_roundTripAsVarLongs() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        List<BigDecimal> amounts = List.of(bd("0.00"), bd("-5.00"), bd("123.45"), BigDecimal.valueOf(Long.MIN_VALUE, 2), BigDecimal.valueOf(Long.MAX_VALUE, 2));
+        BinaryProtocol.writeAmount(buffer, bd("500.00"));
+        assertEquals(3, buffer.position());
+        buffer.clear();
+
+        for (BigDecimal amount : amounts) {
+            BinaryProtocol.writeAmount(buffer, amount);
+        }
+        buffer.flip();
+        for (BigDecimal amount : amounts) {
+            assertEquals(amount, BinaryProtocol.readAmount(buffer));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    @DisplayName("Large request should be encoded beyond the pooled buffer size")
+    void optimizePayments_largeRequest() throws Exception {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            orders.add(new Order("ORDER_WITH_A_LONG_IDENTIFIER_" + i, bd("1.00"), Collections.singletonList("mZysk")));
+        }
+        List<PaymentMethod> paymentMethods = Collections.singletonList(new PaymentMethod("mZysk", 10, bd("10000.00")));
+
+        try (UnixSocketOptimizerClient client = new UnixSocketOptimizerClient(socketPath)) {
+            Map<String, BigDecimal> totals = client.optimizePayments(orders, paymentMethods);
+            assertEquals(0, bd("4500.00").compareTo(totals.get("mZysk")));
+        }
+    }
+
+    @Test
+    @DisplayName("Malformed request should get an error frame")
+    void malformedRequest_getsErrorFrame() throws Exception {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            ByteBuffer request = ByteBuffer.allocate(5).putInt(1).put((byte) 42).flip();
+            channel.write(request);
+
+            ByteBuffer response = BinaryProtocol.readFrame(channel, ByteBuffer.allocate(256));
+
+            assertNotNull(response);
+            assertEquals(BinaryProtocol.STATUS_ERROR, response.get());
+            assertTrue(BinaryProtocol.readString(response).contains("Unknown request type"));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static com.chamera.patryk.service.PdfExample.pdfOrders;
+import static com.chamera.patryk.service.PdfExample.pdfPaymentMethods;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BeamSearchOptimizerTest {
+
+    private static final String POINTS_ID_STRING = PdfExample.POINTS_ID;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal totalSpent(Map<String, BigDecimal> totalSpentByMethod) {
+        return totalSpentByMethod.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+
+    @Test
+    @DisplayName("Beam width of one gives the same result as the greedy optimizer")
+    void optimizePayments_widthOfOne_matchesGreedy() {
+        Map<String, BigDecimal> greedy = new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods());
+        Map<String, BigDecimal> beam = new BeamSearchOptimizer(1).optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        assertEquals(greedy, beam);
+    }
+
+    @Test
+    @DisplayName("Wide beam never spends more than the greedy optimizer")
+    void optimizePayments_wideBeam_notWorseThanGreedy() {
+        Map<String, BigDecimal> greedy = new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods());
+        Map<String, BigDecimal> beam = new BeamSearchOptimizer(64).optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        assertTrue(totalSpent(beam).compareTo(totalSpent(greedy)) <= 0,
+                "Beam search spent " + totalSpent(beam) + ", greedy spent " + totalSpent(greedy));
+        assertTrue(bd("100.00").compareTo(beam.get(POINTS_ID_STRING)) >= 0);
+        assertTrue(bd("180.00").compareTo(beam.get("mZysk")) >= 0);
+        assertTrue(bd("200.00").compareTo(beam.get("BosBankrut")) >= 0);
+    }
+
+    @Test
+    @DisplayName("Beam keeps a weaker partial plan that can still pay a later order")
+    void optimizePayments_beamAvoidsLateInfeasibility() {
+        List<Order> orders = Arrays.asList(
+                new Order("ORDER1", bd("50.00"), Collections.singletonList("CARD_PROMO")),
+                new Order("ORDER2", bd("100.00"), null)
+        );
+        List<PaymentMethod> paymentMethods = Arrays.asList(
+                new PaymentMethod("CARD_PROMO", 10, bd("100.00")),
+                new PaymentMethod("CARD_SMALL", 0, bd("50.00"))
+        );
+
+        assertThrows(RuntimeException.class, () -> new BeamSearchOptimizer(1).optimizePayments(orders, paymentMethods));
+
+        Map<String, BigDecimal> beam = new BeamSearchOptimizer(2).optimizePayments(orders, paymentMethods);
+
+        assertEquals(0, bd("100.00").compareTo(beam.get("CARD_PROMO")));
+        assertEquals(0, bd("50.00").compareTo(beam.get("CARD_SMALL")));
+    }
+
+    @Test
+    @DisplayName("Should throw RuntimeException if an order cannot be paid")
+    void optimizePayments_cannotPayOrder_throwsException() {
+        List<Order> orders = Collections.singletonList(new Order("ORDER1", bd("100.00"), null));
+        List<PaymentMethod> paymentMethods = Collections.singletonList(new PaymentMethod("CARD_A", 0, bd("10.00")));
+
+        Exception exception = assertThrows(RuntimeException.class,
+                () -> new BeamSearchOptimizer(3).optimizePayments(orders, paymentMethods));
+        assertTrue(exception.getMessage().contains("No possible payment option found for order ORDER1"));
+    }
+
+    @Test
+    @DisplayName("Amounts with more than two decimal places are handled in fixed point without rounding")
+    void optimizePayments_threeDecimalPlaces() {
+        List<Order> orders = Collections.singletonList(new Order("ORDER1", new BigDecimal("10.005"), null));
+        List<PaymentMethod> paymentMethods = Collections.singletonList(new PaymentMethod("CARD_A", 0, new BigDecimal("10.005")));
+
+        Map<String, BigDecimal> beam = new BeamSearchOptimizer(2).optimizePayments(orders, paymentMethods);
+
+        assertEquals(0, new BigDecimal("10.005").compareTo(beam.get("CARD_A")));
+    }
+
+    @Test
+    @DisplayName("Should reject a beam width below one")
+    void constructor_invalidWidth_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new BeamSearchOptimizer(0));
+    }
+}
@@ -0,0 +1,227 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.metrics.PrometheusWriter;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.CachingPaymentOptimizer.CacheStats;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.chamera.patryk.service.PdfExample.pdfOrders;
+import static com.chamera.patryk.service.PdfExample.pdfPaymentMethods;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingPaymentOptimizerTest {
+
+    private static final String POINTS_ID_STRING = PdfExample.POINTS_ID;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static List<Order> singleOrder(String id) {
+        return Collections.singletonList(new Order(id, bd("10.00"), null));
+    }
+
+
+    @Test
+    @DisplayName("Repeated inputs should be answered from the cache, permuted ones solved as given")
+    void optimizePayments_repeatedInput_hitsCache() {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer();
+        Map<String, BigDecimal> expected = new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        assertEquals(expected, cache.optimizePayments(pdfOrders(), pdfPaymentMethods()));
+        assertEquals(expected, cache.optimizePayments(pdfOrders(), pdfPaymentMethods()));
+
+        List<Order> permutedOrders = new ArrayList<>(pdfOrders());
+        Collections.reverse(permutedOrders);
+        assertEquals(new PaymentOptimizerService().optimizePayments(permutedOrders, pdfPaymentMethods()),
+                cache.optimizePayments(permutedOrders, pdfPaymentMethods()));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.misses());
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.entries());
+    }
+
+    @Test
+    @DisplayName("Cached results should equal direct solves of shuffled inputs")
+    void optimizePayments_shuffledInputs_sameAsDirectSolve() {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer();
+        PaymentOptimizerService direct = new PaymentOptimizerService();
+        Random random = new Random(38);
+
+        for (int instance = 0; instance < 300; instance++) {
+            List<PaymentMethod> paymentMethods = new ArrayList<>();
+            paymentMethods.add(new PaymentMethod("PUNKTY", 15, BigDecimal.valueOf(random.nextInt(10_000), 2)));
+            for (int i = 0; i < 3; i++) {
+                paymentMethods.add(new PaymentMethod("C" + i, 5 * random.nextInt(3), BigDecimal.valueOf(20_000 + random.nextInt(20_000), 2)));
+            }
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 2 + random.nextInt(4); i++) {
+                // rowne wartosci, zeby remisy zalezaly od kolejnosci
+                orders.add(new Order("O" + i, BigDecimal.valueOf(50 + 10 * random.nextInt(3)),
+                        new ArrayList<>(List.of("C0", "C1", "C2").subList(0, random.nextInt(4)))));
+            }
+
+            for (int shuffle = 0; shuffle < 4; shuffle++) {
+                Collections.shuffle(orders, random);
+                Collections.shuffle(paymentMethods, random);
+                orders.forEach(order -> Collections.shuffle(order.getPromotions(), random));
+                Map<String, BigDecimal> expected;
+                try {
+                    expected = direct.optimizePayments(orders, paymentMethods);
+                } catch (RuntimeException e) {
+                    assertThrows(RuntimeException.class, () -> cache.optimizePayments(orders, paymentMethods));
+                    continue;
+                }
+                assertEquals(expected, cache.optimizePayments(orders, paymentMethods), "Instance " + instance);
+                assertEquals(expected, cache.optimizePayments(orders, paymentMethods), "Instance " + instance);
+            }
+        }
+        assertTrue(cache.getStats().hits() > 0);
+    }
+
+    @Test
+    @DisplayName("Returned maps should not share state with the cache")
+    void optimizePayments_returnsIndependentCopy() {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer();
+        cache.optimizePayments(pdfOrders(), pdfPaymentMethods()).clear();
+
+        assertEquals(3, cache.optimizePayments(pdfOrders(), pdfPaymentMethods()).size());
+    }
+
+    @Test
+    @DisplayName("Different amounts should not share an entry")
+    void optimizePayments_differentInput_misses() {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer();
+        cache.optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        List<PaymentMethod> otherMethods = new ArrayList<>(pdfPaymentMethods());
+        otherMethods.set(0, new PaymentMethod(POINTS_ID_STRING, 15, bd("99.99")));
+        cache.optimizePayments(pdfOrders(), otherMethods);
+
+        assertEquals(2, cache.getStats().misses());
+        assertEquals(0, cache.getStats().hits());
+    }
+
+    @Test
+    @DisplayName("The least recently used entry should be evicted first")
+    void optimizePayments_evictsLeastRecentlyUsed() {
+        AtomicInteger solves = new AtomicInteger();
+        PaymentOptimizerService service = new PaymentOptimizerService();
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer((orders, methods) -> {
+            solves.incrementAndGet();
+            return service.optimizePayments(orders, methods);
+        }, 2, CachingPaymentOptimizer.DEFAULT_MAX_BYTES);
+
+        cache.optimizePayments(singleOrder("A"), pdfPaymentMethods());
+        cache.optimizePayments(singleOrder("B"), pdfPaymentMethods());
+        cache.optimizePayments(singleOrder("A"), pdfPaymentMethods());
+        cache.optimizePayments(singleOrder("C"), pdfPaymentMethods());
+        assertEquals(3, solves.get());
+
+        cache.optimizePayments(singleOrder("A"), pdfPaymentMethods());
+        assertEquals(3, solves.get());
+        cache.optimizePayments(singleOrder("B"), pdfPaymentMethods());
+        assertEquals(4, solves.get());
+        assertEquals(2, cache.getStats().evictions());
+    }
+
+    @Test
+    @DisplayName("The estimated size of the cached results should stay within the byte bound")
+    void optimizePayments_respectsByteBound() {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer(new PaymentOptimizerService()::optimizePayments, 1_000, 1_000);
+
+        for (int i = 0; i < 20; i++) {
+            cache.optimizePayments(singleOrder("ORDER" + i), pdfPaymentMethods());
+        }
+
+        CacheStats stats = cache.getStats();
+        assertTrue(stats.bytes() <= 1_000);
+        assertTrue(stats.entries() > 0 && stats.entries() < 20);
+        assertEquals(20 - stats.entries(), stats.evictions());
+    }
+
+    @Test
+    @DisplayName("Concurrent identical requests should be solved once")
+    void optimizePayments_concurrentIdenticalRequests_coalesced() throws Exception {
+        AtomicInteger solves = new AtomicInteger();
+        CountDownLatch solveStarted = new CountDownLatch(1);
+        CountDownLatch releaseSolve = new CountDownLatch(1);
+        PaymentOptimizerService service = new PaymentOptimizerService();
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer((orders, methods) -> {
+            solves.incrementAndGet();
+            solveStarted.countDown();
+            try {
+                releaseSolve.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return service.optimizePayments(orders, methods);
+        }, 10, CachingPaymentOptimizer.DEFAULT_MAX_BYTES);
+
+        int callers = 8;
+        try (ExecutorService executor = Executors.newFixedThreadPool(callers)) {
+            List<Future<Map<String, BigDecimal>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.optimizePayments(pdfOrders(), pdfPaymentMethods())));
+            assertTrue(solveStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < callers; i++) {
+                results.add(executor.submit(() -> cache.optimizePayments(pdfOrders(), pdfPaymentMethods())));
+            }
+            while (cache.getStats().coalesced() + cache.getStats().hits() < callers - 1) {
+                Thread.onSpinWait();
+            }
+            releaseSolve.countDown();
+
+            for (Future<Map<String, BigDecimal>> result : results) {
+                assertEquals(0, bd("100.00").compareTo(result.get(5, TimeUnit.SECONDS).get(POINTS_ID_STRING)));
+            }
+        }
+        assertEquals(1, solves.get());
+        assertEquals(1, cache.getStats().misses());
+    }
+
+    @Test
+    @DisplayName("The counters should be exported with the hit ratio and evictions")
+    void stats_writeTo_prometheusText() {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer(new PaymentOptimizerService()::optimizePayments, 1,
+                CachingPaymentOptimizer.DEFAULT_MAX_BYTES);
+        cache.optimizePayments(singleOrder("A"), pdfPaymentMethods());
+        cache.optimizePayments(singleOrder("A"), pdfPaymentMethods());
+        cache.optimizePayments(singleOrder("A"), pdfPaymentMethods());
+        cache.optimizePayments(singleOrder("B"), pdfPaymentMethods());
+        PrometheusWriter writer = new PrometheusWriter();
+
+        cache.getStats().writeTo(writer);
+        String text = writer.toString();
+
+        assertTrue(text.contains("# TYPE optimizer_cache_hits_total counter\n"), text);
+        assertTrue(text.contains("optimizer_cache_hits_total 2\n"), text);
+        assertTrue(text.contains("optimizer_cache_misses_total 2\n"), text);
+        assertTrue(text.contains("optimizer_cache_coalesced_total 0\n"), text);
+        assertTrue(text.contains("optimizer_cache_evictions_total 1\n"), text);
+        assertTrue(text.contains("optimizer_cache_entries 1\n"), text);
+        assertTrue(text.contains("optimizer_cache_hit_ratio 0.5\n"), text);
+    }
+
+    @Test
+    @DisplayName("Failed solves should not be cached")
+    void optimizePayments_failure_notCached() {
+        CachingPaymentOptimizer cache = new CachingPaymentOptimizer();
+        List<Order> unpayable = Collections.singletonList(new Order("HUGE", bd("10000.00"), null));
+
+        assertThrows(RuntimeException.class, () -> cache.optimizePayments(unpayable, pdfPaymentMethods()));
+        assertThrows(RuntimeException.class, () -> cache.optimizePayments(unpayable, pdfPaymentMethods()));
+
+        assertEquals(2, cache.getStats().misses());
+        assertEquals(0, cache.getStats().entries());
+    }
+}
@@ -0,0 +1,144 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.OnlinePaymentOptimizer.Decision;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLimitLedgerTest {
+
+    private static final String POINTS_ID_STRING = "PUNKTY";
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static List<PaymentMethod> paymentMethods() {
+        return Arrays.asList(
+                new PaymentMethod(POINTS_ID_STRING, 15, bd("100.00")),
+                new PaymentMethod("CARD_A", 10, bd("500.00")),
+                new PaymentMethod("CARD_B", 0, bd("300.00"))
+        );
+    }
+
+
+    @Test
+    @DisplayName("Reservation should charge every method or none of them")
+    void tryReserve_allOrNothing() {
+        ConcurrentLimitLedger ledger = new ConcurrentLimitLedger(paymentMethods());
+
+        assertFalse(ledger.tryReserve(Map.of(POINTS_ID_STRING, bd("50.00"), "CARD_B", bd("300.01"))));
+        assertEquals(0, bd("100.00").compareTo(ledger.getRemainingLimit(POINTS_ID_STRING)));
+        assertEquals(0, bd("300.00").compareTo(ledger.getRemainingLimit("CARD_B")));
+        assertTrue(ledger.getTotalSpentByMethod().isEmpty());
+
+        assertTrue(ledger.tryReserve(Map.of(POINTS_ID_STRING, bd("50.00"), "CARD_B", bd("250.00"))));
+        assertEquals(0, bd("50.00").compareTo(ledger.getRemainingLimit(POINTS_ID_STRING)));
+        assertEquals(0, bd("250.00").compareTo(ledger.getTotalSpentByMethod().get("CARD_B")));
+    }
+
+    @Test
+    @DisplayName("Release should give back the reserved limit")
+    void release_givesBackLimit() {
+        ConcurrentLimitLedger ledger = new ConcurrentLimitLedger(paymentMethods());
+        Map<String, BigDecimal> charges = Map.of("CARD_A", bd("120.00"));
+        ledger.tryReserve(charges);
+
+        ledger.release(charges);
+
+        assertEquals(0, bd("500.00").compareTo(ledger.getRemainingLimit("CARD_A")));
+        assertNull(ledger.getTotalSpentByMethod().get("CARD_A"));
+    }
+
+    @Test
+    @DisplayName("Release with an invalid charge should give nothing back, not even the valid charges")
+    void release_invalidCharge_givesNothingBack() {
+        ConcurrentLimitLedger ledger = new ConcurrentLimitLedger(paymentMethods());
+        assertTrue(ledger.tryReserve(Map.of("CARD_A", bd("120.00"), "CARD_B", bd("30.00"))));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ledger.release(Map.of("CARD_A", bd("120.00"), "CARD_B", new BigDecimal("30.001"))));
+        assertThrows(IllegalStateException.class,
+                () -> ledger.release(Map.of("CARD_A", bd("120.00"), "UNKNOWN", bd("1.00"))));
+
+        assertEquals(0, bd("380.00").compareTo(ledger.getRemainingLimit("CARD_A")));
+        assertEquals(0, bd("270.00").compareTo(ledger.getRemainingLimit("CARD_B")));
+        assertEquals(0, bd("120.00").compareTo(ledger.getTotalSpentByMethod().get("CARD_A")));
+        assertEquals(0, bd("30.00").compareTo(ledger.getTotalSpentByMethod().get("CARD_B")));
+    }
+
+    @Test
+    @DisplayName("Settling should reserve the best option of the order")
+    void settle_reservesBestOption() {
+        ConcurrentLimitLedger ledger = new ConcurrentLimitLedger(paymentMethods());
+
+        Decision decision = ledger.settle(new Order("ORDER1", bd("100.00"), Collections.singletonList("CARD_A")));
+
+        assertEquals(0, bd("15.00").compareTo(decision.discount()));
+        assertEquals(0, bd("85.00").compareTo(ledger.getTotalSpentByMethod().get(POINTS_ID_STRING)));
+        assertThrows(RuntimeException.class, () -> ledger.settle(new Order("HUGE", bd("10000.00"), null)));
+    }
+
+    @Test
+    @DisplayName("Amounts finer than the ledger should be rejected clearly, and a ledger built with the orders should settle them")
+    void settle_finerOrderValue_rejectedUnlessLedgerKnowsOrders() {
+        Order order = new Order("ORDER1", new BigDecimal("100.005"), Collections.singletonList("CARD_A"));
+        ConcurrentLimitLedger ledger = new ConcurrentLimitLedger(paymentMethods());
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> ledger.settle(order));
+        assertTrue(exception.getMessage().contains("100.005"), exception.getMessage());
+        assertThrows(IllegalArgumentException.class,
+                () -> ledger.tryReserve(Map.of(POINTS_ID_STRING, bd("50.00"), "CARD_B", new BigDecimal("1.001"))));
+        assertEquals(0, bd("100.00").compareTo(ledger.getRemainingLimit(POINTS_ID_STRING)));
+        assertTrue(ledger.tryReserve(Map.of("CARD_B", new BigDecimal("1.000"))));
+
+        ConcurrentLimitLedger precise = new ConcurrentLimitLedger(paymentMethods(), List.of(order));
+        Decision decision = precise.settle(order);
+        BigDecimal charged = decision.charges().values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, new BigDecimal("100.005").compareTo(charged.add(decision.discount())));
+    }
+
+    @Test
+    @DisplayName("Concurrent reservations should never overdraw a limit")
+    void tryReserve_concurrent_neverOverdraws() throws Exception {
+        ConcurrentLimitLedger ledger = new ConcurrentLimitLedger(paymentMethods());
+        int threads = 8;
+        int attemptsPerThread = 2_000;
+        AtomicInteger successes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    if (ledger.tryReserve(Map.of(POINTS_ID_STRING, bd("0.10"), "CARD_B", bd("0.20")))) {
+                        successes.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(1000, successes.get());
+        assertEquals(0, BigDecimal.ZERO.compareTo(ledger.getRemainingLimit(POINTS_ID_STRING)));
+        assertEquals(0, bd("100.00").compareTo(ledger.getRemainingLimit("CARD_B")));
+        assertEquals(0, bd("200.00").compareTo(ledger.getTotalSpentByMethod().get("CARD_B")));
+    }
+}
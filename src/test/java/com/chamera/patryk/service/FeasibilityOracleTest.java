@@ -0,0 +1,89 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeasibilityOracleTest {
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static PaymentOption cardOption(String discount, String cardId, String amount) {
+        return new PaymentOption(bd(discount), BigDecimal.ZERO, new HashMap<>(Map.of(cardId, bd(amount))));
+    }
+
+    private static BigDecimal[] values(List<Order> orders) {
+        return orders.stream().map(Order::getValue).toArray(BigDecimal[]::new);
+    }
+
+
+    @Test
+    @DisplayName("Preferred option is kept when it leaves room for the remaining orders")
+    void choose_preferredKeepsCertificate_returnsPreferred() {
+        List<Order> orders = List.of(new Order("O1", bd("50.00"), null), new Order("O2", bd("50.00"), null));
+        Map<String, BigDecimal> limits = new HashMap<>(Map.of("CARD_A", bd("100.00"), "CARD_B", bd("50.00")));
+        FeasibilityOracle oracle = new FeasibilityOracle(orders, values(orders), limits, true);
+        PaymentOption preferred = cardOption("5.00", "CARD_A", "45.00");
+
+        PaymentOption chosen = oracle.choose(0, List.of(preferred, cardOption("0.00", "CARD_B", "50.00")), limits);
+
+        assertSame(preferred, chosen);
+        assertTrue(oracle.hasCertificate());
+    }
+
+    @Test
+    @DisplayName("Option that makes the remaining orders unpayable is rejected in favour of one that keeps a certificate")
+    void choose_preferredBreaksFeasibility_returnsAlternative() {
+        List<Order> orders = List.of(new Order("O1", bd("50.00"), null), new Order("O2", bd("100.00"), null));
+        Map<String, BigDecimal> limits = new HashMap<>(Map.of("CARD_A", bd("100.00"), "CARD_B", bd("50.00")));
+        FeasibilityOracle oracle = new FeasibilityOracle(orders, values(orders), limits, true);
+        PaymentOption alternative = cardOption("0.00", "CARD_B", "50.00");
+
+        PaymentOption chosen = oracle.choose(0, List.of(cardOption("5.00", "CARD_A", "45.00"), alternative), limits);
+
+        assertSame(alternative, chosen);
+        assertTrue(oracle.hasCertificate());
+    }
+
+    @Test
+    @DisplayName("Without any certificate the first option passing the aggregate limit check is chosen")
+    void choose_noCertificate_usesAggregateCheck() {
+        List<Order> orders = List.of(new Order("O1", bd("55.00"), null), new Order("O2", bd("100.00"), null));
+        Map<String, BigDecimal> limits = new HashMap<>(Map.of("CARD_A", bd("55.00"), "CARD_B", bd("55.00"), "PUNKTY", bd("30.00")));
+        BigDecimal[] minimumPayments = {bd("45.00"), bd("90.00")};
+        FeasibilityOracle oracle = new FeasibilityOracle(orders, minimumPayments, limits, true);
+        PaymentOption tooExpensive = cardOption("0.00", "CARD_A", "55.00");
+        PaymentOption cheaper = cardOption("10.00", "CARD_B", "45.00");
+
+        assertFalse(oracle.hasCertificate());
+        assertSame(cheaper, oracle.choose(0, List.of(tooExpensive, cheaper), limits));
+    }
+
+    @Test
+    @DisplayName("Without the certificate only an option the aggregate check proves infeasible is rejected")
+    void choose_withoutCertificate_vetoesOnlyProvenInfeasibility() {
+        List<Order> orders = List.of(new Order("O1", bd("50.00"), null), new Order("O2", bd("100.00"), null));
+        Map<String, BigDecimal> limits = new HashMap<>(Map.of("CARD_A", bd("100.00"), "CARD_B", bd("50.00")));
+        PaymentOption preferred = cardOption("5.00", "CARD_A", "45.00");
+
+        FeasibilityOracle oracle = new FeasibilityOracle(orders, values(orders), limits, false);
+
+        assertFalse(oracle.hasCertificate());
+        assertSame(preferred, oracle.choose(0, List.of(preferred, cardOption("0.00", "CARD_B", "50.00")), limits));
+
+        BigDecimal[] minimumPayments = {bd("50.00"), bd("110.00")};
+        PaymentOption alternative = cardOption("0.00", "CARD_B", "40.00");
+        oracle = new FeasibilityOracle(orders, minimumPayments, limits, false);
+
+        assertSame(alternative, oracle.choose(0, List.of(preferred, alternative), limits));
+    }
+}
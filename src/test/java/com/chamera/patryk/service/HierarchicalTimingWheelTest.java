@@ -0,0 +1,81 @@
+package com.chamera.patryk.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+
+    @Test
+    @DisplayName("Every hold should come due exactly at its deadline tick")
+    void advanceTo_holdsDueAtDeadline() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(7);
+        Random random = new Random(42);
+        List<Hold> holds = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = 8 + (i % 3 == 0 ? random.nextInt(100) : random.nextInt(400_000));
+            Hold hold = new Hold(i, Collections.emptyMap(), deadline, 0);
+            holds.add(hold);
+            wheel.add(hold);
+        }
+
+        Map<Long, Long> dueTicks = new HashMap<>();
+        for (long tick = 8; tick <= 400_010; tick++) {
+            long currentTick = tick;
+            wheel.advanceTo(tick, hold -> {
+                dueTicks.put(hold.getId(), currentTick);
+                return true;
+            });
+        }
+
+        assertEquals(0, wheel.size());
+        for (Hold hold : holds) {
+            assertEquals(hold.deadlineTick, dueTicks.get(hold.getId()), "Hold " + hold.getId());
+        }
+    }
+
+    @Test
+    @DisplayName("Advancing in one step should report every due hold")
+    void advanceTo_largeStep_reportsAllDue() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(0);
+        wheel.add(new Hold(1, Collections.emptyMap(), 5, 0));
+        wheel.add(new Hold(2, Collections.emptyMap(), 70_000, 0));
+        wheel.add(new Hold(3, Collections.emptyMap(), 90_000, 0));
+
+        assertEquals(2, wheel.advanceTo(80_000, hold -> true));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    @DisplayName("Removed holds should never come due, whatever their place in a slot or level")
+    void remove_holdsNeverComeDue() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(0);
+        Random random = new Random(7);
+        List<Hold> holds = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            Hold hold = new Hold(i, Collections.emptyMap(), 1 + random.nextInt(i % 2 == 0 ? 64 : 300_000), 0);
+            holds.add(hold);
+            wheel.add(hold);
+        }
+        Set<Long> removed = new HashSet<>();
+        for (Hold hold : holds) {
+            if (hold.getId() % 3 != 0) {
+                assertTrue(wheel.remove(hold));
+                removed.add(hold.getId());
+            }
+        }
+        assertFalse(wheel.remove(holds.get(1)));
+        assertEquals(1_000, wheel.size());
+
+        Set<Long> due = new HashSet<>();
+        wheel.advanceTo(300_001, hold -> due.add(hold.getId()));
+
+        assertEquals(1_000, due.size());
+        assertTrue(Collections.disjoint(due, removed));
+        assertEquals(0, wheel.size());
+        assertFalse(wheel.remove(holds.get(0)));
+    }
+}
@@ -0,0 +1,143 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.PaymentMethod;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldManagerTest {
+
+    private static final String POINTS_ID_STRING = "PUNKTY";
+
+    private AtomicLong clock;
+    private ConcurrentLimitLedger ledger;
+    private HoldManager holdManager;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private void advanceMillis(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(1_000_000);
+        ledger = new ConcurrentLimitLedger(Arrays.asList(
+                new PaymentMethod(POINTS_ID_STRING, 15, bd("100.00")),
+                new PaymentMethod("CARD", 0, bd("500.00"))
+        ));
+        holdManager = new HoldManager(ledger, 1, clock::get, false);
+    }
+
+
+    @Test
+    @DisplayName("Committed hold should keep its charges after the TTL")
+    void commit_keepsCharges() {
+        Hold hold = holdManager.reserve(Map.of(POINTS_ID_STRING, bd("10.00"), "CARD", bd("80.00")), 100);
+        assertEquals(0, bd("90.00").compareTo(ledger.getRemainingLimit(POINTS_ID_STRING)));
+
+        assertTrue(holdManager.commit(hold));
+        advanceMillis(1_000);
+
+        assertEquals(0, holdManager.expireHolds());
+        assertEquals(Hold.State.COMMITTED, hold.getState());
+        assertEquals(0, bd("420.00").compareTo(ledger.getRemainingLimit("CARD")));
+        assertFalse(holdManager.release(hold));
+    }
+
+    @Test
+    @DisplayName("Released hold should give its limits back exactly once")
+    void release_givesBackOnce() {
+        Hold hold = holdManager.reserve(Map.of("CARD", bd("80.00")), 100);
+
+        assertTrue(holdManager.release(hold));
+        assertFalse(holdManager.release(hold));
+        assertFalse(holdManager.commit(hold));
+        assertEquals(0, bd("500.00").compareTo(ledger.getRemainingLimit("CARD")));
+    }
+
+    @Test
+    @DisplayName("Hold should expire one tick after its TTL at the latest")
+    void expireHolds_releasesExpiredHold() {
+        Hold hold = holdManager.reserve(Map.of("CARD", bd("80.00")), 50);
+
+        advanceMillis(49);
+        assertEquals(0, holdManager.expireHolds());
+        assertEquals(Hold.State.HELD, hold.getState());
+
+        advanceMillis(2);
+        assertEquals(1, holdManager.expireHolds());
+        assertEquals(Hold.State.EXPIRED, hold.getState());
+        assertEquals(0, bd("500.00").compareTo(ledger.getRemainingLimit("CARD")));
+        assertFalse(holdManager.commit(hold));
+    }
+
+    @Test
+    @DisplayName("Long TTL should be cascaded down the wheel levels and expire on time")
+    void expireHolds_longTtl_cascadesAcrossLevels() {
+        Hold hold = holdManager.reserve(Map.of("CARD", bd("1.00")), 300_000);
+
+        advanceMillis(299_990);
+        assertEquals(0, holdManager.expireHolds());
+        advanceMillis(11);
+        assertEquals(1, holdManager.expireHolds());
+        assertEquals(Hold.State.EXPIRED, hold.getState());
+    }
+
+    @Test
+    @DisplayName("Committed and released holds should leave the timing wheel at once, not at their deadline")
+    void commitAndRelease_removeHoldsFromWheel() {
+        List<Hold> holds = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            holds.add(holdManager.reserve(Map.of("CARD", bd("1.00")), 60_000));
+        }
+        assertEquals(300, holdManager.pendingHolds());
+
+        for (int i = 0; i < 300; i++) {
+            if (i % 3 == 0) {
+                assertTrue(holdManager.commit(holds.get(i)));
+            } else if (i % 3 == 1) {
+                assertTrue(holdManager.release(holds.get(i)));
+            }
+        }
+
+        assertEquals(100, holdManager.pendingHolds());
+        advanceMillis(60_001);
+        assertEquals(100, holdManager.expireHolds());
+        assertEquals(0, holdManager.pendingHolds());
+        assertEquals(0, bd("400.00").compareTo(ledger.getRemainingLimit("CARD")));
+    }
+
+    @Test
+    @DisplayName("Close should wait for the reaper thread, leaving open holds held")
+    void close_joinsReaper() {
+        HoldManager withReaper = new HoldManager(ledger, 1, System::nanoTime, true);
+        Hold hold = withReaper.reserve(Map.of("CARD", bd("50.00")), 60_000);
+        assertTrue(withReaper.isReaperAlive());
+
+        withReaper.close();
+
+        assertFalse(withReaper.isReaperAlive());
+        assertEquals(Hold.State.HELD, hold.getState());
+        assertEquals(0, bd("450.00").compareTo(ledger.getRemainingLimit("CARD")));
+    }
+
+    @Test
+    @DisplayName("Reserve should return null and hold nothing if a limit is insufficient")
+    void reserve_insufficientLimit_returnsNull() {
+        assertNull(holdManager.reserve(Map.of(POINTS_ID_STRING, bd("10.00"), "CARD", bd("600.00")), 100));
+        assertEquals(0, bd("100.00").compareTo(ledger.getRemainingLimit(POINTS_ID_STRING)));
+        assertThrows(IllegalArgumentException.class, () -> holdManager.reserve(Map.of("CARD", bd("1.00")), 0));
+    }
+}
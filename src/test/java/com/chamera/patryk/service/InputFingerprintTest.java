@@ -0,0 +1,98 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputFingerprintTest {
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static List<Order> orders() {
+        return Arrays.asList(
+                new Order("ORDER1", bd("100.00"), Collections.singletonList("mZysk")),
+                new Order("ORDER2", bd("150.00"), Arrays.asList("mZysk", "BosBankrut")),
+                new Order("ORDER3", bd("50.00"), null)
+        );
+    }
+
+    private static List<PaymentMethod> paymentMethods() {
+        return Arrays.asList(
+                new PaymentMethod("PUNKTY", 15, bd("100.00")),
+                new PaymentMethod("mZysk", 10, bd("180.00"))
+        );
+    }
+
+
+    @Test
+    @DisplayName("Permuted orders, methods and promotions should have the same fingerprint")
+    void of_permutedInput_sameFingerprint() {
+        List<Order> permutedOrders = new ArrayList<>(orders());
+        Collections.reverse(permutedOrders);
+        permutedOrders.set(1, new Order("ORDER2", bd("150.00"), Arrays.asList("BosBankrut", "mZysk")));
+        List<PaymentMethod> permutedMethods = new ArrayList<>(paymentMethods());
+        Collections.reverse(permutedMethods);
+
+        assertEquals(InputFingerprint.of(orders(), paymentMethods()), InputFingerprint.of(permutedOrders, permutedMethods));
+    }
+
+    @Test
+    @DisplayName("The order-sensitive fingerprint should change with the order of orders, methods and promotions")
+    void ofSequence_permutedInput_differentFingerprint() {
+        List<Order> reversedOrders = new ArrayList<>(orders());
+        Collections.reverse(reversedOrders);
+        List<PaymentMethod> reversedMethods = new ArrayList<>(paymentMethods());
+        Collections.reverse(reversedMethods);
+        List<Order> reorderedPromotions = new ArrayList<>(orders());
+        reorderedPromotions.set(1, new Order("ORDER2", bd("150.00"), Arrays.asList("BosBankrut", "mZysk")));
+
+        InputFingerprint original = InputFingerprint.ofSequence(orders(), paymentMethods());
+        assertEquals(original, InputFingerprint.ofSequence(orders(), paymentMethods()));
+        assertNotEquals(original, InputFingerprint.ofSequence(reversedOrders, paymentMethods()));
+        assertNotEquals(original, InputFingerprint.ofSequence(orders(), reversedMethods));
+        assertNotEquals(original, InputFingerprint.ofSequence(reorderedPromotions, paymentMethods()));
+        assertNotEquals(original, InputFingerprint.of(orders(), paymentMethods()));
+    }
+
+    @Test
+    @DisplayName("Duplicated orders and different scales should change the fingerprint")
+    void of_multisetAndScale_distinguished() {
+        List<Order> duplicated = new ArrayList<>(orders());
+        duplicated.add(orders().get(2));
+        List<Order> rescaled = new ArrayList<>(orders());
+        rescaled.set(2, new Order("ORDER3", new BigDecimal("50.0"), null));
+
+        InputFingerprint original = InputFingerprint.of(orders(), paymentMethods());
+        assertNotEquals(original, InputFingerprint.of(duplicated, paymentMethods()));
+        assertNotEquals(original, InputFingerprint.of(rescaled, paymentMethods()));
+    }
+
+    @Test
+    @DisplayName("Solver configuration should be part of the key")
+    void withConfiguration_differentSolvers_differentFingerprints() {
+        InputFingerprint input = InputFingerprint.of(orders(), paymentMethods());
+
+        assertEquals(input.withConfiguration("greedy-v1"), input.withConfiguration("greedy-v1"));
+        assertNotEquals(input.withConfiguration("greedy-v1"), input.withConfiguration("beam-8"));
+        assertEquals(32, input.toHex().length());
+    }
+
+    @Test
+    @DisplayName("MurmurHash3 should match the reference x64 128-bit implementation")
+    void ofBytes_referenceVector() {
+        InputFingerprint hash = InputFingerprint.ofBytes("hello".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0xcbd8a7b341bd9b02L, hash.high());
+        assertEquals(0x5b1e906a48ae1d19L, hash.low());
+    }
+}
@@ -0,0 +1,122 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitLedgerTest {
+
+    private static final String POINTS_ID_STRING = "PUNKTY";
+
+    private LimitLedger ledger;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static PaymentOption option(Map<String, BigDecimal> charges) {
+        return new PaymentOption(BigDecimal.ZERO, charges.getOrDefault(POINTS_ID_STRING, BigDecimal.ZERO), charges);
+    }
+
+    @BeforeEach
+    void setUp() {
+        ledger = new LimitLedger(Arrays.asList(
+                new PaymentMethod("CARD_A", 10, bd("100.00")),
+                new PaymentMethod(POINTS_ID_STRING, 15, bd("50.00"))
+        ));
+    }
+
+
+    @Test
+    @DisplayName("apply should update remaining limits and spent totals")
+    void apply_updatesLimitsAndSpent() {
+        ledger.apply(option(Map.of("CARD_A", bd("30.00"), POINTS_ID_STRING, bd("10.00"))));
+
+        assertEquals(0, bd("70.00").compareTo(ledger.remainingLimit("CARD_A")));
+        assertEquals(0, bd("40.00").compareTo(ledger.remainingLimits().get(POINTS_ID_STRING)));
+        assertEquals(0, bd("30.00").compareTo(ledger.totalSpentByMethod().get("CARD_A")));
+    }
+
+    @Test
+    @DisplayName("apply should throw and change nothing if any limit is insufficient")
+    void apply_insufficientLimit_throwsAndKeepsState() {
+        assertThrows(IllegalStateException.class,
+                () -> ledger.apply(option(Map.of("CARD_A", bd("30.00"), POINTS_ID_STRING, bd("60.00")))));
+
+        assertEquals(0, bd("100.00").compareTo(ledger.remainingLimit("CARD_A")));
+        assertTrue(ledger.totalSpentByMethod().isEmpty());
+    }
+
+    @Test
+    @DisplayName("rollback should restore the state of nested checkpoints")
+    void rollback_nestedCheckpoints() {
+        int outer = ledger.checkpoint();
+        ledger.apply(option(Map.of("CARD_A", bd("30.00"))));
+        int inner = ledger.checkpoint();
+        ledger.apply(option(Map.of("CARD_A", bd("20.00"), POINTS_ID_STRING, bd("5.00"))));
+
+        ledger.rollback(inner);
+        assertEquals(0, bd("70.00").compareTo(ledger.remainingLimit("CARD_A")));
+        assertEquals(0, bd("50.00").compareTo(ledger.remainingLimit(POINTS_ID_STRING)));
+        assertNull(ledger.totalSpentByMethod().get(POINTS_ID_STRING));
+
+        ledger.rollback(outer);
+        assertEquals(0, bd("100.00").compareTo(ledger.remainingLimit("CARD_A")));
+        assertTrue(ledger.totalSpentByMethod().isEmpty());
+    }
+
+    @Test
+    @DisplayName("rollback should reject a checkpoint beyond the trail")
+    void rollback_invalidCheckpoint_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> ledger.rollback(1));
+    }
+
+    @Test
+    @DisplayName("release should give back the charges of an applied option")
+    void release_givesBackCharges() {
+        PaymentOption applied = option(Map.of("CARD_A", bd("30.00")));
+        ledger.apply(applied);
+
+        ledger.release(applied);
+
+        assertEquals(0, bd("100.00").compareTo(ledger.remainingLimit("CARD_A")));
+        assertEquals(0, bd("0.00").compareTo(ledger.totalSpentByMethod().get("CARD_A")));
+        assertThrows(IllegalStateException.class, () -> ledger.release(applied));
+    }
+
+    @Test
+    @DisplayName("snapshot should be isolated from later changes in both directions")
+    void snapshot_isCopyOnWrite() {
+        ledger.apply(option(Map.of("CARD_A", bd("30.00"))));
+        LimitLedger branch = ledger.snapshot();
+
+        branch.apply(option(Map.of("CARD_A", bd("20.00"))));
+        ledger.apply(option(Map.of(POINTS_ID_STRING, bd("10.00"))));
+
+        assertEquals(0, bd("70.00").compareTo(ledger.remainingLimit("CARD_A")));
+        assertEquals(0, bd("40.00").compareTo(ledger.remainingLimit(POINTS_ID_STRING)));
+        assertEquals(0, bd("50.00").compareTo(branch.remainingLimit("CARD_A")));
+        assertEquals(0, bd("50.00").compareTo(branch.remainingLimit(POINTS_ID_STRING)));
+    }
+
+    @Test
+    @DisplayName("remainingLimits view should stay live after the ledger copies its maps")
+    void remainingLimitsView_staysLiveAfterSnapshot() {
+        Map<String, BigDecimal> view = ledger.remainingLimits();
+        ledger.snapshot();
+
+        ledger.apply(option(Map.of("CARD_A", bd("30.00"))));
+
+        assertEquals(0, bd("70.00").compareTo(view.get("CARD_A")));
+        assertThrows(UnsupportedOperationException.class, () -> view.put("CARD_A", BigDecimal.ONE));
+    }
+}
@@ -0,0 +1,127 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.MicroBatchOptimizer.BatchStats;
+import com.chamera.patryk.service.OnlinePaymentOptimizer.Decision;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.chamera.patryk.service.PdfExample.pdfOrders;
+import static com.chamera.patryk.service.PdfExample.pdfPaymentMethods;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatchOptimizerTest {
+
+    private static final String POINTS_ID_STRING = PdfExample.POINTS_ID;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+
+    @Test
+    @DisplayName("Every submitted order should be paid in full within the limits")
+    void submit_allOrdersPaid() throws Exception {
+        List<CompletableFuture<Decision>> results = new ArrayList<>();
+        MicroBatchOptimizer optimizer = new MicroBatchOptimizer(pdfPaymentMethods(), 5, 16);
+        for (Order order : pdfOrders()) {
+            results.add(optimizer.submit(order));
+        }
+        optimizer.close();
+
+        BigDecimal paidPlusDiscount = BigDecimal.ZERO;
+        for (CompletableFuture<Decision> result : results) {
+            Decision decision = result.get(5, TimeUnit.SECONDS);
+            paidPlusDiscount = paidPlusDiscount.add(decision.discount());
+            for (BigDecimal charge : decision.charges().values()) {
+                paidPlusDiscount = paidPlusDiscount.add(charge);
+            }
+        }
+        assertEquals(0, bd("500.00").compareTo(paidPlusDiscount));
+
+        Map<String, BigDecimal> totals = optimizer.getTotalSpentByMethod();
+        assertTrue(bd("100.00").compareTo(totals.getOrDefault(POINTS_ID_STRING, BigDecimal.ZERO)) >= 0);
+        assertTrue(bd("180.00").compareTo(totals.getOrDefault("mZysk", BigDecimal.ZERO)) >= 0);
+        assertTrue(bd("200.00").compareTo(totals.getOrDefault("BosBankrut", BigDecimal.ZERO)) >= 0);
+        assertTrue(optimizer.getLatencyPercentileNanos(99) > 0);
+    }
+
+    @Test
+    @DisplayName("A full batch should be solved without waiting for the window")
+    void submit_fullBatch_solvedBeforeWindow() throws Exception {
+        List<BatchStats> batches = new CopyOnWriteArrayList<>();
+        MicroBatchOptimizer optimizer = new MicroBatchOptimizer(pdfPaymentMethods(), 60_000, 2, batches::add);
+
+        CompletableFuture<Decision> first = optimizer.submit(pdfOrders().get(0));
+        CompletableFuture<Decision> second = optimizer.submit(pdfOrders().get(1));
+
+        assertNotNull(first.get(10, TimeUnit.SECONDS));
+        assertNotNull(second.get(10, TimeUnit.SECONDS));
+        optimizer.close();
+        assertEquals(2, batches.get(0).size());
+        assertTrue(batches.get(0).solveNanos() > 0);
+    }
+
+    @Test
+    @DisplayName("An unpayable order should fail only its own future")
+    void submit_unpayableOrder_failsOnlyItsFuture() throws Exception {
+        MicroBatchOptimizer optimizer = new MicroBatchOptimizer(pdfPaymentMethods(), 5, 16);
+        CompletableFuture<Decision> unpayable = optimizer.submit(new Order("HUGE", bd("10000.00"), null));
+        CompletableFuture<Decision> payable = optimizer.submit(pdfOrders().get(3));
+        optimizer.close();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> unpayable.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause().getMessage().contains("HUGE"));
+        assertEquals("ORDER4", payable.get(5, TimeUnit.SECONDS).orderId());
+    }
+
+    @Test
+    @DisplayName("An order making the solver throw should fail only its own future and keep the worker running")
+    void submit_solverThrows_failsOnlyAffectedFuture() throws Exception {
+        MicroBatchOptimizer optimizer = new MicroBatchOptimizer(pdfPaymentMethods(), 60_000, 2);
+        CompletableFuture<Decision> broken = optimizer.submit(new Order("BROKEN", null, null));
+        CompletableFuture<Decision> sameBatch = optimizer.submit(pdfOrders().get(3));
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> broken.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(NullPointerException.class, exception.getCause());
+        assertEquals("ORDER4", sameBatch.get(5, TimeUnit.SECONDS).orderId());
+
+        CompletableFuture<Decision> later = optimizer.submit(pdfOrders().get(0));
+        optimizer.close();
+        assertEquals("ORDER1", later.get(5, TimeUnit.SECONDS).orderId());
+
+        // limity obciazone tylko przez zaplacone zamowienia
+        BigDecimal charged = BigDecimal.ZERO;
+        for (Decision decision : List.of(sameBatch.get(), later.get())) {
+            charged = charged.add(decision.charges().values().stream().reduce(BigDecimal.ZERO, BigDecimal::add));
+        }
+        BigDecimal spent = optimizer.getTotalSpentByMethod().values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, charged.compareTo(spent));
+    }
+
+    @Test
+    @DisplayName("Submitting after close should throw an exception")
+    void submit_afterClose_throwsException() {
+        MicroBatchOptimizer optimizer = new MicroBatchOptimizer(pdfPaymentMethods(), 5, 16);
+        optimizer.close();
+
+        assertThrows(IllegalStateException.class, () -> optimizer.submit(pdfOrders().get(0)));
+    }
+
+    @Test
+    @DisplayName("Invalid parameters should be rejected")
+    void constructor_invalidParameters_throwException() {
+        assertThrows(IllegalArgumentException.class, () -> new MicroBatchOptimizer(pdfPaymentMethods(), -1, 16));
+        assertThrows(IllegalArgumentException.class, () -> new MicroBatchOptimizer(pdfPaymentMethods(), 5, 0));
+    }
+}
@@ -0,0 +1,105 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.OnlinePaymentOptimizer.Decision;
+import com.chamera.patryk.service.OnlinePaymentOptimizer.DiscountComparison;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OnlinePaymentOptimizerTest {
+
+    private static final String POINTS_ID_STRING = "PUNKTY";
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static List<PaymentMethod> paymentMethods() {
+        return Arrays.asList(
+                new PaymentMethod(POINTS_ID_STRING, 30, bd("70.00")),
+                new PaymentMethod("CARD", 0, bd("1000.00"))
+        );
+    }
+
+    private static Order smallOrder() {
+        return new Order("SMALL", bd("200.00"), null);
+    }
+
+    private static Order bigOrder() {
+        return new Order("BIG", bd("100.00"), null);
+    }
+
+
+    @Test
+    @DisplayName("Without a forecast every order should get its best option")
+    void decide_noForecast_takesBestOption() {
+        OnlinePaymentOptimizer optimizer = new OnlinePaymentOptimizer(paymentMethods(), Collections.emptyList());
+
+        Decision small = optimizer.decide(smallOrder());
+        Decision big = optimizer.decide(bigOrder());
+
+        assertEquals(0, bd("20.00").compareTo(small.discount()));
+        assertEquals(0, bd("70.00").compareTo(small.charges().get(POINTS_ID_STRING)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(big.discount()));
+        assertEquals(0, bd("20.00").compareTo(optimizer.getTotalDiscount()));
+    }
+
+    @Test
+    @DisplayName("Points should be reserved for the higher-rate use expected by the forecast")
+    void decide_withForecast_reservesPoints() {
+        OnlinePaymentOptimizer optimizer = new OnlinePaymentOptimizer(paymentMethods(), Collections.singletonList(bigOrder()));
+
+        Decision small = optimizer.decide(smallOrder());
+        Decision big = optimizer.decide(bigOrder());
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(small.discount()));
+        assertEquals(0, bd("200.00").compareTo(small.charges().get("CARD")));
+        assertEquals(0, bd("30.00").compareTo(big.discount()));
+        assertEquals(0, bd("70.00").compareTo(optimizer.getTotalSpentByMethod().get(POINTS_ID_STRING)));
+    }
+
+    @Test
+    @DisplayName("Reserved limit should still be used when no other option can pay the order")
+    void decide_noUnreservedOption_usesReservedLimit() {
+        List<PaymentMethod> paymentMethods = Arrays.asList(
+                new PaymentMethod(POINTS_ID_STRING, 30, bd("70.00")),
+                new PaymentMethod("CARD", 0, bd("50.00"))
+        );
+        OnlinePaymentOptimizer optimizer = new OnlinePaymentOptimizer(paymentMethods, Collections.singletonList(bigOrder()));
+
+        Decision decision = optimizer.decide(new Order("MEDIUM", bd("120.00"), null));
+
+        assertEquals(0, bd("70.00").compareTo(decision.charges().get(POINTS_ID_STRING)));
+        assertEquals(0, bd("38.00").compareTo(decision.charges().get("CARD")));
+    }
+
+    @Test
+    @DisplayName("Comparison should report online and offline discounts for the same orders")
+    void compareWithOffline_reportsBothDiscounts() {
+        OnlinePaymentOptimizer optimizer = new OnlinePaymentOptimizer(paymentMethods(), Collections.emptyList());
+        optimizer.decide(smallOrder());
+        optimizer.decide(bigOrder());
+
+        DiscountComparison comparison = optimizer.compareWithOffline(Arrays.asList(smallOrder(), bigOrder()));
+
+        assertEquals(0, bd("20.00").compareTo(comparison.onlineDiscount()));
+        assertEquals(0, bd("30.00").compareTo(comparison.offlineDiscount()));
+        assertEquals(0, new BigDecimal("0.6667").compareTo(comparison.ratio()));
+    }
+
+    @Test
+    @DisplayName("Unpayable order should throw an exception")
+    void decide_unpayable_throwsException() {
+        OnlinePaymentOptimizer optimizer = new OnlinePaymentOptimizer(paymentMethods(), Collections.emptyList());
+
+        assertThrows(RuntimeException.class, () -> optimizer.decide(new Order("HUGE", bd("5000.00"), null)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizerEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", bd("100.00"), List.of("mZysk")),
+            new Order("ORDER2", bd("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", bd("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", bd("50.00"), null));
+
+    private static final List<PaymentMethod> PAYMENT_METHODS = List.of(
+            new PaymentMethod("PUNKTY", 15, bd("100.00")),
+            new PaymentMethod("mZysk", 10, bd("180.00")),
+            new PaymentMethod("BosBankrut", 5, bd("200.00")));
+
+
+    @Test
+    @DisplayName("The optimizer events should be disabled by default")
+    void events_disabledByDefault() {
+        for (Class<? extends jdk.jfr.Event> eventClass : List.of(OptimizerEvents.PhaseEvent.class, OptimizerEvents.OrderDecisionEvent.class,
+                OptimizerEvents.LimitExhaustedEvent.class)) {
+            assertFalse(EventType.getEventType(eventClass).isEnabled(), eventClass.getSimpleName());
+        }
+    }
+
+    @Test
+    @DisplayName("A recording with the events enabled should get every phase, every order decision and the exhausted points")
+    void optimizePayments_recorded_emitsEvents() throws Exception {
+        Path file = tempDir.resolve("optimizer.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(OptimizerEvents.PhaseEvent.class);
+            recording.enable(OptimizerEvents.OrderDecisionEvent.class);
+            recording.enable(OptimizerEvents.LimitExhaustedEvent.class);
+            recording.start();
+            new PaymentOptimizerService().optimizePayments(ORDERS, PAYMENT_METHODS);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<String> phases = events.stream().filter(event -> event.getEventType().getName().equals("com.chamera.patryk.OptimizerPhase"))
+                .map(event -> event.getString("phase")).toList();
+        List<RecordedEvent> decisions = events.stream().filter(event -> event.getEventType().getName().equals("com.chamera.patryk.OrderDecision")).toList();
+        List<RecordedEvent> exhausted = events.stream().filter(event -> event.getEventType().getName().equals("com.chamera.patryk.LimitExhausted")).toList();
+
+        assertEquals(List.of("index methods", "sort orders", "greedy pass", "rebalance and sum"), phases);
+        assertEquals(4, decisions.size());
+        RecordedEvent order1 = decisions.stream().filter(event -> event.getString("orderId").equals("ORDER1")).findFirst().orElseThrow();
+        assertEquals("CARD_PROMOTION", order1.getString("optionKind"));
+        assertEquals("mZysk=90.00", order1.getString("methodsCharged"));
+        assertEquals(10.0, order1.getDouble("discount"), 1e-9);
+        assertTrue(order1.getInt("candidates") > 1);
+        assertTrue(exhausted.stream().anyMatch(event -> event.getString("methodId").equals("PUNKTY")));
+    }
+
+    @Test
+    @DisplayName("Option kinds should be derived from the methods charged")
+    void optionKind_derivedFromCharges() {
+        PaymentOptimizerService.PaymentOption points = new PaymentOptimizerService.PaymentOption(bd("15.00"), bd("85.00"), Map.of("PUNKTY", bd("85.00")));
+        PaymentOptimizerService.PaymentOption mixed = new PaymentOptimizerService.PaymentOption(bd("10.00"), bd("10.00"), Map.of("PUNKTY", bd("10.00"), "mZysk", bd("80.00")));
+        PaymentOptimizerService.PaymentOption plainCard = new PaymentOptimizerService.PaymentOption(bd("0.00"), bd("0.00"), Map.of("mZysk", bd("100.00")));
+
+        assertEquals("POINTS_ONLY", OptimizerEvents.optionKind(points));
+        assertEquals("POINTS_AND_CARD", OptimizerEvents.optionKind(mixed));
+        assertEquals("CARD_NO_PROMOTION", OptimizerEvents.optionKind(plainCard));
+    }
+}
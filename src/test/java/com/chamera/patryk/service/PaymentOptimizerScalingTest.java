@@ -0,0 +1,255 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards the complexity of {@link PaymentOptimizerService#optimizePayments} and of its {@link PointsRebalancer}
+ * post-pass: solves instances of growing size,
+ * fits the growth exponent of the run time on a log-log scale and fails when it exceeds the expected bound.
+ * Run time is the minimum of several runs, which is far less noisy than the mean on a shared machine.
+ * Tagged {@value #TAG} and excluded from the default build; run with {@code mvn test -Pscaling}.
+ */
+@Tag(PaymentOptimizerScalingTest.TAG)
+class PaymentOptimizerScalingTest {
+
+    static final String TAG = "scaling";
+
+    private static final int RUNS = 5;
+    private static final int METHODS_FOR_ORDER_SCALING = 10;
+    private static final int ORDERS_FOR_METHOD_SCALING = 2_000;
+
+    // n log n daje od 4k do 32k wykladnik ~1.1, kwadratowy koszt daje 2
+    private static final double MAX_ORDER_EXPONENT = 1.35;
+    // kazde zamowienie przeglada wszystkie karty (opcje bez promocji), wiec koszt jest liniowy w m
+    private static final double MAX_METHOD_EXPONENT = 1.25;
+    private static final long MAX_ALLOCATED_BYTES_PER_ORDER = 12 * 1024;
+    // kubelkowanie zamiast sortowania; czas GC odjety, bo kopiowanie rosnacego zbioru zywych obiektow nie jest liniowe
+    private static final double MAX_REBALANCE_EXPONENT = 1.25;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+
+    private static List<PaymentMethod> paymentMethods(List<Order> orders, int methodCount) {
+        int cardCount = methodCount - 1;
+        long totalValueCents = orders.stream().mapToLong(order -> order.getValue().unscaledValue().longValue()).sum();
+        List<PaymentMethod> paymentMethods = new ArrayList<>();
+        paymentMethods.add(new PaymentMethod(PaymentOptimizerService.POINTS_ID_STRING, 15, BigDecimal.valueOf(totalValueCents / 5, 2)));
+        Random random = new Random(7);
+        long cardLimitCents = totalValueCents * 3 / (2 * cardCount) + 50_000;
+        for (int i = 0; i < cardCount; i++) {
+            paymentMethods.add(new PaymentMethod("CARD" + i, 5 + random.nextInt(11), BigDecimal.valueOf(cardLimitCents, 2)));
+        }
+        return paymentMethods;
+    }
+
+
+    /**
+     * Orders of 10.00 to 500.00 with two promoted cards each, payable with slack.
+     */
+    private static List<Order> orders(int orderCount, int cardCount) {
+        Random random = new Random(42);
+        List<Order> orders = new ArrayList<>(orderCount);
+        for (int i = 0; i < orderCount; i++) {
+            Set<String> promotions = new LinkedHashSet<>();
+            while (promotions.size() < Math.min(2, cardCount)) {
+                promotions.add("CARD" + random.nextInt(cardCount));
+            }
+            orders.add(new Order("ORDER" + i, BigDecimal.valueOf(1_000 + random.nextInt(49_000), 2), new ArrayList<>(promotions)));
+        }
+        return orders;
+    }
+
+
+    /**
+     * An applied plan of alternating orders: paid fully by a 5% card, or with half of the value in points
+     * (10% discount) and the rest by card, with no points left. Every card-paid order can be upgraded and every
+     * partial-points order donates surplus points.
+     */
+    private static List<PaymentOption> rebalancerPlan(List<Order> orders) {
+        List<PaymentOption> options = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            BigDecimal value = orders.get(i).getValue();
+            String cardId = orders.get(i).getPromotions().get(0);
+            if (i % 2 == 0) {
+                BigDecimal discount = value.multiply(new BigDecimal("0.05")).setScale(2, RoundingMode.HALF_UP);
+                options.add(new PaymentOption(discount, BigDecimal.ZERO, Map.of(cardId, value.subtract(discount))));
+            } else {
+                BigDecimal discount = value.multiply(new BigDecimal("0.10")).setScale(2, RoundingMode.HALF_UP);
+                BigDecimal points = value.divide(BigDecimal.TWO, 2, RoundingMode.DOWN);
+                options.add(new PaymentOption(discount, points,
+                        Map.of(PaymentOptimizerService.POINTS_ID_STRING, points, cardId, value.subtract(discount).subtract(points))));
+            }
+        }
+        return options;
+    }
+
+
+    private static long minRebalanceNanos(int orderCount) {
+        List<Order> orders = orders(orderCount, METHODS_FOR_ORDER_SCALING - 1);
+        List<PaymentOption> options = rebalancerPlan(orders);
+        Map<String, PaymentMethod> paymentMethodMap = new HashMap<>();
+        for (PaymentMethod paymentMethod : paymentMethods(orders, METHODS_FOR_ORDER_SCALING)) {
+            paymentMethodMap.put(paymentMethod.getId(), new PaymentMethod(paymentMethod.getId(),
+                    paymentMethod.getId().equals(PaymentOptimizerService.POINTS_ID_STRING) ? 15 : 5, paymentMethod.getLimit()));
+        }
+        Map<String, BigDecimal> remainingLimits = new HashMap<>();
+        for (PaymentMethod paymentMethod : paymentMethodMap.values()) {
+            remainingLimits.put(paymentMethod.getId(), paymentMethod.getId().equals(PaymentOptimizerService.POINTS_ID_STRING)
+                    ? BigDecimal.ZERO : paymentMethod.getLimit());
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            PointsRebalancer rebalancer = new PointsRebalancer(paymentMethodMap);
+            Map<String, BigDecimal> limits = new HashMap<>(remainingLimits);
+            System.gc();
+            long gcStart = gcMillis();
+            long start = System.nanoTime();
+            rebalancer.rebalance(orders, options, limits);
+            best = Math.min(best, System.nanoTime() - start - (gcMillis() - gcStart) * 1_000_000);
+        }
+        return best;
+    }
+
+
+    /**
+     * Total time spent in garbage collection so far, which the rebalancing timings leave out.
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+
+    private static long minNanos(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        PaymentOptimizerService service = new PaymentOptimizerService();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            long start = System.nanoTime();
+            service.optimizePayments(orders, paymentMethods);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+
+    /**
+     * Bytes allocated by the current thread while solving, read from the {@code ThreadMXBean}.
+     */
+    private static long allocatedBytes(List<Order> orders, List<PaymentMethod> paymentMethods) {
+        PaymentOptimizerService service = new PaymentOptimizerService();
+        long before = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+        service.optimizePayments(orders, paymentMethods);
+        return THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - before;
+    }
+
+
+    /**
+     * Least-squares slope of {@code log(time)} over {@code log(size)}.
+     */
+    private static double fitExponent(int[] sizes, long[] nanos) {
+        int count = sizes.length;
+        double meanX = 0, meanY = 0;
+        for (int i = 0; i < count; i++) {
+            meanX += Math.log(sizes[i]) / count;
+            meanY += Math.log(nanos[i]) / count;
+        }
+        double covariance = 0, variance = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = Math.log(sizes[i]) - meanX;
+            covariance += dx * (Math.log(nanos[i]) - meanY);
+            variance += dx * dx;
+        }
+        return covariance / variance;
+    }
+
+
+    @BeforeAll
+    static void warmUp() {
+        List<Order> orders = orders(16_000, METHODS_FOR_ORDER_SCALING - 1);
+        List<PaymentMethod> paymentMethods = paymentMethods(orders, METHODS_FOR_ORDER_SCALING);
+        for (int i = 0; i < 3; i++) {
+            new PaymentOptimizerService().optimizePayments(orders, paymentMethods);
+        }
+    }
+
+
+    @Test
+    @DisplayName("Run time should grow at most like n log n in the number of orders")
+    void optimizePayments_growingOrders_staysNearLinearithmic() {
+        int[] sizes = {4_000, 8_000, 16_000, 32_000};
+        long[] nanos = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            List<Order> orders = orders(sizes[i], METHODS_FOR_ORDER_SCALING - 1);
+            nanos[i] = minNanos(orders, paymentMethods(orders, METHODS_FOR_ORDER_SCALING));
+        }
+
+        double exponent = fitExponent(sizes, nanos);
+        assertTrue(exponent <= MAX_ORDER_EXPONENT, "Growth exponent in orders " + exponent + " exceeds "
+                + MAX_ORDER_EXPONENT + " (orders " + Arrays.toString(sizes) + ", " + Arrays.toString(nanos) + " ns)");
+    }
+
+    @Test
+    @DisplayName("Run time should grow at most linearly in the number of payment methods")
+    void optimizePayments_growingMethods_staysLinear() {
+        int[] sizes = {32, 64, 128, 256, 512};
+        long[] nanos = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            List<Order> orders = orders(ORDERS_FOR_METHOD_SCALING, sizes[i] - 1);
+            nanos[i] = minNanos(orders, paymentMethods(orders, sizes[i]));
+        }
+
+        double exponent = fitExponent(sizes, nanos);
+        assertTrue(exponent <= MAX_METHOD_EXPONENT, "Growth exponent in methods " + exponent + " exceeds "
+                + MAX_METHOD_EXPONENT + " (methods " + Arrays.toString(sizes) + ", " + Arrays.toString(nanos) + " ns)");
+    }
+
+    @Test
+    @DisplayName("The points rebalancing post-pass should run in linear time in the number of orders")
+    void rebalance_growingOrders_staysLinear() {
+        int[] sizes = {32_000, 64_000, 128_000, 256_000};
+        minRebalanceNanos(sizes[sizes.length - 1]); // rozgrzewka
+        minRebalanceNanos(sizes[sizes.length - 1]);
+        long[] nanos = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            nanos[i] = minRebalanceNanos(sizes[i]);
+        }
+
+        double exponent = fitExponent(sizes, nanos);
+        assertTrue(exponent <= MAX_REBALANCE_EXPONENT, "Growth exponent of rebalancing " + exponent + " exceeds "
+                + MAX_REBALANCE_EXPONENT + " (orders " + Arrays.toString(sizes) + ", " + Arrays.toString(nanos) + " ns)");
+    }
+
+    @Test
+    @DisplayName("Memory allocated per order should stay within the budget and not grow with the number of orders")
+    void optimizePayments_allocationPerOrder_withinBudget() {
+        List<Order> small = orders(4_000, METHODS_FOR_ORDER_SCALING - 1);
+        List<Order> large = orders(32_000, METHODS_FOR_ORDER_SCALING - 1);
+
+        long smallPerOrder = allocatedBytes(small, paymentMethods(small, METHODS_FOR_ORDER_SCALING)) / small.size();
+        long largePerOrder = allocatedBytes(large, paymentMethods(large, METHODS_FOR_ORDER_SCALING)) / large.size();
+
+        assertTrue(largePerOrder <= MAX_ALLOCATED_BYTES_PER_ORDER, largePerOrder + " B per order at " + large.size()
+                + " orders exceeds " + MAX_ALLOCATED_BYTES_PER_ORDER + " (" + smallPerOrder + " B at " + small.size() + " orders)");
+        assertTrue(largePerOrder <= smallPerOrder * 3 / 2, "Allocation per order grew from " + smallPerOrder + " B at "
+                + small.size() + " orders to " + largePerOrder + " B at " + large.size() + " orders");
+    }
+}
@@ -1260,11 +1260,12 @@ class PaymentOptimizerServiceTest {
 
         Map<String, BigDecimal> result = paymentOptimizerService.optimizePayments(orders, paymentMethods);
 
+        // ORDER4 gets 5.00 of the surplus points from ORDER2 and its 10% discount after rebalancing
         assertNotNull(result.get("mZysk"), "mZysk should be in result");
-        assertEquals(0, bd("170.00").compareTo(result.get("mZysk")), "mZysk total spent incorrect");
+        assertEquals(0, bd("175.00").compareTo(result.get("mZysk")), "mZysk total spent incorrect");
 
         assertNotNull(result.get("BosBankrut"), "BosBankrut should be in result");
-        assertEquals(0, bd("192.50").compareTo(result.get("BosBankrut")), "BosBankrut total spent incorrect");
+        assertEquals(0, bd("182.50").compareTo(result.get("BosBankrut")), "BosBankrut total spent incorrect");
 
         assertNotNull(result.get(POINTS_ID_STRING), "PUNKTY should be in result");
         assertEquals(0, bd("100.00").compareTo(result.get(POINTS_ID_STRING)), "PUNKTY total spent incorrect");
@@ -1380,14 +1381,86 @@ class PaymentOptimizerServiceTest {
         assertNotNull(result.get(POINTS_ID_STRING), "PUNKTY should be in result");
         assertEquals(0, bd("70.00").compareTo(result.get(POINTS_ID_STRING)), "PUNKTY total spent incorrect");
 
+        // ORDER_B takes 8.00 of ORDER_C's surplus points and gets the 10% partial points discount
         assertNotNull(result.get("GENERIC_CARD"), "GENERIC_CARD should be in result");
-        assertEquals(0, bd("118.00").compareTo(result.get("GENERIC_CARD")), "GENERIC_CARD total spent incorrect");
+        assertEquals(0, bd("110.00").compareTo(result.get("GENERIC_CARD")), "GENERIC_CARD total spent incorrect");
         assertNull(result.get("PROMO_CARD_10"), "PROMO_CARD_10 should not have been used if GENERIC_CARD was chosen for ORDER_B remainder");
         assertEquals(3, result.size(), "Result map should contain 3 entries if GENERIC_CARD used for ORDER_B");
     }
 
+    @Test
+    @DisplayName("[optimizePayments] Should avoid a promo card choice that would leave a later order unpayable")
+    void optimizePayments_avoidsLateInfeasibility() {
+        Order order1 = new Order("ORDER1", bd("50.00"), Collections.singletonList("CARD_PROMO"));
+        Order order2 = new Order("ORDER2", bd("100.00"), null);
+        List<Order> orders = Arrays.asList(order1, order2);
 
+        List<PaymentMethod> paymentMethods = Arrays.asList(
+                new PaymentMethod("CARD_PROMO", 10, bd("100.00")),
+                new PaymentMethod("CARD_SMALL", 0, bd("50.00"))
+        );
 
+        Map<String, BigDecimal> result = paymentOptimizerService.optimizePayments(orders, paymentMethods);
 
-
-}
\ No newline at end of file
+        assertEquals(0, bd("100.00").compareTo(result.get("CARD_PROMO")), "ORDER2 should be paid fully with CARD_PROMO");
+        assertEquals(0, bd("50.00").compareTo(result.get("CARD_SMALL")), "ORDER1 should give up its promotion and use CARD_SMALL");
+    }
+
+    @Test
+    @DisplayName("[optimizePayments] Should keep the plain greedy plan on every instance the plain greedy pass can pay")
+    void optimizePayments_neverWorseThanPlainGreedy() {
+        PaymentOptimizerService plainGreedy = new PaymentOptimizerService() {
+            @Override
+            protected List<PaymentOption> chooseGreedyOptions(List<Order> sortedOrders, Map<String, PaymentMethod> paymentMethodMap, Map<String, BigDecimal> remainingLimits) {
+                Map<String, BigDecimal> totalSpentByMethod = new HashMap<>();
+                List<PaymentOption> chosenOptions = new ArrayList<>();
+                for (Order order : sortedOrders) {
+                    List<PaymentOption> options = generatePaymentOptions(order, paymentMethodMap, remainingLimits);
+                    if (options.isEmpty()) {
+                        throw noPaymentOptionException(order);
+                    }
+                    applyPaymentOption(options.get(0), remainingLimits, totalSpentByMethod);
+                    chosenOptions.add(options.get(0));
+                }
+                return chosenOptions;
+            }
+        };
+
+        int solvedByPlainGreedy = 0;
+        int rescued = 0;
+        for (long seed = 0; seed < 3_000; seed++) {
+            Random random = new Random(seed);
+            List<PaymentMethod> paymentMethods = new ArrayList<>();
+            int cardCount = 1 + random.nextInt(3);
+            for (int i = 0; i < cardCount; i++) {
+                paymentMethods.add(new PaymentMethod("C" + i, random.nextInt(4) * 5, BigDecimal.valueOf(random.nextInt(15_000), 2)));
+            }
+            if (random.nextBoolean()) {
+                paymentMethods.add(new PaymentMethod(POINTS_ID_STRING, 5 + random.nextInt(3) * 5, BigDecimal.valueOf(random.nextInt(6_000), 2)));
+            }
+            List<Order> orders = new ArrayList<>();
+            int orderCount = 1 + random.nextInt(5);
+            for (int i = 0; i < orderCount; i++) {
+                orders.add(new Order("O" + i, BigDecimal.valueOf(100 + random.nextInt(9_900), 2),
+                        random.nextBoolean() ? List.of("C" + random.nextInt(cardCount)) : null));
+            }
+
+            Map<String, BigDecimal> plain;
+            try {
+                plain = plainGreedy.optimizePayments(orders, paymentMethods);
+            } catch (RuntimeException e) {
+                try {
+                    paymentOptimizerService.optimizePayments(orders, paymentMethods);
+                    rescued++;
+                } catch (RuntimeException ignored) {
+                    // brak planu dla obu wariantow
+                }
+                continue;
+            }
+            solvedByPlainGreedy++;
+            assertEquals(plain, paymentOptimizerService.optimizePayments(orders, paymentMethods), "Seed " + seed);
+        }
+        assertTrue(solvedByPlainGreedy > 1_000, solvedByPlainGreedy + " instances solved by plain greedy");
+        assertTrue(rescued > 0, "No instance rescued by the guarded pass");
+    }
+}
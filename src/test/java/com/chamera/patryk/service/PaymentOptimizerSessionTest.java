@@ -0,0 +1,121 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerSession.AssignmentChange;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static com.chamera.patryk.service.PdfExample.pdfOrders;
+import static com.chamera.patryk.service.PdfExample.pdfPaymentMethods;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentOptimizerSessionTest {
+
+    private static final String POINTS_ID_STRING = PdfExample.POINTS_ID;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static List<PaymentMethod> promoPaymentMethods() {
+        return Arrays.asList(
+                new PaymentMethod("CARD_PROMO", 10, bd("90.00")),
+                new PaymentMethod("CARD_PLAIN", 0, bd("1000.00"))
+        );
+    }
+
+
+    @Test
+    @DisplayName("Initial plan should match the greedy optimizer")
+    void constructor_initialPlanMatchesGreedy() {
+        Map<String, BigDecimal> greedy = new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        PaymentOptimizerSession session = new PaymentOptimizerSession(pdfOrders(), pdfPaymentMethods());
+
+        assertEquals(greedy, session.getTotalSpentByMethod());
+        assertEquals(4, session.getOrderCount());
+    }
+
+    @Test
+    @DisplayName("Added order should get its best option and be reported as a change")
+    void addOrder_choosesBestOption() {
+        PaymentOptimizerSession session = new PaymentOptimizerSession(new ArrayList<>(), promoPaymentMethods());
+
+        List<AssignmentChange> changes = session.addOrder(new Order("ORDER1", bd("50.00"), Collections.singletonList("CARD_PROMO")));
+
+        assertEquals(1, changes.size());
+        assertEquals("ORDER1", changes.get(0).orderId());
+        assertNull(changes.get(0).previousCharges());
+        assertEquals(0, bd("45.00").compareTo(changes.get(0).newCharges().get("CARD_PROMO")));
+        assertEquals(0, bd("45.00").compareTo(session.getTotalSpentByMethod().get("CARD_PROMO")));
+    }
+
+    @Test
+    @DisplayName("Cancelling an order should reoffer its promotion limit to another order")
+    void cancelOrder_reoffersFreedPromotionLimit() {
+        PaymentOptimizerSession session = new PaymentOptimizerSession(Arrays.asList(
+                new Order("ORDER1", bd("100.00"), Collections.singletonList("CARD_PROMO")),
+                new Order("ORDER2", bd("100.00"), Collections.singletonList("CARD_PROMO"))
+        ), promoPaymentMethods());
+        assertEquals(0, bd("100.00").compareTo(session.getAssignment("ORDER2").get("CARD_PLAIN")));
+
+        List<AssignmentChange> changes = session.cancelOrder("ORDER1");
+
+        assertEquals(2, changes.size());
+        assertEquals("ORDER1", changes.get(0).orderId());
+        assertNull(changes.get(0).newCharges());
+        assertEquals("ORDER2", changes.get(1).orderId());
+        assertEquals(0, bd("100.00").compareTo(changes.get(1).previousCharges().get("CARD_PLAIN")));
+        assertEquals(0, bd("90.00").compareTo(changes.get(1).newCharges().get("CARD_PROMO")));
+
+        Map<String, BigDecimal> totals = session.getTotalSpentByMethod();
+        assertEquals(0, bd("90.00").compareTo(totals.get("CARD_PROMO")));
+        assertEquals(0, BigDecimal.ZERO.compareTo(totals.get("CARD_PLAIN")));
+        assertNull(session.getAssignment("ORDER1"));
+    }
+
+    @Test
+    @DisplayName("Cancelling with no reoffer budget should only release the cancelled order")
+    void cancelOrder_zeroBudget_noReoffer() {
+        PaymentOptimizerSession session = new PaymentOptimizerSession(Arrays.asList(
+                new Order("ORDER1", bd("100.00"), Collections.singletonList("CARD_PROMO")),
+                new Order("ORDER2", bd("100.00"), Collections.singletonList("CARD_PROMO"))
+        ), promoPaymentMethods(), 0);
+
+        List<AssignmentChange> changes = session.cancelOrder("ORDER1");
+
+        assertEquals(1, changes.size());
+        assertEquals(0, bd("100.00").compareTo(session.getAssignment("ORDER2").get("CARD_PLAIN")));
+    }
+
+    @Test
+    @DisplayName("Unpayable order should be rejected without changing the plan")
+    void addOrder_unpayable_leavesSessionUnchanged() {
+        PaymentOptimizerSession session = new PaymentOptimizerSession(
+                Collections.singletonList(new Order("ORDER1", bd("100.00"), null)), promoPaymentMethods());
+        Map<String, BigDecimal> before = session.getTotalSpentByMethod();
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> session.addOrder(new Order("ORDER2", bd("5000.00"), null)));
+
+        assertTrue(exception.getMessage().contains("ORDER2"));
+        assertEquals(before, session.getTotalSpentByMethod());
+        assertEquals(1, session.getOrderCount());
+    }
+
+    @Test
+    @DisplayName("Duplicate and unknown order IDs should be rejected")
+    void addAndCancel_invalidIds_throwException() {
+        PaymentOptimizerSession session = new PaymentOptimizerSession(
+                Collections.singletonList(new Order("ORDER1", bd("10.00"), null)), promoPaymentMethods());
+
+        assertThrows(IllegalArgumentException.class, () -> session.addOrder(new Order("ORDER1", bd("10.00"), null)));
+        assertThrows(IllegalArgumentException.class, () -> session.cancelOrder("ORDER2"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The example instance from the task description, shared by the optimizer tests.
+ * Each call returns new lists, so a test may modify them.
+ */
+public final class PdfExample {
+
+    /**
+     * ID of the loyalty points payment method.
+     */
+    public static final String POINTS_ID = "PUNKTY";
+
+
+    private PdfExample() {
+    }
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+
+    /**
+     * @return The four example orders.
+     */
+    public static List<Order> pdfOrders() {
+        return Arrays.asList(
+                new Order("ORDER1", bd("100.00"), Collections.singletonList("mZysk")),
+                new Order("ORDER2", bd("200.00"), Collections.singletonList("BosBankrut")),
+                new Order("ORDER3", bd("150.00"), Arrays.asList("mZysk", "BosBankrut")),
+                new Order("ORDER4", bd("50.00"), null)
+        );
+    }
+
+
+    /**
+     * @return Points and the two example cards.
+     */
+    public static List<PaymentMethod> pdfPaymentMethods() {
+        return Arrays.asList(
+                new PaymentMethod(POINTS_ID, 15, bd("100.00")),
+                new PaymentMethod("mZysk", 10, bd("180.00")),
+                new PaymentMethod("BosBankrut", 5, bd("200.00"))
+        );
+    }
+}
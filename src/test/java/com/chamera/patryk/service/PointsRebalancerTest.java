@@ -0,0 +1,135 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService.PaymentOption;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointsRebalancerTest {
+
+    private static final String POINTS_ID_STRING = "PUNKTY";
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static Map<String, PaymentMethod> methodMap(PaymentMethod... methods) {
+        Map<String, PaymentMethod> paymentMethodMap = new HashMap<>();
+        for (PaymentMethod method : methods) {
+            paymentMethodMap.put(method.getId(), method);
+        }
+        return paymentMethodMap;
+    }
+
+    private static PaymentOption option(String discount, String points, Map<String, BigDecimal> charges) {
+        return new PaymentOption(bd(discount), bd(points), charges);
+    }
+
+
+    @Test
+    @DisplayName("Surplus points of a partial points order unlock the partial discount of a full card order")
+    void rebalance_movesSurplusToFullCardOrder() {
+        Map<String, PaymentMethod> paymentMethodMap = methodMap(
+                new PaymentMethod(POINTS_ID_STRING, 5, bd("50.00")),
+                new PaymentMethod("CARD_A", 0, bd("200.00"))
+        );
+        Order donor = new Order("DONOR", bd("100.00"), null);
+        Order target = new Order("TARGET", bd("50.00"), null);
+        List<PaymentOption> options = List.of(
+                option("10.00", "50.00", new HashMap<>(Map.of(POINTS_ID_STRING, bd("50.00"), "CARD_A", bd("40.00")))),
+                option("0.00", "0.00", new HashMap<>(Map.of("CARD_A", bd("50.00"))))
+        );
+        Map<String, BigDecimal> remainingLimits = new HashMap<>(Map.of(POINTS_ID_STRING, bd("0.00"), "CARD_A", bd("110.00")));
+
+        List<PaymentOption> result = new PointsRebalancer(paymentMethodMap).rebalance(List.of(donor, target), options, remainingLimits);
+
+        assertEquals(0, bd("45.00").compareTo(result.get(0).getPointsUsedAmount()));
+        assertEquals(0, bd("45.00").compareTo(result.get(0).getAmountsToChargeByMethod().get("CARD_A")));
+        assertEquals(0, bd("5.00").compareTo(result.get(1).getCalculatedDiscountAmount()));
+        assertEquals(0, bd("5.00").compareTo(result.get(1).getAmountsToChargeByMethod().get(POINTS_ID_STRING)));
+        assertEquals(0, bd("40.00").compareTo(result.get(1).getAmountsToChargeByMethod().get("CARD_A")));
+        assertEquals(0, bd("0.00").compareTo(remainingLimits.get(POINTS_ID_STRING)));
+        assertEquals(0, bd("115.00").compareTo(remainingLimits.get("CARD_A")));
+    }
+
+    @Test
+    @DisplayName("Donor cannot shift surplus points onto a card without remaining limit")
+    void rebalance_donorCardWithoutHeadroom_planUnchanged() {
+        Map<String, PaymentMethod> paymentMethodMap = methodMap(
+                new PaymentMethod(POINTS_ID_STRING, 5, bd("50.00")),
+                new PaymentMethod("CARD_A", 0, bd("40.00")),
+                new PaymentMethod("CARD_B", 0, bd("50.00"))
+        );
+        Order donor = new Order("DONOR", bd("100.00"), null);
+        Order target = new Order("TARGET", bd("50.00"), null);
+        PaymentOption donorOption = option("10.00", "50.00", new HashMap<>(Map.of(POINTS_ID_STRING, bd("50.00"), "CARD_A", bd("40.00"))));
+        PaymentOption targetOption = option("0.00", "0.00", new HashMap<>(Map.of("CARD_B", bd("50.00"))));
+        Map<String, BigDecimal> remainingLimits = new HashMap<>(Map.of(POINTS_ID_STRING, bd("0.00"), "CARD_A", bd("0.00"), "CARD_B", bd("0.00")));
+
+        List<PaymentOption> result = new PointsRebalancer(paymentMethodMap).rebalance(List.of(donor, target), List.of(donorOption, targetOption), remainingLimits);
+
+        assertSame(donorOption, result.get(0));
+        assertSame(targetOption, result.get(1));
+        assertEquals(0, bd("0.00").compareTo(remainingLimits.get("CARD_A")));
+    }
+
+    @Test
+    @DisplayName("Free points covering a full points upgrade are used for it when it gains more discount than the partial upgrade")
+    void rebalance_freePoints_fullPointsUpgrade() {
+        Map<String, PaymentMethod> paymentMethodMap = methodMap(
+                new PaymentMethod(POINTS_ID_STRING, 30, bd("70.00")),
+                new PaymentMethod("CARD_A", 0, bd("100.00"))
+        );
+        Order target = new Order("TARGET", bd("100.00"), null);
+        List<PaymentOption> options = List.of(option("0.00", "0.00", new HashMap<>(Map.of("CARD_A", bd("100.00")))));
+        Map<String, BigDecimal> remainingLimits = new HashMap<>(Map.of(POINTS_ID_STRING, bd("70.00"), "CARD_A", bd("0.00")));
+
+        List<PaymentOption> result = new PointsRebalancer(paymentMethodMap).rebalance(List.of(target), options, remainingLimits);
+
+        assertEquals(0, bd("30.00").compareTo(result.get(0).getCalculatedDiscountAmount()));
+        assertEquals(Map.of(POINTS_ID_STRING, bd("70.00")), result.get(0).getAmountsToChargeByMethod());
+        assertEquals(0, bd("0.00").compareTo(remainingLimits.get(POINTS_ID_STRING)));
+        assertEquals(0, bd("100.00").compareTo(remainingLimits.get("CARD_A")));
+    }
+
+    @Test
+    @DisplayName("Free points left after upgrades replace card spend of partial points orders")
+    void rebalance_leftoverPointsPouredIntoPartialOrders() {
+        Map<String, PaymentMethod> paymentMethodMap = methodMap(
+                new PaymentMethod(POINTS_ID_STRING, 0, bd("50.00")),
+                new PaymentMethod("CARD_A", 0, bd("100.00"))
+        );
+        Order order = new Order("ORDER1", bd("100.00"), null);
+        List<PaymentOption> options = List.of(option("10.00", "20.00", new HashMap<>(Map.of(POINTS_ID_STRING, bd("20.00"), "CARD_A", bd("70.00")))));
+        Map<String, BigDecimal> remainingLimits = new HashMap<>(Map.of(POINTS_ID_STRING, bd("30.00"), "CARD_A", bd("30.00")));
+
+        List<PaymentOption> result = new PointsRebalancer(paymentMethodMap).rebalance(List.of(order), options, remainingLimits);
+
+        assertEquals(0, bd("50.00").compareTo(result.get(0).getPointsUsedAmount()));
+        assertEquals(0, bd("40.00").compareTo(result.get(0).getAmountsToChargeByMethod().get("CARD_A")));
+        assertEquals(0, bd("10.00").compareTo(result.get(0).getCalculatedDiscountAmount()));
+        assertEquals(0, bd("0.00").compareTo(remainingLimits.get(POINTS_ID_STRING)));
+        assertEquals(0, bd("60.00").compareTo(remainingLimits.get("CARD_A")));
+    }
+
+    @Test
+    @DisplayName("Plan without PUNKTY payment method is returned unchanged")
+    void rebalance_noPointsMethod_returnsSameOptions() {
+        Map<String, PaymentMethod> paymentMethodMap = methodMap(new PaymentMethod("CARD_A", 0, bd("100.00")));
+        List<PaymentOption> options = List.of(option("0.00", "0.00", new HashMap<>(Map.of("CARD_A", bd("100.00")))));
+        Map<String, BigDecimal> remainingLimits = new HashMap<>(Map.of("CARD_A", bd("0.00")));
+
+        List<PaymentOption> result = new PointsRebalancer(paymentMethodMap)
+                .rebalance(List.of(new Order("ORDER1", bd("100.00"), null)), options, remainingLimits);
+
+        assertSame(options, result);
+    }
+}
@@ -0,0 +1,92 @@
+package com.chamera.patryk.service;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static com.chamera.patryk.service.PdfExample.pdfOrders;
+import static com.chamera.patryk.service.PdfExample.pdfPaymentMethods;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingHorizonOptimizerTest {
+
+    private static final String POINTS_ID_STRING = PdfExample.POINTS_ID;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal totalSpent(Map<String, BigDecimal> totalSpentByMethod) {
+        return totalSpentByMethod.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+
+    @Test
+    @DisplayName("Window of one order gives the same result as the greedy optimizer")
+    void optimizePayments_windowOfOne_matchesGreedy() {
+        Map<String, BigDecimal> greedy = new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods());
+        Map<String, BigDecimal> rolling = new RollingHorizonOptimizer(1).optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        assertEquals(greedy, rolling);
+    }
+
+    @Test
+    @DisplayName("Window covering all orders never spends more than the greedy optimizer")
+    void optimizePayments_fullWindow_notWorseThanGreedy() {
+        Map<String, BigDecimal> greedy = new PaymentOptimizerService().optimizePayments(pdfOrders(), pdfPaymentMethods());
+        Map<String, BigDecimal> rolling = new RollingHorizonOptimizer(4, 4, RollingHorizonOptimizer.DEFAULT_MAX_NODES_PER_WINDOW)
+                .optimizePayments(pdfOrders(), pdfPaymentMethods());
+
+        assertTrue(totalSpent(rolling).compareTo(totalSpent(greedy)) <= 0,
+                "Rolling horizon spent " + totalSpent(rolling) + ", greedy spent " + totalSpent(greedy));
+        assertTrue(bd("100.00").compareTo(rolling.get(POINTS_ID_STRING)) >= 0);
+        assertTrue(bd("180.00").compareTo(rolling.get("mZysk")) >= 0);
+        assertTrue(bd("200.00").compareTo(rolling.get("BosBankrut")) >= 0);
+    }
+
+    @Test
+    @DisplayName("Window search avoids a locally best choice that leaves a later order unpayable")
+    void optimizePayments_windowAvoidsLateInfeasibility() {
+        List<Order> orders = Arrays.asList(
+                new Order("ORDER1", bd("50.00"), Collections.singletonList("CARD_PROMO")),
+                new Order("ORDER2", bd("100.00"), null)
+        );
+        List<PaymentMethod> paymentMethods = Arrays.asList(
+                new PaymentMethod("CARD_PROMO", 10, bd("100.00")),
+                new PaymentMethod("CARD_SMALL", 0, bd("50.00"))
+        );
+
+        assertThrows(RuntimeException.class, () -> new RollingHorizonOptimizer(1).optimizePayments(orders, paymentMethods));
+
+        Map<String, BigDecimal> rolling = new RollingHorizonOptimizer(2).optimizePayments(orders, paymentMethods);
+
+        assertEquals(0, bd("100.00").compareTo(rolling.get("CARD_PROMO")));
+        assertEquals(0, bd("50.00").compareTo(rolling.get("CARD_SMALL")));
+    }
+
+    @Test
+    @DisplayName("Should throw RuntimeException if an order cannot be paid")
+    void optimizePayments_cannotPayOrder_throwsException() {
+        List<Order> orders = Collections.singletonList(new Order("ORDER1", bd("100.00"), null));
+        List<PaymentMethod> paymentMethods = Collections.singletonList(new PaymentMethod("CARD_A", 0, bd("10.00")));
+
+        Exception exception = assertThrows(RuntimeException.class,
+                () -> new RollingHorizonOptimizer(3).optimizePayments(orders, paymentMethods));
+        assertTrue(exception.getMessage().contains("No possible payment option found for order ORDER1"));
+    }
+
+    @Test
+    @DisplayName("Should reject window and commit sizes out of range")
+    void constructor_invalidParameters_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new RollingHorizonOptimizer(0));
+        assertThrows(IllegalArgumentException.class, () -> new RollingHorizonOptimizer(2, 3, 10));
+        assertThrows(IllegalArgumentException.class, () -> new RollingHorizonOptimizer(2, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new RollingHorizonOptimizer(2, 1, 0));
+    }
+}
@@ -0,0 +1,196 @@
+package com.chamera.patryk.store;
+
+import com.chamera.patryk.service.InputFingerprint;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+
+    private static BigDecimal bd(String val) {
+        return new BigDecimal(val).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static Map<String, BigDecimal> totals(String points) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        totals.put("PUNKTY", bd(points));
+        totals.put("mZysk", bd("165.00"));
+        totals.put("BosBankrut", new BigDecimal("190.0"));
+        return totals;
+    }
+
+    private static InputFingerprint key(int i) {
+        return new InputFingerprint(i, 31L * i + 7);
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(f -> f.toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+
+    @Test
+    @DisplayName("Stored totals should be read back exactly, also after reopening")
+    void putAndGet_survivesReopen() throws IOException {
+        try (ResultStore store = new ResultStore(tempDir)) {
+            store.put(key(1), totals("100.00"));
+            assertEquals(totals("100.00"), store.get(key(1)));
+            assertNull(store.get(key(2)));
+        }
+
+        try (ResultStore store = new ResultStore(tempDir)) {
+            Map<String, BigDecimal> read = store.get(key(1));
+            assertEquals(totals("100.00"), read);
+            assertEquals(1, read.get("BosBankrut").scale());
+        }
+    }
+
+    @Test
+    @DisplayName("Storing the same totals again should not grow the store")
+    void put_sameTotals_notWrittenAgain() throws IOException {
+        try (ResultStore store = new ResultStore(tempDir)) {
+            store.put(key(1), totals("100.00"));
+            long bytes = store.getStats().totalBytes();
+
+            store.put(key(1), new TreeMap<>(totals("100.00")));
+
+            assertEquals(bytes, store.getStats().totalBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("Full segments should be sealed with an index and loaded from it")
+    void put_rollsSegments_indexesLoaded() throws IOException {
+        try (ResultStore store = new ResultStore(tempDir, 200)) {
+            for (int i = 0; i < 10; i++) {
+                store.put(key(i), totals(i + ".00"));
+            }
+            assertTrue(store.getStats().segments() > 1);
+        }
+        assertEquals(files(ResultStore.SEGMENT_SUFFIX).size(), files(ResultStore.INDEX_SUFFIX).size());
+
+        try (ResultStore store = new ResultStore(tempDir, 200)) {
+            assertEquals(10, store.getStats().entries());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(totals(i + ".00"), store.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A stale or corrupt index should be ignored and the segment scanned")
+    void open_corruptIndex_scansSegment() throws IOException {
+        try (ResultStore store = new ResultStore(tempDir)) {
+            store.put(key(1), totals("1.00"));
+            store.put(key(2), totals("2.00"));
+        }
+        Files.write(files(ResultStore.INDEX_SUFFIX).get(0), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+
+        try (ResultStore store = new ResultStore(tempDir)) {
+            assertEquals(totals("1.00"), store.get(key(1)));
+            assertEquals(totals("2.00"), store.get(key(2)));
+        }
+    }
+
+    @Test
+    @DisplayName("A rebuilt index should end at a corrupt record, like the scan, so reopening reads the same keys")
+    void open_corruptRecordWithoutIndex_indexMatchesScan() throws IOException {
+        try (ResultStore store = new ResultStore(tempDir, 200)) {
+            for (int i = 0; i < 6; i++) {
+                store.put(key(i), totals(i + ".00"));
+            }
+        }
+        Path firstSegment = files(ResultStore.SEGMENT_SUFFIX).get(0);
+        Files.delete(files(ResultStore.INDEX_SUFFIX).get(0));
+        try (FileChannel channel = FileChannel.open(firstSegment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), 30); // bajt ladunku pierwszego rekordu
+        }
+
+        List<Integer> readable = new ArrayList<>();
+        for (int reopen = 0; reopen < 2; reopen++) {
+            List<Integer> keys = new ArrayList<>();
+            try (ResultStore store = new ResultStore(tempDir, 200)) {
+                for (int i = 0; i < 6; i++) {
+                    if (store.get(key(i)) != null) {
+                        keys.add(i);
+                    }
+                }
+            }
+            if (reopen == 0) {
+                readable = keys;
+            }
+            assertEquals(readable, keys, "Reopen " + reopen);
+        }
+        assertFalse(readable.contains(0));
+        assertTrue(readable.contains(5));
+    }
+
+    @Test
+    @DisplayName("A torn record at the end of the newest segment should be cut off")
+    void open_tornTail_truncated() throws IOException {
+        ResultStore store = new ResultStore(tempDir);
+        store.put(key(1), totals("1.00"));
+        store.put(key(2), totals("2.00"));
+        // bez close: symulacja awarii w trakcie zapisu drugiego rekordu
+        Path segment = files(ResultStore.SEGMENT_SUFFIX).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (ResultStore reopened = new ResultStore(tempDir)) {
+            assertEquals(totals("1.00"), reopened.get(key(1)));
+            assertNull(reopened.get(key(2)));
+
+            reopened.put(key(2), totals("2.00"));
+            assertEquals(totals("2.00"), reopened.get(key(2)));
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction should drop removed and overwritten records and keep the live ones")
+    void compact_reclaimsGarbage() throws IOException {
+        try (ResultStore store = new ResultStore(tempDir, 300)) {
+            for (int i = 0; i < 10; i++) {
+                store.put(key(i), totals(i + ".00"));
+            }
+            for (int i = 0; i < 5; i++) {
+                assertTrue(store.remove(key(i)));
+            }
+            store.put(key(9), totals("99.00"));
+            assertFalse(store.remove(key(0)));
+            long bytesBefore = store.getStats().totalBytes();
+
+            store.compact();
+
+            ResultStore.StoreStats stats = store.getStats();
+            assertEquals(5, stats.entries());
+            assertEquals(stats.liveBytes(), stats.totalBytes());
+            assertTrue(stats.totalBytes() < bytesBefore);
+        }
+
+        try (ResultStore store = new ResultStore(tempDir, 300)) {
+            assertEquals(5, store.getStats().entries());
+            assertNull(store.get(key(0)));
+            assertEquals(totals("5.00"), store.get(key(5)));
+            assertEquals(totals("99.00"), store.get(key(9)));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifferentialFuzzerTest {
+
+    private static DifferentialFuzzer fuzzer(String... engineNames) {
+        Map<String, DifferentialFuzzer.Engine> engines = DifferentialFuzzer.allEngines();
+        List<DifferentialFuzzer.Engine> selected = new ArrayList<>(List.of(engines.get(DifferentialFuzzer.REFERENCE)));
+        for (String name : engineNames) {
+            selected.add(engines.get(name));
+        }
+        return new DifferentialFuzzer(selected, DifferentialFuzzer.DEFAULT_MAX_ORDERS, DifferentialFuzzer.DEFAULT_MAX_CARDS);
+    }
+
+
+    @Test
+    @DisplayName("The same seed should give the same instance, and the seeds should cover the edges of the input")
+    void generate_coversEdgeCases() {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(DifferentialFuzzer.defaultEngines(), 8, 4);
+        assertEquals(fuzzer.generate(42), fuzzer.generate(42));
+
+        boolean halfCent = false, missingMethod = false, nullPromotions = false, noPoints = false, zeroLimit = false, shortScale = false;
+        for (long seed = 0; seed < 2_000; seed++) {
+            DifferentialFuzzer.Instance instance = fuzzer.generate(seed);
+            for (Order order : instance.orders()) {
+                halfCent |= order.getValue().scale() == 2 && order.getValue().unscaledValue().longValue() % 10 == 5;
+                nullPromotions |= order.getPromotions() == null;
+                missingMethod |= order.getPromotions() != null && order.getPromotions().contains(DifferentialFuzzer.MISSING_METHOD_ID);
+                shortScale |= order.getValue().scale() < 2;
+            }
+            noPoints |= instance.paymentMethods().stream().noneMatch(method -> method.getId().equals(DifferentialFuzzer.POINTS_ID));
+            zeroLimit |= instance.paymentMethods().stream().anyMatch(method -> method.getLimit().signum() == 0);
+        }
+        assertTrue(halfCent && missingMethod && nullPromotions && noPoints && zeroLimit && shortScale);
+    }
+
+    @Test
+    @DisplayName("The default engines should be all engines, and each should keep its relation to the reference")
+    void run_defaultEngines_agree() {
+        List<String> names = DifferentialFuzzer.defaultEngines().stream().map(DifferentialFuzzer.Engine::name).toList();
+        assertEquals(List.copyOf(DifferentialFuzzer.allEngines().keySet()), names);
+        assertTrue(names.containsAll(List.of("cached", "beam-1", "rolling-horizon-1", "online", "micro-batch")), names.toString());
+
+        DifferentialFuzzer.Report report = new DifferentialFuzzer(DifferentialFuzzer.defaultEngines(), 8, 4)
+                .run(1, 3_000, 0, 2, 1);
+
+        assertEquals(3_000, report.cases());
+        assertEquals(List.of(), report.mismatches());
+    }
+
+    @Test
+    @DisplayName("A planted bug should be found and shrunk to the single order that triggers it")
+    void run_plantedBug_shrinksToMinimalInstance() {
+        DifferentialFuzzer.Engine buggy = new DifferentialFuzzer.Engine("buggy", (orders, methods) -> {
+            Map<String, BigDecimal> totals = new PaymentOptimizerService().optimizePayments(orders, methods);
+            boolean ghost = orders.stream().anyMatch(order -> order.getPromotions() != null
+                    && order.getPromotions().contains(DifferentialFuzzer.MISSING_METHOD_ID));
+            if (ghost) {
+                totals.replaceAll((methodId, amount) -> amount.add(BigDecimal.ONE));
+            }
+            return totals;
+        });
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(List.of(DifferentialFuzzer.defaultEngines().get(0), buggy), 8, 4);
+
+        DifferentialFuzzer.Report report = fuzzer.run(1, 1_000, 0, 2, 1);
+
+        assertEquals(1, report.mismatches().size());
+        DifferentialFuzzer.Mismatch mismatch = report.mismatches().get(0);
+        assertEquals("buggy", mismatch.engine());
+        assertEquals(1, mismatch.shrunk().orders().size());
+        assertEquals(List.of(DifferentialFuzzer.MISSING_METHOD_ID), mismatch.shrunk().orders().get(0).getPromotions());
+        assertFalse(mismatch.actual().agreesWith(mismatch.expected()));
+    }
+
+    @Test
+    @DisplayName("Beam search of width one held to the exact plan should be reported only where it fails and the guarded greedy pays")
+    void run_beamOfWidthOne_divergesOnlyByFailing() {
+        DifferentialFuzzer.Engine beam = DifferentialFuzzer.allEngines().get("beam-1");
+        assertEquals(DifferentialFuzzer.Relation.EXACT_OR_FAILS, beam.relation());
+        DifferentialFuzzer exact = new DifferentialFuzzer(List.of(DifferentialFuzzer.allEngines().get(DifferentialFuzzer.REFERENCE),
+                new DifferentialFuzzer.Engine("beam-1-exact", beam.optimizer())), 8, 4);
+
+        DifferentialFuzzer.Report report = exact.run(1, 5_000, 0, 2, 1);
+
+        assertEquals(1, report.mismatches().size());
+        DifferentialFuzzer.Mismatch mismatch = report.mismatches().get(0);
+        assertNull(mismatch.actual().totals());
+        assertNotNull(mismatch.expected().totals());
+        assertTrue(mismatch.shrunk().orders().size() <= 3, "Shrunk to " + mismatch.shrunk());
+        assertEquals(List.of(), fuzzer("beam-1").run(1, 5_000, 0, 2, 1).mismatches());
+    }
+
+    @Test
+    @DisplayName("A plan over a limit or with more discount than the orders allow should not be valid")
+    void isValidPlan_rejectsImpossiblePlans() {
+        DifferentialFuzzer.Instance instance = new DifferentialFuzzer.Instance(0,
+                List.of(new Order("O1", new BigDecimal("100.00"), List.of("CARD0"))),
+                List.of(new PaymentMethod("CARD0", 20, new BigDecimal("100.00")), new PaymentMethod(DifferentialFuzzer.POINTS_ID, 15, new BigDecimal("50.00"))));
+
+        assertTrue(DifferentialFuzzer.isValidPlan(instance, Map.of("CARD0", new BigDecimal("80.00"))));
+        assertTrue(DifferentialFuzzer.isValidPlan(instance, Map.of("CARD0", new BigDecimal("40.00"), DifferentialFuzzer.POINTS_ID, new BigDecimal("50.00"))));
+        assertFalse(DifferentialFuzzer.isValidPlan(instance, Map.of("CARD0", new BigDecimal("79.00"))));
+        assertFalse(DifferentialFuzzer.isValidPlan(instance, Map.of(DifferentialFuzzer.POINTS_ID, new BigDecimal("85.00"))));
+        assertFalse(DifferentialFuzzer.isValidPlan(instance, Map.of("CARD0", new BigDecimal("100.01"))));
+        assertFalse(DifferentialFuzzer.isValidPlan(instance, Map.of("GHOST", new BigDecimal("80.00"))));
+    }
+
+    @Test
+    @DisplayName("Outcomes should agree on equal amounts of different scale and on a method missing instead of zero")
+    void outcome_agreesWith_comparesAmounts() {
+        DifferentialFuzzer.Outcome outcome = new DifferentialFuzzer.Outcome(Map.of("A", new BigDecimal("10.0"), "B", new BigDecimal("0.00")), null);
+
+        assertTrue(outcome.agreesWith(new DifferentialFuzzer.Outcome(Map.of("A", new BigDecimal("10.00")), null)));
+        assertFalse(outcome.agreesWith(new DifferentialFuzzer.Outcome(Map.of("A", new BigDecimal("10.01")), null)));
+        assertFalse(outcome.agreesWith(new DifferentialFuzzer.Outcome(null, "RuntimeException: no option")));
+        assertTrue(new DifferentialFuzzer.Outcome(null, "a").agreesWith(new DifferentialFuzzer.Outcome(null, "b")));
+    }
+}
@@ -0,0 +1,140 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.model.OptimizationRequest;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.server.OptimizerHttpServer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+
+    private static LoadGenerator.Spec spec(LoadGenerator.Mode mode, double rate, int concurrency, long durationMillis) {
+        return new LoadGenerator.Spec(mode, rate, concurrency, 0, durationMillis * MILLIS, 250 * MILLIS, 10_000);
+    }
+
+
+    /**
+     * A target answering in about a millisecond, one request at a time, that stalls once for the given time.
+     */
+    private static LoadGenerator.Target stallingTarget(long stallMillis) {
+        AtomicBoolean stalled = new AtomicBoolean();
+        Object serverLock = new Object();
+        return body -> {
+            synchronized (serverLock) {
+                Thread.sleep(stalled.compareAndSet(false, true) ? stallMillis : 1);
+            }
+            return 200;
+        };
+    }
+
+
+    @Test
+    @DisplayName("The request pool should be reproducible and vary basket sizes and payment method sets")
+    void requestPool_variesBasketsAndMethods() throws IOException {
+        List<byte[]> pool = LoadGenerator.requestPool(200, 20, 6, 7);
+        List<byte[]> again = LoadGenerator.requestPool(200, 20, 6, 7);
+
+        JsonDataParser jsonDataParser = new JsonDataParser();
+        Set<Integer> basketSizes = new HashSet<>();
+        Set<Set<String>> methodSets = new HashSet<>();
+        for (int i = 0; i < pool.size(); i++) {
+            assertArrayEquals(again.get(i), pool.get(i));
+            OptimizationRequest request = jsonDataParser.parseOptimizationRequest(new ByteArrayInputStream(pool.get(i)));
+            assertTrue(request.getOrders().size() <= 20);
+            basketSizes.add(request.getOrders().size());
+            Set<String> methodIds = new HashSet<>();
+            request.getPaymentMethods().forEach(method -> methodIds.add(method.getId()));
+            methodSets.add(methodIds);
+        }
+        assertTrue(basketSizes.contains(1));
+        assertTrue(basketSizes.size() >= 8, "Basket sizes " + basketSizes);
+        assertTrue(methodSets.size() >= 50, methodSets.size() + " distinct payment method sets");
+    }
+
+    @Test
+    @DisplayName("An open loop against the HTTP server should send at the target rate and get only successful responses")
+    void run_openLoopAgainstServer_reachesRate() throws IOException {
+        OptimizerHttpServer server = new OptimizerHttpServer(0);
+        server.start();
+        try {
+            LoadGenerator.Target target = LoadGenerator.httpTarget(URI.create("http://localhost:" + server.getPort() + "/optimize"));
+            List<LoadGenerator.Interval> intervals = new ArrayList<>();
+
+            LoadGenerator.Report report = LoadGenerator.run(target, LoadGenerator.requestPool(50, 10, 4, 1),
+                    spec(LoadGenerator.Mode.OPEN, 100, 1, 1_000), intervals::add);
+
+            assertEquals(100, report.latency().getCount());
+            assertEquals(0, report.errors());
+            assertEquals(Map.of(200, 100L), report.responsesByStatus());
+            assertEquals(0.0, report.errorRate());
+            assertTrue(report.intervals().size() >= 4);
+            assertEquals(report.intervals(), intervals);
+            assertEquals(100, intervals.stream().mapToLong(LoadGenerator.Interval::requests).sum());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("A stall should show in every request scheduled during it in open loop, but in a single sample in closed loop")
+    void run_serverStall_openLoopCorrectsCoordinatedOmission() {
+        List<byte[]> requests = List.of("{}".getBytes());
+
+        LoadGenerator.Report open = LoadGenerator.run(stallingTarget(300), requests,
+                spec(LoadGenerator.Mode.OPEN, 200, 1, 1_000), interval -> { });
+        LoadGenerator.Report closed = LoadGenerator.run(stallingTarget(300), requests,
+                spec(LoadGenerator.Mode.CLOSED, 0, 1, 1_000), interval -> { });
+
+        // ok. 60 zapytan zaplanowanych w czasie przestoju czeka na niego, z opoznieniem od 300 ms w dol
+        assertTrue(open.latency().getPercentile(0.9) >= 100 * MILLIS,
+                "Open-loop p90 " + open.latency().getPercentile(0.9) / MILLIS + " ms");
+        assertTrue(closed.latency().getPercentile(0.9) < 50 * MILLIS,
+                "Closed-loop p90 " + closed.latency().getPercentile(0.9) / MILLIS + " ms");
+        assertTrue(closed.latency().getMax() >= 300 * MILLIS);
+    }
+
+    @Test
+    @DisplayName("A paced closed loop should keep to the rate and measure latency from the schedule")
+    void run_pacedClosedLoop_measuresFromSchedule() {
+        LoadGenerator.Report report = LoadGenerator.run(stallingTarget(300), List.of("{}".getBytes()),
+                spec(LoadGenerator.Mode.CLOSED, 100, 2, 1_000), interval -> { });
+
+        assertTrue(report.latency().getCount() <= 101, report.latency().getCount() + " requests");
+        assertTrue(report.latency().getPercentile(0.75) >= 50 * MILLIS,
+                "Paced closed-loop p75 " + report.latency().getPercentile(0.75) / MILLIS + " ms");
+    }
+
+    @Test
+    @DisplayName("Failed requests should be counted as errors under status -1")
+    void run_failingTarget_countsErrors() {
+        LoadGenerator.Report report = LoadGenerator.run(body -> {
+            throw new IOException("connection refused");
+        }, List.of("{}".getBytes()), spec(LoadGenerator.Mode.OPEN, 50, 1, 200), interval -> { });
+
+        assertEquals(10, report.errors());
+        assertEquals(Map.of(-1, 10L), report.responsesByStatus());
+        assertEquals(1.0, report.errorRate());
+    }
+
+    @Test
+    @DisplayName("An open loop without a rate should be rejected")
+    void run_openLoopWithoutRate_throws() {
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.run(body -> 200, List.of("{}".getBytes()),
+                spec(LoadGenerator.Mode.OPEN, 0, 1, 100), interval -> { }));
+    }
+}
@@ -0,0 +1,83 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrategyBenchmarkTest {
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+
+    private static StrategyBenchmark.Instance pdfInstance() {
+        return new StrategyBenchmark.Instance("pdf",
+                List.of(new Order("ORDER1", bd("100.00"), List.of("mZysk")),
+                        new Order("ORDER2", bd("200.00"), List.of("BosBankrut")),
+                        new Order("ORDER3", bd("150.00"), List.of("mZysk", "BosBankrut")),
+                        new Order("ORDER4", bd("50.00"), null)),
+                List.of(new PaymentMethod("PUNKTY", 15, bd("100.00")),
+                        new PaymentMethod("mZysk", 10, bd("180.00")),
+                        new PaymentMethod("BosBankrut", 5, bd("200.00"))));
+    }
+
+
+    @Test
+    @DisplayName("The exhaustive optimum should be the reference and no strategy should beat it")
+    void run_smallInstance_exhaustiveIsReference() {
+        List<StrategyBenchmark.Result> results = new StrategyBenchmark(StrategyBenchmark.defaultStrategies(10), 0, 1).run(List.of(pdfInstance()));
+
+        assertEquals(4, results.size());
+        StrategyBenchmark.Result greedy = results.get(0);
+        StrategyBenchmark.Result exhaustive = results.get(3);
+        assertEquals(StrategyBenchmark.EXHAUSTIVE, exhaustive.strategy());
+        assertEquals(0, bd("0.00").compareTo(exhaustive.gapPercent()));
+        for (StrategyBenchmark.Result result : results) {
+            assertEquals("optimum", result.reference());
+            assertTrue(result.totalDiscount().compareTo(exhaustive.totalDiscount()) <= 0);
+            assertTrue(result.gapPercent().signum() >= 0);
+        }
+        assertEquals(0, bd("42.50").compareTo(greedy.totalDiscount())); // 500.00 - (175.00 + 182.50 + 100.00)
+        assertEquals(0, bd("100.00").compareTo(greedy.pointsUsed()));
+    }
+
+    @Test
+    @DisplayName("Instances above a strategy's size limit should be skipped and the best discount used as reference")
+    void run_largeInstance_usesBestKnownReference() {
+        StrategyBenchmark benchmark = new StrategyBenchmark(StrategyBenchmark.defaultStrategies(2), 0, 1);
+
+        List<StrategyBenchmark.Result> results = benchmark.run(List.of(pdfInstance()));
+
+        assertEquals(3, results.size());
+        assertTrue(results.stream().noneMatch(result -> result.strategy().equals(StrategyBenchmark.EXHAUSTIVE)));
+        assertTrue(results.stream().allMatch(result -> result.reference().equals("best known")));
+        assertTrue(results.stream().anyMatch(result -> result.gapPercent().signum() == 0));
+    }
+
+    @Test
+    @DisplayName("A failing strategy should be reported with its error, in CSV and Markdown")
+    void run_failingStrategy_reportsError() {
+        StrategyBenchmark.Strategy failing = new StrategyBenchmark.Strategy("failing", (orders, methods) -> {
+            throw new RuntimeException("cannot pay");
+        }, Integer.MAX_VALUE);
+        StrategyBenchmark.Strategy constant = new StrategyBenchmark.Strategy("constant", (orders, methods) -> Map.of("mZysk", bd("450.00")), Integer.MAX_VALUE);
+
+        List<StrategyBenchmark.Result> results = new StrategyBenchmark(List.of(failing, constant), 0, 1).run(List.of(pdfInstance()));
+
+        assertEquals("cannot pay", results.get(0).error());
+        assertNull(results.get(0).totalDiscount());
+        String csv = StrategyBenchmark.toCsv(results);
+        assertTrue(csv.startsWith("instance,orders,methods,strategy,total_discount,"));
+        assertTrue(csv.contains("pdf,4,3,failing,,,,,"));
+        assertTrue(csv.contains("pdf,4,3,constant,50.00,0.00,best known,0,"));
+        assertTrue(StrategyBenchmark.toMarkdown(results).contains("| pdf | 4 | failing | failed: cannot pay |"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.exception.ProcessingException;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.InputFingerprint;
+import com.chamera.patryk.trace.DecisionTrace;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceReplayTest {
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", bd("100.00"), List.of("mZysk")),
+            new Order("ORDER2", bd("200.00"), List.of("BosBankrut")),
+            new Order("ORDER3", bd("150.00"), List.of("mZysk", "BosBankrut")),
+            new Order("ORDER4", bd("50.00"), null));
+
+    private static final List<PaymentMethod> PAYMENT_METHODS = List.of(
+            new PaymentMethod("PUNKTY", 15, bd("100.00")),
+            new PaymentMethod("mZysk", 10, bd("180.00")),
+            new PaymentMethod("BosBankrut", 5, bd("200.00")));
+
+
+    @Test
+    @DisplayName("Replaying the PDF instance should reach the same decisions and totals")
+    void replay_sameInstance_identical() throws ProcessingException {
+        DecisionTrace recorded = TraceReplay.replay(ORDERS, PAYMENT_METHODS);
+        DecisionTrace replayed = TraceReplay.replay(new ArrayList<>(ORDERS), PAYMENT_METHODS);
+
+        TraceReplay.checkInstance(recorded, ORDERS, PAYMENT_METHODS);
+        assertEquals(4, recorded.decisions().size());
+        assertEquals(0, bd("175.00").compareTo(recorded.totals().get("mZysk")));
+        TraceReplay.Comparison comparison = TraceReplay.compare(recorded, replayed);
+        assertTrue(comparison.identical(), comparison.message());
+        assertEquals(4, comparison.decisionsCompared());
+    }
+
+
+    @Test
+    @DisplayName("A changed decision should be reported at its index")
+    void compare_changedDecision_reportsFirstDivergence() {
+        DecisionTrace recorded = TraceReplay.replay(ORDERS, PAYMENT_METHODS);
+        List<DecisionTrace.Decision> changed = new ArrayList<>(recorded.decisions());
+        DecisionTrace.Decision third = changed.get(2);
+        changed.set(2, new DecisionTrace.Decision(third.orderId(), third.discount().add(bd("0.01")), third.pointsUsed(), third.charges()));
+        DecisionTrace replayed = new DecisionTrace(recorded.fingerprint(), recorded.configuration(), recorded.orderCount(),
+                recorded.methodIds(), changed, recorded.totals(), null, recorded.nanos());
+
+        TraceReplay.Comparison comparison = TraceReplay.compare(recorded, replayed);
+
+        assertFalse(comparison.identical());
+        assertEquals(2, comparison.firstDivergence());
+        assertTrue(comparison.message().startsWith("Decision 2 differs"), comparison.message());
+    }
+
+
+    @Test
+    @DisplayName("A trace should be rejected for a different input, and an infeasible run should replay its failure")
+    void checkInstance_differentInput_throws() {
+        DecisionTrace recorded = TraceReplay.replay(ORDERS, PAYMENT_METHODS);
+        List<Order> otherOrders = List.of(new Order("ORDER1", bd("100.01"), List.of("mZysk")));
+
+        assertThrows(ProcessingException.class, () -> TraceReplay.checkInstance(recorded, otherOrders, PAYMENT_METHODS));
+        DecisionTrace fingerprinted = new DecisionTrace(InputFingerprint.ofSequence(ORDERS, PAYMENT_METHODS), recorded.configuration(),
+                recorded.orderCount(), recorded.methodIds(), recorded.decisions(), recorded.totals(), null, recorded.nanos());
+        assertThrows(ProcessingException.class, () -> TraceReplay.checkInstance(fingerprinted, ORDERS.reversed(), PAYMENT_METHODS));
+        assertDoesNotThrow(() -> TraceReplay.checkInstance(fingerprinted, ORDERS, PAYMENT_METHODS));
+
+        List<PaymentMethod> tooSmall = List.of(new PaymentMethod("mZysk", 10, bd("10.00")));
+        DecisionTrace failed = TraceReplay.replay(ORDERS, tooSmall);
+        assertNotNull(failed.failure());
+        assertTrue(TraceReplay.compare(failed, TraceReplay.replay(ORDERS, tooSmall)).identical());
+        assertEquals(3, TraceReplay.benchmark(ORDERS, PAYMENT_METHODS, 1, 3).length);
+    }
+}
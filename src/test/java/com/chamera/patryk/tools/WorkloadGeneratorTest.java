@@ -0,0 +1,91 @@
+package com.chamera.patryk.tools;
+
+import com.chamera.patryk.exception.ArgsValidationException;
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.parser.JsonDataParser;
+import com.chamera.patryk.service.PaymentOptimizerService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+
+    private static WorkloadGenerator.Spec spec(long orders, long seed, WorkloadGenerator.Format format) {
+        WorkloadGenerator.Spec defaults = WorkloadGenerator.Spec.defaults(orders);
+        return new WorkloadGenerator.Spec(orders, defaults.cardCount(), seed, defaults.valueDistribution(),
+                defaults.minValue(), defaults.maxValue(), defaults.medianValue(), defaults.sigma(), defaults.paretoAlpha(),
+                defaults.meanPromotions(), defaults.promotionSkew(), defaults.limitTightness(), defaults.pointsScarcity(), format);
+    }
+
+
+    @Test
+    @DisplayName("Generated JSON should be readable by the application and the instance should be payable")
+    void generate_json_parsesAndSolves() throws Exception {
+        List<Path> files = new WorkloadGenerator(spec(2_000, 7L, WorkloadGenerator.Format.JSON)).generate(tempDir);
+
+        JsonDataParser parser = new JsonDataParser();
+        List<Order> orders = parser.parseOrders(files.get(0).toString());
+        List<PaymentMethod> paymentMethods = parser.parsePaymentMethods(files.get(1).toString());
+
+        assertEquals(2_000, orders.size());
+        assertEquals(11, paymentMethods.size());
+        assertEquals("PUNKTY", paymentMethods.get(0).getId());
+
+        BigDecimal totalValue = orders.stream().map(Order::getValue).reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal totalCardLimit = paymentMethods.stream().skip(1).map(PaymentMethod::getLimit).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(1.2, totalCardLimit.doubleValue() / totalValue.doubleValue(), 0.001);
+
+        Map<String, BigDecimal> totals = new PaymentOptimizerService().optimizePayments(orders, paymentMethods);
+        assertFalse(totals.isEmpty());
+    }
+
+    @Test
+    @DisplayName("The same seed should produce identical files and a different seed different ones")
+    void generate_sameSeed_isDeterministic() throws Exception {
+        Path first = new WorkloadGenerator(spec(500, 3L, WorkloadGenerator.Format.NDJSON)).generate(tempDir.resolve("a")).get(0);
+        Path second = new WorkloadGenerator(spec(500, 3L, WorkloadGenerator.Format.NDJSON)).generate(tempDir.resolve("b")).get(0);
+        Path other = new WorkloadGenerator(spec(500, 4L, WorkloadGenerator.Format.NDJSON)).generate(tempDir.resolve("c")).get(0);
+
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        assertFalse(Files.readString(first).equals(Files.readString(other)));
+    }
+
+    @Test
+    @DisplayName("NDJSON should have one record per line and CSV a header plus one line per record")
+    void generate_lineFormats_oneRecordPerLine() throws Exception {
+        List<Path> ndjson = new WorkloadGenerator(spec(300, 1L, WorkloadGenerator.Format.NDJSON)).generate(tempDir.resolve("ndjson"));
+        List<Path> csv = new WorkloadGenerator(spec(300, 1L, WorkloadGenerator.Format.CSV)).generate(tempDir.resolve("csv"));
+
+        List<String> ndjsonOrders = Files.readAllLines(ndjson.get(0)).stream().filter(line -> !line.isEmpty()).toList();
+        assertEquals(300, ndjsonOrders.size());
+        assertTrue(ndjsonOrders.get(0).startsWith("{\"id\":\"ORDER1\",\"value\":\""));
+
+        List<String> csvOrders = Files.readAllLines(csv.get(0));
+        assertEquals("id,value,promotions", csvOrders.get(0));
+        assertEquals(301, csvOrders.size());
+        assertEquals(12, Files.readAllLines(csv.get(1)).size());
+    }
+
+    @Test
+    @DisplayName("Unknown options and out-of-range parameters should be rejected")
+    void toSpec_invalidOptions_throwArgsValidationException() {
+        assertThrows(ArgsValidationException.class, () -> WorkloadGenerator.toSpec(Map.of("--orders", "10", "--colour", "red")));
+        assertThrows(ArgsValidationException.class, () -> WorkloadGenerator.toSpec(Map.of("--cards", "3")));
+        assertThrows(ArgsValidationException.class, () -> WorkloadGenerator.parseOptions(new String[]{"--orders"}));
+        assertThrows(ArgsValidationException.class, () -> new WorkloadGenerator(WorkloadGenerator.toSpec(Map.of("--orders", "0"))));
+        assertThrows(ArgsValidationException.class, () -> WorkloadGenerator.toSpec(Map.of("--orders", "10", "--format", "xml")));
+    }
+}
@@ -0,0 +1,169 @@
+package com.chamera.patryk.trace;
+
+import com.chamera.patryk.model.Order;
+import com.chamera.patryk.model.PaymentMethod;
+import com.chamera.patryk.service.InputFingerprint;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionTraceWriterTest {
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+
+    private static final List<Order> ORDERS = List.of(
+            new Order("ORDER1", bd("100.00"), List.of("mZysk")),
+            new Order("ZAMÓWIENIE-2", bd("112.00"), null));
+
+    private static final List<PaymentMethod> PAYMENT_METHODS = List.of(
+            new PaymentMethod("PUNKTY", 15, bd("100.00")),
+            new PaymentMethod("mZysk", 10, bd("300.00")));
+
+    private static final List<PaymentMethod> CARD_ONLY = List.of(new PaymentMethod("CARD", 0, bd("1000.00")));
+
+
+    @Test
+    @DisplayName("A trace should read back with the same header, decisions and totals")
+    void writeAndRead_roundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DecisionTraceWriter writer = new DecisionTraceWriter(out)) {
+            writer.begin(ORDERS, PAYMENT_METHODS, "greedy-v1", InputFingerprint.ofSequence(ORDERS, PAYMENT_METHODS));
+            writer.decision("ORDER1", bd("10.00"), bd("0"), Map.of("mZysk", bd("90.00")));
+            writer.decision("ZAMÓWIENIE-2", bd("-0.5"), bd("12.345"), Map.of("PUNKTY", bd("12.345"), "mZysk", bd("100")));
+            writer.end(Map.of("PUNKTY", bd("12.345"), "mZysk", bd("190.00")));
+        }
+
+        DecisionTrace trace = DecisionTraceReader.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(InputFingerprint.ofSequence(ORDERS, PAYMENT_METHODS), trace.fingerprint());
+        assertEquals("greedy-v1", trace.configuration());
+        assertEquals(2, trace.orderCount());
+        assertEquals(List.of("PUNKTY", "mZysk"), trace.methodIds());
+        assertEquals(2, trace.decisions().size());
+        DecisionTrace.Decision second = trace.decisions().get(1);
+        assertEquals("ZAMÓWIENIE-2", second.orderId());
+        assertEquals(bd("-0.5"), second.discount());
+        assertEquals(bd("12.345"), second.pointsUsed());
+        assertEquals(Map.of("PUNKTY", bd("12.345"), "mZysk", bd("100")), second.charges());
+        assertEquals(Map.of("PUNKTY", bd("12.345"), "mZysk", bd("190.00")), trace.totals());
+        assertTrue(trace.isComplete());
+        assertTrue(trace.nanos() >= 0);
+        assertNull(trace.failure());
+    }
+
+
+    @Test
+    @DisplayName("A ring smaller than the trace should wrap around without losing or reordering records")
+    void smallRing_wrapsAround() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DecisionTraceWriter writer = new DecisionTraceWriter(out, 64)) {
+            writer.begin(ORDERS, CARD_ONLY, "a-configuration-name-longer-than-the-ring-buffer-itself-0123456789");
+            for (int i = 0; i < 5000; i++) {
+                writer.decision("O" + i, bd("0.00"), bd("0.00"), Map.of("CARD", BigDecimal.valueOf(i, 2)));
+            }
+            writer.fail("Order O5000 cannot be paid");
+        }
+
+        DecisionTrace trace = DecisionTraceReader.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertNull(trace.fingerprint());
+        assertEquals(5000, trace.decisions().size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("O" + i, trace.decisions().get(i).orderId());
+            assertEquals(BigDecimal.valueOf(i, 2), trace.decisions().get(i).charges().get("CARD"));
+        }
+        assertEquals("Order O5000 cannot be paid", trace.failure());
+        assertTrue(trace.isComplete());
+    }
+
+
+    @Test
+    @DisplayName("A cut-off trace should read up to its last complete record, and a failing stream should surface on close")
+    void truncatedTraceAndStreamFailure() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DecisionTraceWriter writer = new DecisionTraceWriter(out)) {
+            writer.begin(ORDERS, CARD_ONLY, "greedy-v1");
+            writer.decision("O1", bd("0.00"), bd("0.00"), Map.of("CARD", bd("1.00")));
+            writer.decision("O2", bd("0.00"), bd("0.00"), Map.of("CARD", bd("2.00")));
+        }
+        byte[] bytes = out.toByteArray();
+
+        DecisionTrace truncated = DecisionTraceReader.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 2)));
+
+        assertEquals(1, truncated.decisions().size());
+        assertFalse(truncated.isComplete());
+        assertEquals(-1, truncated.nanos());
+        assertThrows(IOException.class, () -> DecisionTraceReader.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})));
+
+        DecisionTraceWriter failing = new DecisionTraceWriter(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        });
+        failing.begin(ORDERS, CARD_ONLY, "greedy-v1");
+        IOException exception = assertThrows(IOException.class, failing::close);
+        assertEquals("disk full", exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("Amounts beyond 15 digits or with a negative scale and non-ASCII order IDs should read back exactly")
+    void writeAndRead_wideAmounts() throws IOException {
+        String longId = "ZAMÓWIENIE-" + "x".repeat(200);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DecisionTraceWriter writer = new DecisionTraceWriter(out)) {
+            writer.begin(ORDERS, CARD_ONLY, "greedy-v1");
+            writer.decision("ŻÓŁĆ", bd("1E+3"), bd("0.000000000000000001"), Map.of("CARD", bd("1234567890123456.78")));
+            writer.decision(longId, bd("999999999999999.9"), bd("-0.01"), Map.of("CARD", bd("0.1")));
+        }
+
+        DecisionTrace trace = DecisionTraceReader.read(new ByteArrayInputStream(out.toByteArray()));
+
+        DecisionTrace.Decision first = trace.decisions().get(0);
+        assertEquals("ŻÓŁĆ", first.orderId());
+        assertEquals(bd("1E+3"), first.discount());
+        assertEquals(bd("0.000000000000000001"), first.pointsUsed());
+        assertEquals(bd("1234567890123456.78"), first.charges().get("CARD"));
+        DecisionTrace.Decision second = trace.decisions().get(1);
+        assertEquals(longId, second.orderId());
+        assertEquals(bd("999999999999999.9"), second.discount());
+        assertEquals(bd("-0.01"), second.pointsUsed());
+        assertEquals(bd("0.1"), second.charges().get("CARD"));
+    }
+
+
+    @Test
+    @DisplayName("A stream throwing an unchecked exception should not block the solver and should surface on close")
+    void streamThrowsRuntimeException_solverDoesNotBlock() {
+        DecisionTraceWriter writer = new DecisionTraceWriter(new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new IllegalStateException("stream closed under us");
+            }
+        }, 64);
+
+        // maly bufor zapelnia sie od razu - bez obslugi bledu producent czekalby na martwy watek w nieskonczonosc
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            writer.begin(ORDERS, CARD_ONLY, "greedy-v1");
+            for (int i = 0; i < 5000; i++) {
+                writer.decision("O" + i, bd("0.00"), bd("0.00"), Map.of("CARD", BigDecimal.valueOf(i, 2)));
+            }
+            IOException exception = assertThrows(IOException.class, writer::close);
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+        });
+    }
+}